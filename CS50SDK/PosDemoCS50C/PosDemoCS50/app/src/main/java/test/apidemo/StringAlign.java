@@ -1,11 +1,14 @@
 package test.apidemo;
 
+import test.apidemo.print.ColumnLayout;
+
 /**
  * Created by Administrator on 2018/1/25.
  */
 
 /**
  * 字符串对齐器。可以指定对齐格式和一行的最大字符数 对齐格式有左对齐、居中、右对齐
+ * 由 {@link ColumnLayout} 排版：按打印格数计算宽度，中日韩字符占两格，超长的字符串在单词边界换行。
  */
 public class StringAlign {
 
@@ -20,6 +23,9 @@ public class StringAlign {
     private int just;
     /** 一行的最大长度 */
     private int maxChars;
+    /** 对齐格式或行长度改变时重建 */
+    private ColumnLayout layout;
+    private final StringBuilder out = new StringBuilder();
 
     /**
      * 默认构造函数
@@ -52,50 +58,14 @@ public class StringAlign {
      *            待对齐的字符串
      */
     public String format(String s) {
-        StringBuffer where = new StringBuffer();
-        // 从待对齐的字符串中取出一段子字符串，子串的长度为行最大长度和s长度的较小值
-        int wantedLength = Math.min(s.length(), this.maxChars);
-        String wanted = s.substring(0, wantedLength);
-        // 根据对齐模式，将空格放在合适的位置
-        switch (this.just) {
-            case JUST_RIGHT:
-                // 如果是右对齐，那么将缺少的的字符用空格代替放在左边
-                pad(where, maxChars - wantedLength);
-                // 将字符串添加在右边
-                where.append(wanted);
-                break;
-            case JUST_CENTER:
-                // 居中对齐，将空格字符平均分在字符串两边。
-                int startPos = where.length();
-                pad(where, (maxChars - wantedLength) / 2);
-                where.append(wanted);
-                pad(where, (maxChars - wantedLength) / 2);
-                // 调整舍入误差
-                pad(where, maxChars - (where.length() - startPos));
-                break;
-            case JUST_LEFT:
-                // 右对齐，将空格字符放在字符串右边。
-                where.append(wanted);
-                pad(where, maxChars - wantedLength);
-                break;
+        if (layout == null) {
+            layout = new ColumnLayout(maxChars, just);
         }
-        // 如果原字符串的长度大于一行的最大长度，则将余下部分放入下一行
-        if (s.length() > wantedLength) {
-            String remainStr = s.substring(wantedLength);
-            where.append("\n" + this.format(remainStr));
-        }
-        return where.toString();
-    }
-
-    /**
-     * 在to的后面append howMany个空格字符。
-     *
-     * @param to
-     * @param howMany
-     */
-    protected final void pad(StringBuffer to, int howMany) {
-        for (int i = 0; i < howMany; i++)
-            to.append(" ");
+        out.setLength(0);
+        layout.append(out, s);
+        // 行之间用换行分隔，最后一行不带换行
+        out.setLength(out.length() - 1);
+        return out.toString();
     }
 
     public int getJust() {
@@ -113,6 +83,7 @@ public class StringAlign {
             case JUST_CENTER:
             case JUST_RIGHT:
                 this.just = just;
+                this.layout = null;
                 break;
             default:
                 System.out.println("invalid justification arg.");
@@ -133,6 +104,7 @@ public class StringAlign {
             System.out.println("maxChars must be positive.");
         } else {
             this.maxChars = maxChars;
+            this.layout = null;
         }
     }
 
@@ -17,8 +17,49 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import com.ctk.sdk.PosApiHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.Arrays;
 
+import test.apidemo.emv.CardBrand;
+import test.apidemo.emv.ClessConfig;
+import test.apidemo.emv.ClessConfigLoader;
+import test.apidemo.emv.EmvConfig;
+import test.apidemo.emv.EmvConfigLoader;
+import test.apidemo.emv.EmvTagSnapshot;
+import test.apidemo.emv.KernelSessionManager;
+import test.apidemo.emv.PosClessKernel;
+import test.apidemo.emv.PosEmvKernel;
+import test.apidemo.emv.PosTagSource;
+import test.apidemo.emv.TagSource;
+import test.apidemo.emv.TimelineStats;
+import test.apidemo.emv.TlvIndex;
+import test.apidemo.emv.TlvReader;
+import test.apidemo.emv.TlvWriter;
+import test.apidemo.emv.TxnTimeline;
+import test.apidemo.entry.CardEntryMux;
+import test.apidemo.entry.PiccDetector;
+import test.apidemo.entry.PosCardDetector;
+import test.apidemo.iso8583.AcquirerLink;
+import test.apidemo.iso8583.Iso8583Spec;
+import test.apidemo.iso8583.OnlineAuthorizer;
+import test.apidemo.iso8583.SafUploader;
+import test.apidemo.journal.TxnJournal;
+import test.apidemo.pci.DukptTdes;
+import test.apidemo.pci.PciCrypto;
+import test.apidemo.pci.PciStream;
+import test.apidemo.pci.PinBlock;
+import test.apidemo.pci.PosPciCrypto;
+import test.apidemo.picc.PosPiccTransport;
+import test.apidemo.saf.SafItem;
+import test.apidemo.saf.SafQueue;
+import test.apidemo.util.LatencyRecorder;
+
 
 /**
  * Created by Administrator on 2017/12/12.
@@ -28,8 +69,74 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
 
     public static final String TAG = EmvTestActivity.class.getSimpleName();
 
+    private static final String EMV_CONFIG_ASSET = "emv_config.txt";
+    private static final String EMV_CONFIG_STATE = "emv_config.state";
+    private static final String CLESS_CONFIG_ASSET = "cless_config.txt";
+    private static final String CLESS_CONFIG_STATE = "cless_config.state";
+    //idle tick that re-warms kernel sessions older than SESSION_MAX_IDLE_MS
+    private static final long SESSION_REFRESH_MS = 60 * 1000;
+    private static final long SESSION_MAX_IDLE_MS = 5 * 60 * 1000;
+    private static final String JOURNAL_DIR = "journal";
+    private static final int JOURNAL_SEGMENT_SIZE = 256 * 1024;
+    private static final int JOURNAL_MAX_SEGMENTS = 8;
+    //no PAN or track data in the journal
+    private static final int[] JOURNAL_CARD_TAGS = {0x84, 0x5F34, 0x5F24, 0x9F34};
+    private static final int[] JOURNAL_GENAC_TAGS = {0x9F26, 0x9F27, 0x9F36, 0x9F10, 0x95, 0x9B};
+    private static final String SAF_DIR = "saf";
+    private static final long SAF_MAX_BYTES = 1024 * 1024;
+    //message type of a stored item, 2 bytes BCD; reversals of unfinished transactions are 0400
+    private static final int SAF_TAG_MTI = SafUploader.TAG_MTI;
+    //card data goes to disk only encrypted under the DUKPT data key (key 1, see PciActivity),
+    //as the TLV list of these tags with the KSN the host needs to decrypt it
+    private static final int[] SAF_CARD_TAGS = {0x5A, 0x57, 0x5F24, 0x5F34};
+    private static final int SAF_TAG_CARD = SafUploader.TAG_CARD;
+    private static final int SAF_TAG_KSN = SafUploader.TAG_KSN;
+    private static final int SAF_DUKPT_KEY = 1;
+    //selected AID, tells the card brand for the timeline report
+    private static final int[] BRAND_TAGS = {0x84};
+
     PosApiHelper mPosApiHelper = PosApiHelper.getInstance();
 
+    //tag values of the current transaction, read from the kernel once
+    private final EmvTagSnapshot mTagSnapshot = new EmvTagSnapshot();
+    private final PosEmvKernel mEmvKernel = new PosEmvKernel(mPosApiHelper);
+    private final TagSource mEmvTags = new PosTagSource(mPosApiHelper, PosTagSource.KERNEL_EMV);
+    private final TagSource mPayWaveTags = new PosTagSource(mPosApiHelper, PosTagSource.KERNEL_PAYWAVE);
+    private final TagSource mPaypassTags = new PosTagSource(mPosApiHelper, PosTagSource.KERNEL_PAYPASS);
+
+    //AID/CAPK and contactless kernel configuration pushed since the kernel was last initialised
+    private EmvConfigLoader mEmvLoader;
+    private ClessConfigLoader mClessLoader;
+
+    //amount-independent kernel set-up done while idle, and what it saves
+    private final KernelSessionManager mSessions = new KernelSessionManager();
+    private final LatencyRecorder mDecisionTimes = new LatencyRecorder(100);
+
+    //where each transaction spends its time, per card brand
+    private final TxnTimeline mTimeline = new TxnTimeline();
+    private final TimelineStats mTimelineStats = new TimelineStats(200);
+
+    //magstripe, contact and contactless armed together; first card wins
+    private final CardEntryMux mEntryMux = new CardEntryMux();
+
+    //per-phase transaction records that survive a crash before EmvFinal
+    private TxnJournal mJournal;
+    private final TlvWriter mJournalTlv = new TlvWriter(256);
+
+    //offline approvals and deferred authorisations waiting for the host
+    private SafQueue mSafQueue;
+    private final TlvWriter mSafTlv = new TlvWriter(512);
+    private final TlvWriter mCardTlv = new TlvWriter(64);
+    private final PciStream mPciStream = new PciStream(new PosPciCrypto(mPosApiHelper), 256);
+
+    //acquirer host, installed by the integrating app; without one online transactions are deferred
+    private static AcquirerLink sAcquirerLink;
+    private OnlineAuthorizer mAuthorizer;
+
+    //PAN for the PIN block tests: the last card read, the demo card until then
+    private static final byte[] DEMO_PAN = "2200240699301061".getBytes();
+    private byte[] mLastPan = DEMO_PAN;
+
     private Context mContext;
     private Bitmap mKeypadLogo = null;
     private TextView tvEmvMsg;
@@ -47,441 +154,6 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
     private byte track3[] = new byte[250];
 
 
-    byte[] TermParabuf = {
-            (byte) 0xDF, 0x18, 0x07, (byte) 0xF4, (byte) 0xE0, (byte) 0xF8, (byte) 0xE4, (byte) 0xEB, (byte) 0xF2, (byte) 0xA0, (byte) 0x9F, 0x35, 0x01, 0x22, (byte) 0x9F, 0x33, 0x03, (byte) 0xE0, (byte) 0xD0, (byte) 0xC8, (byte) 0x9F, 0x40, 0x05, 0x60,
-            0x00, (byte) 0xF0, (byte) 0xF0, 0x01, (byte) 0xDF, 0x19, 0x08, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x26, 0x0F, (byte) 0x9F, 0x02, 0x06, 0x5F, 0x2A, 0x02,
-            (byte) 0x9A, 0x03, (byte) 0x9C, 0x01, (byte) 0x95, 0x05, (byte) 0x9F, 0x37, 0x04, (byte) 0xDF, 0x40, 0x01, (byte) 0xFF, (byte) 0x9F, 0x39, 0x01, 0x05, (byte) 0x9F, 0x1A, 0x02, 0x01, 0x56, (byte) 0x9F, 0x1E,
-            0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0xDF, 0x42, 0x01, 0x00, (byte) 0xDF, 0x43, 0x01, 0x00, (byte) 0xDF, 0x44, 0x01, 0x00, (byte) 0xDF, 0x45, 0x01,
-            0x00, (byte) 0xDF, 0x46, 0x01, 0x01, (byte) 0x9F, 0x66, 0x04, 0x74, 0x00, 0x00, (byte) 0x80,  (byte) 0xDF, 0x47, 0x05, (byte) 0xAF, 0x61, (byte) 0xFF, 0x0C, 0x07
-
-    };
-    byte[] test0 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0,0x00,0x00,0x00,0x03,0x10,0x10, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test1 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0,0x00,0x00,0x00,0x04,0x10,0x10, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test2 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0,0x00,0x00,0x01,0x52,0x30,0x10, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test3 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0,0x00,0x00,0x01,0x52,0x30,0x10, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test4 = {
-            (byte) 0x9F, 0x06, 0x08, (byte) 0xA0,0x00,0x00,0x00,0x25,0x01,0x05,0x01, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test5 = {
-            (byte) 0x9F, 0x06, 0x08, (byte) 0xA0,0x00,0x00,0x03,0x33,0x01,0x01,0x02, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test6 = {
-            (byte) 0x9F, 0x06, 0x08, (byte) 0xA0,0x00,0x00,0x03,0x33,0x01,0x01,0x01, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test7= {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0,0x00,0x00,0x00,(byte)0x99,(byte)0x90,(byte)0x90, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test8= {
-            (byte) 0x9F, 0x06, 0x06, (byte) 0xA0,0x00,0x00,(byte)0x99,(byte)0x99,0x01, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test9= {
-            (byte) 0x9F, 0x06, 0x08, (byte) 0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x04, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test10= {
-            (byte) 0x9F, 0x06, 0x08, (byte) 0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x05, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test11= {
-            (byte) 0x9F, 0x06, 0x08, (byte) 0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x06, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test12= {
-            (byte) 0x9F, 0x06, 0x08, (byte) 0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x07, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test13= {
-            (byte) 0x9F, 0x06, 0x05, (byte) 0xA1,0x22,0x33,0x44,0x55, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test14= {
-            (byte) 0x9F, 0x06, 0x10, (byte) 0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x01,0x02,0x03,0x04,0x05,0x06,0x07,0x08,0x09, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test15 ={
-            (byte) 0x9F, 0x06, 0x08, (byte)0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x09, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test16 ={
-            (byte) 0x9F, 0x06, 0x08, (byte)0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x0A, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test17 ={
-            (byte) 0x9F, 0x06, 0x08, (byte)0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x0B, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test18= {
-            (byte) 0x9F, 0x06, 0x08, (byte)0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x0C, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test19 ={
-            (byte) 0x9F, 0x06, 0x08, (byte)0xA0,0x00,0x00,0x00,0x03,0x10,0x10,0x03, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] test20 ={
-            (byte) 0x9F, 0x06, 0x08, (byte)0xA0,0x00,0x00,0x00,0x03,0x33,0x01,0x01, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-    byte[] Visaaid0 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0, 0x00, 0x00, 0x00, 0x03, 0x10, 0x10, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-
-
-    byte[] VISAaid1 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0, 0x00, 0x00, 0x00, 0x03, 0x20, 0x10, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, (byte) 0x9F, 0x1C, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0x9F, 0x1D, 0x01, 0x01, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x10, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x21, 0x00, 0x00, 0x00, 0x50, 0x00, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-    byte[] UnionPay_Debit = {
-            (byte) 0x9F, 0x06, 0x08, (byte) 0xA0, 0x00, 0x00, 0x03, 0x33, 0x01, 0x01, 0x01, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, (byte) 0x9F, 0x1C, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0x9F, 0x1D, 0x01, 0x01, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-    byte[] UnionPay_Credit = {
-            (byte) 0x9F, 0x06, 0x08, (byte) 0xA0, 0x00, 0x00, 0x03, 0x33, 0x01, 0x01, 0x02, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, (byte) 0x9F, 0x1C, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0x9F, 0x1D, 0x01, 0x01, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-    byte[] Master0 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0, 0x00, 0x00, 0x00, 0x04, 0x10, 0x10, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, (byte) 0x9F, 0x1C, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0x9F, 0x1D, 0x01, 0x01, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-    byte[] Master1 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0, 0x00, 0x00, 0x00, 0x04, 0x30, 0x60, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, (byte) 0x9F, 0x1C, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0x9F, 0x1D, 0x01, 0x01, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-    byte[] MIRAID0 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0, 0x00, 0x00, 0x06, 0x58, 0x20, 0x10, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, (byte) 0x9F, 0x1C, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0x9F, 0x1D, 0x01, 0x01, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-    byte[] MIRAID1 = {
-            (byte) 0x9F, 0x06, 0x07, (byte) 0xA0, 0x00, 0x00, 0x06, 0x58, 0x10, 0x10, (byte) 0x9F, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, (byte) 0x9F, 0x09, 0x02, 0x00,
-            0x20, (byte) 0x9F, 0x15, 0x02, 0x00, 0x01, (byte) 0x9F, 0x16, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x9F, 0x4E, 0x12, (byte) 0xD2, (byte) 0xF8, (byte) 0xC1,
-            (byte) 0xAA, (byte) 0xC9, (byte) 0xCC, (byte) 0xCE, (byte) 0xF1, (byte) 0xC9, (byte) 0xEE, (byte) 0xDB, (byte) 0xDA, (byte) 0xB7, (byte) 0xD6, (byte) 0xB9, (byte) 0xAB, (byte) 0xCB, (byte) 0xBE, (byte) 0xDF, 0x11, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00,
-            0x00, (byte) 0xDF, 0x13, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x12, 0x05, (byte) 0xCC, 0x00, 0x00, 0x00, 0x00, (byte) 0xDF, 0x14, 0x03, (byte) 0x9f, 0x37, 0x04,
-            (byte) 0xDF, 0x15, 0x04, 0x00, 0x00, (byte) 0x9C, 0x40, (byte) 0xDF, 0x16, 0x01, 0x32, (byte) 0xDF, 0x17, 0x01, 0x14, (byte) 0xDF, 0x18, 0x01, 0x01, (byte) 0x9F, 0x1B, 0x04, 0x00,
-            0x01, (byte) 0x86, (byte) 0xA0, (byte) 0x9F, 0x1C, 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, 0x5F, 0x2A, 0x02, 0x01, 0x56, 0x5F, 0x36, 0x01, 0x02,
-            (byte) 0x9F, 0x3C, 0x02, 0x01, 0x56, (byte) 0x9F, 0x3D, 0x01, 0x02, (byte) 0x9F, 0x1D, 0x01, 0x01, (byte) 0xDF, 0x01, 0x01, 0x00, (byte) 0xDF, 0x19, 0x06, 0x00, 0x00, 0x00,
-            0x05, 0x00, 0x00, (byte) 0xDF, 0x20, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0xDF, 0x21, 0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00, (byte) 0x9F, 0x7B,
-            0x06, 0x00, 0x00, 0x00, 0x10, 0x00, 0x00
-    };
-    byte[] capk1buf = {
-            (byte) 0x9f, 0x22, 0x01, (byte) 0x32,
-            (byte) 0x9f, 0x06, 0x07, (byte) 0xa0, 0x00, 0x00, 0x06, 0x58, 0x10, 0x10,
-            (byte) 0xdf, 0x05, 0x08, 0x32, 0x30, 0x32, 0x30, 0x31, 0x32, 0x33, 0x31,
-            (byte) 0xdf, 0x06, 0x01, 0x01,
-            (byte) 0xdf, 0x07, 0x01, 0x01,
-            (byte) 0xdf, 0x04, 0x03, 0x01, 0x00, 0x01,
-            (byte) 0xdf, 0x03, 0x14, 0x25, 0x1A, 0x5F, 0x5D,
-            (byte) 0xE6, 0x1C, (byte) 0xF2, (byte) 0x8B, 0x5C, 0x6E, 0x2B, 0x58, 0x07,
-            (byte) 0xC0, 0x64, 0x4A,
-            0x01, (byte) 0xD4, 0x6F, (byte) 0xF5,
-            (byte) 0xdf, 0x02, (byte) 0x60,
-            (byte) 0x94, 0x2B, 0x7F, 0x2B, (byte) 0xA5, (byte) 0xEA, 0x30, 0x73, 0x12, (byte) 0xB6, 0x3D, (byte) 0xF7, 0x7C, 0x52, 0x43, 0x61,
-            (byte) 0x8A, (byte) 0xCC, 0x20, 0x02, (byte) 0xBD, 0x7E, (byte) 0xCB, 0x74, (byte) 0xD8, 0x21, (byte) 0xFE, 0x7B, (byte) 0xDC, 0x78, (byte) 0xBF, 0x28,
-            (byte) 0xF4, (byte) 0x9F, 0x74, 0x19, 0x0A, (byte) 0xD9, (byte) 0xB2, 0x3B, (byte) 0x97, 0x13, (byte) 0xB1, 0x40, (byte) 0xFF, (byte) 0xEC, 0x1F, (byte) 0xB4,
-            (byte) 0x29, (byte) 0xD9, 0x3F, 0x56, (byte) 0xBD, (byte) 0xC7, (byte) 0xAD, (byte) 0xE4, (byte) 0xAC, 0x07, 0x5D, 0x75, 0x53, 0x2C, 0x1E, 0x59,
-            (byte) 0x0B, 0x21, (byte) 0x87, 0x4C, 0x79, 0x52, (byte) 0xF2, (byte) 0x9B, (byte) 0x8C, 0x0F, 0x0C, 0x1C, (byte) 0xE3, (byte) 0xAE, (byte) 0xED, (byte) 0xC8,
-            (byte) 0xDA, 0x25, 0x34, 0x31, 0x23, (byte) 0xE7, 0x1D, (byte) 0xCF, (byte) 0x86, (byte) 0xC6, (byte) 0x99, (byte) 0x8E, 0x15, (byte) 0xF7, 0x56, (byte) 0xE3
-    };
-    byte[] capk2buf = {
-            (byte) 0x9f, 0x22, 0x01, (byte) 0x57,
-            (byte) 0x9f, 0x06, 0x07, (byte) 0xa0, 0x00, 0x00, 0x06, 0x58, 0x10, 0x10,
-            (byte) 0xdf, 0x05, 0x08, 0x32, 0x30, 0x32, 0x30, 0x31, 0x32, 0x33, 0x31,
-            (byte) 0xdf, 0x06, 0x01, 0x01,
-            (byte) 0xdf, 0x07, 0x01, 0x01,
-            (byte) 0xdf, 0x04, 0x03, 0x01, 0x00, 0x01,
-            (byte) 0xdf, 0x03, 0x14, 0x25, 0x1A, 0x5F, 0x5D,
-            (byte) 0xE6, 0x1C, (byte) 0xF2, (byte) 0x8B, 0x5C, 0x6E, 0x2B, 0x58, 0x07,
-            (byte) 0xC0, 0x64, 0x4A,
-            0x01, (byte) 0xD4, 0x6F, (byte) 0xF5,
-            (byte) 0xdf, 0x02, (byte) 0x60,
-            (byte) 0x94, 0x2B, 0x7F, 0x2B, (byte) 0xA5, (byte) 0xEA, 0x30, 0x73, 0x12, (byte) 0xB6, 0x3D, (byte) 0xF7, 0x7C, 0x52, 0x43, 0x61,
-            (byte) 0x8A, (byte) 0xCC, 0x20, 0x02, (byte) 0xBD, 0x7E, (byte) 0xCB, 0x74, (byte) 0xD8, 0x21, (byte) 0xFE, 0x7B, (byte) 0xDC, 0x78, (byte) 0xBF, 0x28,
-            (byte) 0xF4, (byte) 0x9F, 0x74, 0x19, 0x0A, (byte) 0xD9, (byte) 0xB2, 0x3B, (byte) 0x97, 0x13, (byte) 0xB1, 0x40, (byte) 0xFF, (byte) 0xEC, 0x1F, (byte) 0xB4,
-            (byte) 0x29, (byte) 0xD9, 0x3F, 0x56, (byte) 0xBD, (byte) 0xC7, (byte) 0xAD, (byte) 0xE4, (byte) 0xAC, 0x07, 0x5D, 0x75, 0x53, 0x2C, 0x1E, 0x59,
-            (byte) 0x0B, 0x21, (byte) 0x87, 0x4C, 0x79, 0x52, (byte) 0xF2, (byte) 0x9B, (byte) 0x8C, 0x0F, 0x0C, 0x1C, (byte) 0xE3, (byte) 0xAE, (byte) 0xED, (byte) 0xC8,
-            (byte) 0xDA, 0x25, 0x34, 0x31, 0x23, (byte) 0xE7, 0x1D, (byte) 0xCF, (byte) 0x86, (byte) 0xC6, (byte) 0x99, (byte) 0x8E, 0x15, (byte) 0xF7, 0x56, (byte) 0xE3
-    };
-    byte[] capk3buf = {
-            (byte) 0x9f, 0x22, 0x01, (byte) 0x57,
-            (byte) 0x9f, 0x06, 0x07, (byte) 0xa0, 0x00, 0x00, 0x06, 0x58, 0x10, 0x10,
-            (byte) 0xdf, 0x05, 0x08, 0x32, 0x30, 0x32, 0x30, 0x31, 0x32, 0x33, 0x31,
-            (byte) 0xdf, 0x06, 0x01, 0x01,
-            (byte) 0xdf, 0x07, 0x01, 0x01,
-            (byte) 0xdf, 0x04, 0x03, 0x01, 0x00, 0x01,
-            (byte) 0xdf, 0x03, 0x14, 0x25, 0x1A, 0x5F, 0x5D,
-            (byte) 0xE6, 0x1C, (byte) 0xF2, (byte) 0x8B, 0x5C, 0x6E, 0x2B, 0x58, 0x07,
-            (byte) 0xC0, 0x64, 0x4A,
-            0x01, (byte) 0xD4, 0x6F, (byte) 0xF5,
-            (byte) 0xdf, 0x02, (byte) 0x60,
-            (byte) 0x94, 0x2B, 0x7F, 0x2B, (byte) 0xA5, (byte) 0xEA, 0x30, 0x73, 0x12, (byte) 0xB6, 0x3D, (byte) 0xF7, 0x7C, 0x52, 0x43, 0x61,
-            (byte) 0x8A, (byte) 0xCC, 0x20, 0x02, (byte) 0xBD, 0x7E, (byte) 0xCB, 0x74, (byte) 0xD8, 0x21, (byte) 0xFE, 0x7B, (byte) 0xDC, 0x78, (byte) 0xBF, 0x28,
-            (byte) 0xF4, (byte) 0x9F, 0x74, 0x19, 0x0A, (byte) 0xD9, (byte) 0xB2, 0x3B, (byte) 0x97, 0x13, (byte) 0xB1, 0x40, (byte) 0xFF, (byte) 0xEC, 0x1F, (byte) 0xB4,
-            (byte) 0x29, (byte) 0xD9, 0x3F, 0x56, (byte) 0xBD, (byte) 0xC7, (byte) 0xAD, (byte) 0xE4, (byte) 0xAC, 0x07, 0x5D, 0x75, 0x53, 0x2C, 0x1E, 0x59,
-            (byte) 0x0B, 0x21, (byte) 0x87, 0x4C, 0x79, 0x52, (byte) 0xF2, (byte) 0x9B, (byte) 0x8C, 0x0F, 0x0C, 0x1C, (byte) 0xE3, (byte) 0xAE, (byte) 0xED, (byte) 0xC8,
-            (byte) 0xDA, 0x25, 0x34, 0x31, 0x23, (byte) 0xE7, 0x1D, (byte) 0xCF, (byte) 0x86, (byte) 0xC6, (byte) 0x99, (byte) 0x8E, 0x15, (byte) 0xF7, 0x56, (byte) 0xE3
-    };
     byte[] aidTmp = {
             (byte) 0x9F, 0x06, 0x07, (byte) 0xA0, 0x00, 0x00, 0x00, 0x03,
             0x10, 0x10, (byte) 0x9F, 0x1C, 0x04, 0x11, 0x00, 0x00,
@@ -508,46 +180,6 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
             0x00, 0x00, 0x00, 0x27, 0x10
     };
 
-    String Emv_Capkinput = "9F2201059F0605A000000004DF05083230323131323331DF060101DF070101DF040103DF0314EBFA0D5D06D8CE702DA3EAE890701D45E274C845DF0281B0B8048ABC30C90D976336543E3FD7091C8FE4800DF820ED55E7E94813ED00555B573FECA3D84AF6131A651D66CFF4284FB13B635EDD0EE40176D8BF04B7FD1C7BACF9AC7327DFAA8AA72D10DB3B8E70B2DDD811CB4196525EA386ACC33C0D9D4575916469C4E4F53E8E1C912CC618CB22DDE7C3568E90022E6BBA770202E4522A2DD623D180E215BD1D1507FE3DC90CA310D27B3EFCCD8F83DE3052CAD1E48938C68D095AAC91B5F37E28BB49EC7ED597";
-    //***************************************************************************//
-    //*****--PAYPASS Parameter Settings--Start**********************************//
-    String Reader_input = "9F01060000000000019F150201029F1A020056DF81170100";
-    String Kernel_input = "DF6000DF6200DF6300DF810800DF810900DF810A00DF810C0102DF810D00DF811C020000DF811D0100";
-    String Aid_input0 = "9C01009F0607A0000000071010DF810C0102DF811B01209F090200029F1D086CFF0000000000009F3501229F33009F400500000000009F6D0200019F7E00DF811A039F6A04DF811F0108DF811801F8DF811901F8DF812C0100DF811E0110DF812306000000010000DF812406000000030000DF812506000000050000DF812606000000004000DF8120050000000000DF8121050000000000DF8122050000000000";
-    String Capk_input = "DF0105A000000004DF0201F1DF030103DF0481B0A0DCF4BDE19C3546B4B6F0414D174DDE294AABBB828C5A834D73AAE27C99B0B053A90278007239B6459FF0BBCD7B4B9C6C50AC02CE91368DA1BD21AAEADBC65347337D89B68F5C99A09D05BE02DD1F8C5BA20E2F13FB2A27C41D3F85CAD5CF6668E75851EC66EDBF98851FD4E42C44C1D59F5984703B27D5B9F21B8FA0D93279FBBF69E090642909C9EA27F898959541AA6757F5F624104F6E1D3A9532F2A6E51515AEAD1B43B3D7835088A2FAFA7BE7DF0514D8E68DA167AB5A85D8C3D55ECB9B0517A1A5B4BB";
-    String Capk_input1 = "DF0105A000000004DF0201FADF030103DF048190A90FCD55AA2D5D9963E35ED0F440177699832F49C6BAB15CDAE5794BE93F934D4462D5D12762E48C38BA83D8445DEAA74195A301A102B2F114EADA0D180EE5E7A5C73E0C4E11F67A43DDAB5D55683B1474CC0627F44B8D3088A492FFAADAD4F42422D0E7013536C3C49AD3D0FAE96459B0F6B1B6056538A3D6D44640F94467B108867DEC40FAAECD740C00E2B7A8852DDF05145BED4068D96EA16D2D77E03D6036FC7A160EA99C";
-
-    String Capk_input2 = "DF0105A000000004DF020105DF030103DF048180A1F5E1C9BD8650BD43AB6EE56B891EF7459C0A24FA84F9127D1A6C79D4930F6DB1852E2510F18B61CD354DB83A356BD190B88AB8DF04284D02A4204A7B6CB7C5551977A9B36379CA3DE1A08E69F301C95CC1C20506959275F41723DD5D2925290579E5A95B0DF6323FC8E9273D6F849198C4996209166D9BFC973C361CC826E1DF051453D04903B496F59544A84309AF169251F2896874";
-    //  String Trans_input = "DF0101009C01009F02060000000000019F03060000000000005F2A0209785F3601025F57009F5301019F7C141020000000000000000000000000000000000001";
-    String Trans_input = "9C01009F02060000000000029F03060000000000025F2A0208405F3601029F530101";
-    String Aid_inputT = "9C01009F0607A0000000043060DF810C0102DF811B01209F090200029F1D084C7A8000000000009F3501229F3303E0F8C89F40056000F0A0019F6D0200019F7E00DF811A039F6A04DF811F0108DF81180196DF811901F8DF812C0110DF811E0100DF812306000000000000DF812406000000050000DF812506000000050000DF812606000000090001DF812005F45084800CDF8121050000800000DF812205F45084800C";
-    String PaypassAid_input = "9C01009F0607A0000000041010DF810C0102DF811B01209F090200029F1D036CF8809F3501119F3303E0F8C89F40056000F0A0019F6D0200019F7E00DF811A039F6A04DF811F0108DF81180160DF81190108DF812C0110DF811E0100DF812306000000000000DF812406000000050000DF812506000000050000DF812606000000009000DF8120050000000000DF8121050000000000DF8122057CD8FCF8F0";
-
-
-
-    //*****--PAYwave Parameter Settings--End--*************************************//
-    //***************************************************************************//
-    String AID_input1 = "9F0608A000000333010102DF010101DF11050020000000DF12050020000000DF13050020000000DF14039F3704DF150400000000DF160100DF1701009F1B04000099999F090200309F150212349F160F3030303030303030303030303030309F4E085465726D696E616C9F1C084261636B393631329F1D01015F3601029F3C020840DF81010208409F3D0102DF8102039F37045F2A0208419F010512345678919F7B06000000010000DF1906000000011000DF2006000000020000DF2106000000010000DFC108010100000000";
-    String AID_input2 = "9F0607A0000000031010DF010101DF11050000000000DF12050000000000DF13050000000000DF14039F3704DF150400000000DF160100DF1701009F1B04000050009F090200969F150212349F160F3030303030303030303030303030309F4E0653484F5020319F1C0846726F6E743132339F1D01015F3601029F3C020840DF81010208409F3D0102DF8102039F37045F2A0208429F010512345678919F7B06000000010000DF1906000000010000DF2006000000020000DF2106000000010000DFC108010000000000";
-    String AID_input3 = "9F0607A0000000999090DF010101DF11050000000000DF12050000000000DF13050000000000DF14039F3704DF150400000000DF160100DF1701009F1B04000110009F090200969F150212349F160F3030303030303030303030303030309F4E0653484F5020319F1C0846726F6E743132339F1D01015F3601029F3C020840DF81010208409F3D0102DF8102039F37045F2A0208439F010512345678919F7B06000000010000DF1906000000012000DF2006000000020000DF2106000000010000DFC108010100000000";
-    String AID_input4 = "9F0606A00000999901DF010101DF11050000000000DF12050000000000DF13050000000000DF14039F3704DF150400000000DF160100DF1701009F1B04000120009F090200969F150212349F160F3030303030303030303030303030309F4E0653484F5020319F1C0846726F6E743132339F1D01015F3601029F3C020840DF81010208409F3D0102DF8102039F37045F2A0208449F010512345678919F7B06000000010000DF1906000000013000DF2006000000020000DF2106000000010000DFC108010100000000";
-    String AID_input5 = "9F0605A000000003DF010101DF11050000000000DF12050000000000DF13050000000000DF14039F3704DF150400000000DF160100DF1701009F1B04000130009F090200969F150212349F160F3030303030303030303030303030309F4E0653484F5020319F1C0846726F6E743132339F1D01015F3601029F3C020840DF81010208409F3D0102DF8102039F37045F2A0208459F010512345678919F7B06000000010000DF1906000000014000DF2006000000020000DF2106000000010000DFC108010100000000";
-    String AID_input6 = "9F0606A00000000310DF010101DF11050000000000DF12050000000000DF13050000000000DF14039F3704DF150400000000DF160100DF1701009F1B04000140009F090200969F150212349F160F3030303030303030303030303030309F4E0653484F5020319F1C0846726F6E743132339F1D01015F3601029F3C020840DF81010208409F3D0102DF8102039F37045F2A0208469F010512345678919F7B06000000010000DF1906000000016000DF2006000000020000DF2106000000010000DFC108010100000000";
-
-    String CAPK_input1 = "9F0605A0000099999F2201E1DF070101DF060101DF027099C5B70AA61B4F4C51B6F90B0E3BFB7A3EE0E7DB41BC466888B3EC8E9977C762407EF1D79E0AFB2823100A020C3E8020593DB50E90DBEAC18B78D13F96BB2F57EEDDC30F256592417CDF739CA6804A10A29D2806E774BFA751F22CF3B65B38F37F91B4DAF8AEC9B803F7610E06AC9E6BDF040103DF050420201231DF0314FD3857DA1D0B38F7E740E364071C0C91F26BC454";
-    String CAPK_input2 = "9F0605A0000099999F2201E2DF070101DF060101DF0270BD232E348B118EB3F6446EF4DA6C3BAC9B2AE510C5AD107D38343255D21C4BDF4952A42E92C633B1CE4BFEC39AFB6DFE147ECBB91D681DAC15FB0E198E9A7E4636BDCA107BCDA3384FCB28B06AFEF90F099E7084511F3CC010D4343503E1E5A67264B4367DAA9A3949499272E9B5022FDF040103DF050420201231DF0314A77CEDA094E2E764384B451B2AAC0C1F734B0BE5";
-    String CAPK_input3 = "9F0605A0000099999F2201E3DF070101DF060101DF0270BC01E12223E1A41E88BFFA801093C5F8CEC5CD05DBBDBB787CE87249E8808327C2D218991F97A1131E8A25B0122ED11E709C533E8886A1259ADDFDCBB396604D24E505A2D0B5DD0384FB0002A7A1EB39BC8A11339C7A9433A948337761BE73BC497B8E58736DA4636538AD282D3CD3DBDF0403010001DF050420201231DF0314358F0F4F0EA6529920B93F842EB2482ED2F7F137";
-    String CAPK_input4 = "9F0605A0000099999F2201E4DF070101DF060101DF028180CBF2E40F0836C9A5E390A37BE3B809BDF5D740CB1DA38CFC05D5F8D6B7745B5E9A3FA6961E55FF20412108525E66B970F902F7FF4305DD832CD0763E3AA8B8173F84777100B1047BD1D744509312A0932ED25FED52A959430768CCD902FD8C8AD9123E6ADDB3F34B92E7924D729CB6473533AE2B2B55BF0E44964FDEA8440117DF040103DF050420201231DF0314E9B0FAE14A832D5FB3783F7EF11FE6D3E4B059B1";
-    String CAPK_input5 = "9F0605A0000099999F2201E5DF070101DF060101DF028180D4FDAE94DEDBECC6D20D38B01E91826DC6954338379917B2BB8A6B36B5D3B0C5EDA60B337448BAFFEBCC3ABDBA869E8DADEC6C870110C42F5AAB90A18F4F867F72E3386FFC7E67E7FF94EBA079E531B3CF329517E81C5DD9B3DC65DB5F9043190BE0BE897E5FE48ADF5D3BFA0585E076E554F26EC69814797F15669F4A255C13DF040103DF050420201231DF03146B5EFE581C0EE4D5F8DBE18BD656F33E80267855";
-    String CAPK_input6 = "9F0605A0000099999F2201E6DF070101DF060101DF028180EBF9FAECC3E5C315709694664775D3FBDA5A504D89344DD920C55696E891D9AB622598A9D6AB8FBF35E4599CAB7EB22F956992F8AB2E6535DECB6B576FA0675F97C23DD4C374A66E6AF419C9D204D0B9F93C08D789D63805660FBB629DF1B488CFA1D7A13E9B729437EEAFE718EFA859348BA0D76812A99F31CD364F2A4FD42FDF0403010001DF050420201231DF0314D6646DFF64D2053EBB9E7C2D19A720A421CDC29D";
-    String CAPK_input7 = "9F0605A0000000039F220196DF070101DF060101DF028180B74586D19A207BE6627C5B0AAFBC44A2ECF5A2942D3A26CE19C4FFAEEE920521868922E893E7838225A3947A2614796FB2C0628CE8C11E3825A56D3B1BBAEF783A5C6A81F36F8625395126FA983C5216D3166D48ACDE8A431212FF763A7F79D9EDB7FED76B485DE45BEB829A3D4730848A366D3324C3027032FF8D16A1E44D8DDF040103DF050420201231DF03147616E9AC8BE014AF88CA11A8FB17967B7394030E";
-    String CAPK_input8 = "9F0605A0000000039F220150DF070101DF060101DF028180D11197590057B84196C2F4D11A8F3C05408F422A35D702F90106EA5B019BB28AE607AA9CDEBCD0D81A38D48C7EBB0062D287369EC0C42124246AC30D80CD602AB7238D51084DED4698162C59D25EAC1E66255B4DB2352526EF0982C3B8AD3D1CCE85B01DB5788E75E09F44BE7361366DEF9D1E1317B05E5D0FF5290F88A0DB47DF0403010001DF050420201231DF0314B769775668CACB5D22A647D1D993141EDAB7237B";
-    String CAPK_input9 = "9F0605A0000000039F220151DF070101DF060101DF028190DB5FA29D1FDA8C1634B04DCCFF148ABEE63C772035C79851D3512107586E02A917F7C7E885E7C4A7D529710A145334CE67DC412CB1597B77AA2543B98D19CF2CB80C522BDBEA0F1B113FA2C86216C8C610A2D58F29CF3355CEB1BD3EF410D1EDD1F7AE0F16897979DE28C6EF293E0A19282BD1D793F1331523FC71A228800468C01A3653D14C6B4851A5C029478E757FDF040103DF050420201231DF0314B9D248075A3F23B522FE45573E04374DC4995D71";
-    String CAPK_input10 = "9F0605A0000000039F220152DF070101DF060101DF0281B0AFF740F8DBE763F333A1013A43722055C8E22F41779E219B0E1C409D60AFD45C8789C57EECD71EA4A269A675916CC1C5E1A05A35BD745A79F94555CE29612AC9338769665B87C3CA8E1AC4957F9F61FA7BFFE4E17631E937837CABF43DD6183D6360A228A3EBC73A1D1CDC72BF09953C81203AB7E492148E4CB774CDDFAAC3544D0DD4F8C8A0E9C70B877EA79F2C22E4CE52C69F3EF376F61B0F43A540FE96C63F586310C3B6E39C78C4D647CADB5933DF040103DF050420201231DF031442D96E6E1217E5B59CC2079CE50C3D9F55B6FC1D";
-    String CAPK_input11 = "9F0605A0000000039F220153DF070101DF060101DF0281F8BCD83721BE52CCCC4B6457321F22A7DC769F54EB8025913BE804D9EABBFA19B3D7C5D3CA658D768CAF57067EEC83C7E6E9F81D0586703ED9DDDADD20675D63424980B10EB364E81EB37DB40ED100344C928886FF4CCC37203EE6106D5B59D1AC102E2CD2D7AC17F4D96C398E5FD993ECB4FFDF79B17547FF9FA2AA8EEFD6CBDA124CBB17A0F8528146387135E226B005A474B9062FF264D2FF8EFA36814AA2950065B1B04C0A1AE9B2F69D4A4AA979D6CE95FEE9485ED0A03AEE9BD953E81CFD1EF6E814DFD3C2CE37AEFA38C1F9877371E91D6A5EB59FDEDF75D3325FA3CA66CDFBA0E57146CC789818FF06BE5FCC50ABD362AE4B80996DDF040103DF050420201231DF0314AC213A2E0D2C0CA35AD0201323536D58097E4E57";
-    String CAPK_input12 = "9F0605A0000000039F220158DF070101DF060101DF0281C899552C4A1ECD68A0260157FC4151B5992837445D3FC57365CA5692C87BE358CDCDF2C92FB6837522842A48EB11CDFFE2FD91770C7221E4AF6207C2DE4004C7DEE1B6276DC62D52A87D2CD01FBF2DC4065DB52824D2A2167A06D19E6A0F781071CDB2DD314CB94441D8DC0E936317B77BF06F5177F6C5ABA3A3BC6AA30209C97260B7A1AD3A192C9B8CD1D153570AFCC87C3CD681D13E997FE33B3963A0A1C79772ACF991033E1B8397AD0341500E48A24770BC4CBE19D2CCF419504FDBF0389BC2F2FDCD4D44E61FDF0403010001DF050420201231DF0314753ED0AA23E4CD5ABD69EAE7904B684A34A57C22";
-    String Term_input = "9F4005FF80F020019F3303E0D8C81F0107F4F0F0FCAFFEA09F66042440C0009F3501229A031804109F21030830009F1A0208401F0501011F0601011F0701011F0801011F090101";
-
     @Override
     public void onPointerCaptureChanged(boolean hasCapture) {
 
@@ -559,6 +191,11 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
         public static final int MSG_TEST_EMV = 1;
         public static final int MSG_PIN_BLOCK = 2;
         public static final int MSG_DUKPTPIN_BLOCK = 3;
+        public static final int MSG_INIT_KERNEL = 4;
+        public static final int MSG_WARM_SESSIONS = 5;
+        public static final int MSG_UNINIT_KERNEL = 6;
+        public static final int MSG_OPEN_JOURNAL = 7;
+        public static final int MSG_CLOSE_JOURNAL = 8;
 
         public WorkHandler(Looper looper) {
             super(looper);
@@ -573,45 +210,40 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                 switch (what) {
                     case MSG_TEST_EMV:
                         Log.e("TAG", "vpos*****************Start EMV test");
+                        //queued now, so it runs as soon as this transaction is over
+                        sendEmptyMessage(MSG_WARM_SESSIONS);
                         showMessage("wait card ");
                         int mCardType = -1;
                         byte cardtype[] = new byte[3];
                         byte serialNo[] = new byte[50];
                         byte ATR[] = new byte[40];
                         byte PaypassTagBuff[] = new byte[1024];
-                        mPosApiHelper.SetEntryModeOpen();
-                        final long time = System.currentTimeMillis();
                         Log.e("TAG", "vpos*****************wait card");
-                        while (System.currentTimeMillis() < time + 30 * 1000) {
-                            if (mThreadFinished) {
-                                Log.e("TAG", "vpos*****************loop detecting bIsBack 11");
-                                mPosApiHelper.SetEntryModeClose();
-                                return;
-                            }
+                        mTimeline.begin();
+                        mTimeline.start(TxnTimeline.PHASE_DETECT);
+                        mCardType = mEntryMux.detect(30 * 1000);
+                        mTimeline.end(TxnTimeline.PHASE_DETECT);
+                        Log.d(TAG, "vpos CardEntryMux mCardType== " + mCardType);
+
+                        if (mCardType == CardEntryMux.ERR_CANCELLED || mThreadFinished) {
+                            Log.e("TAG", "vpos*****************loop detecting bIsBack 11");
+                            return;
+                        }
 
-                            mCardType = mPosApiHelper.EntryPoint();
-                            Log.d(TAG, "vpos EntryPoint mCardType== " + mCardType);
-                            if (mCardType >= 0) {
-                                break;
-                            }
+                        if (mCardType == CardEntryMux.ERR_UNSUPPORTED) {
+                            showMessage("Card not supported");
+                            return;
                         }
 
                         if (mCardType < 0)  {
                             Log.e(TAG, "vpos*************loop detecting return ");
-                            mPosApiHelper.SetEntryModeClose();
                             showMessage("Not detected card! ");
                             return;
                         }
 
-                        Log.d(TAG, "*************loop detecting return 00");
-                        mPosApiHelper.SetEntryModeClose();
-                        Log.e(TAG, "*************vpos loop detecting return11 ");
-
-                        if (mCardType == -1) {
-                            showMessage("timeOut~");
-                            return;
+                        final long cardPresentAt = System.nanoTime();
 
-                        } else if (mCardType == 0) {
+                        if (mCardType == CardEntryMux.CARD_MCR) {
 
                             Log.d(TAG, "Mcrtest start00");
                             String McrData = "";
@@ -639,7 +271,7 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                             showMessage("MCR:  " + McrData);
 
                             ///*******************-----EMV contact---******************************///
-                        } else if (mCardType == 1) {
+                        } else if (mCardType == CardEntryMux.CARD_ICC) {
 
                             String Tag5A_data = "";
                             short TagCardNo = 0x5A;
@@ -647,22 +279,25 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                             byte CardNoData[] = new byte[56];
 
 
-                            mPosApiHelper.KeyPadInit(mKeypadLogo);
-                            mPosApiHelper.SetKeyPadTime(20);
-
-
-                            mPosApiHelper.EmvKernelInit();
-                            mPosApiHelper.EmvSetTransType(1);
+                            //KeyPadInit, EmvKernelInit, trans/card type were done while idle
+                            if (!acquireSessions(KernelSessionManager.KERNEL_EMV)) {
+                                return;
+                            }
+                            int txn = journalStart(9879900);
                             mPosApiHelper.EmvSetTransAmount(9879900);
-                            mPosApiHelper.EmvSetCardType(1);
 
                             Log.d(TAG, "EMV TEST");
 
-                            mPosApiHelper.SetKeyPadType(0);
+                            mTimeline.start(TxnTimeline.PHASE_KERNEL);
                             ret = mPosApiHelper.EmvProcess(1, 0);  //The FLOWTYPE value is 1- simplifies the process
+                            mTimeline.end(TxnTimeline.PHASE_KERNEL);
+                            recordDecision(cardPresentAt);
                             Log.d(TAG, "ret000 = " + ret);
 
                             if (ret < 0) {
+                                journalResult(txn, TxnJournal.PHASE_COMPLETE, ret);
+                                mTagSnapshot.reset(mEmvTags);
+                                finishTimeline();
                                 showMessage("EMV Termination");
                                 return;
 
@@ -670,7 +305,14 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                                 Log.d(TAG, "EMV GOONLINE");
                             }
 
-                            TagCardNo_len = mPosApiHelper.EmvGetTagData(CardNoData, 56, TagCardNo);
+                            mTimeline.start(TxnTimeline.PHASE_TAGS);
+                            mTagSnapshot.reset(mEmvTags);
+                            mTagSnapshot.fetch(EmvTagSnapshot.ONLINE_TAGS);
+                            rememberPan();
+                            journalTags(txn, TxnJournal.PHASE_CARD, JOURNAL_CARD_TAGS);
+                            journalTags(txn, TxnJournal.PHASE_GENAC, JOURNAL_GENAC_TAGS);
+                            mTimeline.end(TxnTimeline.PHASE_TAGS);
+                            TagCardNo_len = mTagSnapshot.copy(TagCardNo, CardNoData, 0);
 
                             Log.d(TAG, "TagCardNo_len--::" + TagCardNo_len);
                             if (TagCardNo_len > 0) {
@@ -683,7 +325,9 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                                     Tag5A_data = Tag5A_data.substring(0, TagCardNo_len * 2 - 1);
                                 }
 
+                                mTimeline.start(TxnTimeline.PHASE_PIN);
                                 final int bypass = mPosApiHelper.EmvPinbyPass();
+                                mTimeline.end(TxnTimeline.PHASE_PIN);
 
                                 showMessage("EMV GOONLINE" + "\nCardNO:" + Tag5A_data  );
                             } else {
@@ -691,12 +335,24 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                                 showMessage("EMV Termination");
 
                             }
+                            if (ret == 3 && TagCardNo_len > 0) {
+                                //after the PIN step, so the request carries the CVM results;
+                                //the rest of the snapshot is still good
+                                mTimeline.start(TxnTimeline.PHASE_ONLINE);
+                                mTagSnapshot.refresh(EmvTagSnapshot.CVM_TAGS);
+                                goOnline(txn, OnlineAuthorizer.ENTRY_CHIP, true);
+                                mTimeline.end(TxnTimeline.PHASE_ONLINE);
+                            }
                             Log.d(TAG, "EmvFinal");
-                            mPosApiHelper.EmvFinal();
+                            mTimeline.start(TxnTimeline.PHASE_FINAL);
+                            ret = mPosApiHelper.EmvFinal();
+                            mTimeline.end(TxnTimeline.PHASE_FINAL);
+                            journalResult(txn, TxnJournal.PHASE_COMPLETE, ret);
+                            finishTimeline();
 
 
                             ///*******************----Contactless-Quics and PayWave---******************************///
-                        } else if (mCardType == 3) {
+                        } else if (mCardType == CardEntryMux.CARD_PAYWAVE) {
 
                             Log.d(TAG, "paywaveunipay0000");
                             String Tag57_data = "";
@@ -705,17 +361,27 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                             int TagCardNo_len;
                             byte CardNoData[] = new byte[56];
 
-                            mPosApiHelper.KeyPadInit(mKeypadLogo);
-                            mPosApiHelper.SetKeyPadTime(20);  //set pinpad timeout is 20 seconds
-
-                            mPosApiHelper.PayWaveSetTransType(0x00);
+                            if (!acquireSessions(KernelSessionManager.KERNEL_PAYWAVE)) {
+                                mPosApiHelper.PiccClose();
+                                return;
+                            }
+                            int txn = journalStart(11000);
                             mPosApiHelper.PayWaveSetTransAmount(11000);
 
+                            mTimeline.start(TxnTimeline.PHASE_KERNEL);
                             ret = mPosApiHelper.PayWaveTransProcess();
+                            mTimeline.end(TxnTimeline.PHASE_KERNEL);
+                            recordDecision(cardPresentAt);
 
                             if (ret < 0) {
                                 showMessage("Paywave Termination");
+                                mTagSnapshot.reset(mPayWaveTags);
+                                mTagSnapshot.fetch(BRAND_TAGS);
+                                mTimeline.start(TxnTimeline.PHASE_FINAL);
                                 mPosApiHelper.PayWaveFinal();
+                                mTimeline.end(TxnTimeline.PHASE_FINAL);
+                                journalResult(txn, TxnJournal.PHASE_COMPLETE, ret);
+                                finishTimeline();
                                 return;
 
                             } else if (ret == 22) {
@@ -726,7 +392,22 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                                 strEmvStatus = "Paywave DENIALED_OFFLINE";
                             }
 
-                            TagCardNo_len = mPosApiHelper.PayWaveGetTagData(CardNoData, 56, TagCardNo);
+                            mTimeline.start(TxnTimeline.PHASE_TAGS);
+                            mTagSnapshot.reset(mPayWaveTags);
+                            mTagSnapshot.fetch(EmvTagSnapshot.ONLINE_TAGS);
+                            rememberPan();
+                            journalTags(txn, TxnJournal.PHASE_CARD, JOURNAL_CARD_TAGS);
+                            journalTags(txn, TxnJournal.PHASE_GENAC, JOURNAL_GENAC_TAGS);
+                            mTimeline.end(TxnTimeline.PHASE_TAGS);
+                            if (ret == 22) {
+                                mTimeline.start(TxnTimeline.PHASE_ONLINE);
+                                goOnline(txn, OnlineAuthorizer.ENTRY_CONTACTLESS, false);
+                                mTimeline.end(TxnTimeline.PHASE_ONLINE);
+                            } else if (ret == 101) {
+                                //offline approval, cleared by the next drain
+                                storeForward(txn);
+                            }
+                            TagCardNo_len = mTagSnapshot.copy(TagCardNo, CardNoData, 0);
                             Log.d(TAG, "TagCardNo_len : " + TagCardNo_len);
                             for (int i = 0; i < TagCardNo_len; i++) {
                                 Log.d(TAG, "i = " + i + "  " + CardNoData[i]);
@@ -741,19 +422,39 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
 
                             showMessage(strEmvStatus + "\n\nCardNO:" + Tag57_data);
 
-                            mPosApiHelper.PayWaveFinal();
+                            mTimeline.start(TxnTimeline.PHASE_FINAL);
+                            ret = mPosApiHelper.PayWaveFinal();
+                            mTimeline.end(TxnTimeline.PHASE_FINAL);
+                            journalResult(txn, TxnJournal.PHASE_COMPLETE, ret);
+                            finishTimeline();
 
 
                             ///*******************---if (mCardType == 2) {---******************************///
-                        } else if (mCardType == 2) {
+                        } else if (mCardType == CardEntryMux.CARD_PAYPASS) {
                             Log.d(TAG, "Paypass Kernel Test");
                             int TagName = 0x5A; //PAN
                             String PaypssTag57_data = "";
 
+                            //the kernel itself is set up by PaypassTransaction, the PIN pad is not
+                            if (!acquireSessions(KernelSessionManager.KERNEL_PAYPASS)) {
+                                mPosApiHelper.PiccClose();
+                                return;
+                            }
+                            int txn = journalStart(2); //9F02 of the PayPass transaction parameters
+                            mTimeline.start(TxnTimeline.PHASE_KERNEL);
                             int result = mPosApiHelper.PaypassTransaction();
+                            mTimeline.end(TxnTimeline.PHASE_KERNEL);
+                            recordDecision(cardPresentAt);
                             Log.d(TAG, "Paypass PaypassTransaction ret->" + result);
 
-                            int Data_len = mPosApiHelper.PaypassGetTagValue(PaypassTagBuff, 1024, TagName);
+                            mTimeline.start(TxnTimeline.PHASE_TAGS);
+                            mTagSnapshot.reset(mPaypassTags);
+                            mTagSnapshot.fetch(EmvTagSnapshot.ONLINE_TAGS);
+                            rememberPan();
+                            journalTags(txn, TxnJournal.PHASE_CARD, JOURNAL_CARD_TAGS);
+                            journalTags(txn, TxnJournal.PHASE_GENAC, JOURNAL_GENAC_TAGS);
+                            mTimeline.end(TxnTimeline.PHASE_TAGS);
+                            int Data_len = mTagSnapshot.copy(TagName, PaypassTagBuff, 0);
                             Log.d(TAG, "Paypass PaypassGetTagValue" + Data_len);
 
                             for (int i = 0; i < Data_len; i++) {
@@ -765,10 +466,18 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                                 PaypssTag57_data = PaypssTag57_data.substring(0, Data_len * 2);
                             }
 
-                            mPosApiHelper.PaypassFinal();
+                            mTimeline.start(TxnTimeline.PHASE_FINAL);
+                            ret = mPosApiHelper.PaypassFinal();
+                            mTimeline.end(TxnTimeline.PHASE_FINAL);
+                            journalResult(txn, TxnJournal.PHASE_COMPLETE, ret);
+                            finishTimeline();
 
                             showMessage(PaypssTag57_data);
 
+                        } else if (mCardType == CardEntryMux.CARD_EXPRESS) {
+                            //no Express AIDs are loaded on this terminal yet
+                            mPosApiHelper.PiccClose();
+                            showMessage("Express kernel not configured");
                         }
 
                         break;
@@ -778,8 +487,7 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
 
                         int pinkey_n = 0;
                         int timeout_s = 12;
-                        //  byte[] card_no = new byte[]{0x34,0x30, 0x30, 0x32, 0x32, 0x31, 0x32,  0x30, 0x30, 0x30, 0x30, 0x31,0x39,0x38,0x35,0x32}; //4002212000019852
-                        byte[] card_no = new byte[]{0x32, 0x32, 0x30, 0x30, 0x32, 0x34, 0x30, 0x36, 0x39, 0x39, 0x33, 0x30, 0x31, 0x30, 0x36, 0x31};
+                        byte[] card_no = mLastPan;
                         byte[] mode = new byte[]{1};
                         byte[] pin_block = new byte[8];
 
@@ -802,7 +510,7 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
                     case MSG_DUKPTPIN_BLOCK:
                         Log.d(TAG, "dukptPinBlock0 ");
                         int dukptpinkey_n = 2;
-                        byte[] dukptcard_no = new byte[]{0x32, 0x32, 0x30, 0x30, 0x32, 0x34, 0x30, 0x36, 0x39, 0x39, 0x33, 0x30, 0x31, 0x30, 0x36, 0x31};
+                        byte[] dukptcard_no = mLastPan;
                         byte[] dukptmode = new byte[]{1};
                         byte[] dukptpin_block = new byte[8];
                         byte[] OutKsn = new byte[10];
@@ -825,12 +533,340 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
 
                         break;
 
+                    case MSG_INIT_KERNEL:
+                        //init, configuration and warm-up in this order, all on this thread
+                        mPosApiHelper.InitPaySysKernel();
+                        //a freshly initialised kernel holds no AIDs, CAPKs or contactless
+                        //configuration, whatever the state files say
+                        mEmvLoader.invalidate();
+                        mClessLoader.invalidate();
+                        loadEmvConfig();
+                        loadClessConfig();
+                        //InitPaySysKernel may have reset what was warmed before
+                        mSessions.invalidate();
+                        //fall through
+                    case MSG_WARM_SESSIONS:
+                        ret = mSessions.warmAll();
+                        Log.d(TAG, "warm kernel sessions ret = " + ret);
+                        mJournal.sync();
+                        if (mSafQueue.size() > 0) {
+                            ret = mSafQueue.drain();
+                            Log.d(TAG, "store and forward drain ret = " + ret + ", waiting " + mSafQueue.size());
+                        }
+                        removeMessages(MSG_WARM_SESSIONS);
+                        sendEmptyMessageDelayed(MSG_WARM_SESSIONS, SESSION_REFRESH_MS);
+                        break;
+
+                    case MSG_OPEN_JOURNAL:
+                        //reversals found in the journal go to the store-and-forward queue
+                        openSafQueue();
+                        openJournal();
+                        break;
+
+                    case MSG_CLOSE_JOURNAL:
+                        mJournal.close();
+                        break;
+
+                    case MSG_UNINIT_KERNEL:
+                        mPosApiHelper.UninitPaySysKernel();
+                        mEmvLoader.invalidate();
+                        mClessLoader.invalidate();
+                        break;
+
                     default:
                         break;
                 }
         }
     }
 
+    private void recordDecision(long cardPresentAt) {
+        mDecisionTimes.record(System.nanoTime() - cardPresentAt);
+        Log.d(TAG, "card present to decision " + mDecisionTimes.summary()
+                + ", warm sessions " + mSessions.getHits() + "/" + (mSessions.getHits() + mSessions.getMisses()));
+    }
+
+    //brand comes from the snapshot, which must already be reset for this transaction
+    private void finishTimeline() {
+        mTagSnapshot.fetch(BRAND_TAGS);
+        mTimelineStats.add(CardBrand.fromSnapshot(mTagSnapshot), mTimeline);
+        Log.d(TAG, "transaction timeline, total " + mTimeline.total() / 1000000 + " ms\n"
+                + mTimelineStats.report());
+    }
+
+    private int journalStart(long amount) {
+        mJournalTlv.reset().putBcd(0x9F02, amount, 6).putByte(0x9C, 0x00);
+        int txn = mJournal.begin(mJournalTlv);
+        if (txn < 0) {
+            Log.e(TAG, "journal start failed, ret = " + txn);
+        }
+        return txn;
+    }
+
+    private void journalTags(int txn, int phase, int[] tags) {
+        if (txn > 0) {
+            mTagSnapshot.fetch(tags);
+            mTagSnapshot.writeTo(mJournalTlv.reset(), tags);
+            mJournal.append(txn, phase, mJournalTlv);
+        }
+    }
+
+    private void journalResult(int txn, int phase, int result) {
+        if (txn > 0) {
+            mJournal.append(txn, phase, mJournalTlv.reset().putInt(TxnJournal.TAG_RESULT, result, 4));
+        }
+    }
+
+    private void openJournal() {
+        try {
+            int records = mJournal.open();
+            int[] open = mJournal.getOpenTransactions();
+            Log.d(TAG, "journal recovered " + records + " records, " + open.length + " unfinished");
+            for (int txn : open) {
+                Log.e(TAG, "journal transaction " + txn + " was not completed, reversal needed");
+                queueReversal(txn);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "journal open failed", e);
+        }
+    }
+
+    //a reversal built from what the journal holds of the transaction, queued under its STAN;
+    //a deferred authorisation of it still waiting is withdrawn instead, the host never saw it
+    private void queueReversal(final int txn) throws IOException {
+        int stan = stanOf(txn);
+        SafItem queued = mSafQueue.get(stan);
+        int ret = 0;
+        if (queued != null && isReversal(queued)) {
+            Log.d(TAG, "reversal STAN " + stan + " already queued");
+        } else if (queued != null) {
+            mSafQueue.cancel(stan);
+            Log.d(TAG, "deferred authorisation STAN " + stan + " withdrawn");
+        }
+
+        mJournalTlv.reset().putBcd(SAF_TAG_MTI, 400, 2);
+        mJournal.scan(new TxnJournal.Visitor() {
+            @Override
+            public void record(long segment, int t, int phase, byte[] buf, int off, int len) {
+                if (t == txn) {
+                    mJournalTlv.putRaw(buf, off, len);
+                }
+            }
+        });
+        if (queued == null) {
+            ret = mSafQueue.enqueue(stan, mJournalTlv.buffer(), 0, mJournalTlv.length());
+            Log.d(TAG, "reversal STAN " + stan + " queued, ret = " + ret);
+        }
+        if (ret == 0) {
+            ret = mJournal.markReversed(txn, mJournalTlv);
+            Log.d(TAG, "journal transaction " + txn + " closed, ret = " + ret);
+        }
+    }
+
+    private static boolean isReversal(SafItem item) {
+        TlvReader tlv = new TlvReader(item.getData(), 0, item.getData().length);
+        return tlv.seek(SAF_TAG_MTI) > 0 && tlv.valueBcd() == 400;
+    }
+
+    //PAN digits straight from track 2 equivalent data, or tag 5A without it
+    private void rememberPan() {
+        TlvIndex index = mTagSnapshot.getIndex();
+        int slot = index.find(0x57);
+        if (slot < 0) {
+            slot = index.find(0x5A);
+        }
+        if (slot < 0) {
+            return;
+        }
+        byte[] digits = new byte[19];
+        int n = PinBlock.extractPan(index.buffer(), index.valueOffset(slot), index.valueLength(slot), digits, 0);
+        if (n > 0) {
+            mLastPan = Arrays.copyOf(digits, n);
+        }
+    }
+
+    //the journal transaction number doubles as STAN, it survives restarts
+    private static int stanOf(int txn) {
+        return (txn - 1) % 999999 + 1;
+    }
+
+    /** Host for online authorisations, set before the activity is created; none by default */
+    public static void setAcquirerLink(AcquirerLink link) {
+        sAcquirerLink = link;
+    }
+
+    //authorise with the host and, for the contact kernel, hand its answer over before EmvFinal;
+    //defer the authorisation only when the host cannot be reached
+    private void goOnline(int txn, int entryMode, boolean toKernel) {
+        if (txn <= 0) {
+            Log.e(TAG, "no STAN, transaction not sent online");
+            return;
+        }
+        if (mAuthorizer == null) {
+            Log.d(TAG, "no acquirer link, STAN " + stanOf(txn) + " deferred");
+            storeForward(txn);
+            return;
+        }
+        int ret = mAuthorizer.authorize(mTagSnapshot, stanOf(txn), entryMode);
+        Log.d(TAG, "online STAN " + stanOf(txn) + " ret = " + ret);
+        if (ret == AcquirerLink.ERR_LINK_DOWN) {
+            storeForward(txn);
+            return;
+        }
+        if (ret == 0 && !toKernel) {
+            Log.d(TAG, "online approved = " + mAuthorizer.getResult().isApproved());
+        } else if (ret == 0) {
+            ret = mAuthorizer.apply(mEmvKernel);
+            Log.d(TAG, "online approved = " + mAuthorizer.getResult().isApproved() + ", set result ret = " + ret);
+        }
+        journalResult(txn, TxnJournal.PHASE_ONLINE, ret);
+    }
+
+    private void storeForward(int txn) {
+        if (txn <= 0) {
+            Log.e(TAG, "no STAN, transaction not stored for forwarding");
+            return;
+        }
+        int stan = stanOf(txn);
+        mSafTlv.reset().putBcd(SAF_TAG_MTI, 200, 2);
+        mTagSnapshot.writeTo(mSafTlv, EmvTagSnapshot.DE55_TAGS);
+        int ret = encryptCardData(mSafTlv);
+        if (ret < 0) {
+            Log.e(TAG, "card data not encrypted, ret = " + ret + ", STAN " + stan + " not stored for forwarding");
+            return;
+        }
+        ret = mSafQueue.enqueue(stan, mSafTlv.buffer(), 0, mSafTlv.length());
+        Log.d(TAG, "store and forward STAN " + stan + " ret = " + ret);
+    }
+
+    //PAN, track 2 and expiry of the snapshot encrypted under the next DUKPT data key
+    private int encryptCardData(TlvWriter out) {
+        mTagSnapshot.writeTo(mCardTlv.reset(), SAF_CARD_TAGS);
+        final byte[] ksn = new byte[DukptTdes.KSN_LENGTH];
+        ByteArrayOutputStream cipher = new ByteArrayOutputStream(mCardTlv.length() + 8);
+        long ret;
+        try {
+            ret = mPciStream.dukptDes(SAF_DUKPT_KEY, PciCrypto.MODE_ENCRYPT, new byte[8],
+                    Channels.newChannel(new ByteArrayInputStream(mCardTlv.buffer(), 0, mCardTlv.length())),
+                    Channels.newChannel(cipher), new PciStream.KsnListener() {
+                        @Override
+                        public void onChunk(long offset, int len, byte[] chunkKsn) {
+                            System.arraycopy(chunkKsn, 0, ksn, 0, ksn.length);
+                        }
+                    });
+        } catch (IOException e) {
+            ret = -1;
+        } finally {
+            Arrays.fill(mCardTlv.buffer(), (byte) 0);
+        }
+        if (ret < 0) {
+            return (int) ret;
+        }
+        out.put(SAF_TAG_CARD, cipher.toByteArray()).put(SAF_TAG_KSN, ksn);
+        return 0;
+    }
+
+    private void openSafQueue() {
+        try {
+            Log.d(TAG, "store and forward, waiting " + mSafQueue.open());
+        } catch (IOException e) {
+            Log.e(TAG, "store and forward open failed", e);
+        }
+    }
+
+    //PIN pad and kernel for the card just presented; when either cannot be set up the card
+    //is refused and the kernels are initialised again for the next one
+    private boolean acquireSessions(int kernel) {
+        int ret = mSessions.acquire(KernelSessionManager.KERNEL_PINPAD);
+        if (ret == 0) {
+            ret = mSessions.acquire(kernel);
+        }
+        if (ret == 0) {
+            return true;
+        }
+        Log.e(TAG, "kernel " + kernel + " not ready, ret = " + ret);
+        mWorkHandler.removeMessages(WorkHandler.MSG_WARM_SESSIONS);
+        mWorkHandler.sendEmptyMessage(WorkHandler.MSG_INIT_KERNEL);
+        showMessage("Kernel not ready, ret = " + ret);
+        return false;
+    }
+
+    private void registerSessions() {
+        mSessions.setMaxIdleMillis(SESSION_MAX_IDLE_MS);
+        mSessions.register(KernelSessionManager.KERNEL_PINPAD, new KernelSessionManager.Warmup() {
+            @Override
+            public int warm() {
+                int ret = 0;
+                ret |= mPosApiHelper.KeyPadInit(mKeypadLogo);
+                ret |= mPosApiHelper.SetKeyPadTime(20);  //set pinpad timeout is 20 seconds
+                ret |= mPosApiHelper.SetKeyPadType(0);
+                return ret;
+            }
+        });
+        mSessions.register(KernelSessionManager.KERNEL_EMV, new KernelSessionManager.Warmup() {
+            @Override
+            public int warm() {
+                int ret = 0;
+                ret |= mPosApiHelper.EmvKernelInit();
+                ret |= mPosApiHelper.EmvSetTransType(1);
+                ret |= mPosApiHelper.EmvSetCardType(1);
+                return ret;
+            }
+        });
+        mSessions.register(KernelSessionManager.KERNEL_PAYWAVE, new KernelSessionManager.Warmup() {
+            @Override
+            public int warm() {
+                return mPosApiHelper.PayWaveSetTransType(0x00);
+            }
+        });
+        //PayPass and Express take all transaction data in one call at tap time
+    }
+
+    private void loadEmvConfig() {
+        long start = System.currentTimeMillis();
+        InputStream in = null;
+        try {
+            in = getAssets().open(EMV_CONFIG_ASSET);
+            EmvConfig config = EmvConfig.parse(in);
+            int ret = mEmvLoader.apply(config);
+            Log.d(TAG, "EMV config " + config.getHash() + " applied, ret = " + ret
+                    + ", " + (System.currentTimeMillis() - start) + " ms");
+            if (mEmvLoader.getBadCapks() > 0 || mEmvLoader.getExpiredCapks() > 0) {
+                Log.e(TAG, "CAPKs not loaded: " + mEmvLoader.getBadCapks() + " bad checksum or format, "
+                        + mEmvLoader.getExpiredCapks() + " expired");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "EMV config load failed", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void loadClessConfig() {
+        long start = System.currentTimeMillis();
+        InputStream in = null;
+        try {
+            in = getAssets().open(CLESS_CONFIG_ASSET);
+            ClessConfig config = ClessConfig.parse(in);
+            int ret = mClessLoader.apply(config);
+            Log.d(TAG, "contactless config applied, kernels pushed = " + ret + ", calls = " + mClessLoader.getCalls()
+                    + ", " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            Log.e(TAG, "contactless config load failed", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         mContext = this;
@@ -861,138 +897,23 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
         mWorkThread.start();
         mWorkHandler = new WorkHandler(mWorkThread.getLooper());
 
-        mPosApiHelper.EmvEnvParaInit();
-        mPosApiHelper.EmvClearAllCapks();
-        mPosApiHelper.EmvClearAllAIDS();
-
-        Log.e("TAG", "vpos*****************add parameter");
-        mPosApiHelper.EmvAddOneCAPK(capk1buf, capk1buf.length);
-
-        mPosApiHelper.EmvAddOneAIDS(test0, test0.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test1, test1.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test2, test2.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test3, test3.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test4, test4.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test5, test5.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test6, test6.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test7, test7.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test8, test8.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test9, test9.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test10, test10.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test11, test11.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test12, test12.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test13, test13.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test14, test14.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test15, test15.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test16, test16.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test17, test17.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test18, test18.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test19, test19.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(test20, test20.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-
-        mPosApiHelper.EmvAddOneAIDS(Visaaid0, Visaaid0.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(VISAaid1, VISAaid1.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(MIRAID0, MIRAID0.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(MIRAID1, MIRAID1.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-
-        mPosApiHelper.EmvAddOneAIDS(Master0, Master0.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(Master1, Master1.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(UnionPay_Debit, UnionPay_Debit.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
-
-        mPosApiHelper.EmvAddOneAIDS(UnionPay_Credit, UnionPay_Credit.length);
-        mPosApiHelper.EmvSaveTermParas(TermParabuf, TermParabuf.length,0);
+        mJournal = new TxnJournal(new File(getFilesDir(), JOURNAL_DIR), JOURNAL_SEGMENT_SIZE, JOURNAL_MAX_SEGMENTS);
+        mSafQueue = new SafQueue(new File(getFilesDir(), SAF_DIR), SAF_MAX_BYTES);
+        if (sAcquirerLink != null) {
+            mAuthorizer = new OnlineAuthorizer(Iso8583Spec.binaryPos(), sAcquirerLink);
+            //stored items go up the same link, from the idle tick
+            mSafQueue.setHostLink(new SafUploader(Iso8583Spec.binaryPos(), sAcquirerLink));
+        }
+        mWorkHandler.sendEmptyMessage(WorkHandler.MSG_OPEN_JOURNAL);
 
-        //paypass
-        mPosApiHelper.PaypassKernelInit();//---step 1
-        //   mPosApiHelper.PaypassAidSet(Aid_input0);//---step 2
-        mPosApiHelper.PaypassAidSet(PaypassAid_input);//
-        mPosApiHelper.PaypassAidSet(Aid_inputT);//
-        mPosApiHelper.PaypassCapkSet(Capk_input); //---step 3
-        mPosApiHelper.PaypassCapkSet(Capk_input1); //---step 3
-        mPosApiHelper.PaypassCapkSet(Capk_input2); //---step 3
-        mPosApiHelper.PaypassReaderSet(Reader_input); //---step 4
-        mPosApiHelper.PaypassKernelSet(Kernel_input); //---step 5
-        mPosApiHelper.PaypassTransSet(Trans_input); //---step 6
+        mEmvLoader = new EmvConfigLoader(mEmvKernel, new File(getFilesDir(), EMV_CONFIG_STATE));
+        mClessLoader = new ClessConfigLoader(new PosClessKernel(mPosApiHelper),
+                new File(getFilesDir(), CLESS_CONFIG_STATE));
+        registerSessions();
 
-        //paywave
-        mPosApiHelper.PayWaveKernelInit();
-        mPosApiHelper.PayWaveClearAllTerm();
-        mPosApiHelper.PayWaveClearAllCapk();
-        mPosApiHelper.PayWaveClearAllAIDS();
-        mPosApiHelper.PayWaveAidSet(AID_input1);
-        mPosApiHelper.PayWaveAidSet(AID_input2);
-        mPosApiHelper.PayWaveAidSet(AID_input3);
-        mPosApiHelper.PayWaveAidSet(AID_input4);
-        mPosApiHelper.PayWaveAidSet(AID_input5);
-        mPosApiHelper.PayWaveAidSet(AID_input6);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input1);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input2);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input3);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input4);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input5);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input6);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input7);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input8);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input9);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input10);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input11);
-        mPosApiHelper.PayWaveCapkSet(CAPK_input12);
-        mPosApiHelper.PayWaveTermSet(Term_input);
+        mEntryMux.addDetector(new PosCardDetector(mPosApiHelper));
+        mEntryMux.addDetector(new PosCardDetector(mPosApiHelper, (byte) 0));
+        mEntryMux.addDetector(new PiccDetector(new PosPiccTransport(mPosApiHelper)));
     }
 
     @Override
@@ -1001,7 +922,8 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
         super.onResume();
-        mPosApiHelper.InitPaySysKernel();
+        //the configuration push must follow the kernel init, so both run as one message
+        mWorkHandler.sendEmptyMessage(WorkHandler.MSG_INIT_KERNEL);
 
     }
 
@@ -1010,6 +932,7 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
     protected void onPause() {
         //enable the power key
         getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        mWorkHandler.removeMessages(WorkHandler.MSG_WARM_SESSIONS);
         super.onPause();
     }
 
@@ -1018,11 +941,12 @@ public class EmvTestActivity extends Activity implements View.OnClickListener {
         super.onDestroy();
 
         mThreadFinished = true;
+        mEntryMux.cancel();
 
         mWorkHandler.removeCallbacksAndMessages(null);
+        mWorkHandler.sendEmptyMessage(WorkHandler.MSG_CLOSE_JOURNAL);
+        mWorkHandler.sendEmptyMessage(WorkHandler.MSG_UNINIT_KERNEL);
         mWorkThread.quitSafely();
-
-        mPosApiHelper.UninitPaySysKernel();
     }
 
     public void onClick(View v) {
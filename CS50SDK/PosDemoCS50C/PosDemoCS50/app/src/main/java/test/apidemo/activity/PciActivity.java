@@ -18,9 +18,20 @@ import android.widget.TextView;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.ctk.sdk.PosApiHelper;
 
+import test.apidemo.pci.Dukpt;
+import test.apidemo.pci.DukptTdes;
+import test.apidemo.pci.KeyInjectionSession;
+import test.apidemo.pci.KeyManifest;
+import test.apidemo.pci.PosKeyLoader;
+
 /**
  * Created by Administrator on 2017/8/17.
  */
@@ -36,6 +47,19 @@ public class PciActivity extends Activity {
 
     private final String tag = "PciActivity";
 
+    //demo DUKPT data key, loaded into the device as key 1
+    private static final String DUKPT_DATA_IPEK = "8A861B8B13AD8F449AB521E127EDDDD6";
+    private static final String DUKPT_DATA_KSN = "FFFF0705160000000336";
+
+    //software copy of the device's data key registers, to check its KSN progression
+    private final DukptTdes mDukptMirror = new DukptTdes();
+
+    //key set written by the MK button
+    private static final String KEY_MANIFEST_ASSET = "key_manifest.txt";
+
+    //software KCVs of the key set, computed while the device writes
+    private final ExecutorService mKcvExecutor = Executors.newFixedThreadPool(2);
+
     private ReadWriteRunnable _runnable;
 
     TextView textView = null;
@@ -62,6 +86,12 @@ public class PciActivity extends Activity {
     }
 
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mKcvExecutor.shutdownNow();
+    }
+
     public void OnClickDukptLoad(View view) {
         if (_runnable != null && _runnable.IsThreadFinished() == false) {
             Log.e("", "Thread is still running, return...");
@@ -168,9 +198,9 @@ public class PciActivity extends Activity {
                 case OPCODE_DUKPT_LOAD:
                     int  KsnLen, KeyIdDATA, KeyIdPIN;
                     Log.e("Robert", "dukpt test0");
-                    final  byte[] DATAIPEK = StringUtil.hexStringToBytes("8A861B8B13AD8F449AB521E127EDDDD6");
+                    final  byte[] DATAIPEK = StringUtil.hexStringToBytes(DUKPT_DATA_IPEK);
                     final  byte[] PINIPEK = StringUtil.hexStringToBytes("8A861B8B13AD8F449AB521E127EDDDD6");
-                    final  byte[] KSNDATA = StringUtil.hexStringToBytes("FFFF0705160000000336");
+                    final  byte[] KSNDATA = StringUtil.hexStringToBytes(DUKPT_DATA_KSN);
                     final  byte[] KSNPIN = StringUtil.hexStringToBytes("FFFF0705160000000336");
 
                     KsnLen = KSNDATA.length;
@@ -181,6 +211,7 @@ public class PciActivity extends Activity {
 
                     KeyIdPIN = 2;
                     ret |= posApiHelper.PciWriteDukptIpek( KeyIdPIN, DATAIPEK.length, DATAIPEK, KsnLen, KSNPIN);
+                    mDukptMirror.load(DATAIPEK, KSNDATA, 0);
                     SendMsg("Key successfully loaded = " + ret, 0);
                     break;
 
@@ -204,6 +235,7 @@ public class PciActivity extends Activity {
                                 "\nKsn:"+ByteUtil.bytearrayToHexString(OutKsn, OutKsn.length), 0);
                         Log.e("dukpt", "PciGetDukptDes Des_Out- "+ByteUtil.bytearrayToHexString(Des_Out, Des_Out.length));
                         Log.e("dukpt", "PciGetDukptDes OutKsn - "+ByteUtil.bytearrayToHexString(OutKsn, OutKsn.length));
+                        checkKsn(OutKsn);
                     }
                     else
                     {
@@ -219,20 +251,7 @@ public class PciActivity extends Activity {
 
                 /*MKSK--------------------------------------------*/
                 case OPCODE_MK:
-                    int ret = 0;
-                    final  byte[] MK_KEY = StringUtil.hexStringToBytes("11223344556677881122334455667788");
-                    final  byte[] SK_DES_KEY = StringUtil.hexStringToBytes("11223344556677881122334455667788");
-                    final  byte[] SK_PIN_KEY = StringUtil.hexStringToBytes("11223344556677881122334455667788");
-                    final  byte[] SK_MAC_KEY = StringUtil.hexStringToBytes("11223344556677881122334455667788");
-
-                    ret |= posApiHelper.PciWritePinMKey((byte)0,(byte)16,MK_KEY,(byte)0);
-                    ret |= posApiHelper.PciWriteDesMKey((byte)0,(byte)16,MK_KEY,(byte)0);
-                    ret |= posApiHelper.PciWriteMacMKey((byte)0,(byte)16,MK_KEY,(byte)0);
-
-                    ret |= posApiHelper.PciWriteDesKey((byte)0,(byte)16,SK_DES_KEY,(byte)0,(byte)0);
-                    ret |= posApiHelper.PciWritePinKey((byte)0,(byte)16,SK_PIN_KEY,(byte)0,(byte)0);
-                    ret |= posApiHelper.PciWriteMacKey((byte)0,(byte)16,SK_MAC_KEY,(byte)0,(byte)0);
-                    SendMsg("MKSK key - " + ret , 0);
+                    injectKeys();
                     break;
 
                 case OPCODE_MKSKDES:
@@ -252,6 +271,53 @@ public class PciActivity extends Activity {
         }
     }
 
+    //write the key set of the manifest asset and check every key's KCV
+    private void injectKeys() {
+        KeyManifest manifest;
+        InputStream in = null;
+        try {
+            in = getAssets().open(KEY_MANIFEST_ASSET);
+            manifest = KeyManifest.parse(in);
+        } catch (IOException e) {
+            SendMsg("MKSK key manifest - " + e.getMessage(), 0);
+            return;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        KeyInjectionSession session = new KeyInjectionSession(new PosKeyLoader(posApiHelper), mKcvExecutor);
+        List<KeyInjectionSession.Result> results = session.run(manifest);
+        String report = KeyInjectionSession.report(results);
+        Log.d(tag, report);
+        SendMsg("MKSK key - " + KeyInjectionSession.countFailed(results) + " failed\n" + report, 0);
+    }
+
+    //the device must move to the next counter the standard allows, never back or sideways
+    private void checkKsn(byte[] deviceKsn) {
+        byte[] expected = new byte[DukptTdes.KSN_LENGTH];
+        int ret = mDukptMirror.next();
+        if (ret == 0) {
+            mDukptMirror.getKsn(expected, 0);
+            if (Arrays.equals(expected, deviceKsn)) {
+                Log.d("dukpt", "KSN progression ok, counter " + Long.toHexString(mDukptMirror.getCounter()));
+                return;
+            }
+            Log.e("dukpt", "KSN expected " + ByteUtil.bytearrayToHexString(expected, expected.length));
+        } else if (ret == Dukpt.ERR_EXHAUSTED) {
+            Log.e("dukpt", "key exhausted, the device should have refused");
+        }
+        //key loaded in an earlier session, or out of step: follow the device from here
+        try {
+            mDukptMirror.load(StringUtil.hexStringToBytes(DUKPT_DATA_IPEK), deviceKsn, 0);
+        } catch (IllegalArgumentException e) {
+            Log.e("dukpt", "device KSN is not a valid DUKPT counter");
+        }
+    }
+
     /*view-------------*/
     public void SendMsg(String strInfo, int what) {
         Message msg = new Message();
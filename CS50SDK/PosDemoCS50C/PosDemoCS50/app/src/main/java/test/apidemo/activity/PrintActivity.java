@@ -30,6 +30,16 @@ import com.google.zxing.BarcodeFormat;
 
 import java.util.Timer;
 
+import test.apidemo.print.BitmapPixels;
+import test.apidemo.print.DemoReceipts;
+import test.apidemo.print.GlyphCache;
+import test.apidemo.print.ImageRasterizer;
+import test.apidemo.print.PaintGlyphSource;
+import test.apidemo.print.PosPrinter;
+import test.apidemo.print.PrintPacer;
+import test.apidemo.print.Printer;
+import test.apidemo.print.RasterPrinter;
+import test.apidemo.print.Receipt;
 import test.apidemo.service.MyService;
 /**
  * Created by Administrator on 2017/8/17.
@@ -103,6 +113,14 @@ public class PrintActivity extends Activity {
 
     PosApiHelper posApiHelper = PosApiHelper.getInstance();
 
+    private final Printer mPrinter = new PosPrinter(posApiHelper);
+    //long prints go through the pacer so they slow down before the head gets too hot
+    private final PrintPacer mPacer = new PrintPacer(mPrinter);
+    //sales slip values, reused by every print of the slip (one print thread at a time)
+    private final Receipt mSlip = DemoReceipts.SALES_SLIP.compile().newReceipt();
+    private final RasterPrinter mRasterPrinter = new RasterPrinter(mPrinter, new GlyphCache(new PaintGlyphSource()));
+    private final ImageRasterizer mImages = new ImageRasterizer(ImageRasterizer.DITHER_FLOYD_STEINBERG);
+
     Intent mPrintServiceIntent;
 
     @Override
@@ -505,6 +523,7 @@ public class PrintActivity extends Activity {
                 Log.e(tag, "getValue():" + ret);
 
                 posApiHelper.PrintSetGray(ret);
+                mPacer.setGray(ret);
                 Log.e(tag, "PrintSetGray():" );
 
                 ret = posApiHelper.PrintCheckStatus();
@@ -545,28 +564,28 @@ public class PrintActivity extends Activity {
 
                         String stringg = " a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?";
 
-                        posApiHelper.PrintSetFont((byte) 24, (byte) 24, (byte) 0x00);
-                        posApiHelper.PrintStr("a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >? a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >? a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?\n");
+                        mPacer.setFont(24, 24, 0x00);
+                        mPacer.printStr("a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >? a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >? a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?\n");
 //						ret = Print.Lib_PrnStr(" a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?a b c d e f g h i j k l m n o p q r s t u v w x z A B C D E F G H I J K L M N O P Q R S T U V W X Z 1 2 3 4 5 6 7 8 9 ! @ # $ % ^ & * () _ + ~   [ ] , . / ; ' { } : : | < >?");
-                        posApiHelper.PrintBarcode(content, 360, 120, "CODE_128");
-                        posApiHelper.PrintStr("CODE_128 : " + content + "\n\n");
-                        posApiHelper.PrintBarcode(content, 240, 240, "QR_CODE");
-                        posApiHelper.PrintStr("QR_CODE : " + content + "\n\n");
-                        posApiHelper.PrintStr("发卡行(ISSUER):01020001 工商银行\n");
-                        posApiHelper.PrintStr("卡号(CARD NO):\n");
-                        posApiHelper.PrintStr("    9558803602109503920\n");
-                        posApiHelper.PrintStr("收单行(ACQUIRER):03050011民生银行\n");
-                        posApiHelper.PrintStr("交易类型(TXN. TYPE):消费/SALE\n");
-                        posApiHelper.PrintStr("卡有效期(EXP. DATE):2013/08\n");
-                        posApiHelper.PrintStr("- - - - - - - - - - - - - - - -\n");
-                        posApiHelper.PrintStr("                                         ");
-                        posApiHelper.PrintStr("\n");
-                        posApiHelper.PrintStr("\n");
-                        posApiHelper.PrintStr("\n");
+                        mPacer.printBarcode(content, 360, 120, "CODE_128");
+                        mPacer.printStr("CODE_128 : " + content + "\n\n");
+                        mPacer.printBarcode(content, 240, 240, "QR_CODE");
+                        mPacer.printStr("QR_CODE : " + content + "\n\n");
+                        mPacer.printStr("发卡行(ISSUER):01020001 工商银行\n");
+                        mPacer.printStr("卡号(CARD NO):\n");
+                        mPacer.printStr("    9558803602109503920\n");
+                        mPacer.printStr("收单行(ACQUIRER):03050011民生银行\n");
+                        mPacer.printStr("交易类型(TXN. TYPE):消费/SALE\n");
+                        mPacer.printStr("卡有效期(EXP. DATE):2013/08\n");
+                        mPacer.printStr("- - - - - - - - - - - - - - - -\n");
+                        mPacer.printStr("                                         ");
+                        mPacer.printStr("\n");
+                        mPacer.printStr("\n");
+                        mPacer.printStr("\n");
 
                         SendMsg("Printing... ");
                         final long starttime_long = System.currentTimeMillis();
-                        ret = posApiHelper.PrintStart();
+                        ret = mPacer.start();
                         Log.e(tag, "PrintStart ret = " + ret);
 
                         msg1.what = ENABLE_RG;
@@ -680,51 +699,9 @@ public class PrintActivity extends Activity {
                         msg.what = DISABLE_RG;
                         handler.sendMessage(msg);
 
-                        posApiHelper.PrintSetFont((byte) 16, (byte) 16, (byte) 0x33);
                         for (int i = 1; i < 3; i++) {
-                            posApiHelper.PrintSetFont((byte) 24, (byte) 24, (byte) 0x33);
-                            posApiHelper.PrintStr("打印第：" + i + "次\n");
-                            posApiHelper.PrintStr("商户存根MERCHANT COPY\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - - - - - - - - - -\n");
-                            posApiHelper.PrintSetFont((byte) 24, (byte) 24, (byte) 0x00);
-                            posApiHelper.PrintStr("商户名称(MERCHANT NAME):\n");
-                            posApiHelper.PrintStr("中国银联直连测试\n");
-                            posApiHelper.PrintStr("商户编号(MERCHANT NO):\n");
-                            posApiHelper.PrintStr("    001420183990573\n");
-                            posApiHelper.PrintStr("终端编号(TERMINAL NO):00026715\n");
-                            posApiHelper.PrintStr("操作员号(OPERATOR NO):12345678\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - -\n");
-                            //	posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("发卡行(ISSUER):01020001 工商银行\n");
-                            posApiHelper.PrintStr("卡号(CARD NO):\n");
-                            posApiHelper.PrintStr("    9558803602109503920\n");
-                            posApiHelper.PrintStr("收单行(ACQUIRER):03050011民生银行\n");
-                            posApiHelper.PrintStr("交易类型(TXN. TYPE):消费/SALE\n");
-                            posApiHelper.PrintStr("卡有效期(EXP. DATE):2013/08\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - -\n");
-                            //	posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("批次号(BATCH NO)  :000023\n");
-                            posApiHelper.PrintStr("凭证号(VOUCHER NO):000018\n");
-                            posApiHelper.PrintStr("授权号(AUTH NO)   :987654\n");
-                            posApiHelper.PrintStr("日期/时间(DATE/TIME):\n");
-                            posApiHelper.PrintStr("    2008/01/28 16:46:32\n");
-                            posApiHelper.PrintStr("交易参考号(REF. NO):200801280015\n");
-                            posApiHelper.PrintStr("金额(AMOUNT):  RMB:2.55\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - -\n");
-                            //	posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("备注/REFERENCE\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - -\n");
-                            posApiHelper.PrintSetFont((byte) 16, (byte) 16, (byte) 0x00);
-                            posApiHelper.PrintStr("持卡人签名(CARDHOLDER SIGNATURE)\n");
-                            posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - - - - - - - - - -\n");
-                            //	posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("  本人确认以上交易，同意将其计入本卡帐户\n");
-                            posApiHelper.PrintStr("  I ACKNOWLEDGE SATISFACTORY RECEIPT\n");
-                            posApiHelper.PrintStr("\n\n\n\n\n\n\n\n\n\n");
-
-                            //  ret = posApiHelper.PrintCtnStart();
-                            ret = posApiHelper.PrintStart();
+                            mSlip.clear();
+                            ret = DemoReceipts.demoSale(mSlip, i).print(mPacer);
                             // if (ret != 0) break;
                         }
 
@@ -756,65 +733,14 @@ public class PrintActivity extends Activity {
                         SendMsg("PRINT_UNICODE");
                         msg.what = DISABLE_RG;
                         handler.sendMessage(msg);
-                        posApiHelper.PrintSetFont((byte) 24, (byte) 24, (byte) 0x00);
-
-                        posApiHelper.PrintStr("中文:你好，好久不见。\n");
-                        posApiHelper.PrintStr("英语: ￡20.00 ，￡20.00 ，￡20.00 Hello, Long time no see\n");
-                        posApiHelper.PrintStr("西班牙语:España, ¡Hola! Cuánto tiempo sin verte!\n");
-                        posApiHelper.PrintStr("法语:Bonjour! Ça fait longtemps!\n");
-                        posApiHelper.PrintStr("Italian :Ciao, non CI vediamo da Molto Tempo.\n");
-
-
+                        //drawn on the terminal and sent as one bitmap, whatever the script
                         SendMsg("Printing... ");
-                        //ret = posApiHelper.PrintCtnStart();
-                        ret = posApiHelper.PrintStart();
+                        ret = DemoReceipts.UNICODE_SAMPLE.compile().newReceipt().print(mRasterPrinter);
 
-                            posApiHelper.PrintSetFont((byte) 16, (byte) 16, (byte) 0x33);
-                            for (int i = 1; i < 3; i++) {
-                                posApiHelper.PrintSetFont((byte) 24, (byte) 24, (byte) 0x33);
-                                posApiHelper.PrintStr("打印第：" + i + "次\n");
-                            posApiHelper.PrintStr("商户存根MERCHANT COPY\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - - - - - - - - - -\n");
-                            posApiHelper.PrintSetFont((byte) 24, (byte) 24, (byte) 0x00);
-                            posApiHelper.PrintStr("商户名称(MERCHANT NAME):\n");
-                            posApiHelper.PrintStr("中国银联直连测试\n");
-                            posApiHelper.PrintStr("商户编号(MERCHANT NO):\n");
-                            posApiHelper.PrintStr("    001420183990573\n");
-                            posApiHelper.PrintStr("终端编号(TERMINAL NO):00026715\n");
-                            posApiHelper.PrintStr("操作员号(OPERATOR NO):12345678\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - -\n");
-                            //	posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("发卡行(ISSUER):01020001 工商银行\n");
-                            posApiHelper.PrintStr("卡号(CARD NO):\n");
-                            posApiHelper.PrintStr("    9558803602109503920\n");
-                            posApiHelper.PrintStr("收单行(ACQUIRER):03050011民生银行\n");
-                            posApiHelper.PrintStr("交易类型(TXN. TYPE):消费/SALE\n");
-                            posApiHelper.PrintStr("卡有效期(EXP. DATE):2013/08\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - -\n");
-                            //	posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("批次号(BATCH NO)  :000023\n");
-                            posApiHelper.PrintStr("凭证号(VOUCHER NO):000018\n");
-                            posApiHelper.PrintStr("授权号(AUTH NO)   :987654\n");
-                            posApiHelper.PrintStr("日期/时间(DATE/TIME):\n");
-                            posApiHelper.PrintStr("    2008/01/28 16:46:32\n");
-                            posApiHelper.PrintStr("交易参考号(REF. NO):200801280015\n");
-                            posApiHelper.PrintStr("金额(AMOUNT):  RMB:2.55\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - -\n");
-                            //	posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("备注/REFERENCE\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - -\n");
-                            posApiHelper.PrintSetFont((byte) 16, (byte) 16, (byte) 0x00);
-                            posApiHelper.PrintStr("持卡人签名(CARDHOLDER SIGNATURE)\n");
-                            posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("- - - - - - - - - - - - - - - - - - - - - - - -\n");
-                            //	posApiHelper.PrintStr("\n");
-                            posApiHelper.PrintStr("  本人确认以上交易，同意将其计入本卡帐户\n");
-                            posApiHelper.PrintStr("  I ACKNOWLEDGE SATISFACTORY RECEIPT\n");
-                            posApiHelper.PrintStr("\n\n\n\n\n\n\n\n\n\n");
-
-                          //  ret = posApiHelper.PrintCtnStart();
-                                ret = posApiHelper.PrintStart();
-                           // if (ret != 0) break;
+                        for (int i = 1; i < 3; i++) {
+                            mSlip.clear();
+                            ret = DemoReceipts.demoSale(mSlip, i).print(mPrinter);
+                            // if (ret != 0) break;
                         }
 
                         msg1.what = ENABLE_RG;
@@ -889,7 +815,8 @@ public class PrintActivity extends Activity {
                         final long end_BmpD = System.currentTimeMillis();
                         final long decodetime = end_BmpD - start_BmpD;
                         final long start_PrintBmp = System.currentTimeMillis();
-                        ret = posApiHelper.PrintBmp(bmp1);
+                        //scaled to the paper, dithered and sent in strips PrintBmp accepts
+                        ret = mImages.print(new BitmapPixels(bmp1), mPrinter);
                         posApiHelper.PrintStr("                                         \n");
                         if (ret == 0) {
                             posApiHelper.PrintStr("\n\n\n");
@@ -936,7 +863,7 @@ public class PrintActivity extends Activity {
 
                         content = "com.chips.ewallet.scheme://{\"PayeeMemberUuid\":\"a3d7fe8e-873d-499b-9f11-000000000000\",\"PayerMemberUuid\":null,\"TotalAmount\":\"900\",\"PayeeSiteUuid\":null,\"PayeeTransId\":\"100101-084850-6444\",\"PayeeSiteReference\":\"\",\"PayeeDescription\":null,\"ConfirmationUuid\":null,\"StpReference\":null}";
                         posApiHelper.PrintStr("QR_CODE display " );
-                        posApiHelper.PrintBarcode(content, 360, 360, "QR_CODE");
+                        mPrinter.printBarcode(content, 360, 360, "QR_CODE");
                         posApiHelper.PrintStr("PrintQrCode_Cut display " );
                         posApiHelper.PrintQrCode_Cut(content, 360, 360, "QR_CODE");
                         posApiHelper.PrintStr("PrintCutQrCode_Str display " );
@@ -1148,6 +1075,7 @@ public class PrintActivity extends Activity {
     public class BatteryReceiver extends BroadcastReceiver {
         public void onReceive(Context context, Intent intent) {
             voltage_level = intent.getExtras().getInt("level");// ��õ�ǰ����
+            mPacer.setBattery(voltage_level);
             Log.e("wbw", "current  = " + voltage_level);
             BatteryV = intent.getIntExtra("voltage", 0);  //电池电压
             Log.e("wbw", "BatteryV  = " + BatteryV);
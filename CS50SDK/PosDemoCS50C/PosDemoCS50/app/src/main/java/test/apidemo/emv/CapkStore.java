@@ -0,0 +1,310 @@
+package test.apidemo.emv;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Certification authority public keys, kept sorted by RID + index so a key
+ * is found by binary search and two stores are compared in one merge pass.
+ *
+ * A key is verified when it is added: the TLV list must carry the RID
+ * (9F06, first five bytes), index (9F22), modulus (DF02), exponent (DF04)
+ * and expiry (DF05), and the checksum (DF03) must be the SHA-1 of RID,
+ * index, modulus and exponent as EMV Book 2 defines it. Keys past their
+ * expiry date are refused, and {@link #purgeExpired} drops the ones that
+ * expire later on.
+ *
+ * {@link #diff} gives the clear and add calls that turn the keys a kernel
+ * holds into the keys of this store, so a key refresh only touches what
+ * changed.
+ */
+public class CapkStore {
+
+    /** Missing or malformed RID, index, modulus, exponent or expiry */
+    public static final int ERR_FORMAT = -3701;
+    /** DF03 does not match the key */
+    public static final int ERR_CHECKSUM = -3702;
+    public static final int ERR_EXPIRED = -3703;
+
+    /** One key, or for a store read back from state, its key and hash only */
+    public static class Capk {
+        private final long mKey;
+        private final int mExpiry;
+        private final byte[] mData;
+        private final String mHash;
+
+        Capk(long key, int expiry, byte[] data, String hash) {
+            mKey = key;
+            mExpiry = expiry;
+            mData = data;
+            mHash = hash;
+        }
+
+        public int getIndex() {
+            return (int) (mKey & 0xFF);
+        }
+
+        /** RID in the top 40 bits, index in the low 8 */
+        public long getKey() {
+            return mKey;
+        }
+
+        /** RID followed by the index, as {@link EmvKernel#clearOneCapk} takes it */
+        public byte[] getRidIndex() {
+            byte[] b = new byte[6];
+            for (int i = 0; i < 6; i++) {
+                b[i] = (byte) (mKey >> (40 - i * 8));
+            }
+            return b;
+        }
+
+        /** Expiry as yyyymmdd, 0 when not known */
+        public int getExpiry() {
+            return mExpiry;
+        }
+
+        /** TLV list for {@link EmvKernel#addOneCapk}; null for a key known by hash only */
+        public byte[] getData() {
+            return mData;
+        }
+
+        /** SHA-1 of the TLV list */
+        public String getHash() {
+            return mHash;
+        }
+
+        /** Upper case hex of RID and index, as used in state files */
+        public String getKeyHex() {
+            return EmvConfig.toHex(getRidIndex(), 0, 6);
+        }
+    }
+
+    private final TlvIndex mIndex = new TlvIndex(16);
+    private Capk[] mKeys = new Capk[16];
+    private int mCount;
+
+    /**
+     * Verify and add a key, replacing one with the same RID and index.
+     *
+     * @param today yyyymmdd; keys expiring before it are refused, 0 skips the check
+     * @return 0, {@link #ERR_FORMAT}, {@link #ERR_CHECKSUM} or {@link #ERR_EXPIRED}
+     */
+    public int add(byte[] tlv, int today) {
+        if (mIndex.build(tlv, 0, tlv.length) < 0) {
+            return ERR_FORMAT;
+        }
+        int rid = mIndex.find(0x9F06);
+        int idx = mIndex.find(0x9F22);
+        int mod = mIndex.find(0xDF02);
+        int exp = mIndex.find(0xDF04);
+        int sum = mIndex.find(0xDF03);
+        int date = mIndex.find(0xDF05);
+        if (rid < 0 || mIndex.valueLength(rid) < 5 || idx < 0 || mIndex.valueLength(idx) != 1
+                || mod < 0 || exp < 0 || date < 0) {
+            return ERR_FORMAT;
+        }
+        int expiry = parseDate(tlv, mIndex.valueOffset(date), mIndex.valueLength(date));
+        if (expiry <= 0) {
+            return ERR_FORMAT;
+        }
+        if (expiry < today) {
+            return ERR_EXPIRED;
+        }
+        if (sum < 0 || mIndex.valueLength(sum) != 20 || !checksumMatches(tlv, rid, idx, mod, exp, sum)) {
+            return ERR_CHECKSUM;
+        }
+        long key = 0;
+        for (int i = 0; i < 5; i++) {
+            key = (key << 8) | (tlv[mIndex.valueOffset(rid) + i] & 0xFF);
+        }
+        key = (key << 8) | (tlv[mIndex.valueOffset(idx)] & 0xFF);
+        put(new Capk(key, expiry, tlv.clone(), EmvConfig.sha1(tlv)));
+        return 0;
+    }
+
+    /**
+     * Record a key a kernel holds, known only by its hash (e.g. from a state
+     * file). The RID is the first five bytes of {@code keyHex} and the index
+     * its last byte.
+     *
+     * @return false when {@code keyHex} is not a key
+     */
+    boolean addHeld(String keyHex, String hash) {
+        byte[] b = EmvConfig.fromHex(keyHex);
+        if (b == null || b.length < 6) {
+            return false;
+        }
+        long key = 0;
+        for (int i = 0; i < 5; i++) {
+            key = (key << 8) | (b[i] & 0xFF);
+        }
+        key = (key << 8) | (b[b.length - 1] & 0xFF);
+        put(new Capk(key, 0, null, hash));
+        return true;
+    }
+
+    /** @return the key for RID {@code rid[off..off+5)} and {@code index}, or null */
+    public Capk find(byte[] rid, int off, int index) {
+        long key = 0;
+        for (int i = 0; i < 5; i++) {
+            key = (key << 8) | (rid[off + i] & 0xFF);
+        }
+        int pos = search((key << 8) | (index & 0xFF));
+        return pos >= 0 ? mKeys[pos] : null;
+    }
+
+    /**
+     * Drop every key that expired before {@code today} (yyyymmdd). Keys with
+     * an unknown expiry are kept.
+     *
+     * @return number of keys dropped
+     */
+    public int purgeExpired(int today) {
+        int kept = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (mKeys[i].mExpiry == 0 || mKeys[i].mExpiry >= today) {
+                mKeys[kept++] = mKeys[i];
+            }
+        }
+        int dropped = mCount - kept;
+        for (int i = kept; i < mCount; i++) {
+            mKeys[i] = null;
+        }
+        mCount = kept;
+        return dropped;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /** Key {@code i} in RID + index order */
+    public Capk get(int i) {
+        return mKeys[i];
+    }
+
+    public void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mKeys[i] = null;
+        }
+        mCount = 0;
+    }
+
+    /**
+     * Compare with the keys a kernel holds.
+     *
+     * @param clear receives held keys that are gone or changed, to be cleared
+     * @param add   receives keys of this store that are new or changed, to be added
+     * @return number of kernel calls the diff takes
+     */
+    public int diff(CapkStore held, List<Capk> clear, List<Capk> add) {
+        int i = 0;
+        int j = 0;
+        while (i < mCount || j < held.mCount) {
+            long mine = i < mCount ? mKeys[i].mKey : Long.MAX_VALUE;
+            long theirs = j < held.mCount ? held.mKeys[j].mKey : Long.MAX_VALUE;
+            if (mine == theirs) {
+                if (!mKeys[i].mHash.equals(held.mKeys[j].mHash)) {
+                    clear.add(held.mKeys[j]);
+                    add.add(mKeys[i]);
+                }
+                i++;
+                j++;
+            } else if (mine < theirs) {
+                add.add(mKeys[i++]);
+            } else {
+                clear.add(held.mKeys[j++]);
+            }
+        }
+        return clear.size() + add.size();
+    }
+
+    private void put(Capk capk) {
+        int pos = search(capk.mKey);
+        if (pos >= 0) {
+            mKeys[pos] = capk;
+            return;
+        }
+        pos = -pos - 1;
+        if (mCount == mKeys.length) {
+            Capk[] bigger = new Capk[mKeys.length * 2];
+            System.arraycopy(mKeys, 0, bigger, 0, mCount);
+            mKeys = bigger;
+        }
+        System.arraycopy(mKeys, pos, mKeys, pos + 1, mCount - pos);
+        mKeys[pos] = capk;
+        mCount++;
+    }
+
+    /** @return position of {@code key}, or -(insertion point) - 1 */
+    private int search(long key) {
+        int lo = 0;
+        int hi = mCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = mKeys[mid].mKey;
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private boolean checksumMatches(byte[] tlv, int rid, int idx, int mod, int exp, int sum) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        md.update(tlv, mIndex.valueOffset(rid), 5);
+        md.update(tlv, mIndex.valueOffset(idx), 1);
+        md.update(tlv, mIndex.valueOffset(mod), mIndex.valueLength(mod));
+        md.update(tlv, mIndex.valueOffset(exp), mIndex.valueLength(exp));
+        byte[] digest = md.digest();
+        int off = mIndex.valueOffset(sum);
+        for (int i = 0; i < 20; i++) {
+            if (digest[i] != tlv[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * DF05 as yyyymmdd: eight ASCII digits (the SDK's format), or BCD
+     * yymmdd / yyyymmdd.
+     *
+     * @return the date, or -1 when it is neither
+     */
+    static int parseDate(byte[] b, int off, int len) {
+        int v = 0;
+        if (len == 8) {
+            for (int i = 0; i < 8; i++) {
+                int d = b[off + i] - '0';
+                if (d < 0 || d > 9) {
+                    return -1;
+                }
+                v = v * 10 + d;
+            }
+            return v;
+        }
+        if (len != 3 && len != 4) {
+            return -1;
+        }
+        for (int i = 0; i < len; i++) {
+            int hi = (b[off + i] >> 4) & 0xF;
+            int lo = b[off + i] & 0xF;
+            if (hi > 9 || lo > 9) {
+                return -1;
+            }
+            v = v * 100 + hi * 10 + lo;
+        }
+        return len == 3 ? 20000000 + v : v;
+    }
+}
@@ -0,0 +1,58 @@
+package test.apidemo.emv;
+
+/**
+ * Card scheme of an application, told apart by the RID (first five bytes)
+ * of its AID.
+ */
+public final class CardBrand {
+
+    public static final int OTHER = 0;
+    public static final int VISA = 1;
+    public static final int MASTERCARD = 2;
+    public static final int UNIONPAY = 3;
+    public static final int MIR = 4;
+
+    public static final int COUNT = 5;
+
+    private static final String[] NAMES = {"OTHER", "VISA", "MASTERCARD", "UNIONPAY", "MIR"};
+
+    private static final byte[][] RIDS = {
+            null,
+            {(byte) 0xA0, 0x00, 0x00, 0x00, 0x03},
+            {(byte) 0xA0, 0x00, 0x00, 0x00, 0x04},
+            {(byte) 0xA0, 0x00, 0x00, 0x03, 0x33},
+            {(byte) 0xA0, 0x00, 0x00, 0x06, 0x58},
+    };
+
+    private CardBrand() {
+    }
+
+    /** @return the brand for an AID (tag 84, 4F or 9F06), {@link #OTHER} when unknown */
+    public static int fromAid(byte[] aid, int off, int len) {
+        if (len < 5) {
+            return OTHER;
+        }
+        for (int brand = 1; brand < COUNT; brand++) {
+            byte[] rid = RIDS[brand];
+            int i = 0;
+            while (i < 5 && aid[off + i] == rid[i]) {
+                i++;
+            }
+            if (i == 5) {
+                return brand;
+            }
+        }
+        return OTHER;
+    }
+
+    /** Brand of the application selected in {@code snapshot}, from tag 84 */
+    public static int fromSnapshot(EmvTagSnapshot snapshot) {
+        TlvIndex index = snapshot.getIndex();
+        int slot = index.find(0x84);
+        return slot < 0 ? OTHER : fromAid(index.buffer(), index.valueOffset(slot), index.valueLength(slot));
+    }
+
+    public static String name(int brand) {
+        return brand >= 0 && brand < COUNT ? NAMES[brand] : NAMES[OTHER];
+    }
+}
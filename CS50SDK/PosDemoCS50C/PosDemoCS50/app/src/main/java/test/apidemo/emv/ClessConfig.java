@@ -0,0 +1,85 @@
+package test.apidemo.emv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Configuration of the PayPass, PayWave and ExpressPay kernels.
+ *
+ * The file is plain text, one set call per line: kernel name, call keyword
+ * and the TLV data in hex, e.g. {@code PAYWAVE AID 9F0607A0000000031010...};
+ * {@code #} starts a comment. See {@link PaypassConfig},
+ * {@link PayWaveConfig} and {@link ExpressConfig} for the keywords.
+ */
+public class ClessConfig {
+
+    private final PaypassConfig mPaypass = new PaypassConfig();
+    private final PayWaveConfig mPayWave = new PayWaveConfig();
+    private final ExpressConfig mExpress = new ExpressConfig();
+
+    /**
+     * Parse a configuration file.
+     *
+     * @throws IOException on read errors or a line that does not validate
+     */
+    public static ClessConfig parse(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+        ClessConfig config = new ClessConfig();
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            int hash = line.indexOf('#');
+            if (hash >= 0) {
+                line = line.substring(0, hash);
+            }
+            line = line.trim();
+            if (line.length() == 0) {
+                continue;
+            }
+            String[] f = line.split("\\s+");
+            if (f.length != 3) {
+                throw new IOException("line " + lineNo + ": expected kernel, call and data");
+            }
+            KernelConfig kernel = config.getKernel(f[0]);
+            int call = kernel != null ? kernel.callFor(f[1]) : -1;
+            if (call < 0) {
+                throw new IOException("line " + lineNo + ": unknown entry " + f[0] + " " + f[1]);
+            }
+            try {
+                kernel.add(call, f[2]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("line " + lineNo + ": " + e.getMessage());
+            }
+        }
+        return config;
+    }
+
+    public PaypassConfig getPaypass() {
+        return mPaypass;
+    }
+
+    public PayWaveConfig getPayWave() {
+        return mPayWave;
+    }
+
+    public ExpressConfig getExpress() {
+        return mExpress;
+    }
+
+    /** @return the kernel with this name, or null */
+    public KernelConfig getKernel(String name) {
+        for (KernelConfig k : getKernels()) {
+            if (k.getName().equals(name)) {
+                return k;
+            }
+        }
+        return null;
+    }
+
+    public KernelConfig[] getKernels() {
+        return new KernelConfig[]{mPaypass, mPayWave, mExpress};
+    }
+}
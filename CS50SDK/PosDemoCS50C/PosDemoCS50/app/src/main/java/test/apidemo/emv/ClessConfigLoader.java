@@ -0,0 +1,131 @@
+package test.apidemo.emv;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pushes a {@link ClessConfig} to the contactless kernels, skipping every
+ * kernel whose configuration hash matches what was last pushed.
+ *
+ * A kernel is the unit: its set calls carry no delete, so a change is
+ * applied by initialising it and sending its whole configuration again.
+ * Kernels without any configuration are left alone. The pushed hashes are
+ * kept in a small state file, one {@code NAME hash} line per kernel; a
+ * kernel that fails is dropped from it so the next start retries it.
+ *
+ * The state only describes a kernel that has stayed initialised: call
+ * {@link #invalidate()} whenever the kernels are uninitialised or
+ * initialised again, since they come up without any configuration.
+ */
+public class ClessConfigLoader {
+
+    private final ClessKernel mKernel;
+    private final File mStateFile;
+    private int mCalls;
+
+    public ClessConfigLoader(ClessKernel kernel, File stateFile) {
+        mKernel = kernel;
+        mStateFile = stateFile;
+    }
+
+    /**
+     * @return number of kernels pushed (0 when all were up to date), or the
+     * first negative kernel return code
+     */
+    public int apply(ClessConfig config) {
+        mCalls = 0;
+        Map<String, String> state = readState();
+        int pushed = 0;
+        int ret = 0;
+        for (KernelConfig k : config.getKernels()) {
+            if (k.isEmpty() || k.getHash().equals(state.get(k.getName()))) {
+                continue;
+            }
+            state.remove(k.getName());
+            ret = k.push(mKernel);
+            if (ret < 0) {
+                break;
+            }
+            mCalls += ret;
+            state.put(k.getName(), k.getHash());
+            pushed++;
+        }
+        if (pushed > 0 || ret < 0) {
+            try {
+                writeState(state);
+            } catch (IOException e) {
+                // the kernels are up to date; the next start just pushes again
+                invalidate();
+            }
+        }
+        return ret < 0 ? ret : pushed;
+    }
+
+    /** Set calls made by the last {@link #apply} */
+    public int getCalls() {
+        return mCalls;
+    }
+
+    /** Forget what the kernels hold, so the next {@link #apply} pushes everything */
+    public void invalidate() {
+        mStateFile.delete();
+    }
+
+    private Map<String, String> readState() {
+        Map<String, String> state = new HashMap<String, String>();
+        if (!mStateFile.exists()) {
+            return state;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mStateFile), "US-ASCII"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] f = line.split(" ");
+                if (f.length != 2) {
+                    state.clear();
+                    break;
+                }
+                state.put(f[0], f[1]);
+            }
+        } catch (IOException e) {
+            state.clear();
+        } finally {
+            closeQuietly(reader);
+        }
+        return state;
+    }
+
+    private void writeState(Map<String, String> state) throws IOException {
+        File tmp = new File(mStateFile.getPath() + ".tmp");
+        Writer w = new OutputStreamWriter(new FileOutputStream(tmp), "US-ASCII");
+        try {
+            for (Map.Entry<String, String> e : state.entrySet()) {
+                w.write(e.getKey() + " " + e.getValue() + "\n");
+            }
+        } finally {
+            w.close();
+        }
+        if (!tmp.renameTo(mStateFile)) {
+            tmp.delete();
+            throw new IOException("cannot replace " + mStateFile);
+        }
+    }
+
+    private static void closeQuietly(BufferedReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
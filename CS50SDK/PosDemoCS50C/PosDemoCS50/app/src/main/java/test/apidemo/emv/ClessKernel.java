@@ -0,0 +1,54 @@
+package test.apidemo.emv;
+
+/**
+ * Contactless kernel configuration calls used outside the activities.
+ *
+ * Method names and arguments follow {@link com.ctk.sdk.PosApiHelper} so the
+ * production adapter is a straight delegation. Every set call takes its
+ * TLV list as an upper case hex string; return codes keep the SDK
+ * convention (0 success, negative fail).
+ */
+public interface ClessKernel {
+
+    int paypassKernelInit();
+
+    int paypassAidSet(String tlv);
+
+    int paypassCapkSet(String tlv);
+
+    int paypassReaderSet(String tlv);
+
+    int paypassKernelSet(String tlv);
+
+    int paypassTransSet(String tlv);
+
+    int payWaveKernelInit();
+
+    int payWaveClearAllTerm();
+
+    int payWaveClearAllCapk();
+
+    int payWaveClearAllAids();
+
+    int payWaveAidSet(String tlv);
+
+    int payWaveCapkSet(String tlv);
+
+    int payWaveTermSet(String tlv);
+
+    int expressKernelInit();
+
+    int expressAidSet(String tlv);
+
+    int expressCapkSet(String tlv);
+
+    int expressGeneralParamSet(String tlv);
+
+    int expressDrlParamSet(String tlv);
+
+    int expressCrlParamSet(String tlv);
+
+    int expressExceptionFileParamSet(String tlv);
+
+    int expressKernelConfigSet(String tlv);
+}
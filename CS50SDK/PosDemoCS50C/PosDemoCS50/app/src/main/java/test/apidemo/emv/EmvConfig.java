@@ -0,0 +1,208 @@
+package test.apidemo.emv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Contact EMV kernel configuration: terminal parameters, AIDs and CAPKs.
+ *
+ * The file is plain text, one entry per line, {@code TERM}, {@code AID} or
+ * {@code CAPK} followed by the TLV data in hex; {@code #} starts a comment.
+ * AIDs are keyed by 9F06 and CAPKs by RID + 9F22, and a later line with the
+ * same key replaces the earlier one, as the kernel does. The replacement
+ * keeps the place of the first line, so AIDs are pushed once each in the
+ * order they first appear.
+ *
+ * Every entry carries a SHA-1 of its data and the whole configuration a hash
+ * over all entries, so comments and line order of duplicates do not count as
+ * changes. {@link EmvConfigLoader} uses these to push only what changed.
+ */
+public class EmvConfig {
+
+    public static final int KIND_AID = 1;
+    public static final int KIND_CAPK = 2;
+
+    public static class Entry {
+        private final int mKind;
+        private final String mKey;
+        private final byte[] mData;
+        private final String mHash;
+
+        Entry(int kind, String key, byte[] data) {
+            mKind = kind;
+            mKey = key;
+            mData = data;
+            mHash = sha1(data);
+        }
+
+        public int getKind() {
+            return mKind;
+        }
+
+        /** Hex of 9F06 for AIDs, RID + index for CAPKs */
+        public String getKey() {
+            return mKey;
+        }
+
+        public byte[] getData() {
+            return mData;
+        }
+
+        public String getHash() {
+            return mHash;
+        }
+    }
+
+    private final byte[] mTermParas;
+    private final String mTermHash;
+    private final Map<String, Entry> mAids;
+    private final Map<String, Entry> mCapks;
+    private final String mHash;
+
+    private EmvConfig(byte[] termParas, Map<String, Entry> aids, Map<String, Entry> capks) {
+        mTermParas = termParas;
+        mTermHash = sha1(termParas);
+        mAids = aids;
+        mCapks = capks;
+
+        StringBuilder sb = new StringBuilder(mTermHash);
+        for (Entry e : aids.values()) {
+            sb.append('A').append(e.mHash);
+        }
+        for (Entry e : capks.values()) {
+            sb.append('C').append(e.mHash);
+        }
+        mHash = sha1(sb.toString().getBytes());
+    }
+
+    /**
+     * Parse a configuration file.
+     *
+     * @throws IOException on read errors or a malformed line (bad hex, TLV
+     * that does not parse, AID without 9F06, CAPK without 9F06/9F22)
+     */
+    public static EmvConfig parse(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+        byte[] term = new byte[0];
+        Map<String, Entry> aids = new LinkedHashMap<String, Entry>();
+        Map<String, Entry> capks = new LinkedHashMap<String, Entry>();
+        TlvIndex index = new TlvIndex();
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            int hash = line.indexOf('#');
+            if (hash >= 0) {
+                line = line.substring(0, hash);
+            }
+            line = line.trim();
+            if (line.length() == 0) {
+                continue;
+            }
+            int sp = line.indexOf(' ');
+            if (sp < 0) {
+                throw new IOException("line " + lineNo + ": missing data");
+            }
+            String kind = line.substring(0, sp);
+            byte[] data = fromHex(line.substring(sp + 1).trim());
+            if (data == null || index.build(data, 0, data.length) < 0) {
+                throw new IOException("line " + lineNo + ": bad TLV data");
+            }
+            if ("TERM".equals(kind)) {
+                term = data;
+            } else if ("AID".equals(kind)) {
+                int aid = index.find(0x9F06);
+                if (aid < 0) {
+                    throw new IOException("line " + lineNo + ": AID without 9F06");
+                }
+                String key = toHex(data, index.valueOffset(aid), index.valueLength(aid));
+                aids.put(key, new Entry(KIND_AID, key, data));
+            } else if ("CAPK".equals(kind)) {
+                int rid = index.find(0x9F06);
+                int idx = index.find(0x9F22);
+                if (rid < 0 || idx < 0) {
+                    throw new IOException("line " + lineNo + ": CAPK without 9F06/9F22");
+                }
+                String key = toHex(data, index.valueOffset(rid), index.valueLength(rid))
+                        + toHex(data, index.valueOffset(idx), index.valueLength(idx));
+                capks.put(key, new Entry(KIND_CAPK, key, data));
+            } else {
+                throw new IOException("line " + lineNo + ": unknown entry " + kind);
+            }
+        }
+        return new EmvConfig(term, aids, capks);
+    }
+
+    public byte[] getTermParas() {
+        return mTermParas;
+    }
+
+    public String getTermHash() {
+        return mTermHash;
+    }
+
+    public Collection<Entry> getAids() {
+        return new ArrayList<Entry>(mAids.values());
+    }
+
+    public Collection<Entry> getCapks() {
+        return new ArrayList<Entry>(mCapks.values());
+    }
+
+    public Entry getAid(String key) {
+        return mAids.get(key);
+    }
+
+    public Entry getCapk(String key) {
+        return mCapks.get(key);
+    }
+
+    /** Content hash of the whole configuration */
+    public String getHash() {
+        return mHash;
+    }
+
+    static String sha1(byte[] data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] d = md.digest(data);
+            return toHex(d, 0, d.length);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] b, int off, int len) {
+        char[] out = new char[len * 2];
+        for (int i = 0; i < len; i++) {
+            int v = b[off + i] & 0xFF;
+            out[i * 2] = Character.forDigit(v >> 4, 16);
+            out[i * 2 + 1] = Character.forDigit(v & 0x0F, 16);
+        }
+        return new String(out).toUpperCase();
+    }
+
+    static byte[] fromHex(String s) {
+        if ((s.length() & 1) != 0) {
+            return null;
+        }
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            int hi = Character.digit(s.charAt(i * 2), 16);
+            int lo = Character.digit(s.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,275 @@
+package test.apidemo.emv;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings the EMV kernel in line with an {@link EmvConfig} using as few kernel
+ * calls as possible.
+ *
+ * What was last pushed is remembered in a small state file (configuration
+ * hash plus one hash per AID and CAPK). When the hash matches nothing is sent
+ * at all; when AIDs or CAPKs changed only those are cleared and re-added; a
+ * missing state file or changed terminal parameters fall back to the full
+ * init / clear all / add all sequence. Meant to run on a worker thread
+ * right after the kernel is initialised, before the first transaction.
+ * The state only holds while the kernel stays initialised, so
+ * {@link #invalidate()} goes with every kernel init and uninit.
+ *
+ * CAPKs go through a {@link CapkStore} first: keys with a bad checksum or
+ * past their expiry date are not pushed, and one that expired since the
+ * last run is cleared from the kernel even when the file did not change.
+ */
+public class EmvConfigLoader {
+
+    /** {@link EmvKernel#saveTermParas} flag used after every AID, as before */
+    private static final int TERM_FLAG = 0;
+
+    private final EmvKernel mKernel;
+    private final File mStateFile;
+    private final CapkStore mCapks = new CapkStore();
+    private int mCalls;
+    private int mToday;
+    private int mBadCapks;
+    private int mExpiredCapks;
+
+    public EmvConfigLoader(EmvKernel kernel, File stateFile) {
+        mKernel = kernel;
+        mStateFile = stateFile;
+    }
+
+    /**
+     * @return number of kernel calls made (0 when the kernel was up to date),
+     * or the first negative kernel return code; the state is then dropped so
+     * the next start reloads everything
+     */
+    public int apply(EmvConfig config) {
+        mCalls = 0;
+        loadCapks(config);
+        State old = readState();
+        if (old != null && config.getHash().equals(old.hash)
+                && mCapks.diff(old.capks, new ArrayList<CapkStore.Capk>(), new ArrayList<CapkStore.Capk>()) == 0) {
+            return 0;
+        }
+        int ret;
+        if (old == null || !config.getTermHash().equals(old.term)) {
+            ret = reloadAll(config);
+        } else {
+            ret = pushDiff(config, old);
+        }
+        if (ret < 0) {
+            invalidate();
+            return ret;
+        }
+        try {
+            writeState(config);
+        } catch (IOException e) {
+            // the kernel is up to date; the next start just reloads everything
+            invalidate();
+        }
+        return mCalls;
+    }
+
+    /** Date used for CAPK expiry, yyyymmdd; 0 (the default) means today */
+    public void setToday(int yyyymmdd) {
+        mToday = yyyymmdd;
+    }
+
+    /** CAPKs left out by the last {@link #apply} for a bad format or checksum */
+    public int getBadCapks() {
+        return mBadCapks;
+    }
+
+    /** CAPKs left out by the last {@link #apply} because they expired */
+    public int getExpiredCapks() {
+        return mExpiredCapks;
+    }
+
+    /** Forget what the kernel holds, so the next {@link #apply} reloads everything */
+    public void invalidate() {
+        mStateFile.delete();
+    }
+
+    private int reloadAll(EmvConfig config) {
+        int ret;
+        if ((ret = call(mKernel.envParaInit())) < 0
+                || (ret = call(mKernel.clearAllCapks())) < 0
+                || (ret = call(mKernel.clearAllAids())) < 0) {
+            return ret;
+        }
+        for (int i = 0; i < mCapks.size(); i++) {
+            if ((ret = addCapk(mCapks.get(i))) < 0) {
+                return ret;
+            }
+        }
+        for (EmvConfig.Entry e : config.getAids()) {
+            if ((ret = addAid(config, e)) < 0) {
+                return ret;
+            }
+        }
+        return 0;
+    }
+
+    private int pushDiff(EmvConfig config, State old) {
+        int ret;
+        List<CapkStore.Capk> clear = new ArrayList<CapkStore.Capk>();
+        List<CapkStore.Capk> add = new ArrayList<CapkStore.Capk>();
+        mCapks.diff(old.capks, clear, add);
+        for (CapkStore.Capk capk : clear) {
+            if ((ret = clearCapk(capk)) < 0) {
+                return ret;
+            }
+        }
+        for (CapkStore.Capk capk : add) {
+            if ((ret = addCapk(capk)) < 0) {
+                return ret;
+            }
+        }
+        for (String key : old.aids.keySet()) {
+            if (config.getAid(key) == null && (ret = clearAid(key)) < 0) {
+                return ret;
+            }
+        }
+        for (EmvConfig.Entry e : config.getAids()) {
+            String hash = old.aids.get(e.getKey());
+            if (e.getHash().equals(hash)) {
+                continue;
+            }
+            if (hash != null && (ret = clearAid(e.getKey())) < 0) {
+                return ret;
+            }
+            if ((ret = addAid(config, e)) < 0) {
+                return ret;
+            }
+        }
+        return 0;
+    }
+
+    private int addAid(EmvConfig config, EmvConfig.Entry e) {
+        int ret = call(mKernel.addOneAid(e.getData(), e.getData().length));
+        if (ret < 0) {
+            return ret;
+        }
+        byte[] term = config.getTermParas();
+        return call(mKernel.saveTermParas(term, term.length, TERM_FLAG));
+    }
+
+    private int clearAid(String key) {
+        byte[] aid = EmvConfig.fromHex(key);
+        return call(mKernel.clearOneAid(aid, aid.length));
+    }
+
+    private int addCapk(CapkStore.Capk capk) {
+        return call(mKernel.addOneCapk(capk.getData(), capk.getData().length));
+    }
+
+    private int clearCapk(CapkStore.Capk capk) {
+        byte[] ridIndex = capk.getRidIndex();
+        return call(mKernel.clearOneCapk(ridIndex, ridIndex.length));
+    }
+
+    /** Verify the configured CAPKs and drop the expired ones */
+    private void loadCapks(EmvConfig config) {
+        mCapks.clear();
+        mBadCapks = 0;
+        for (EmvConfig.Entry e : config.getCapks()) {
+            if (mCapks.add(e.getData(), 0) < 0) {
+                mBadCapks++;
+            }
+        }
+        mExpiredCapks = mCapks.purgeExpired(mToday > 0 ? mToday : today());
+    }
+
+    private static int today() {
+        Calendar c = Calendar.getInstance();
+        return c.get(Calendar.YEAR) * 10000 + (c.get(Calendar.MONTH) + 1) * 100 + c.get(Calendar.DAY_OF_MONTH);
+    }
+
+    private int call(int ret) {
+        mCalls++;
+        return ret;
+    }
+
+    private static class State {
+        String hash;
+        String term;
+        final Map<String, String> aids = new HashMap<String, String>();
+        final CapkStore capks = new CapkStore();
+    }
+
+    /** @return last pushed state, or null when missing or unreadable */
+    private State readState() {
+        if (!mStateFile.exists()) {
+            return null;
+        }
+        State state = new State();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mStateFile), "US-ASCII"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] f = line.split(" ");
+                if (f.length == 2 && "hash".equals(f[0])) {
+                    state.hash = f[1];
+                } else if (f.length == 2 && "term".equals(f[0])) {
+                    state.term = f[1];
+                } else if (f.length == 3 && "aid".equals(f[0])) {
+                    state.aids.put(f[1], f[2]);
+                } else if (f.length == 3 && "capk".equals(f[0])) {
+                    if (!state.capks.addHeld(f[1], f[2])) {
+                        return null;
+                    }
+                } else {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+        return state.hash != null && state.term != null ? state : null;
+    }
+
+    private void writeState(EmvConfig config) throws IOException {
+        File tmp = new File(mStateFile.getPath() + ".tmp");
+        Writer w = new OutputStreamWriter(new FileOutputStream(tmp), "US-ASCII");
+        try {
+            w.write("hash " + config.getHash() + "\n");
+            w.write("term " + config.getTermHash() + "\n");
+            for (EmvConfig.Entry e : config.getAids()) {
+                w.write("aid " + e.getKey() + " " + e.getHash() + "\n");
+            }
+            for (int i = 0; i < mCapks.size(); i++) {
+                CapkStore.Capk capk = mCapks.get(i);
+                w.write("capk " + capk.getKeyHex() + " " + capk.getHash() + "\n");
+            }
+        } finally {
+            w.close();
+        }
+        if (!tmp.renameTo(mStateFile)) {
+            tmp.delete();
+            throw new IOException("cannot replace " + mStateFile);
+        }
+    }
+
+    private static void closeQuietly(BufferedReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package test.apidemo.emv;
+
+/**
+ * Contact EMV kernel operations used outside the activities.
+ *
+ * Method names and arguments follow {@link com.ctk.sdk.PosApiHelper} so the
+ * production adapter is a straight delegation; return codes keep the SDK
+ * convention (0 success, negative fail).
+ */
+public interface EmvKernel {
+
+    int envParaInit();
+
+    int clearAllAids();
+
+    /** @param aid AID (9F06 value) to remove */
+    int clearOneAid(byte[] aid, int len);
+
+    /** @param buf AID parameter TLV list starting with 9F06 */
+    int addOneAid(byte[] buf, int len);
+
+    int clearAllCapks();
+
+    /** @param key RID (5 bytes) followed by the CA public key index */
+    int clearOneCapk(byte[] key, int len);
+
+    /** @param buf CAPK TLV list (9F22, 9F06, DF05, DF06, DF07, DF04, DF03, DF02) */
+    int addOneCapk(byte[] buf, int len);
+
+    int saveTermParas(byte[] buf, int len, int flag);
+
+    /**
+     * Hand the host's answer to a transaction that went online.
+     *
+     * @param responseCode the two ASCII characters of 8A
+     * @param issuerData   91, 71 and 72 objects from the response
+     */
+    int setOnlineResult(byte[] responseCode, byte[] issuerData, int len);
+}
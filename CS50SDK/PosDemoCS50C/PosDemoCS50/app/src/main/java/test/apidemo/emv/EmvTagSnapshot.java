@@ -0,0 +1,218 @@
+package test.apidemo.emv;
+
+import java.util.Arrays;
+
+/**
+ * Per-transaction cache of kernel tag values, kept as one packed TLV buffer
+ * with a {@link TlvIndex} over it.
+ *
+ * The kernels only hand out one tag per call, so {@link #fetch(int[])} asks
+ * for each tag at most once per transaction: values already held, tags the
+ * kernel said it does not have, tags seeded with {@link #put} and repeats in
+ * the list cost no call. Receipt, journal and ISO 8583 code then read from
+ * the snapshot instead of going back to the kernel. Call {@link #reset} when
+ * the next transaction starts; the buffers are reused. Values a later
+ * kernel step changes are read again with {@link #refresh}.
+ */
+public class EmvTagSnapshot {
+
+    /** Data for an online authorisation request (DE55) plus the card fields */
+    public static final int[] ONLINE_TAGS = {
+            0x9F26, 0x9F27, 0x9F10, 0x9F37, 0x9F36, 0x95, 0x9A, 0x9C,
+            0x9F02, 0x5F2A, 0x82, 0x9F1A, 0x9F03, 0x9F33, 0x9F34, 0x9F35,
+            0x9F1E, 0x84, 0x9F09, 0x9F41, 0x5F34, 0x5A, 0x57, 0x5F24, 0x9F6E
+    };
+
+    /** The ICC related data of {@link #ONLINE_TAGS} that goes into DE55, without the card fields */
+    public static final int[] DE55_TAGS = {
+            0x9F26, 0x9F27, 0x9F10, 0x9F37, 0x9F36, 0x95, 0x9A, 0x9C,
+            0x9F02, 0x5F2A, 0x82, 0x9F1A, 0x9F03, 0x9F33, 0x9F34, 0x9F35,
+            0x9F1E, 0x84, 0x9F09, 0x9F41, 0x9F6E
+    };
+
+    /**
+     * Values the PIN / CVM step changes: CVM results, TVR and TSI, and the
+     * cryptogram with its data when the kernel generates it after the PIN
+     */
+    public static final int[] CVM_TAGS = {
+            0x9F34, 0x95, 0x9B, 0x9F26, 0x9F27, 0x9F10
+    };
+
+    /** Fields printed on a customer receipt */
+    public static final int[] RECEIPT_TAGS = {
+            0x5A, 0x5F20, 0x5F24, 0x50, 0x9F12, 0x4F, 0x84, 0x9F26,
+            0x95, 0x9B, 0x9F02, 0x9A, 0x9F21, 0x8A, 0x9F34
+    };
+
+    /** Largest value read from a kernel in one call */
+    private static final int MAX_VALUE = 1024;
+
+    private final TlvWriter mTlv = new TlvWriter(512);
+    private final TlvIndex mIndex = new TlvIndex(48);
+    private final TlvIndex mAbsent = new TlvIndex(16);
+    private final byte[] mValue = new byte[MAX_VALUE];
+    private TagSource mSource;
+    private int mCalls;
+
+    /** Start a new transaction reading from {@code source} */
+    public void reset(TagSource source) {
+        mSource = source;
+        mTlv.reset();
+        mIndex.clear();
+        mAbsent.clear();
+        mCalls = 0;
+    }
+
+    /**
+     * Make sure every tag in {@code tags} has been asked for.
+     *
+     * @return number of kernel calls made by this fetch
+     */
+    public int fetch(int[] tags) {
+        int calls = 0;
+        for (int i = 0; i < tags.length; i++) {
+            int tag = tags[i];
+            if (mIndex.contains(tag) || mAbsent.contains(tag)) {
+                continue;
+            }
+            calls++;
+            int len = mSource.getTagData(mValue, MAX_VALUE, tag);
+            if (len > 0 && len <= MAX_VALUE) {
+                mTlv.put(tag, mValue, 0, len);
+                indexLast(tag, len);
+            } else {
+                mAbsent.add(tag, 0, 0);
+            }
+        }
+        mCalls += calls;
+        return calls;
+    }
+
+    /**
+     * Ask the kernel for {@code tags} again and replace what the snapshot
+     * holds for them; every other tag keeps its cached value.
+     *
+     * @return number of kernel calls made, one per tag
+     */
+    public int refresh(int[] tags) {
+        for (int i = 0; i < tags.length; i++) {
+            int tag = tags[i];
+            int len = mSource.getTagData(mValue, MAX_VALUE, tag);
+            boolean present = len > 0 && len <= MAX_VALUE;
+            int slot = mIndex.find(tag);
+            if (slot >= 0 && present && mIndex.valueLength(slot) == len) {
+                // the usual case: fixed-length values, overwritten in place
+                System.arraycopy(mValue, 0, mIndex.buffer(), mIndex.valueOffset(slot), len);
+                continue;
+            }
+            if (slot >= 0) {
+                drop(tag);
+            }
+            if (present) {
+                // a stale entry in mAbsent does no harm, mIndex is looked at first
+                mTlv.put(tag, mValue, 0, len);
+                indexLast(tag, len);
+            } else {
+                mAbsent.add(tag, 0, 0);
+            }
+        }
+        mCalls += tags.length;
+        return tags.length;
+    }
+
+    /** Record a value the app already knows (amount, date) so it is never fetched */
+    public void put(int tag, byte[] value, int off, int len) {
+        if (mIndex.contains(tag)) {
+            return;
+        }
+        mTlv.put(tag, value, off, len);
+        indexLast(tag, len);
+    }
+
+    public boolean contains(int tag) {
+        return mIndex.contains(tag);
+    }
+
+    /** @return value length of {@code tag}, or -1 when not in the snapshot */
+    public int length(int tag) {
+        int slot = mIndex.find(tag);
+        return slot < 0 ? -1 : mIndex.valueLength(slot);
+    }
+
+    /**
+     * Copy the value of {@code tag} into {@code dst}.
+     *
+     * @return bytes copied, or -1 when not in the snapshot
+     */
+    public int copy(int tag, byte[] dst, int off) {
+        return mIndex.copy(tag, dst, off);
+    }
+
+    /** Upper-case hex of the value of {@code tag}, or null when not in the snapshot */
+    public String getHex(int tag) {
+        int slot = mIndex.find(tag);
+        if (slot < 0) {
+            return null;
+        }
+        return EmvConfig.toHex(mIndex.buffer(), mIndex.valueOffset(slot), mIndex.valueLength(slot));
+    }
+
+    /**
+     * Append the objects for {@code tags}, in that order, to {@code out}
+     * (e.g. the DE55 field). Tags not in the snapshot are skipped.
+     *
+     * @return number of objects written
+     */
+    public int writeTo(TlvWriter out, int[] tags) {
+        int n = 0;
+        for (int i = 0; i < tags.length; i++) {
+            int slot = mIndex.find(tags[i]);
+            if (slot >= 0) {
+                out.put(tags[i], mIndex.buffer(), mIndex.valueOffset(slot), mIndex.valueLength(slot));
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** Packed TLV of everything fetched so far; valid up to {@link #getLength()} */
+    public byte[] getBuffer() {
+        return mTlv.buffer();
+    }
+
+    public int getLength() {
+        return mTlv.length();
+    }
+
+    public TlvIndex getIndex() {
+        return mIndex;
+    }
+
+    /** Kernel calls made since {@link #reset} */
+    public int getKernelCalls() {
+        return mCalls;
+    }
+
+    /** Take the object for {@code tag} out of the buffer; only when a refreshed value changed length */
+    private void drop(int tag) {
+        byte[] old = Arrays.copyOf(mTlv.buffer(), mTlv.length());
+        mTlv.reset();
+        TlvReader r = new TlvReader(old, 0, old.length);
+        while (r.next() == 1) {
+            if (r.tag() != tag) {
+                mTlv.putRaw(old, r.tagOffset(), r.encodedLength());
+            }
+        }
+        mIndex.build(mTlv.buffer(), 0, mTlv.length());
+    }
+
+    private void indexLast(int tag, int len) {
+        if (mIndex.buffer() == mTlv.buffer() && !Tlv.isConstructed(tag)) {
+            mIndex.add(tag, mTlv.length() - len, len);
+        } else {
+            // first value, or the writer moved to a bigger array: re-read all
+            // offsets (a snapshot is only a few hundred bytes)
+            mIndex.build(mTlv.buffer(), 0, mTlv.length());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package test.apidemo.emv;
+
+/**
+ * ExpressPay (American Express contactless) kernel configuration.
+ *
+ * AIDs are keyed by 9F06. The other lists have no key tag documented for
+ * this SDK, so CAPKs, dynamic reader limits, revocation and exception file
+ * entries are only merged when identical. Pushed as ExpressKernelInit, the
+ * AIDs, the CAPKs, general parameters, DRL, CRL and exception file entries,
+ * then the kernel configuration.
+ */
+public class ExpressConfig extends KernelConfig {
+
+    public static final int CALL_AID = 1;
+    public static final int CALL_CAPK = 2;
+    public static final int CALL_GENERAL = 3;
+    public static final int CALL_DRL = 4;
+    public static final int CALL_CRL = 5;
+    public static final int CALL_EXCEPTION_FILE = 6;
+    public static final int CALL_KERNEL_CONFIG = 7;
+
+    private static final Call[] CALLS = {
+            new Call(CALL_AID, "AID", true, 0x9F06),
+            new Call(CALL_CAPK, "CAPK", true),
+            new Call(CALL_GENERAL, "GENERAL", false),
+            new Call(CALL_DRL, "DRL", true),
+            new Call(CALL_CRL, "CRL", true),
+            new Call(CALL_EXCEPTION_FILE, "EXCEPTION", true),
+            new Call(CALL_KERNEL_CONFIG, "CONFIG", false),
+    };
+
+    @Override
+    public String getName() {
+        return "EXPRESS";
+    }
+
+    @Override
+    protected Call[] calls() {
+        return CALLS;
+    }
+
+    @Override
+    protected int init(ClessKernel kernel) {
+        return kernel.expressKernelInit();
+    }
+
+    @Override
+    protected int set(ClessKernel kernel, int call, String payload) {
+        switch (call) {
+            case CALL_AID:
+                return kernel.expressAidSet(payload);
+            case CALL_CAPK:
+                return kernel.expressCapkSet(payload);
+            case CALL_GENERAL:
+                return kernel.expressGeneralParamSet(payload);
+            case CALL_DRL:
+                return kernel.expressDrlParamSet(payload);
+            case CALL_CRL:
+                return kernel.expressCrlParamSet(payload);
+            case CALL_EXCEPTION_FILE:
+                return kernel.expressExceptionFileParamSet(payload);
+            default:
+                return kernel.expressKernelConfigSet(payload);
+        }
+    }
+}
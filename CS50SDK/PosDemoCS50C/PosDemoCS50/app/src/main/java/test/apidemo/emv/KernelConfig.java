@@ -0,0 +1,241 @@
+package test.apidemo.emv;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration of one contactless kernel: the TLV lists handed to its set
+ * calls (AID, CAPK, reader, terminal ...), in the order the kernel wants them.
+ *
+ * Every list is checked once when it is added: it must parse as TLV, carry
+ * no tag twice, contain the tags that key its call, and have the fixed EMV
+ * length for the tags that have one. It is then turned into the upper case
+ * hex string the SDK takes and kept, so a push only hands over ready
+ * strings. Repeatable calls (AIDs, CAPKs ...) are keyed and a later list
+ * with the same key replaces the earlier one; single calls keep the last.
+ *
+ * {@link #getHash()} covers everything that would be pushed, which lets
+ * {@link ClessConfigLoader} skip kernels that are already up to date.
+ */
+public abstract class KernelConfig {
+
+    /** One kind of set call */
+    protected static final class Call {
+        final int mId;
+        final String mKeyword;
+        final boolean mRepeatable;
+        final int[] mKeyTags;
+
+        /**
+         * @param keyword name of the call in the configuration file
+         * @param keyTags tags whose values key a repeatable call; none keys it
+         *                by the whole list
+         */
+        protected Call(int id, String keyword, boolean repeatable, int... keyTags) {
+            mId = id;
+            mKeyword = keyword;
+            mRepeatable = repeatable;
+            mKeyTags = keyTags;
+        }
+    }
+
+    /** A validated TLV list and the string pushed to the kernel */
+    public static class Item {
+        private final int mCall;
+        private final byte[] mData;
+        private final String mPayload;
+
+        Item(int call, byte[] data) {
+            mCall = call;
+            mData = data;
+            mPayload = EmvConfig.toHex(data, 0, data.length);
+        }
+
+        public int getCall() {
+            return mCall;
+        }
+
+        public byte[] getData() {
+            return mData;
+        }
+
+        public String getPayload() {
+            return mPayload;
+        }
+    }
+
+    /** Tags with one fixed length in EMV Book 3 / the contactless books */
+    private static final int[][] FIXED_LENGTHS = {
+            {0x9A, 3}, {0x9C, 1}, {0x5F2A, 2}, {0x5F36, 1}, {0x9F02, 6}, {0x9F03, 6},
+            {0x9F09, 2}, {0x9F1A, 2}, {0x9F21, 3}, {0x9F22, 1}, {0x9F35, 1}, {0x9F40, 5},
+            {0x9F66, 4}, {0xDF8123, 6}, {0xDF8124, 6}, {0xDF8125, 6}, {0xDF8126, 6},
+    };
+
+    private final Map<String, Item> mItems = new LinkedHashMap<String, Item>();
+    private final TlvIndex mIndex = new TlvIndex();
+    private final TlvReader mReader = new TlvReader();
+    private String mHash;
+
+    /** Name used in the configuration and state files, e.g. PAYPASS */
+    public abstract String getName();
+
+    /** The set calls of this kernel, in push order */
+    protected abstract Call[] calls();
+
+    /** Initialise the kernel before the set calls; 0 or a negative error */
+    protected abstract int init(ClessKernel kernel);
+
+    protected abstract int set(ClessKernel kernel, int call, String payload);
+
+    /** @return the call id for a configuration file keyword, or -1 */
+    public int callFor(String keyword) {
+        for (Call c : calls()) {
+            if (c.mKeyword.equals(keyword)) {
+                return c.mId;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add the TLV list for one set call.
+     *
+     * @throws IllegalArgumentException when the call is unknown or the list is
+     * not valid for it
+     */
+    public void add(int callId, byte[] tlv) {
+        Call call = findCall(callId);
+        if (call == null) {
+            throw new IllegalArgumentException(getName() + ": unknown call " + callId);
+        }
+        validate(call, tlv);
+        String key;
+        if (!call.mRepeatable) {
+            key = call.mKeyword;
+        } else if (call.mKeyTags.length == 0) {
+            key = call.mKeyword + " " + EmvConfig.sha1(tlv);
+        } else {
+            StringBuilder sb = new StringBuilder(call.mKeyword).append(' ');
+            for (int tag : call.mKeyTags) {
+                int slot = mIndex.find(tag);
+                sb.append(EmvConfig.toHex(tlv, mIndex.valueOffset(slot), mIndex.valueLength(slot)));
+            }
+            key = sb.toString();
+        }
+        // re-insert so a replaced entry moves to the end, as a later line would
+        mItems.remove(key);
+        mItems.put(key, new Item(callId, tlv.clone()));
+        mHash = null;
+    }
+
+    /** Add the list built in {@code writer} */
+    public void add(int callId, TlvWriter writer) {
+        add(callId, writer.toByteArray());
+    }
+
+    public void add(int callId, String hex) {
+        byte[] tlv = EmvConfig.fromHex(hex);
+        if (tlv == null) {
+            throw new IllegalArgumentException(getName() + ": bad hex");
+        }
+        add(callId, tlv);
+    }
+
+    public boolean isEmpty() {
+        return mItems.isEmpty();
+    }
+
+    /** Items in push order */
+    public List<Item> getItems() {
+        List<Item> items = new ArrayList<Item>(mItems.size());
+        for (Call c : calls()) {
+            for (Item item : mItems.values()) {
+                if (item.mCall == c.mId) {
+                    items.add(item);
+                }
+            }
+        }
+        return items;
+    }
+
+    /** Content hash of everything {@link #push} sends */
+    public String getHash() {
+        if (mHash == null) {
+            StringBuilder sb = new StringBuilder(getName());
+            for (Item item : getItems()) {
+                sb.append(' ').append(item.mCall).append(':').append(item.mPayload);
+            }
+            mHash = EmvConfig.sha1(sb.toString().getBytes());
+        }
+        return mHash;
+    }
+
+    /**
+     * Initialise the kernel and send every item.
+     *
+     * @return number of set calls made, or the first negative return code
+     */
+    public int push(ClessKernel kernel) {
+        int ret = init(kernel);
+        if (ret < 0) {
+            return ret;
+        }
+        int calls = 0;
+        for (Item item : getItems()) {
+            ret = set(kernel, item.mCall, item.mPayload);
+            if (ret < 0) {
+                return ret;
+            }
+            calls++;
+        }
+        return calls;
+    }
+
+    private Call findCall(int id) {
+        for (Call c : calls()) {
+            if (c.mId == id) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private void validate(Call call, byte[] tlv) {
+        TlvReader r = mReader.reset(tlv, 0, tlv.length);
+        mIndex.clear();
+        int ret;
+        while ((ret = r.next()) == 1) {
+            if (mIndex.contains(r.tag())) {
+                throw new IllegalArgumentException(fail(call, r.tag(), "twice"));
+            }
+            int fixed = fixedLength(r.tag());
+            if (fixed > 0 && r.valueLength() != fixed) {
+                throw new IllegalArgumentException(fail(call, r.tag(), "length " + r.valueLength()));
+            }
+            mIndex.add(r.tag(), r.valueOffset(), r.valueLength());
+        }
+        if (ret < 0 || mIndex.size() == 0) {
+            throw new IllegalArgumentException(getName() + " " + call.mKeyword + ": bad TLV data");
+        }
+        for (int tag : call.mKeyTags) {
+            if (!mIndex.contains(tag)) {
+                throw new IllegalArgumentException(fail(call, tag, "missing"));
+            }
+        }
+    }
+
+    private String fail(Call call, int tag, String what) {
+        return getName() + " " + call.mKeyword + ": tag " + Integer.toHexString(tag).toUpperCase() + " " + what;
+    }
+
+    private static int fixedLength(int tag) {
+        for (int[] f : FIXED_LENGTHS) {
+            if (f[0] == tag) {
+                return f[1];
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,127 @@
+package test.apidemo.emv;
+
+/**
+ * Runs the amount-independent part of transaction setup (kernel init,
+ * transaction and card type, PIN pad) while the lane is idle, so that after
+ * card presentation only the amount and the kernel's process call remain.
+ *
+ * Each kernel registers a {@link Warmup}. {@link #warmAll()} is called when
+ * the lane goes idle and again from a periodic idle tick; sessions older than
+ * {@link #setMaxIdleMillis} are warmed again so a kernel is never used with
+ * state from long ago. {@link #acquire} hands a session to a transaction
+ * (warming it on the spot if it was cold or stale) and marks it used, so the
+ * next idle tick prepares a fresh one.
+ *
+ * Not thread safe; call from the EMV work thread only.
+ */
+public class KernelSessionManager {
+
+    public static final int KERNEL_EMV = 0;
+    public static final int KERNEL_PAYPASS = 1;
+    public static final int KERNEL_PAYWAVE = 2;
+    public static final int KERNEL_EXPRESS = 3;
+    /** PIN pad set-up shared by every kernel that may ask for a PIN */
+    public static final int KERNEL_PINPAD = 4;
+
+    private static final int KERNELS = 5;
+
+    /** Amount-independent set-up of one kernel */
+    public interface Warmup {
+        /** @return 0 on success, else the failing SDK return code */
+        int warm();
+    }
+
+    private final Warmup[] mWarmups = new Warmup[KERNELS];
+    private final long[] mWarmAt = new long[KERNELS];
+    private final boolean[] mWarm = new boolean[KERNELS];
+    private long mMaxIdleNanos = 10 * 60 * 1000000000L;
+    private int mHits;
+    private int mMisses;
+
+    public void register(int kernel, Warmup warmup) {
+        mWarmups[kernel] = warmup;
+        mWarm[kernel] = false;
+    }
+
+    /** Sessions warmed longer ago than this are redone before use */
+    public void setMaxIdleMillis(long millis) {
+        mMaxIdleNanos = millis * 1000000L;
+    }
+
+    /**
+     * Warm every registered kernel that is cold or stale.
+     *
+     * @return number of kernels warmed, or the first failing return code
+     */
+    public int warmAll() {
+        long now = now();
+        int warmed = 0;
+        for (int k = 0; k < KERNELS; k++) {
+            if (mWarmups[k] != null && !isFresh(k, now)) {
+                int ret = warm(k, now);
+                if (ret != 0) {
+                    return ret;
+                }
+                warmed++;
+            }
+        }
+        return warmed;
+    }
+
+    /**
+     * Take the session of {@code kernel} for the transaction that is starting.
+     *
+     * @return 0 when ready (warmed now if it was not), else the failing code
+     */
+    public int acquire(int kernel) {
+        if (mWarmups[kernel] == null) {
+            return 0;
+        }
+        long now = now();
+        int ret = 0;
+        if (isFresh(kernel, now)) {
+            mHits++;
+        } else {
+            mMisses++;
+            ret = warm(kernel, now);
+        }
+        mWarm[kernel] = false;
+        return ret;
+    }
+
+    /** Drop every session, e.g. after the configuration was reloaded */
+    public void invalidate() {
+        for (int k = 0; k < KERNELS; k++) {
+            mWarm[k] = false;
+        }
+    }
+
+    public boolean isWarm(int kernel) {
+        return mWarmups[kernel] != null && isFresh(kernel, now());
+    }
+
+    /** Transactions that found their kernel already warm */
+    public int getHits() {
+        return mHits;
+    }
+
+    /** Transactions that had to warm their kernel after the card was presented */
+    public int getMisses() {
+        return mMisses;
+    }
+
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    private boolean isFresh(int kernel, long now) {
+        return mWarm[kernel] && now - mWarmAt[kernel] < mMaxIdleNanos;
+    }
+
+    private int warm(int kernel, long now) {
+        int ret = mWarmups[kernel].warm();
+        mWarm[kernel] = ret == 0;
+        mWarmAt[kernel] = now;
+        return ret;
+    }
+}
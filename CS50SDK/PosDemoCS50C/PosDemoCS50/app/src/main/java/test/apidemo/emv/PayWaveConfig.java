@@ -0,0 +1,56 @@
+package test.apidemo.emv;
+
+/**
+ * PayWave (Visa contactless, also used for UnionPay qUICS) kernel
+ * configuration.
+ *
+ * AIDs are keyed by 9F06 and CAPKs by RID (9F06) + index (9F22). Pushed as
+ * PayWaveKernelInit, clear terminal parameters, CAPKs and AIDs, then the
+ * AIDs, the CAPKs and the terminal parameters.
+ */
+public class PayWaveConfig extends KernelConfig {
+
+    public static final int CALL_AID = 1;
+    public static final int CALL_CAPK = 2;
+    public static final int CALL_TERM = 3;
+
+    private static final Call[] CALLS = {
+            new Call(CALL_AID, "AID", true, 0x9F06),
+            new Call(CALL_CAPK, "CAPK", true, 0x9F06, 0x9F22),
+            new Call(CALL_TERM, "TERM", false),
+    };
+
+    @Override
+    public String getName() {
+        return "PAYWAVE";
+    }
+
+    @Override
+    protected Call[] calls() {
+        return CALLS;
+    }
+
+    @Override
+    protected int init(ClessKernel kernel) {
+        int ret;
+        if ((ret = kernel.payWaveKernelInit()) < 0
+                || (ret = kernel.payWaveClearAllTerm()) < 0
+                || (ret = kernel.payWaveClearAllCapk()) < 0
+                || (ret = kernel.payWaveClearAllAids()) < 0) {
+            return ret;
+        }
+        return 0;
+    }
+
+    @Override
+    protected int set(ClessKernel kernel, int call, String payload) {
+        switch (call) {
+            case CALL_AID:
+                return kernel.payWaveAidSet(payload);
+            case CALL_CAPK:
+                return kernel.payWaveCapkSet(payload);
+            default:
+                return kernel.payWaveTermSet(payload);
+        }
+    }
+}
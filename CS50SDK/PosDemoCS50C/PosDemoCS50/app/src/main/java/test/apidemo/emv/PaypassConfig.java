@@ -0,0 +1,56 @@
+package test.apidemo.emv;
+
+/**
+ * PayPass (Mastercard contactless) kernel configuration.
+ *
+ * AIDs are keyed by 9F06 and CAPKs by RID (DF01) + index (DF02). Pushed as
+ * PaypassKernelInit, the AIDs, the CAPKs, then reader, kernel and
+ * transaction parameters.
+ */
+public class PaypassConfig extends KernelConfig {
+
+    public static final int CALL_AID = 1;
+    public static final int CALL_CAPK = 2;
+    public static final int CALL_READER = 3;
+    public static final int CALL_KERNEL = 4;
+    public static final int CALL_TRANS = 5;
+
+    private static final Call[] CALLS = {
+            new Call(CALL_AID, "AID", true, 0x9F06),
+            new Call(CALL_CAPK, "CAPK", true, 0xDF01, 0xDF02),
+            new Call(CALL_READER, "READER", false),
+            new Call(CALL_KERNEL, "KERNEL", false),
+            new Call(CALL_TRANS, "TRANS", false),
+    };
+
+    @Override
+    public String getName() {
+        return "PAYPASS";
+    }
+
+    @Override
+    protected Call[] calls() {
+        return CALLS;
+    }
+
+    @Override
+    protected int init(ClessKernel kernel) {
+        return kernel.paypassKernelInit();
+    }
+
+    @Override
+    protected int set(ClessKernel kernel, int call, String payload) {
+        switch (call) {
+            case CALL_AID:
+                return kernel.paypassAidSet(payload);
+            case CALL_CAPK:
+                return kernel.paypassCapkSet(payload);
+            case CALL_READER:
+                return kernel.paypassReaderSet(payload);
+            case CALL_KERNEL:
+                return kernel.paypassKernelSet(payload);
+            default:
+                return kernel.paypassTransSet(payload);
+        }
+    }
+}
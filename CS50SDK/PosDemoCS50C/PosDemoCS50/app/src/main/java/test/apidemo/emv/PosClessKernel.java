@@ -0,0 +1,124 @@
+package test.apidemo.emv;
+
+import com.ctk.sdk.PosApiHelper;
+
+/**
+ * {@link ClessKernel} backed by the terminal's PosApiHelper.
+ */
+public class PosClessKernel implements ClessKernel {
+
+    private final PosApiHelper mPosApiHelper;
+
+    public PosClessKernel() {
+        this(PosApiHelper.getInstance());
+    }
+
+    public PosClessKernel(PosApiHelper posApiHelper) {
+        mPosApiHelper = posApiHelper;
+    }
+
+    @Override
+    public int paypassKernelInit() {
+        return mPosApiHelper.PaypassKernelInit();
+    }
+
+    @Override
+    public int paypassAidSet(String tlv) {
+        return mPosApiHelper.PaypassAidSet(tlv);
+    }
+
+    @Override
+    public int paypassCapkSet(String tlv) {
+        return mPosApiHelper.PaypassCapkSet(tlv);
+    }
+
+    @Override
+    public int paypassReaderSet(String tlv) {
+        return mPosApiHelper.PaypassReaderSet(tlv);
+    }
+
+    @Override
+    public int paypassKernelSet(String tlv) {
+        return mPosApiHelper.PaypassKernelSet(tlv);
+    }
+
+    @Override
+    public int paypassTransSet(String tlv) {
+        return mPosApiHelper.PaypassTransSet(tlv);
+    }
+
+    @Override
+    public int payWaveKernelInit() {
+        return mPosApiHelper.PayWaveKernelInit();
+    }
+
+    @Override
+    public int payWaveClearAllTerm() {
+        return mPosApiHelper.PayWaveClearAllTerm();
+    }
+
+    @Override
+    public int payWaveClearAllCapk() {
+        return mPosApiHelper.PayWaveClearAllCapk();
+    }
+
+    @Override
+    public int payWaveClearAllAids() {
+        return mPosApiHelper.PayWaveClearAllAIDS();
+    }
+
+    @Override
+    public int payWaveAidSet(String tlv) {
+        return mPosApiHelper.PayWaveAidSet(tlv);
+    }
+
+    @Override
+    public int payWaveCapkSet(String tlv) {
+        return mPosApiHelper.PayWaveCapkSet(tlv);
+    }
+
+    @Override
+    public int payWaveTermSet(String tlv) {
+        return mPosApiHelper.PayWaveTermSet(tlv);
+    }
+
+    @Override
+    public int expressKernelInit() {
+        return mPosApiHelper.ExpressKernelInit();
+    }
+
+    @Override
+    public int expressAidSet(String tlv) {
+        return mPosApiHelper.ExpressAidSet(tlv);
+    }
+
+    @Override
+    public int expressCapkSet(String tlv) {
+        return mPosApiHelper.ExpressCapkSet(tlv);
+    }
+
+    @Override
+    public int expressGeneralParamSet(String tlv) {
+        return mPosApiHelper.ExpressGenerlParamSet(tlv);
+    }
+
+    @Override
+    public int expressDrlParamSet(String tlv) {
+        return mPosApiHelper.ExpressDRLParamSet(tlv);
+    }
+
+    @Override
+    public int expressCrlParamSet(String tlv) {
+        return mPosApiHelper.ExpressCRLParamSet(tlv);
+    }
+
+    @Override
+    public int expressExceptionFileParamSet(String tlv) {
+        return mPosApiHelper.ExpressExcepFileParamSet(tlv);
+    }
+
+    @Override
+    public int expressKernelConfigSet(String tlv) {
+        return mPosApiHelper.ExpressKernelConfigSet(tlv);
+    }
+}
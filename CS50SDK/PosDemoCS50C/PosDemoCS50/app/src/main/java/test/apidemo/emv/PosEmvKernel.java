@@ -0,0 +1,64 @@
+package test.apidemo.emv;
+
+import com.ctk.sdk.PosApiHelper;
+
+/**
+ * {@link EmvKernel} backed by the terminal's PosApiHelper.
+ */
+public class PosEmvKernel implements EmvKernel {
+
+    private final PosApiHelper mPosApiHelper;
+
+    public PosEmvKernel() {
+        this(PosApiHelper.getInstance());
+    }
+
+    public PosEmvKernel(PosApiHelper posApiHelper) {
+        mPosApiHelper = posApiHelper;
+    }
+
+    @Override
+    public int envParaInit() {
+        return mPosApiHelper.EmvEnvParaInit();
+    }
+
+    @Override
+    public int clearAllAids() {
+        return mPosApiHelper.EmvClearAllAIDS();
+    }
+
+    @Override
+    public int clearOneAid(byte[] aid, int len) {
+        return mPosApiHelper.EmvClearOneAIDS(aid, len);
+    }
+
+    @Override
+    public int addOneAid(byte[] buf, int len) {
+        return mPosApiHelper.EmvAddOneAIDS(buf, len);
+    }
+
+    @Override
+    public int clearAllCapks() {
+        return mPosApiHelper.EmvClearAllCapks();
+    }
+
+    @Override
+    public int clearOneCapk(byte[] key, int len) {
+        return mPosApiHelper.EmvClearOneCapks(key, len);
+    }
+
+    @Override
+    public int addOneCapk(byte[] buf, int len) {
+        return mPosApiHelper.EmvAddOneCAPK(buf, len);
+    }
+
+    @Override
+    public int saveTermParas(byte[] buf, int len, int flag) {
+        return mPosApiHelper.EmvSaveTermParas(buf, len, flag);
+    }
+
+    @Override
+    public int setOnlineResult(byte[] responseCode, byte[] issuerData, int len) {
+        return mPosApiHelper.EmvSetOnlineResult(responseCode, issuerData, len);
+    }
+}
@@ -0,0 +1,41 @@
+package test.apidemo.emv;
+
+import com.ctk.sdk.PosApiHelper;
+
+/**
+ * {@link TagSource} for one of the terminal's EMV kernels.
+ */
+public class PosTagSource implements TagSource {
+
+    public static final int KERNEL_EMV = 0;
+    public static final int KERNEL_PAYPASS = 1;
+    public static final int KERNEL_PAYWAVE = 2;
+    public static final int KERNEL_EXPRESS = 3;
+
+    private final PosApiHelper mPosApiHelper;
+    private final int mKernel;
+
+    public PosTagSource(int kernel) {
+        this(PosApiHelper.getInstance(), kernel);
+    }
+
+    public PosTagSource(PosApiHelper posApiHelper, int kernel) {
+        mPosApiHelper = posApiHelper;
+        mKernel = kernel;
+    }
+
+    @Override
+    public int getTagData(byte[] buf, int max, int tag) {
+        switch (mKernel) {
+            case KERNEL_PAYPASS:
+                return mPosApiHelper.PaypassGetTagValue(buf, max, tag);
+            case KERNEL_PAYWAVE:
+                return mPosApiHelper.PayWaveGetTagData(buf, max, tag);
+            case KERNEL_EXPRESS:
+                // no length argument: the caller's buffer must hold any tag
+                return mPosApiHelper.ExpressGetTagData(tag, buf);
+            default:
+                return mPosApiHelper.EmvGetTagData(buf, max, tag);
+        }
+    }
+}
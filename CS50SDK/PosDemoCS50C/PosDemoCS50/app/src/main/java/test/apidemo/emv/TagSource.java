@@ -0,0 +1,14 @@
+package test.apidemo.emv;
+
+/**
+ * One kernel's "get tag value" call.
+ */
+public interface TagSource {
+
+    /**
+     * Copy the value of {@code tag} into {@code buf}.
+     *
+     * @return value length, or 0 / negative when the kernel does not have it
+     */
+    int getTagData(byte[] buf, int max, int tag);
+}
@@ -0,0 +1,77 @@
+package test.apidemo.emv;
+
+import test.apidemo.util.LatencyRecorder;
+
+/**
+ * Per-brand percentiles of {@link TxnTimeline} phases, to see which card
+ * populations slow the line and in which phase.
+ *
+ * Each brand keeps one {@link LatencyRecorder} per phase plus one for the
+ * whole transaction, sized for the most recent {@code capacity}
+ * transactions; adding a timeline does not allocate.
+ */
+public class TimelineStats {
+
+    private static final int TOTAL = TxnTimeline.PHASES;
+
+    private final LatencyRecorder[][] mRecorders = new LatencyRecorder[CardBrand.COUNT][TOTAL + 1];
+
+    public TimelineStats(int capacity) {
+        for (int b = 0; b < CardBrand.COUNT; b++) {
+            for (int p = 0; p <= TOTAL; p++) {
+                mRecorders[b][p] = new LatencyRecorder(capacity);
+            }
+        }
+    }
+
+    public void add(int brand, TxnTimeline timeline) {
+        LatencyRecorder[] r = mRecorders[brand >= 0 && brand < CardBrand.COUNT ? brand : CardBrand.OTHER];
+        for (int p = 0; p < TOTAL; p++) {
+            if (timeline.has(p)) {
+                r[p].record(timeline.duration(p));
+            }
+        }
+        r[TOTAL].record(timeline.total());
+    }
+
+    /** Samples of one phase, or of the whole transaction for {@code phase == TxnTimeline.PHASES} */
+    public LatencyRecorder get(int brand, int phase) {
+        return mRecorders[brand][phase];
+    }
+
+    /** Transactions held for {@code brand} */
+    public int count(int brand) {
+        return mRecorders[brand][TOTAL].count();
+    }
+
+    /**
+     * One block per brand seen, e.g.
+     * <pre>
+     * VISA total n=40 p50=812.00 p90=1510.00 p99=2300.00 max=2410.00 ms
+     *   kernel   n=40 p50=640.00 ...
+     * </pre>
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < CardBrand.COUNT; b++) {
+            if (count(b) == 0) {
+                continue;
+            }
+            sb.append(CardBrand.name(b)).append(" total ").append(mRecorders[b][TOTAL].summary()).append('\n');
+            for (int p = 0; p < TOTAL; p++) {
+                if (mRecorders[b][p].count() > 0) {
+                    sb.append(String.format("  %-8s %s\n", TxnTimeline.name(p), mRecorders[b][p].summary()));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    public void reset() {
+        for (LatencyRecorder[] brand : mRecorders) {
+            for (LatencyRecorder r : brand) {
+                r.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package test.apidemo.emv;
+
+/**
+ * BER-TLV encoding helpers (ISO 7816-4 annex D / EMV Book 3 annex B).
+ *
+ * Tags are handled as ints holding the encoded tag bytes big-endian, so
+ * 0x9F02 is "9F 02" and 0xBF0C is "BF 0C". Tags up to 4 bytes are supported.
+ */
+public final class Tlv {
+
+    /** Longest value: three length bytes (83 xx xx xx), as far as {@link TlvReader} reads */
+    public static final int MAX_LENGTH = 0xFFFFFF;
+
+    private Tlv() {
+    }
+
+    /**
+     * Size of the tag starting at {@code off}, or -1 when it runs past
+     * {@code end} or is longer than 4 bytes.
+     */
+    public static int tagSize(byte[] b, int off, int end) {
+        if (off >= end) {
+            return -1;
+        }
+        if ((b[off] & 0x1F) != 0x1F) {
+            return 1;
+        }
+        int i = off + 1;
+        while (i < end && (b[i] & 0x80) != 0) {
+            i++;
+        }
+        int n = i - off + 1;
+        return i < end && n <= 4 ? n : -1;
+    }
+
+    /** Tag value of {@code size} bytes at {@code off} (see {@link #tagSize}) */
+    public static int readTag(byte[] b, int off, int size) {
+        int tag = 0;
+        for (int i = 0; i < size; i++) {
+            tag = (tag << 8) | (b[off + i] & 0xFF);
+        }
+        return tag;
+    }
+
+    /** Number of bytes the tag occupies when encoded */
+    public static int tagBytes(int tag) {
+        if ((tag & 0xFF000000) != 0) {
+            return 4;
+        }
+        if ((tag & 0xFF0000) != 0) {
+            return 3;
+        }
+        return (tag & 0xFF00) != 0 ? 2 : 1;
+    }
+
+    /** True when bit 6 of the first tag byte marks a constructed object */
+    public static boolean isConstructed(int tag) {
+        int first = tag >>> ((tagBytes(tag) - 1) << 3);
+        return (first & 0x20) != 0;
+    }
+
+    public static int writeTag(byte[] dst, int off, int tag) {
+        for (int shift = (tagBytes(tag) - 1) << 3; shift >= 0; shift -= 8) {
+            dst[off++] = (byte) (tag >>> shift);
+        }
+        return off;
+    }
+
+    /**
+     * Number of bytes needed to encode {@code len} in definite form.
+     *
+     * @throws IllegalArgumentException when {@code len} is negative or
+     * above {@link #MAX_LENGTH}
+     */
+    public static int lengthBytes(int len) {
+        if (len < 0 || len > MAX_LENGTH) {
+            throw new IllegalArgumentException("TLV length " + len);
+        }
+        if (len < 0x80) {
+            return 1;
+        }
+        if (len <= 0xFF) {
+            return 2;
+        }
+        return len <= 0xFFFF ? 3 : 4;
+    }
+
+    /** Write {@code len} in definite form, returns the offset after it */
+    public static int writeLength(byte[] dst, int off, int len) {
+        int n = lengthBytes(len) - 1;
+        if (n == 0) {
+            dst[off++] = (byte) len;
+            return off;
+        }
+        dst[off++] = (byte) (0x80 | n);
+        for (int shift = (n - 1) << 3; shift >= 0; shift -= 8) {
+            dst[off++] = (byte) (len >>> shift);
+        }
+        return off;
+    }
+
+    /** Total encoded size of a primitive object with a value of {@code len} bytes */
+    public static int encodedSize(int tag, int len) {
+        return tagBytes(tag) + lengthBytes(len) + len;
+    }
+}
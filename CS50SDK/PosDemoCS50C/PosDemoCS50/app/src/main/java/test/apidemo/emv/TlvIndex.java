@@ -0,0 +1,177 @@
+package test.apidemo.emv;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash index from tag to value position inside one TLV
+ * buffer, for O(1) lookups when many tags are read from the same data
+ * (a GPO/READ RECORD dump, a DE55 field, a kernel tag snapshot).
+ *
+ * The index keeps offsets only; the data stays in the caller's array, which
+ * must not change while the index is in use. Tables are sized to a power of
+ * two and kept at most half full, and are reused by {@link #build}.
+ */
+public class TlvIndex {
+
+    private static final int EMPTY = 0;
+
+    private final TlvReader mReader = new TlvReader();
+    private byte[] mBuf;
+    private int[] mTags;
+    private int[] mOffsets;
+    private int[] mLengths;
+    private int mShift;
+    private int mSize;
+
+    public TlvIndex() {
+        this(32);
+    }
+
+    /** @param expectedTags number of tags expected per buffer */
+    public TlvIndex(int expectedTags) {
+        int cap = 16;
+        while (cap < expectedTags * 2) {
+            cap <<= 1;
+        }
+        allocate(cap);
+    }
+
+    /**
+     * Index every object in {@code buf[off..off+len)}, templates and their
+     * children alike. When a tag occurs twice the first one wins.
+     *
+     * @return number of tags indexed, or {@link TlvReader#ERR_FORMAT}
+     */
+    public int build(byte[] buf, int off, int len) {
+        clear();
+        mBuf = buf;
+        TlvReader r = mReader.reset(buf, off, len);
+        while (true) {
+            int ret = r.next();
+            if (ret < 0) {
+                return ret;
+            }
+            if (ret == 0) {
+                if (r.depth() == 0) {
+                    return mSize;
+                }
+                r.exit();
+                continue;
+            }
+            if (find(r.tag()) < 0) {
+                add(r.tag(), r.valueOffset(), r.valueLength());
+            }
+            if (r.isConstructed()) {
+                r.enter();
+            }
+        }
+    }
+
+    /** Point {@code tag} at a value held in the indexed buffer */
+    public void add(int tag, int valueOffset, int valueLength) {
+        if ((mSize + 1) * 2 > mTags.length) {
+            rehash(mTags.length << 1);
+        }
+        int i = slot(tag);
+        if (mTags[i] == EMPTY) {
+            mTags[i] = tag;
+            mSize++;
+        }
+        mOffsets[i] = valueOffset;
+        mLengths[i] = valueLength;
+    }
+
+    /** @return slot of {@code tag} for {@link #valueOffset}/{@link #valueLength}, or -1 */
+    public int find(int tag) {
+        int i = slot(tag);
+        return mTags[i] == EMPTY ? -1 : i;
+    }
+
+    public boolean contains(int tag) {
+        return find(tag) >= 0;
+    }
+
+    public int valueOffset(int slot) {
+        return mOffsets[slot];
+    }
+
+    public int valueLength(int slot) {
+        return mLengths[slot];
+    }
+
+    /**
+     * Copy the value of {@code tag} into {@code dst}.
+     *
+     * @return bytes copied, or -1 when the tag is not present
+     */
+    public int copy(int tag, byte[] dst, int off) {
+        int i = find(tag);
+        if (i < 0) {
+            return -1;
+        }
+        int n = Math.min(mLengths[i], dst.length - off);
+        System.arraycopy(mBuf, mOffsets[i], dst, off, n);
+        return n;
+    }
+
+    /** Value of {@code tag} as unsigned big-endian binary, or {@code def} when absent */
+    public int intValue(int tag, int def) {
+        int i = find(tag);
+        if (i < 0) {
+            return def;
+        }
+        int v = 0;
+        int end = mOffsets[i] + Math.min(mLengths[i], 4);
+        for (int p = mOffsets[i]; p < end; p++) {
+            v = (v << 8) | (mBuf[p] & 0xFF);
+        }
+        return v;
+    }
+
+    public byte[] buffer() {
+        return mBuf;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        if (mSize > 0) {
+            Arrays.fill(mTags, EMPTY);
+            mSize = 0;
+        }
+    }
+
+    /** Index of {@code tag} or of the empty slot where it would go */
+    private int slot(int tag) {
+        int mask = mTags.length - 1;
+        int i = (tag * 0x9E3779B9) >>> mShift;
+        while (mTags[i] != EMPTY && mTags[i] != tag) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void allocate(int cap) {
+        mTags = new int[cap];
+        mOffsets = new int[cap];
+        mLengths = new int[cap];
+        mShift = 32 - Integer.numberOfTrailingZeros(cap);
+    }
+
+    private void rehash(int cap) {
+        int[] tags = mTags;
+        int[] offsets = mOffsets;
+        int[] lengths = mLengths;
+        allocate(cap);
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] != EMPTY) {
+                int j = slot(tags[i]);
+                mTags[j] = tags[i];
+                mOffsets[j] = offsets[i];
+                mLengths[j] = lengths[i];
+            }
+        }
+    }
+}
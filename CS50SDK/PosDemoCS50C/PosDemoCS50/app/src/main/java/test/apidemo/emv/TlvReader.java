@@ -0,0 +1,245 @@
+package test.apidemo.emv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cursor over BER-TLV data held in a byte array.
+ *
+ * {@link #next()} steps over one object at the current level and exposes its
+ * tag and value position; {@link #enter()} and {@link #exit()} walk into and
+ * out of constructed templates such as 70, 77 or BF0C. Nothing is copied or
+ * allocated while reading, so one reader can be reused for every response.
+ * 00 padding between objects is skipped as EMV Book 3 allows; FF is not,
+ * because kernels use FFxx proprietary templates (e.g. PayPass FF8105).
+ */
+public class TlvReader {
+
+    /** Tag or length runs past the end of the enclosing object */
+    public static final int ERR_FORMAT = -3101;
+    /** {@link #enter()} on a primitive object, or templates nested too deep */
+    public static final int ERR_STATE = -3102;
+
+    private static final int MAX_DEPTH = 8;
+
+    private final int[] mStack = new int[MAX_DEPTH];
+    private byte[] mBuf;
+    private byte[] mScratch;
+    private int mPos;
+    private int mEnd;
+    private int mDepth;
+
+    private int mTag;
+    private int mTagOffset;
+    private int mValueOffset;
+    private int mValueLength;
+
+    public TlvReader() {
+    }
+
+    public TlvReader(byte[] buf, int off, int len) {
+        reset(buf, off, len);
+    }
+
+    public TlvReader reset(byte[] buf, int off, int len) {
+        mBuf = buf;
+        mPos = off;
+        mEnd = off + len;
+        mDepth = 0;
+        mTag = 0;
+        mValueOffset = off;
+        mValueLength = 0;
+        return this;
+    }
+
+    /**
+     * Read the remaining bytes of {@code bb} without moving its position.
+     * Heap buffers are read in place; direct buffers are copied into a
+     * scratch array that is kept for the next call.
+     */
+    public TlvReader reset(ByteBuffer bb) {
+        int len = bb.remaining();
+        if (bb.hasArray()) {
+            return reset(bb.array(), bb.arrayOffset() + bb.position(), len);
+        }
+        if (mScratch == null || mScratch.length < len) {
+            mScratch = new byte[Math.max(len, 256)];
+        }
+        int pos = bb.position();
+        bb.get(mScratch, 0, len);
+        bb.position(pos);
+        return reset(mScratch, 0, len);
+    }
+
+    /**
+     * Move to the next object at the current level.
+     *
+     * @return 1 when an object was read, 0 at the end of the level, or
+     * {@link #ERR_FORMAT}
+     */
+    public int next() {
+        while (mPos < mEnd && mBuf[mPos] == 0x00) {
+            mPos++;
+        }
+        if (mPos >= mEnd) {
+            return 0;
+        }
+        int tagSize = Tlv.tagSize(mBuf, mPos, mEnd);
+        if (tagSize < 0) {
+            return ERR_FORMAT;
+        }
+        int p = mPos + tagSize;
+        if (p >= mEnd) {
+            return ERR_FORMAT;
+        }
+        int len = mBuf[p++] & 0xFF;
+        if (len > 0x80) {
+            // up to three length bytes, as Tlv.MAX_LENGTH
+            int n = len & 0x7F;
+            if (n > 3 || p + n > mEnd) {
+                return ERR_FORMAT;
+            }
+            len = 0;
+            for (int i = 0; i < n; i++) {
+                len = (len << 8) | (mBuf[p++] & 0xFF);
+            }
+        } else if (len == 0x80) {
+            // indefinite form is not used in EMV
+            return ERR_FORMAT;
+        }
+        if (len > mEnd - p) {
+            return ERR_FORMAT;
+        }
+        mTagOffset = mPos;
+        mTag = Tlv.readTag(mBuf, mPos, tagSize);
+        mValueOffset = p;
+        mValueLength = len;
+        mPos = p + len;
+        return 1;
+    }
+
+    /** Descend into the current constructed object; {@link #next()} then reads its children */
+    public int enter() {
+        if (!isConstructed() || mDepth == MAX_DEPTH) {
+            return ERR_STATE;
+        }
+        mStack[mDepth++] = mEnd;
+        mPos = mValueOffset;
+        mEnd = mValueOffset + mValueLength;
+        return 0;
+    }
+
+    /** Skip the rest of the current template and continue after it */
+    public int exit() {
+        if (mDepth == 0) {
+            return ERR_STATE;
+        }
+        mPos = mEnd;
+        mEnd = mStack[--mDepth];
+        return 0;
+    }
+
+    /**
+     * Search forward for {@code tag}, descending into constructed objects.
+     * On a hit the reader is left on the object, possibly inside templates
+     * (see {@link #depth()}).
+     *
+     * @return 1 when found, 0 when not found, or {@link #ERR_FORMAT}
+     */
+    public int seek(int tag) {
+        int base = mDepth;
+        while (true) {
+            int ret = next();
+            if (ret < 0) {
+                return ret;
+            }
+            if (ret == 0) {
+                if (mDepth == base) {
+                    return 0;
+                }
+                exit();
+                continue;
+            }
+            if (mTag == tag) {
+                return 1;
+            }
+            if (isConstructed() && mDepth < MAX_DEPTH) {
+                enter();
+            }
+        }
+    }
+
+    public int tag() {
+        return mTag;
+    }
+
+    public boolean isConstructed() {
+        return Tlv.isConstructed(mTag);
+    }
+
+    /** Offset of the first tag byte of the current object */
+    public int tagOffset() {
+        return mTagOffset;
+    }
+
+    public int valueOffset() {
+        return mValueOffset;
+    }
+
+    public int valueLength() {
+        return mValueLength;
+    }
+
+    /** Bytes of the whole current object, tag and length included */
+    public int encodedLength() {
+        return mValueOffset + mValueLength - mTagOffset;
+    }
+
+    public int depth() {
+        return mDepth;
+    }
+
+    public byte[] buffer() {
+        return mBuf;
+    }
+
+    /** Copy the current value into {@code dst}, returns the number of bytes copied */
+    public int copyValue(byte[] dst, int off) {
+        int n = Math.min(mValueLength, dst.length - off);
+        System.arraycopy(mBuf, mValueOffset, dst, off, n);
+        return n;
+    }
+
+    /** Current value as an unsigned big-endian binary number (up to 4 bytes) */
+    public int valueInt() {
+        int v = 0;
+        int end = mValueOffset + Math.min(mValueLength, 4);
+        for (int i = mValueOffset; i < end; i++) {
+            v = (v << 8) | (mBuf[i] & 0xFF);
+        }
+        return v;
+    }
+
+    /** Current value as format n (packed BCD), e.g. 9F02 amount or 9A date */
+    public long valueBcd() {
+        long v = 0;
+        int end = mValueOffset + Math.min(mValueLength, 9);
+        for (int i = mValueOffset; i < end; i++) {
+            int b = mBuf[i] & 0xFF;
+            v = v * 100 + (b >> 4) * 10 + (b & 0x0F);
+        }
+        return v;
+    }
+
+    /** Current value compared byte by byte with {@code b[off..off+len)} */
+    public boolean valueEquals(byte[] b, int off, int len) {
+        if (len != mValueLength) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (mBuf[mValueOffset + i] != b[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,167 @@
+package test.apidemo.emv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Builds BER-TLV into a growable byte array that is reused across
+ * {@link #reset()} calls.
+ *
+ * Constructed templates are opened with {@link #begin(int)} and closed with
+ * {@link #end()}; the length is patched in place, moving the content only
+ * when it grew past 127 bytes. Values are written straight from the
+ * caller's arrays or from ints, so building a message allocates nothing
+ * once the buffer is large enough.
+ */
+public class TlvWriter {
+
+    private static final int MAX_DEPTH = 8;
+
+    private final int[] mOpen = new int[MAX_DEPTH];
+    private byte[] mBuf;
+    private int mLength;
+    private int mDepth;
+
+    public TlvWriter() {
+        this(256);
+    }
+
+    public TlvWriter(int initialCapacity) {
+        mBuf = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    public TlvWriter reset() {
+        mLength = 0;
+        mDepth = 0;
+        return this;
+    }
+
+    public TlvWriter put(int tag, byte[] value) {
+        return put(tag, value, 0, value.length);
+    }
+
+    public TlvWriter put(int tag, byte[] value, int off, int len) {
+        ensure(Tlv.encodedSize(tag, len));
+        mLength = Tlv.writeTag(mBuf, mLength, tag);
+        mLength = Tlv.writeLength(mBuf, mLength, len);
+        System.arraycopy(value, off, mBuf, mLength, len);
+        mLength += len;
+        return this;
+    }
+
+    public TlvWriter putByte(int tag, int value) {
+        ensure(Tlv.encodedSize(tag, 1));
+        mLength = Tlv.writeTag(mBuf, mLength, tag);
+        mBuf[mLength++] = 1;
+        mBuf[mLength++] = (byte) value;
+        return this;
+    }
+
+    /** Unsigned big-endian binary value of {@code bytes} bytes, e.g. 9F1A as 2 */
+    public TlvWriter putInt(int tag, int value, int bytes) {
+        ensure(Tlv.encodedSize(tag, bytes));
+        mLength = Tlv.writeTag(mBuf, mLength, tag);
+        mBuf[mLength++] = (byte) bytes;
+        for (int i = bytes - 1; i >= 0; i--) {
+            mBuf[mLength + i] = (byte) value;
+            value >>>= 8;
+        }
+        mLength += bytes;
+        return this;
+    }
+
+    /** Format n (packed BCD, right aligned), e.g. 9F02 amount as 6 bytes */
+    public TlvWriter putBcd(int tag, long value, int bytes) {
+        ensure(Tlv.encodedSize(tag, bytes));
+        mLength = Tlv.writeTag(mBuf, mLength, tag);
+        mBuf[mLength++] = (byte) bytes;
+        for (int i = bytes - 1; i >= 0; i--) {
+            int lo = (int) (value % 10);
+            value /= 10;
+            int hi = (int) (value % 10);
+            value /= 10;
+            mBuf[mLength + i] = (byte) ((hi << 4) | lo);
+        }
+        mLength += bytes;
+        return this;
+    }
+
+    /** Format an/ans from a string of ASCII characters, e.g. DF05 expiry "20201231" */
+    public TlvWriter putAscii(int tag, String value) {
+        int len = value.length();
+        ensure(Tlv.encodedSize(tag, len));
+        mLength = Tlv.writeTag(mBuf, mLength, tag);
+        mLength = Tlv.writeLength(mBuf, mLength, len);
+        for (int i = 0; i < len; i++) {
+            mBuf[mLength++] = (byte) value.charAt(i);
+        }
+        return this;
+    }
+
+    /** Append objects that are already TLV encoded */
+    public TlvWriter putRaw(byte[] src, int off, int len) {
+        ensure(len);
+        System.arraycopy(src, off, mBuf, mLength, len);
+        mLength += len;
+        return this;
+    }
+
+    /** Open a constructed template; must be matched by {@link #end()} */
+    public TlvWriter begin(int tag) {
+        if (mDepth == MAX_DEPTH) {
+            throw new IllegalStateException("templates nested too deep");
+        }
+        ensure(Tlv.tagBytes(tag) + 1);
+        mLength = Tlv.writeTag(mBuf, mLength, tag);
+        mOpen[mDepth++] = mLength;
+        mBuf[mLength++] = 0;
+        return this;
+    }
+
+    public TlvWriter end() {
+        if (mDepth == 0) {
+            throw new IllegalStateException("end() without begin()");
+        }
+        int lenPos = mOpen[--mDepth];
+        int content = mLength - lenPos - 1;
+        int extra = Tlv.lengthBytes(content) - 1;
+        if (extra > 0) {
+            ensure(extra);
+            System.arraycopy(mBuf, lenPos + 1, mBuf, lenPos + 1 + extra, content);
+            mLength += extra;
+        }
+        Tlv.writeLength(mBuf, lenPos, content);
+        return this;
+    }
+
+    /** Encoded data; valid up to {@link #length()} until the next write */
+    public byte[] buffer() {
+        return mBuf;
+    }
+
+    public int length() {
+        return mLength;
+    }
+
+    public byte[] toByteArray() {
+        byte[] out = new byte[mLength];
+        System.arraycopy(mBuf, 0, out, 0, mLength);
+        return out;
+    }
+
+    public int copyTo(byte[] dst, int off) {
+        System.arraycopy(mBuf, 0, dst, off, mLength);
+        return mLength;
+    }
+
+    public void writeTo(ByteBuffer dst) {
+        dst.put(mBuf, 0, mLength);
+    }
+
+    private void ensure(int extra) {
+        if (mLength + extra > mBuf.length) {
+            byte[] grown = new byte[Math.max(mBuf.length * 2, mLength + extra)];
+            System.arraycopy(mBuf, 0, grown, 0, mLength);
+            mBuf = grown;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package test.apidemo.emv;
+
+/**
+ * Phase timestamps of one transaction, from arming the readers to the
+ * kernel's Final call.
+ *
+ * EmvProcess(), PayWaveTransProcess() and PaypassTransaction() run
+ * application selection, GPO, read records, ODA, CVM and the first GenAC
+ * in one call without any callback, so those steps are one
+ * {@link #PHASE_KERNEL} span here. The app-side steps around the kernel
+ * are timed on their own. A phase may be entered more than once (e.g. a PIN
+ * retry); its time adds up. Time outside every phase shows as the gap
+ * between {@link #total()} and the sum of the phases.
+ *
+ * One instance is reused: {@link #begin()} starts the next transaction.
+ */
+public class TxnTimeline {
+
+    /** Waiting for a card on every interface */
+    public static final int PHASE_DETECT = 0;
+    /** Kernel processing: selection, GPO, read records, ODA, CVM, first GenAC */
+    public static final int PHASE_KERNEL = 1;
+    /** Reading the kernel's tags and journaling them */
+    public static final int PHASE_TAGS = 2;
+    /** PIN entry or bypass (EmvGetPinBlock, EmvPinbyPass) */
+    public static final int PHASE_PIN = 3;
+    /** Online authorisation round trip, or storing it for forwarding */
+    public static final int PHASE_ONLINE = 4;
+    /** EmvFinal() and the contactless Final calls */
+    public static final int PHASE_FINAL = 5;
+
+    public static final int PHASES = 6;
+
+    private static final String[] NAMES = {"detect", "kernel", "tags", "pin", "online", "final"};
+
+    private final long[] mDuration = new long[PHASES];
+    private final long[] mStartedAt = new long[PHASES];
+    private long mBegin;
+    private long mEnd;
+
+    public static String name(int phase) {
+        return NAMES[phase];
+    }
+
+    /** Start a new transaction; every phase is absent until timed */
+    public void begin() {
+        for (int i = 0; i < PHASES; i++) {
+            mDuration[i] = -1;
+            mStartedAt[i] = -1;
+        }
+        mBegin = now();
+        mEnd = mBegin;
+    }
+
+    public void start(int phase) {
+        mStartedAt[phase] = now();
+    }
+
+    /** End a phase started with {@link #start}; ignored when it was not started */
+    public void end(int phase) {
+        if (mStartedAt[phase] < 0) {
+            return;
+        }
+        mEnd = now();
+        long took = mEnd - mStartedAt[phase];
+        mDuration[phase] = mDuration[phase] < 0 ? took : mDuration[phase] + took;
+        mStartedAt[phase] = -1;
+    }
+
+    public boolean has(int phase) {
+        return mDuration[phase] >= 0;
+    }
+
+    /** @return nanoseconds spent in {@code phase}, -1 when it did not run */
+    public long duration(int phase) {
+        return mDuration[phase];
+    }
+
+    /** Nanoseconds from {@link #begin()} to the end of the last phase */
+    public long total() {
+        return mEnd - mBegin;
+    }
+
+    /** Clock in nanoseconds; tests may override */
+    protected long now() {
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,21 @@
+package test.apidemo.entry;
+
+/**
+ * One card interface as seen by {@link CardEntryMux}.
+ */
+public interface CardDetector {
+
+    /** Open the interface for detection; 0 on success */
+    int arm();
+
+    /**
+     * Check once, without waiting.
+     *
+     * @return a {@code CardEntryMux.CARD_*} type when a card is there,
+     * {@link CardEntryMux#NO_CARD} when not, or a negative error
+     */
+    int poll();
+
+    /** Stop detection and close the interface; only called on losers */
+    void cancel();
+}
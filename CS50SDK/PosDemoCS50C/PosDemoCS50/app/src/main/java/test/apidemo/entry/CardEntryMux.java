@@ -0,0 +1,102 @@
+package test.apidemo.entry;
+
+/**
+ * Waits on the contact slot, the contactless field and the magstripe reader
+ * at the same time; the first one to see a card wins and the others are
+ * closed.
+ *
+ * Every PosApiHelper call is synchronized on the one helper instance, so
+ * polling from several threads would only queue on that lock. Instead the
+ * detectors are polled round-robin on the calling thread with no sleep in
+ * between, which gives each interface its turn as soon as the previous
+ * check returns and hands the winner straight back to the caller.
+ *
+ * The returned card type uses the EntryPoint() numbering the transaction
+ * code already switches on, with {@link #CARD_EXPRESS} added.
+ */
+public class CardEntryMux {
+
+    public static final int CARD_MCR = 0;
+    public static final int CARD_ICC = 1;
+    public static final int CARD_PAYPASS = 2;
+    public static final int CARD_PAYWAVE = 3;
+    public static final int CARD_EXPRESS = 4;
+
+    /** Returned by {@link CardDetector#poll()} when no card is there */
+    public static final int NO_CARD = -1;
+    public static final int ERR_TIMEOUT = -3301;
+    public static final int ERR_CANCELLED = -3302;
+    /** Contactless card without an AID any kernel handles */
+    public static final int ERR_UNSUPPORTED = -3303;
+    /** No detector could be armed */
+    public static final int ERR_NO_INTERFACE = -3304;
+
+    private static final int MAX_DETECTORS = 4;
+
+    private final CardDetector[] mDetectors = new CardDetector[MAX_DETECTORS];
+    private final boolean[] mArmed = new boolean[MAX_DETECTORS];
+    private int mCount;
+    private volatile boolean mCancelled;
+
+    public void addDetector(CardDetector detector) {
+        mDetectors[mCount++] = detector;
+    }
+
+    /**
+     * Arm every interface and wait for the first card.
+     *
+     * @return a {@code CARD_*} type, or {@link #ERR_TIMEOUT},
+     * {@link #ERR_CANCELLED}, {@link #ERR_UNSUPPORTED}, {@link #ERR_NO_INTERFACE}
+     */
+    public int detect(long timeoutMillis) {
+        mCancelled = false;
+        int armed = 0;
+        for (int i = 0; i < mCount; i++) {
+            mArmed[i] = mDetectors[i].arm() == 0;
+            if (mArmed[i]) {
+                armed++;
+            }
+        }
+
+        int result = armed == 0 ? ERR_NO_INTERFACE : ERR_TIMEOUT;
+        int winner = -1;
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        while (armed > 0 && winner < 0 && !mCancelled && System.nanoTime() < deadline) {
+            for (int i = 0; i < mCount && !mCancelled; i++) {
+                if (!mArmed[i]) {
+                    continue;
+                }
+                int ret = mDetectors[i].poll();
+                if (ret == NO_CARD) {
+                    continue;
+                }
+                if (ret < 0 && ret != ERR_UNSUPPORTED) {
+                    // interface failed; keep waiting on the others
+                    mDetectors[i].cancel();
+                    mArmed[i] = false;
+                    armed--;
+                    continue;
+                }
+                result = ret;
+                winner = i;
+                break;
+            }
+        }
+        if (winner < 0 && mCancelled) {
+            result = ERR_CANCELLED;
+        }
+
+        for (int i = 0; i < mCount; i++) {
+            if (mArmed[i] && (i != winner || result < 0)) {
+                mDetectors[i].cancel();
+            }
+            mArmed[i] = false;
+        }
+        return result;
+    }
+
+    /** Make a running {@link #detect} return {@link #ERR_CANCELLED}; any thread */
+    public void cancel() {
+        mCancelled = true;
+    }
+}
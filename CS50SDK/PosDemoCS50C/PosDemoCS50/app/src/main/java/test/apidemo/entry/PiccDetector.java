@@ -0,0 +1,133 @@
+package test.apidemo.entry;
+
+import test.apidemo.emv.TlvReader;
+import test.apidemo.picc.IsoDepSession;
+import test.apidemo.picc.PiccTransport;
+
+/**
+ * Contactless field as a {@link CardDetector}.
+ *
+ * When a card answers the EMV polling loop, the PPSE is selected and the
+ * highest priority directory entry decides the kernel: its Kernel Identifier
+ * (9F2A) when present, otherwise the RID of the AID. UnionPay goes to the
+ * PayWave kernel, which also runs qUICS on this terminal. The field is left
+ * on for the kernel.
+ */
+public class PiccDetector implements CardDetector {
+
+    private static final byte[] SELECT_PPSE = {
+            0x00, (byte) 0xA4, 0x04, 0x00, 0x0E,
+            '2', 'P', 'A', 'Y', '.', 'S', 'Y', 'S', '.', 'D', 'D', 'F', '0', '1',
+            0x00
+    };
+
+    private final PiccTransport mTransport;
+    private final IsoDepSession mSession;
+    private final TlvReader mReader = new TlvReader();
+    private final byte[] mCardType = new byte[4];
+    private final byte[] mUid = new byte[10];
+    private final byte[] mUidLen = new byte[1];
+    private final byte[] mAts = new byte[40];
+    private final byte[] mAtsLen = new byte[1];
+    private final byte[] mSak = new byte[1];
+
+    public PiccDetector(PiccTransport transport) {
+        mTransport = transport;
+        mSession = new IsoDepSession(transport, 256);
+    }
+
+    @Override
+    public int arm() {
+        return mTransport.open();
+    }
+
+    @Override
+    public int poll() {
+        if (mTransport.polling(mCardType, mUid, mUidLen, mAts, mAtsLen, mSak) != 0) {
+            return CardEntryMux.NO_CARD;
+        }
+        if (mSession.transmit(SELECT_PPSE, SELECT_PPSE.length) != 0) {
+            // card left the field during the exchange; keep polling
+            return CardEntryMux.NO_CARD;
+        }
+        if (mSession.getSw() != IsoDepSession.SW_OK) {
+            return CardEntryMux.ERR_UNSUPPORTED;
+        }
+        return selectKernel(mSession.getData(), mSession.getLength());
+    }
+
+    @Override
+    public void cancel() {
+        mTransport.close();
+    }
+
+    /** Kernel for the best directory entry of a PPSE FCI, or ERR_UNSUPPORTED */
+    int selectKernel(byte[] fci, int len) {
+        TlvReader r = mReader.reset(fci, 0, len);
+        int best = CardEntryMux.ERR_UNSUPPORTED;
+        int bestPriority = Integer.MAX_VALUE;
+        if (r.seek(0xBF0C) != 1 || r.enter() != 0) {
+            return best;
+        }
+        while (r.next() == 1) {
+            if (r.tag() != 0x61 || r.enter() != 0) {
+                continue;
+            }
+            int kernel = CardEntryMux.ERR_UNSUPPORTED;
+            int kernelId = -1;
+            int priority = 0x10;
+            while (r.next() == 1) {
+                if (r.tag() == 0x4F && r.valueLength() >= 5) {
+                    kernel = kernelForRid(r.buffer(), r.valueOffset());
+                } else if (r.tag() == 0x87 && r.valueLength() == 1) {
+                    priority = r.valueInt() & 0x0F;
+                } else if (r.tag() == 0x9F2A && r.valueLength() >= 1) {
+                    kernelId = r.buffer()[r.valueOffset()] & 0x3F;
+                }
+            }
+            r.exit();
+            if (kernelId > 0) {
+                kernel = kernelForId(kernelId);
+            }
+            if (kernel >= 0 && priority < bestPriority) {
+                best = kernel;
+                bestPriority = priority;
+            }
+        }
+        return best;
+    }
+
+    /** EMV Book B kernel identifiers */
+    private static int kernelForId(int id) {
+        switch (id) {
+            case 2:
+                return CardEntryMux.CARD_PAYPASS;
+            case 3:
+            case 7:
+                return CardEntryMux.CARD_PAYWAVE;
+            case 4:
+                return CardEntryMux.CARD_EXPRESS;
+            default:
+                return CardEntryMux.ERR_UNSUPPORTED;
+        }
+    }
+
+    private static int kernelForRid(byte[] b, int off) {
+        if (b[off] != (byte) 0xA0 || b[off + 1] != 0x00 || b[off + 2] != 0x00) {
+            return CardEntryMux.ERR_UNSUPPORTED;
+        }
+        int rid = ((b[off + 3] & 0xFF) << 8) | (b[off + 4] & 0xFF);
+        switch (rid) {
+            case 0x0004: // Mastercard
+            case 0x0005: // Maestro
+                return CardEntryMux.CARD_PAYPASS;
+            case 0x0003: // Visa
+            case 0x0333: // UnionPay
+                return CardEntryMux.CARD_PAYWAVE;
+            case 0x0025: // American Express
+                return CardEntryMux.CARD_EXPRESS;
+            default:
+                return CardEntryMux.ERR_UNSUPPORTED;
+        }
+    }
+}
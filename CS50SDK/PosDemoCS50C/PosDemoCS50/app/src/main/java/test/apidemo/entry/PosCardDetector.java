@@ -0,0 +1,53 @@
+package test.apidemo.entry;
+
+import com.ctk.sdk.PosApiHelper;
+
+/**
+ * Contact slot or magstripe reader of the terminal as a {@link CardDetector}.
+ */
+public class PosCardDetector implements CardDetector {
+
+    public static final int TYPE_ICC = 0;
+    public static final int TYPE_MCR = 1;
+
+    private final PosApiHelper mPosApiHelper;
+    private final int mType;
+    private final byte mSlot;
+
+    /** Magstripe reader */
+    public PosCardDetector(PosApiHelper posApiHelper) {
+        this(posApiHelper, TYPE_MCR, (byte) 0);
+    }
+
+    /** Contact card slot */
+    public PosCardDetector(PosApiHelper posApiHelper, byte slot) {
+        this(posApiHelper, TYPE_ICC, slot);
+    }
+
+    private PosCardDetector(PosApiHelper posApiHelper, int type, byte slot) {
+        mPosApiHelper = posApiHelper;
+        mType = type;
+        mSlot = slot;
+    }
+
+    @Override
+    public int arm() {
+        // the slot needs no opening; the EMV kernel powers the card itself
+        return mType == TYPE_MCR ? mPosApiHelper.McrOpen() : 0;
+    }
+
+    @Override
+    public int poll() {
+        if (mType == TYPE_MCR) {
+            return mPosApiHelper.McrCheck() == 0 ? CardEntryMux.CARD_MCR : CardEntryMux.NO_CARD;
+        }
+        return mPosApiHelper.IccCheck(mSlot) == 0 ? CardEntryMux.CARD_ICC : CardEntryMux.NO_CARD;
+    }
+
+    @Override
+    public void cancel() {
+        if (mType == TYPE_MCR) {
+            mPosApiHelper.McrClose();
+        }
+    }
+}
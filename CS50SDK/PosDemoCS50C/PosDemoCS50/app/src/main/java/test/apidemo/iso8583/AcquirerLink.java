@@ -0,0 +1,18 @@
+package test.apidemo.iso8583;
+
+/**
+ * Request/response transport to the acquirer host.
+ */
+public interface AcquirerLink {
+
+    /** Host not reached, the request was not delivered */
+    int ERR_LINK_DOWN = -3631;
+
+    /**
+     * Send a packed request and wait for the answer.
+     *
+     * @return response length written to {@code rsp} from {@code rspOff}, or
+     * {@link #ERR_LINK_DOWN} when the host could not be reached
+     */
+    int exchange(byte[] req, int off, int len, byte[] rsp, int rspOff);
+}
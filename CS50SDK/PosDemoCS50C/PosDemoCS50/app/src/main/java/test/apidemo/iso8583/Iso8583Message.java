@@ -0,0 +1,202 @@
+package test.apidemo.iso8583;
+
+import test.apidemo.emv.EmvTagSnapshot;
+import test.apidemo.emv.TlvWriter;
+
+/**
+ * One ISO 8583 message in unpacked form: the MTI and the value of every
+ * present field, kept back to back in one growable buffer.
+ *
+ * Values are stored as the field carries them before encoding: digits as
+ * ASCII '0'..'9' (and 'D' in track 2), text as ASCII, binary fields as is.
+ * {@link Iso8583Packer} turns them into BCD on the way out and back on the
+ * way in. Setting a field again appends the new value; the old one is
+ * dropped at the next {@link #clear()}, which keeps the buffer for reuse.
+ */
+public class Iso8583Message {
+
+    private final int[] mOffset = new int[Iso8583Spec.FIELDS];
+    private final int[] mLength = new int[Iso8583Spec.FIELDS];
+    private final boolean[] mPresent = new boolean[Iso8583Spec.FIELDS];
+    private final TlvWriter mIcc = new TlvWriter(256);
+    private byte[] mData;
+    private int mSize;
+    private int mMti;
+
+    public Iso8583Message() {
+        this(512);
+    }
+
+    public Iso8583Message(int initialCapacity) {
+        mData = new byte[initialCapacity];
+    }
+
+    public Iso8583Message clear() {
+        for (int i = 0; i < Iso8583Spec.FIELDS; i++) {
+            mPresent[i] = false;
+        }
+        mSize = 0;
+        mMti = 0;
+        return this;
+    }
+
+    /** e.g. 0x0200, written as the four hex digits */
+    public Iso8583Message setMti(int mti) {
+        mMti = mti;
+        return this;
+    }
+
+    public int getMti() {
+        return mMti;
+    }
+
+    public Iso8583Message set(int field, byte[] src, int off, int len) {
+        int at = reserve(field, len);
+        System.arraycopy(src, off, mData, at, len);
+        return this;
+    }
+
+    /** Numeric field, left padded with zeros to {@code digits} */
+    public Iso8583Message setNumber(int field, long value, int digits) {
+        int at = reserve(field, digits);
+        for (int i = at + digits - 1; i >= at; i--) {
+            mData[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return this;
+    }
+
+    public Iso8583Message setAscii(int field, String value) {
+        int len = value.length();
+        int at = reserve(field, len);
+        for (int i = 0; i < len; i++) {
+            mData[at + i] = (byte) value.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * Digit field from packed BCD as cards hold it (5A, 57): nibbles up to
+     * the first F pad, with the track 2 separator kept as 'D'.
+     */
+    public Iso8583Message setDigits(int field, byte[] packed, int off, int len) {
+        int digits = 0;
+        while (digits < len * 2 && nibble(packed, off, digits) != 0xF) {
+            digits++;
+        }
+        int at = reserve(field, digits);
+        for (int i = 0; i < digits; i++) {
+            int n = nibble(packed, off, i);
+            mData[at + i] = (byte) (n < 10 ? '0' + n : 'A' + n - 10);
+        }
+        return this;
+    }
+
+    /**
+     * Set DE55 to the objects for {@code tags} from the transaction's tag
+     * snapshot, in that order. Tags the card did not give are left out.
+     *
+     * @return number of objects written
+     */
+    public int setIccData(EmvTagSnapshot snapshot, int[] tags) {
+        int n = snapshot.writeTo(mIcc.reset(), tags);
+        set(55, mIcc.buffer(), 0, mIcc.length());
+        return n;
+    }
+
+    public Iso8583Message remove(int field) {
+        mPresent[field] = false;
+        return this;
+    }
+
+    public boolean has(int field) {
+        return field > 0 && field < Iso8583Spec.FIELDS && mPresent[field];
+    }
+
+    /** Offset of the field's value in {@link #buffer()} */
+    public int offset(int field) {
+        return mOffset[field];
+    }
+
+    /** Value length, or -1 when the field is absent */
+    public int length(int field) {
+        return has(field) ? mLength[field] : -1;
+    }
+
+    public byte[] buffer() {
+        return mData;
+    }
+
+    /** @return the numeric value of a digit field, or -1 when absent or not numeric */
+    public long getNumber(int field) {
+        if (!has(field)) {
+            return -1;
+        }
+        long v = 0;
+        for (int i = mOffset[field], end = i + mLength[field]; i < end; i++) {
+            int d = mData[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    /** Compare a text or digit field with {@code value} without building a string */
+    public boolean valueEquals(int field, String value) {
+        if (!has(field) || mLength[field] != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < mLength[field]; i++) {
+            if (mData[mOffset[field] + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return bytes copied, or -1 when the field is absent */
+    public int copy(int field, byte[] dst, int off) {
+        if (!has(field)) {
+            return -1;
+        }
+        System.arraycopy(mData, mOffset[field], dst, off, mLength[field]);
+        return mLength[field];
+    }
+
+    /** Text or digit field as a string, for logs and display; null when absent */
+    public String getString(int field) {
+        if (!has(field)) {
+            return null;
+        }
+        char[] c = new char[mLength[field]];
+        for (int i = 0; i < c.length; i++) {
+            c[i] = (char) (mData[mOffset[field] + i] & 0xFF);
+        }
+        return new String(c);
+    }
+
+    private static int nibble(byte[] b, int off, int i) {
+        int v = b[off + (i >> 1)];
+        return (i & 1) == 0 ? (v >> 4) & 0xF : v & 0xF;
+    }
+
+    /** Make room for a value of {@code len} bytes and mark the field present */
+    int reserve(int field, int len) {
+        if (field < 2 || field >= Iso8583Spec.FIELDS) {
+            throw new IllegalArgumentException("field " + field);
+        }
+        if (mSize + len > mData.length) {
+            byte[] bigger = new byte[Math.max(mData.length * 2, mSize + len)];
+            System.arraycopy(mData, 0, bigger, 0, mSize);
+            mData = bigger;
+        }
+        int at = mSize;
+        mSize += len;
+        mOffset[field] = at;
+        mLength[field] = len;
+        mPresent[field] = true;
+        return at;
+    }
+}
@@ -0,0 +1,315 @@
+package test.apidemo.iso8583;
+
+/**
+ * Packs {@link Iso8583Message}s to the wire format of an {@link Iso8583Spec}
+ * and back: MTI, primary bitmap, secondary bitmap when a field above 64 is
+ * present, then the fields in number order.
+ *
+ * Both directions work on caller supplied arrays and the message's own
+ * buffer, so a terminal can keep one packer, one request and one response
+ * for its whole life without allocating per transaction.
+ */
+public class Iso8583Packer {
+
+    /** Field not in the spec */
+    public static final int ERR_FIELD = -3601;
+    /** Value longer than the field allows, or a length prefix out of range */
+    public static final int ERR_LENGTH = -3602;
+    /** Non digit in a BCD field, or a bad nibble in received data */
+    public static final int ERR_FORMAT = -3603;
+    /** Output array too small, or the input ended inside a field */
+    public static final int ERR_SPACE = -3604;
+
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            'A', 'B', 'C', 'D', 'E', 'F'};
+
+    private final Iso8583Spec mSpec;
+
+    public Iso8583Packer(Iso8583Spec spec) {
+        mSpec = spec;
+    }
+
+    public Iso8583Spec getSpec() {
+        return mSpec;
+    }
+
+    /**
+     * @return bytes written to {@code out} from {@code off}, or a negative
+     * {@code ERR_*} code
+     */
+    public int pack(Iso8583Message msg, byte[] out, int off) {
+        int p = off;
+        int end = out.length;
+        if (mSpec.mAsciiMti) {
+            if (p + 4 > end) {
+                return ERR_SPACE;
+            }
+            for (int shift = 12; shift >= 0; shift -= 4) {
+                out[p++] = HEX[(msg.getMti() >> shift) & 0xF];
+            }
+        } else {
+            if (p + 2 > end) {
+                return ERR_SPACE;
+            }
+            out[p++] = (byte) (msg.getMti() >> 8);
+            out[p++] = (byte) msg.getMti();
+        }
+
+        boolean secondary = false;
+        for (int f = 65; f < Iso8583Spec.FIELDS && !secondary; f++) {
+            secondary = msg.has(f);
+        }
+        int bitmapLen = secondary ? 16 : 8;
+        if (p + bitmapLen > end) {
+            return ERR_SPACE;
+        }
+        int bitmap = p;
+        for (int i = 0; i < bitmapLen; i++) {
+            out[p++] = 0;
+        }
+        if (secondary) {
+            out[bitmap] |= (byte) 0x80;
+        }
+
+        byte[] data = msg.buffer();
+        for (int f = 2; f < Iso8583Spec.FIELDS; f++) {
+            if (!msg.has(f)) {
+                continue;
+            }
+            if (!mSpec.mDefined[f] || (f > 64 && !secondary)) {
+                return ERR_FIELD;
+            }
+            out[bitmap + ((f - 1) >> 3)] |= (byte) (0x80 >> ((f - 1) & 7));
+            int ret = packField(f, data, msg.offset(f), msg.length(f), out, p);
+            if (ret < 0) {
+                return ret;
+            }
+            p += ret;
+        }
+        return p - off;
+    }
+
+    /**
+     * Unpack {@code len} bytes from {@code in} into {@code msg}, which is
+     * cleared first.
+     *
+     * @return bytes consumed, or a negative {@code ERR_*} code
+     */
+    public int unpack(byte[] in, int off, int len, Iso8583Message msg) {
+        msg.clear();
+        int p = off;
+        int end = off + len;
+        if (mSpec.mAsciiMti) {
+            if (p + 4 > end) {
+                return ERR_SPACE;
+            }
+            int mti = 0;
+            for (int i = 0; i < 4; i++) {
+                int d = in[p++] - '0';
+                if (d < 0 || d > 9) {
+                    return ERR_FORMAT;
+                }
+                mti = (mti << 4) | d;
+            }
+            msg.setMti(mti);
+        } else {
+            if (p + 2 > end) {
+                return ERR_SPACE;
+            }
+            msg.setMti(((in[p] & 0xFF) << 8) | (in[p + 1] & 0xFF));
+            p += 2;
+        }
+
+        if (p + 8 > end) {
+            return ERR_SPACE;
+        }
+        int bitmap = p;
+        boolean secondary = (in[bitmap] & 0x80) != 0;
+        p += secondary ? 16 : 8;
+        if (p > end) {
+            return ERR_SPACE;
+        }
+        int fields = secondary ? 128 : 64;
+        for (int f = 2; f <= fields; f++) {
+            if ((in[bitmap + ((f - 1) >> 3)] & (0x80 >> ((f - 1) & 7))) == 0) {
+                continue;
+            }
+            if (!mSpec.mDefined[f]) {
+                return ERR_FIELD;
+            }
+            int ret = unpackField(f, in, p, end, msg);
+            if (ret < 0) {
+                return ret;
+            }
+            p += ret;
+        }
+        return p - off;
+    }
+
+    private int packField(int f, byte[] src, int off, int len, byte[] out, int p) {
+        int format = mSpec.mFormat[f];
+        int encoding = mSpec.mEncoding[f];
+        int max = mSpec.mMaxLength[f];
+        if (len > max || (format == Iso8583Spec.FIXED && encoding == Iso8583Spec.ENC_BINARY && len != max)) {
+            return ERR_LENGTH;
+        }
+        int start = p;
+        int count = format == Iso8583Spec.FIXED ? max : len;
+        if (format != Iso8583Spec.FIXED) {
+            int ret = putLength(format, len, out, p);
+            if (ret < 0) {
+                return ret;
+            }
+            p += ret;
+        }
+        switch (encoding) {
+            case Iso8583Spec.ENC_BINARY:
+            case Iso8583Spec.ENC_ASCII:
+                if (p + count > out.length) {
+                    return ERR_SPACE;
+                }
+                System.arraycopy(src, off, out, p, len);
+                // fixed text fields are space padded on the right
+                for (int i = len; i < count; i++) {
+                    out[p + i] = ' ';
+                }
+                p += count;
+                break;
+            default:
+                int bytes = (count + 1) >> 1;
+                if (p + bytes > out.length) {
+                    return ERR_SPACE;
+                }
+                boolean track2 = encoding == Iso8583Spec.ENC_TRACK2;
+                // numbers are right aligned (leading zeros), track 2 left aligned (trailing F)
+                int lead = track2 ? 0 : (bytes << 1) - len;
+                for (int i = 0; i < bytes << 1; i++) {
+                    int nibble;
+                    int srcIndex = i - lead;
+                    if (srcIndex < 0) {
+                        nibble = 0;
+                    } else if (srcIndex >= len) {
+                        nibble = track2 ? 0xF : 0;
+                    } else {
+                        nibble = nibble(src[off + srcIndex], track2);
+                        if (nibble < 0) {
+                            return ERR_FORMAT;
+                        }
+                    }
+                    if ((i & 1) == 0) {
+                        out[p] = (byte) (nibble << 4);
+                    } else {
+                        out[p++] |= (byte) nibble;
+                    }
+                }
+                break;
+        }
+        return p - start;
+    }
+
+    private int unpackField(int f, byte[] in, int p, int end, Iso8583Message msg) {
+        int format = mSpec.mFormat[f];
+        int encoding = mSpec.mEncoding[f];
+        int start = p;
+        int count;
+        if (format == Iso8583Spec.FIXED) {
+            count = mSpec.mMaxLength[f];
+        } else {
+            int prefix = lengthBytes(format);
+            if (p + prefix > end) {
+                return ERR_SPACE;
+            }
+            count = getLength(in, p, prefix);
+            if (count < 0 || count > mSpec.mMaxLength[f]) {
+                return ERR_LENGTH;
+            }
+            p += prefix;
+        }
+
+        if (encoding == Iso8583Spec.ENC_BINARY || encoding == Iso8583Spec.ENC_ASCII) {
+            if (p + count > end) {
+                return ERR_SPACE;
+            }
+            msg.set(f, in, p, count);
+            return p + count - start;
+        }
+
+        int bytes = (count + 1) >> 1;
+        if (p + bytes > end) {
+            return ERR_SPACE;
+        }
+        boolean track2 = encoding == Iso8583Spec.ENC_TRACK2;
+        int skip = track2 ? 0 : (bytes << 1) - count;
+        int at = msg.reserve(f, count);
+        byte[] dst = msg.buffer();
+        for (int i = skip; i < skip + count; i++) {
+            int nibble = (i & 1) == 0 ? (in[p + (i >> 1)] >> 4) & 0xF : in[p + (i >> 1)] & 0xF;
+            if (nibble > 9 && !(track2 && nibble == 0xD)) {
+                return ERR_FORMAT;
+            }
+            dst[at++] = HEX[nibble];
+        }
+        return p + bytes - start;
+    }
+
+    private int putLength(int format, int len, byte[] out, int p) {
+        int prefix = lengthBytes(format);
+        if (p + prefix > out.length) {
+            return ERR_SPACE;
+        }
+        if (mSpec.mAsciiLengths) {
+            for (int i = prefix - 1; i >= 0; i--) {
+                out[p + i] = (byte) ('0' + len % 10);
+                len /= 10;
+            }
+        } else if (prefix == 1) {
+            out[p] = (byte) (((len / 10) << 4) | (len % 10));
+        } else {
+            out[p] = (byte) (len / 100);
+            out[p + 1] = (byte) ((((len / 10) % 10) << 4) | (len % 10));
+        }
+        return prefix;
+    }
+
+    /** @return the length prefix value, or -1 when it is not decimal */
+    private int getLength(byte[] in, int p, int prefix) {
+        int len = 0;
+        if (mSpec.mAsciiLengths) {
+            for (int i = 0; i < prefix; i++) {
+                int d = in[p + i] - '0';
+                if (d < 0 || d > 9) {
+                    return -1;
+                }
+                len = len * 10 + d;
+            }
+            return len;
+        }
+        for (int i = 0; i < prefix; i++) {
+            int hi = (in[p + i] >> 4) & 0xF;
+            int lo = in[p + i] & 0xF;
+            if (hi > 9 || lo > 9) {
+                return -1;
+            }
+            len = len * 100 + hi * 10 + lo;
+        }
+        return len;
+    }
+
+    /** Size of the length prefix: digits when ASCII, BCD bytes otherwise */
+    private int lengthBytes(int format) {
+        if (mSpec.mAsciiLengths) {
+            return format == Iso8583Spec.LLVAR ? 2 : 3;
+        }
+        return format == Iso8583Spec.LLVAR ? 1 : 2;
+    }
+
+    private static int nibble(byte c, boolean track2) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (track2 && (c == 'D' || c == '=')) {
+            return 0xD;
+        }
+        return -1;
+    }
+}
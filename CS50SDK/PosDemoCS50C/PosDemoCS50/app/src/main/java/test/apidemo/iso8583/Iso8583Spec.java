@@ -0,0 +1,91 @@
+package test.apidemo.iso8583;
+
+/**
+ * Field layout of one ISO 8583 dialect: format, encoding and maximum length
+ * of every data element, and how the MTI and length prefixes are written.
+ *
+ * Lengths count digits for {@link #ENC_BCD} and {@link #ENC_TRACK2},
+ * characters for {@link #ENC_ASCII} and bytes for {@link #ENC_BINARY}.
+ */
+public class Iso8583Spec {
+
+    public static final int FIXED = 0;
+    public static final int LLVAR = 1;
+    public static final int LLLVAR = 2;
+
+    /** Numeric, packed two digits per byte, right aligned (odd counts get a leading 0) */
+    public static final int ENC_BCD = 0;
+    /** Track 2 equivalent data, packed, left aligned, separator D, odd counts padded with F */
+    public static final int ENC_TRACK2 = 1;
+    public static final int ENC_ASCII = 2;
+    public static final int ENC_BINARY = 3;
+
+    static final int FIELDS = 129;
+
+    final int[] mFormat = new int[FIELDS];
+    final int[] mEncoding = new int[FIELDS];
+    final int[] mMaxLength = new int[FIELDS];
+    final boolean[] mDefined = new boolean[FIELDS];
+    boolean mAsciiMti;
+    boolean mAsciiLengths;
+
+    public Iso8583Spec define(int field, int format, int encoding, int maxLength) {
+        if (field < 2 || field >= FIELDS) {
+            throw new IllegalArgumentException("field " + field);
+        }
+        mFormat[field] = format;
+        mEncoding[field] = encoding;
+        mMaxLength[field] = maxLength;
+        mDefined[field] = true;
+        return this;
+    }
+
+    /** MTI as four ASCII digits instead of two BCD bytes */
+    public Iso8583Spec setAsciiMti(boolean ascii) {
+        mAsciiMti = ascii;
+        return this;
+    }
+
+    /** Length prefixes as ASCII digits instead of BCD */
+    public Iso8583Spec setAsciiLengths(boolean ascii) {
+        mAsciiLengths = ascii;
+        return this;
+    }
+
+    public boolean isDefined(int field) {
+        return field > 1 && field < FIELDS && mDefined[field];
+    }
+
+    /**
+     * The usual binary POS profile: BCD MTI and lengths, binary bitmap and
+     * the fields an EMV authorisation and its response need.
+     */
+    public static Iso8583Spec binaryPos() {
+        return new Iso8583Spec()
+                .define(2, LLVAR, ENC_BCD, 19)         // PAN
+                .define(3, FIXED, ENC_BCD, 6)          // processing code
+                .define(4, FIXED, ENC_BCD, 12)         // amount
+                .define(11, FIXED, ENC_BCD, 6)         // STAN
+                .define(12, FIXED, ENC_BCD, 6)         // local time hhmmss
+                .define(13, FIXED, ENC_BCD, 4)         // local date MMDD
+                .define(14, FIXED, ENC_BCD, 4)         // expiry YYMM
+                .define(22, FIXED, ENC_BCD, 3)         // POS entry mode
+                .define(23, FIXED, ENC_BCD, 3)         // PAN sequence number
+                .define(24, FIXED, ENC_BCD, 3)         // NII
+                .define(25, FIXED, ENC_BCD, 2)         // POS condition code
+                .define(35, LLVAR, ENC_TRACK2, 37)     // track 2 equivalent
+                .define(37, FIXED, ENC_ASCII, 12)      // retrieval reference
+                .define(38, FIXED, ENC_ASCII, 6)       // authorisation code
+                .define(39, FIXED, ENC_ASCII, 2)       // response code
+                .define(41, FIXED, ENC_ASCII, 8)       // terminal id
+                .define(42, FIXED, ENC_ASCII, 15)      // merchant id
+                .define(49, FIXED, ENC_BCD, 3)         // currency
+                .define(52, FIXED, ENC_BINARY, 8)      // PIN block
+                .define(53, FIXED, ENC_BCD, 16)        // security control
+                .define(55, LLLVAR, ENC_BINARY, 255)   // ICC data
+                .define(60, LLLVAR, ENC_ASCII, 999)    // private
+                .define(62, LLLVAR, ENC_ASCII, 999)    // private
+                .define(64, FIXED, ENC_BINARY, 8)      // MAC
+                .define(128, FIXED, ENC_BINARY, 8);    // MAC, secondary bitmap
+    }
+}
@@ -0,0 +1,138 @@
+package test.apidemo.iso8583;
+
+import test.apidemo.emv.EmvKernel;
+import test.apidemo.emv.EmvTagSnapshot;
+
+/**
+ * Runs the online part of a chip transaction: builds the 0200 request from
+ * the transaction's tag snapshot, exchanges it with the host and hands the
+ * answer to the kernel through EmvSetOnlineResult().
+ *
+ * Messages and wire buffers are reused, so one instance serves the
+ * terminal's whole life from the transaction thread.
+ */
+public class OnlineAuthorizer {
+
+    /** DE22 POS entry mode for chip read by contact */
+    public static final int ENTRY_CHIP = 51;
+    public static final int ENTRY_CONTACTLESS = 71;
+
+    /** Neither PAN (5A) nor track 2 (57) in the snapshot */
+    public static final int ERR_NO_CARD_DATA = -3621;
+    /** Answer is not the response to this request */
+    public static final int ERR_RESPONSE = -3622;
+
+    private static final int MAX_MESSAGE = 1024;
+
+    private final Iso8583Packer mPacker;
+    private final AcquirerLink mLink;
+    private final Iso8583Message mRequest = new Iso8583Message();
+    private final Iso8583Message mResponse = new Iso8583Message();
+    private final OnlineResult mResult = new OnlineResult();
+    private final byte[] mReqWire = new byte[MAX_MESSAGE];
+    private final byte[] mRspWire = new byte[MAX_MESSAGE];
+    private final byte[] mValue = new byte[64];
+    private String mTerminalId = "00000001";
+    private String mMerchantId = "000000000000001";
+
+    public OnlineAuthorizer(Iso8583Spec spec, AcquirerLink link) {
+        mPacker = new Iso8583Packer(spec);
+        mLink = link;
+    }
+
+    public void setTerminal(String terminalId, String merchantId) {
+        mTerminalId = terminalId;
+        mMerchantId = merchantId;
+    }
+
+    /**
+     * Send the authorisation request for the card in {@code card}.
+     *
+     * @param entryMode {@link #ENTRY_CHIP} or {@link #ENTRY_CONTACTLESS}
+     * @return 0 with the answer in {@link #getResult()}, {@link #ERR_NO_CARD_DATA},
+     * {@link #ERR_RESPONSE}, a packer or {@link OnlineResult} error, or the
+     * link's error when the host was not reached
+     */
+    public int authorize(EmvTagSnapshot card, int stan, int entryMode) {
+        mRequest.clear().setMti(0x0200);
+        int len = value(card, 0x5A);
+        if (len > 0) {
+            mRequest.setDigits(2, mValue, 0, len);
+        }
+        len = value(card, 0x57);
+        if (len > 0) {
+            mRequest.setDigits(35, mValue, 0, len);
+        }
+        if (!mRequest.has(2) && !mRequest.has(35)) {
+            return ERR_NO_CARD_DATA;
+        }
+        mRequest.setNumber(3, 0, 6)
+                .setNumber(4, bcd(card, 0x9F02), 12)
+                .setNumber(11, stan, 6)
+                .setNumber(22, entryMode, 3)
+                .setNumber(25, 0, 2)
+                .setAscii(41, mTerminalId)
+                .setAscii(42, mMerchantId);
+        if (card.contains(0x5F24)) {
+            mRequest.setNumber(14, bcd(card, 0x5F24) / 100, 4);
+        }
+        if (card.contains(0x5F34)) {
+            mRequest.setNumber(23, bcd(card, 0x5F34), 3);
+        }
+        if (card.contains(0x5F2A)) {
+            mRequest.setNumber(49, bcd(card, 0x5F2A), 3);
+        }
+        mRequest.setIccData(card, EmvTagSnapshot.DE55_TAGS);
+
+        int reqLen = mPacker.pack(mRequest, mReqWire, 0);
+        if (reqLen < 0) {
+            return reqLen;
+        }
+        int rspLen = mLink.exchange(mReqWire, 0, reqLen, mRspWire, 0);
+        if (rspLen < 0) {
+            return rspLen;
+        }
+        int ret = mPacker.unpack(mRspWire, 0, rspLen, mResponse);
+        if (ret < 0) {
+            return ret;
+        }
+        if (mResponse.getMti() != 0x0210 || mResponse.getNumber(11) != stan) {
+            return ERR_RESPONSE;
+        }
+        return mResult.parse(mResponse);
+    }
+
+    public OnlineResult getResult() {
+        return mResult;
+    }
+
+    /** Response of the last {@link #authorize}, e.g. for DE38/DE39 on the receipt */
+    public Iso8583Message getResponse() {
+        return mResponse;
+    }
+
+    /** Pass the last result to the kernel; EmvFinal() follows */
+    public int apply(EmvKernel kernel) {
+        return kernel.setOnlineResult(mResult.getResponseCode(), mResult.getIssuerData(),
+                mResult.getIssuerDataLength());
+    }
+
+    /** Copy the value of {@code tag} to {@link #mValue}; -1 when absent or too long */
+    private int value(EmvTagSnapshot card, int tag) {
+        int len = card.length(tag);
+        return len > 0 && len <= mValue.length ? card.copy(tag, mValue, 0) : -1;
+    }
+
+    /** Packed BCD value of {@code tag}, F nibbles skipped; 0 when absent */
+    private long bcd(EmvTagSnapshot card, int tag) {
+        int len = value(card, tag);
+        long v = 0;
+        for (int i = 0; i < len * 2; i++) {
+            int n = (i & 1) == 0 ? (mValue[i >> 1] >> 4) & 0xF : mValue[i >> 1] & 0xF;
+            if (n < 10) {
+                v = v * 10 + n;
+            }
+        }
+        return v;
+    }
+}
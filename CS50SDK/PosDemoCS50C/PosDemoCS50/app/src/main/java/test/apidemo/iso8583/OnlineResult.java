@@ -0,0 +1,97 @@
+package test.apidemo.iso8583;
+
+import test.apidemo.emv.TlvReader;
+
+/**
+ * The parts of an authorisation response the kernel needs to complete the
+ * transaction, in the form EmvSetOnlineResult() takes them: the response
+ * code as the two ASCII bytes of tag 8A, and the issuer authentication data
+ * (91) and issuer scripts (71, 72) as one TLV list taken from DE55.
+ *
+ * The arrays are reused, so one instance serves every transaction.
+ */
+public class OnlineResult {
+
+    /** Response code missing or not two characters */
+    public static final int ERR_NO_RESPONSE_CODE = -3611;
+    /** DE55 present but not valid TLV */
+    public static final int ERR_ICC_DATA = -3612;
+
+    private static final int MAX_ISSUER_DATA = 512;
+
+    private final byte[] mResponseCode = new byte[2];
+    private final byte[] mIssuerData = new byte[MAX_ISSUER_DATA];
+    private final byte[] mAuthCode = new byte[6];
+    private final TlvReader mReader = new TlvReader();
+    private int mIssuerDataLength;
+    private int mAuthCodeLength;
+
+    /**
+     * Take the result from an unpacked response.
+     *
+     * @return 0, {@link #ERR_NO_RESPONSE_CODE} or {@link #ERR_ICC_DATA}
+     */
+    public int parse(Iso8583Message rsp) {
+        mIssuerDataLength = 0;
+        mAuthCodeLength = 0;
+        if (rsp.length(39) != 2) {
+            return ERR_NO_RESPONSE_CODE;
+        }
+        rsp.copy(39, mResponseCode, 0);
+        if (rsp.has(38)) {
+            mAuthCodeLength = Math.min(rsp.length(38), mAuthCode.length);
+            System.arraycopy(rsp.buffer(), rsp.offset(38), mAuthCode, 0, mAuthCodeLength);
+        }
+        if (!rsp.has(55)) {
+            return 0;
+        }
+
+        TlvReader r = mReader.reset(rsp.buffer(), rsp.offset(55), rsp.length(55));
+        int ret;
+        while ((ret = r.next()) == 1) {
+            int tag = r.tag();
+            if (tag != 0x91 && tag != 0x71 && tag != 0x72) {
+                continue;
+            }
+            int len = r.encodedLength();
+            if (mIssuerDataLength + len > MAX_ISSUER_DATA) {
+                return ERR_ICC_DATA;
+            }
+            System.arraycopy(r.buffer(), r.tagOffset(), mIssuerData, mIssuerDataLength, len);
+            mIssuerDataLength += len;
+        }
+        return ret < 0 ? ERR_ICC_DATA : 0;
+    }
+
+    /** Two ASCII characters, the value of tag 8A */
+    public byte[] getResponseCode() {
+        return mResponseCode;
+    }
+
+    /** 91, 71 and 72 objects as received; valid up to {@link #getIssuerDataLength()} */
+    public byte[] getIssuerData() {
+        return mIssuerData;
+    }
+
+    public int getIssuerDataLength() {
+        return mIssuerDataLength;
+    }
+
+    /** Approved or honour with identification ("00", "08", "10", "11") */
+    public boolean isApproved() {
+        if (mResponseCode[0] != '0' && mResponseCode[0] != '1') {
+            return false;
+        }
+        int code = (mResponseCode[0] - '0') * 10 + (mResponseCode[1] - '0');
+        return code == 0 || code == 8 || code == 10 || code == 11;
+    }
+
+    /** DE38 as received; valid up to {@link #getAuthCodeLength()} */
+    public byte[] getAuthCode() {
+        return mAuthCode;
+    }
+
+    public int getAuthCodeLength() {
+        return mAuthCodeLength;
+    }
+}
@@ -0,0 +1,159 @@
+package test.apidemo.iso8583;
+
+import test.apidemo.emv.EmvTagSnapshot;
+import test.apidemo.emv.TlvIndex;
+import test.apidemo.emv.TlvWriter;
+import test.apidemo.saf.HostLink;
+import test.apidemo.saf.SafItem;
+
+/**
+ * Uploads store-and-forward items over the same {@link AcquirerLink} as
+ * the online authorisations, one advice per item: a stored 0200 goes as
+ * 0220, a stored 0400 reversal as 0420.
+ *
+ * An item is the TLV list the terminal stored: the message type in
+ * {@link #TAG_MTI}, the DE55 objects and 9F02, and the card data encrypted
+ * under a DUKPT key in {@link #TAG_CARD} with its {@link #TAG_KSN}. The
+ * advice carries the DE55 objects in DE55 and KSN and cipher text as hex
+ * in DE62; no clear card data is ever sent or needed.
+ */
+public class SafUploader implements HostLink {
+
+    /** Message type of a stored item, 2 bytes BCD (0200 or 0400) */
+    public static final int TAG_MTI = 0xDF8F02;
+    /** Card data TLV list encrypted under the DUKPT data key */
+    public static final int TAG_CARD = 0xDF8F03;
+    /** KSN of {@link #TAG_CARD} */
+    public static final int TAG_KSN = 0xDF8F04;
+
+    private static final int MAX_MESSAGE = 1024;
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            'A', 'B', 'C', 'D', 'E', 'F'};
+
+    private final Iso8583Packer mPacker;
+    private final AcquirerLink mLink;
+    private final Iso8583Message mRequest = new Iso8583Message();
+    private final Iso8583Message mResponse = new Iso8583Message();
+    private final TlvIndex mIndex = new TlvIndex(32);
+    private final TlvWriter mIcc = new TlvWriter(256);
+    private final byte[] mHex = new byte[999];
+    private final byte[] mReqWire = new byte[MAX_MESSAGE];
+    private final byte[] mRspWire = new byte[MAX_MESSAGE];
+    private String mTerminalId = "00000001";
+    private String mMerchantId = "000000000000001";
+
+    public SafUploader(Iso8583Spec spec, AcquirerLink link) {
+        mPacker = new Iso8583Packer(spec);
+        mLink = link;
+    }
+
+    public void setTerminal(String terminalId, String merchantId) {
+        mTerminalId = terminalId;
+        mMerchantId = merchantId;
+    }
+
+    /**
+     * Items are sent one after the other; the first one the link cannot
+     * deliver ends the batch with its error, and the host acknowledges the
+     * ones it already booked again on the next upload.
+     */
+    @Override
+    public int upload(SafItem[] items, int count, int[] results) {
+        for (int i = 0; i < count; i++) {
+            int ret = send(items[i]);
+            if (ret == AcquirerLink.ERR_LINK_DOWN) {
+                return ret;
+            }
+            results[i] = ret;
+        }
+        return 0;
+    }
+
+    /** @return a {@code RESULT_*}, or {@link AcquirerLink#ERR_LINK_DOWN} */
+    private int send(SafItem item) {
+        byte[] data = item.getData();
+        if (mIndex.build(data, 0, data.length) < 0) {
+            return RESULT_REJECTED;
+        }
+        int mti = bcd(TAG_MTI) == 400 ? 0x0420 : 0x0220;
+        mRequest.clear().setMti(mti)
+                .setNumber(3, 0, 6)
+                .setNumber(4, bcd(0x9F02), 12)
+                .setNumber(11, item.getStan(), 6)
+                .setNumber(25, 0, 2)
+                .setAscii(41, mTerminalId)
+                .setAscii(42, mMerchantId);
+        mIcc.reset();
+        for (int tag : EmvTagSnapshot.DE55_TAGS) {
+            int slot = mIndex.find(tag);
+            if (slot >= 0) {
+                mIcc.put(tag, data, mIndex.valueOffset(slot), mIndex.valueLength(slot));
+            }
+        }
+        if (mIcc.length() > 0) {
+            mRequest.set(55, mIcc.buffer(), 0, mIcc.length());
+        }
+        int ksn = mIndex.find(TAG_KSN);
+        int card = mIndex.find(TAG_CARD);
+        if (ksn >= 0 && card >= 0) {
+            int n = hex(data, mIndex.valueOffset(ksn), mIndex.valueLength(ksn), 0);
+            n = hex(data, mIndex.valueOffset(card), mIndex.valueLength(card), n);
+            if (n < 0) {
+                return RESULT_REJECTED;
+            }
+            mRequest.set(62, mHex, 0, n);
+        }
+
+        int reqLen = mPacker.pack(mRequest, mReqWire, 0);
+        if (reqLen < 0) {
+            return RESULT_REJECTED;
+        }
+        int rspLen = mLink.exchange(mReqWire, 0, reqLen, mRspWire, 0);
+        if (rspLen == AcquirerLink.ERR_LINK_DOWN) {
+            return rspLen;
+        }
+        if (rspLen < 0 || mPacker.unpack(mRspWire, 0, rspLen, mResponse) < 0
+                || mResponse.getMti() != mti + 0x10 || mResponse.getNumber(11) != item.getStan()) {
+            return RESULT_RETRY;
+        }
+        // 94: duplicate, the host booked it from an earlier upload
+        if (mResponse.valueEquals(39, "00") || mResponse.valueEquals(39, "94")) {
+            return RESULT_OK;
+        }
+        // 91 issuer unavailable, 96 system malfunction: try again later
+        if (mResponse.valueEquals(39, "91") || mResponse.valueEquals(39, "96")) {
+            return RESULT_RETRY;
+        }
+        return RESULT_REJECTED;
+    }
+
+    /** Packed BCD value of {@code tag} in the item; 0 when absent */
+    private long bcd(int tag) {
+        int slot = mIndex.find(tag);
+        if (slot < 0) {
+            return 0;
+        }
+        byte[] b = mIndex.buffer();
+        int off = mIndex.valueOffset(slot);
+        long v = 0;
+        for (int i = 0; i < mIndex.valueLength(slot) * 2; i++) {
+            int n = (i & 1) == 0 ? (b[off + (i >> 1)] >> 4) & 0xF : b[off + (i >> 1)] & 0xF;
+            if (n < 10) {
+                v = v * 10 + n;
+            }
+        }
+        return v;
+    }
+
+    /** Append {@code len} bytes as hex to {@link #mHex} at {@code at}; -1 when they do not fit */
+    private int hex(byte[] b, int off, int len, int at) {
+        if (at < 0 || at + len * 2 > mHex.length) {
+            return -1;
+        }
+        for (int i = 0; i < len; i++) {
+            mHex[at++] = HEX[(b[off + i] >> 4) & 0xF];
+            mHex[at++] = HEX[b[off + i] & 0xF];
+        }
+        return at;
+    }
+}
@@ -0,0 +1,477 @@
+package test.apidemo.journal;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import test.apidemo.emv.TlvWriter;
+
+/**
+ * Append-only transaction journal in memory-mapped segment files.
+ *
+ * Each transaction phase (start, card data, GenAC result, online result,
+ * completion) is appended as one record holding a TLV list:
+ *
+ * <pre>
+ * u16 length | u8 phase | u8 0 | u32 transaction | TLV data | u32 CRC32
+ * </pre>
+ *
+ * The CRC covers the header and the data. A zero header marks the end of a
+ * segment. An append is only a copy into the mapping, so there is no fsync
+ * on the lane. Once the copy is done the record is in the page cache and
+ * survives a crash of the app. {@link #sync()} flushes it to storage and is
+ * meant for idle time. A segment is also flushed when it fills up and the
+ * journal rotates to a new file.
+ *
+ * {@link #open()} scans the segments, cuts the last one at the first record
+ * that fails its CRC (a torn write), and rebuilds the set of transactions
+ * that started but never completed. Those are the reversal candidates, and
+ * {@link #markReversed} closes one once its reversal is queued.
+ *
+ * Segments beyond the limit are deleted oldest first. The records of open
+ * transactions in a segment about to go are first copied to the newest
+ * one, so a transaction that never completes moves forward instead of
+ * keeping old segments on disk; a scan may then meet its phases out of
+ * order. A segment is only kept past the limit when those records do not
+ * fit in the new one.
+ */
+public class TxnJournal {
+
+    public static final int PHASE_START = 1;
+    public static final int PHASE_CARD = 2;
+    public static final int PHASE_GENAC = 3;
+    public static final int PHASE_ONLINE = 4;
+    public static final int PHASE_COMPLETE = 5;
+    /** Closes a transaction found open after a crash, once it is being reversed */
+    public static final int PHASE_REVERSED = 6;
+
+    /** Kernel or host return code of a phase, 4 bytes signed */
+    public static final int TAG_RESULT = 0xDF8F01;
+
+    public static final int ERR_CLOSED = -3401;
+    public static final int ERR_TOO_LARGE = -3402;
+    public static final int ERR_IO = -3403;
+    public static final int ERR_PARAM = -3404;
+    public static final int ERR_NOT_OPEN = -3405;
+
+    /** Called for every record by {@link #scan} */
+    public interface Visitor {
+        void record(long segment, int txn, int phase, byte[] buf, int off, int len);
+    }
+
+    private static final int MAGIC = 0x454D564A; // "EMVJ"
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER = 16;
+    private static final int RECORD_HEADER = 8;
+    private static final int RECORD_OVERHEAD = RECORD_HEADER + 4;
+    private static final int MAX_RECORD_DATA = 0xFFFF;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".seg";
+
+    private final File mDir;
+    private final int mSegmentSize;
+    private final int mMaxSegments;
+    private final CRC32 mCrc = new CRC32();
+    private final byte[] mScratch;
+    private final Set<Integer> mOpen = new HashSet<Integer>();
+
+    private long[] mSegments = new long[0];
+    private RandomAccessFile mFile;
+    private MappedByteBuffer mMap;
+    private long mSegment;
+    private int mPos;
+    private int mLastTxn;
+    private boolean mDirty;
+
+    /**
+     * @param segmentSize bytes per segment file
+     * @param maxSegments segments kept before the oldest is deleted
+     */
+    public TxnJournal(File dir, int segmentSize, int maxSegments) {
+        if (segmentSize < SEGMENT_HEADER + RECORD_OVERHEAD + 256 || maxSegments < 1) {
+            throw new IllegalArgumentException("segmentSize " + segmentSize + ", maxSegments " + maxSegments);
+        }
+        mDir = dir;
+        mSegmentSize = segmentSize;
+        mMaxSegments = maxSegments;
+        mScratch = new byte[Math.min(segmentSize, RECORD_OVERHEAD + MAX_RECORD_DATA)];
+    }
+
+    /**
+     * Recover the journal and get ready to append.
+     *
+     * @return number of valid records found
+     */
+    public synchronized int open() throws IOException {
+        close();
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            throw new IOException("cannot create " + mDir);
+        }
+        mSegments = listSegments();
+        mOpen.clear();
+        mLastTxn = 0;
+        final int[] records = {0};
+        long last = -1;
+        int lastEnd = 0;
+        for (long seq : mSegments) {
+            RandomAccessFile f = new RandomAccessFile(segmentFile(seq), "r");
+            try {
+                int end = scanSegment(f, new Visitor() {
+                    @Override
+                    public void record(long seg, int txn, int phase, byte[] buf, int off, int len) {
+                        records[0]++;
+                        track(txn, phase);
+                    }
+                });
+                last = seq;
+                lastEnd = end;
+            } finally {
+                f.close();
+            }
+        }
+        if (last < 0) {
+            startSegment(0, 0);
+        } else if (lastEnd < 0) {
+            // crashed while creating the segment
+            mSegments = Arrays.copyOf(mSegments, mSegments.length - 1);
+            startSegment(last, 0);
+        } else {
+            mapSegment(last, lastEnd);
+        }
+        return records[0];
+    }
+
+    /**
+     * Start a transaction.
+     *
+     * @return the new transaction number (greater than 0), or a negative error
+     */
+    public synchronized int begin(byte[] tlv, int off, int len) {
+        int txn = mLastTxn + 1;
+        int ret = append(txn, PHASE_START, tlv, off, len);
+        return ret < 0 ? ret : txn;
+    }
+
+    public int begin(TlvWriter tlv) {
+        return begin(tlv.buffer(), 0, tlv.length());
+    }
+
+    /**
+     * Append one phase record; {@link #PHASE_COMPLETE} and
+     * {@link #PHASE_REVERSED} close the transaction.
+     *
+     * @return 0, {@link #ERR_CLOSED}, {@link #ERR_TOO_LARGE}, {@link #ERR_PARAM}
+     * or {@link #ERR_IO} when a new segment could not be created
+     */
+    public synchronized int append(int txn, int phase, byte[] tlv, int off, int len) {
+        if (mMap == null) {
+            return ERR_CLOSED;
+        }
+        if (txn <= 0 || phase <= 0 || phase > 0xFF || len < 0) {
+            return ERR_PARAM;
+        }
+        if (len > MAX_RECORD_DATA || SEGMENT_HEADER + RECORD_OVERHEAD + len > mSegmentSize) {
+            return ERR_TOO_LARGE;
+        }
+        if (mPos + RECORD_OVERHEAD + len > mSegmentSize) {
+            try {
+                startSegment(mSegment + 1, RECORD_OVERHEAD + len);
+            } catch (IOException e) {
+                return ERR_IO;
+            }
+        }
+        byte[] r = mScratch;
+        r[0] = (byte) (len >> 8);
+        r[1] = (byte) len;
+        r[2] = (byte) phase;
+        r[3] = 0;
+        putInt(r, 4, txn);
+        System.arraycopy(tlv, off, r, RECORD_HEADER, len);
+        mCrc.reset();
+        mCrc.update(r, 0, RECORD_HEADER + len);
+        putInt(r, RECORD_HEADER + len, (int) mCrc.getValue());
+        put(r, 0, RECORD_OVERHEAD + len);
+        track(txn, phase);
+        return 0;
+    }
+
+    public int append(int txn, int phase, TlvWriter tlv) {
+        return append(txn, phase, tlv.buffer(), 0, tlv.length());
+    }
+
+    /**
+     * Close a transaction left open by a crash once its reversal is queued,
+     * so it is no longer reported by {@link #getOpenTransactions()}.
+     *
+     * @param tlv what the reversal carried, may be empty
+     * @return 0, {@link #ERR_NOT_OPEN} or an {@link #append} error
+     */
+    public synchronized int markReversed(int txn, byte[] tlv, int off, int len) {
+        if (!mOpen.contains(txn)) {
+            return ERR_NOT_OPEN;
+        }
+        return append(txn, PHASE_REVERSED, tlv, off, len);
+    }
+
+    public int markReversed(int txn, TlvWriter tlv) {
+        return markReversed(txn, tlv.buffer(), 0, tlv.length());
+    }
+
+    /** Flush appended records to storage; call while the lane is idle */
+    public synchronized void sync() {
+        if (mMap != null && mDirty) {
+            mMap.force();
+            mDirty = false;
+        }
+    }
+
+    /** Transactions started but not completed, oldest first */
+    public synchronized int[] getOpenTransactions() {
+        int[] txns = new int[mOpen.size()];
+        int i = 0;
+        for (Integer txn : mOpen) {
+            txns[i++] = txn;
+        }
+        Arrays.sort(txns);
+        return txns;
+    }
+
+    /** Segment files on disk */
+    public synchronized int getSegmentCount() {
+        return mSegments.length;
+    }
+
+    /**
+     * Visit every valid record, oldest segment first.
+     *
+     * @return number of records visited
+     */
+    public synchronized int scan(Visitor visitor) throws IOException {
+        int count = 0;
+        final int[] n = {0};
+        for (final long seq : mSegments) {
+            final Visitor v = visitor;
+            RandomAccessFile f = new RandomAccessFile(segmentFile(seq), "r");
+            try {
+                n[0] = 0;
+                scanSegment(f, new Visitor() {
+                    @Override
+                    public void record(long seg, int txn, int phase, byte[] buf, int off, int len) {
+                        n[0]++;
+                        v.record(seq, txn, phase, buf, off, len);
+                    }
+                });
+                count += n[0];
+            } finally {
+                f.close();
+            }
+        }
+        return count;
+    }
+
+    public synchronized void close() {
+        sync();
+        mMap = null;
+        if (mFile != null) {
+            try {
+                mFile.close();
+            } catch (IOException ignored) {
+            }
+            mFile = null;
+        }
+    }
+
+    private void track(int txn, int phase) {
+        if (txn > mLastTxn) {
+            mLastTxn = txn;
+        }
+        if (phase == PHASE_START) {
+            mOpen.add(txn);
+        } else if (phase == PHASE_COMPLETE || phase == PHASE_REVERSED) {
+            mOpen.remove(txn);
+        }
+    }
+
+    /** Copy whole records to the mapping at the append position */
+    private void put(byte[] records, int off, int len) {
+        mMap.position(mPos);
+        mMap.put(records, off, len);
+        mPos += len;
+        mDirty = true;
+    }
+
+    /** @return offset after the last valid record, or -1 for a bad segment header */
+    private int scanSegment(RandomAccessFile f, Visitor v) throws IOException {
+        int size = (int) Math.min(f.length(), mSegmentSize);
+        if (size < SEGMENT_HEADER) {
+            return -1;
+        }
+        byte[] b = new byte[size];
+        f.readFully(b);
+        if (getInt(b, 0) != MAGIC || getInt(b, 4) != VERSION) {
+            return -1;
+        }
+        int pos = SEGMENT_HEADER;
+        while (pos + RECORD_OVERHEAD <= size) {
+            int len = ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+            int phase = b[pos + 2] & 0xFF;
+            if (phase == 0 || pos + RECORD_OVERHEAD + len > size) {
+                break;
+            }
+            mCrc.reset();
+            mCrc.update(b, pos, RECORD_HEADER + len);
+            if ((int) mCrc.getValue() != getInt(b, pos + RECORD_HEADER + len)) {
+                break;
+            }
+            v.record(0, getInt(b, pos + 4), phase, b, pos + RECORD_HEADER, len);
+            pos += RECORD_OVERHEAD + len;
+        }
+        return pos;
+    }
+
+    /** @param reserve room the record that caused the rotation needs in the new segment */
+    private void startSegment(long seq, int reserve) throws IOException {
+        // flushes the full segment
+        close();
+        RandomAccessFile f = new RandomAccessFile(segmentFile(seq), "rw");
+        try {
+            f.setLength(0);
+            f.setLength(mSegmentSize);
+            byte[] header = new byte[SEGMENT_HEADER];
+            putInt(header, 0, MAGIC);
+            putInt(header, 4, VERSION);
+            putInt(header, 8, (int) (seq >>> 32));
+            putInt(header, 12, (int) seq);
+            f.write(header);
+        } finally {
+            f.close();
+        }
+        long[] segments = Arrays.copyOf(mSegments, mSegments.length + 1);
+        segments[segments.length - 1] = seq;
+        mSegments = segments;
+        mapSegment(seq, SEGMENT_HEADER);
+        dropOldSegments(reserve);
+    }
+
+    private void mapSegment(long seq, int pos) throws IOException {
+        mFile = new RandomAccessFile(segmentFile(seq), "rw");
+        if (mFile.length() < mSegmentSize) {
+            mFile.setLength(mSegmentSize);
+        }
+        mMap = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+        mSegment = seq;
+        mPos = pos;
+        // wipe whatever a torn write left behind the last valid record
+        int end = Math.min(mSegmentSize, pos + RECORD_OVERHEAD + MAX_RECORD_DATA);
+        boolean torn = false;
+        for (int i = pos; i < end && !torn; i++) {
+            torn = mMap.get(i) != 0;
+        }
+        if (torn) {
+            for (int i = pos; i < end; i++) {
+                mMap.put(i, (byte) 0);
+            }
+            mMap.force();
+        }
+    }
+
+    private void dropOldSegments(int reserve) throws IOException {
+        int drop = 0;
+        while (mSegments.length - drop > mMaxSegments && carryForward(mSegments[drop], reserve)) {
+            segmentFile(mSegments[drop]).delete();
+            drop++;
+        }
+        if (drop > 0) {
+            mSegments = Arrays.copyOfRange(mSegments, drop, mSegments.length);
+        }
+    }
+
+    /**
+     * Copy the records of open transactions in segment {@code seq} to the
+     * current segment, unchanged, and flush them before the old file goes.
+     *
+     * @return false when they do not fit next to {@code reserve} more bytes
+     * and the segment has to stay
+     */
+    private boolean carryForward(long seq, int reserve) throws IOException {
+        if (mOpen.isEmpty()) {
+            return true;
+        }
+        final List<byte[]> records = new ArrayList<byte[]>();
+        final int[] size = {0};
+        RandomAccessFile f = new RandomAccessFile(segmentFile(seq), "r");
+        try {
+            scanSegment(f, new Visitor() {
+                @Override
+                public void record(long seg, int txn, int phase, byte[] buf, int off, int len) {
+                    if (mOpen.contains(txn)) {
+                        records.add(Arrays.copyOfRange(buf, off - RECORD_HEADER, off + len + 4));
+                        size[0] += RECORD_OVERHEAD + len;
+                    }
+                }
+            });
+        } finally {
+            f.close();
+        }
+        if (records.isEmpty()) {
+            return true;
+        }
+        if (mPos + size[0] + reserve > mSegmentSize) {
+            return false;
+        }
+        for (byte[] r : records) {
+            put(r, 0, r.length);
+        }
+        sync();
+        return true;
+    }
+
+    private long[] listSegments() {
+        String[] names = mDir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }
+        });
+        if (names == null) {
+            return new long[0];
+        }
+        long[] seqs = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            try {
+                seqs[n] = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                n++;
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        seqs = Arrays.copyOf(seqs, n);
+        Arrays.sort(seqs);
+        return seqs;
+    }
+
+    private File segmentFile(long seq) {
+        return new File(mDir, String.format("%s%08d%s", PREFIX, seq, SUFFIX));
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >> 24);
+        b[off + 1] = (byte) (v >> 16);
+        b[off + 2] = (byte) (v >> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16)
+                | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,96 @@
+package test.apidemo.pci;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * One-block DES, TDES and AES in ECB mode between caller buffers, for key
+ * derivation and PIN blocks.
+ *
+ * There is a cipher per algorithm and direction, each remembering the key
+ * it was last set up with and only set up again when it changes, so a run
+ * of blocks under one key (a PIN key, a MAC key), in either direction,
+ * costs no key schedule and no allocation. Not thread safe.
+ */
+final class BlockCipher {
+
+    private final Slot[] mDes = {new Slot("DES/ECB/NoPadding", "DES"), new Slot("DES/ECB/NoPadding", "DES")};
+    private final Slot[] mTdes = {new Slot("DESede/ECB/NoPadding", "DESede"),
+            new Slot("DESede/ECB/NoPadding", "DESede")};
+    private final Slot[] mAes = {new Slot("AES/ECB/NoPadding", "AES"), new Slot("AES/ECB/NoPadding", "AES")};
+    private final byte[] mTdesKey = new byte[24];
+
+    /** A cipher and the key it holds */
+    private static final class Slot {
+        final Cipher mCipher;
+        final String mAlgorithm;
+        final byte[] mKey = new byte[32];
+        int mKeyLen;
+        int mMode;
+
+        Slot(String transformation, String algorithm) {
+            try {
+                mCipher = Cipher.getInstance(transformation);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            mAlgorithm = algorithm;
+        }
+
+        void run(boolean encrypt, byte[] key, int keyOff, int keyLen, byte[] in, int inOff, int len,
+                 byte[] out, int outOff) {
+            int mode = encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+            try {
+                if (mode != mMode || !sameKey(key, keyOff, keyLen)) {
+                    mMode = 0;
+                    mCipher.init(mode, new SecretKeySpec(key, keyOff, keyLen, mAlgorithm));
+                    System.arraycopy(key, keyOff, mKey, 0, keyLen);
+                    mKeyLen = keyLen;
+                    mMode = mode;
+                }
+                mCipher.doFinal(in, inOff, len, out, outOff);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private boolean sameKey(byte[] key, int keyOff, int keyLen) {
+            if (keyLen != mKeyLen) {
+                return false;
+            }
+            int diff = 0;
+            for (int i = 0; i < keyLen; i++) {
+                diff |= mKey[i] ^ key[keyOff + i];
+            }
+            return diff == 0;
+        }
+    }
+
+    /**
+     * Encrypt or decrypt one 8-byte block with single DES ({@code keyLen} 8)
+     * or TDES (16 for a double length key, 24 for triple).
+     */
+    void des(boolean encrypt, byte[] key, int keyOff, int keyLen, byte[] in, int inOff, byte[] out, int outOff) {
+        if (keyLen == 8) {
+            mDes[encrypt ? 0 : 1].run(encrypt, key, keyOff, 8, in, inOff, 8, out, outOff);
+        } else if (keyLen == 16 || keyLen == 24) {
+            System.arraycopy(key, keyOff, mTdesKey, 0, keyLen);
+            if (keyLen == 16) {
+                System.arraycopy(key, keyOff, mTdesKey, 16, 8);
+            }
+            mTdes[encrypt ? 0 : 1].run(encrypt, mTdesKey, 0, 24, in, inOff, 8, out, outOff);
+        } else {
+            throw new IllegalArgumentException("DES key length " + keyLen);
+        }
+    }
+
+    /** Encrypt or decrypt one 16-byte block with a 16, 24 or 32-byte AES key */
+    void aes(boolean encrypt, byte[] key, int keyOff, int keyLen, byte[] in, int inOff, byte[] out, int outOff) {
+        if (keyLen != 16 && keyLen != 24 && keyLen != 32) {
+            throw new IllegalArgumentException("AES key length " + keyLen);
+        }
+        mAes[encrypt ? 0 : 1].run(encrypt, key, keyOff, keyLen, in, inOff, 16, out, outOff);
+    }
+}
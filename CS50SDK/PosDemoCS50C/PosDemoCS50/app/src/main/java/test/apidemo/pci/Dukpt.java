@@ -0,0 +1,202 @@
+package test.apidemo.pci;
+
+import java.util.Arrays;
+
+/**
+ * Derived Unique Key Per Transaction, in software: the originator side with
+ * its key registers and transaction counter, and the host side that
+ * derives the key of any KSN from the initial key.
+ *
+ * The originator keeps one register per counter bit. Each register holds
+ * the key of a transaction still to come, derived as soon as its parent
+ * key is in use, so moving to the next transaction is a register read plus
+ * the derivations for the new key's children - never a walk from the
+ * initial key. Counters with more one bits than the standard allows are
+ * skipped, as the terminal does, so a host can check that a device's KSNs
+ * progress the way they must. {@link #load} also accepts a KSN whose
+ * counter is not zero and rebuilds the registers for it.
+ *
+ * Not thread safe.
+ */
+public abstract class Dukpt {
+
+    /** PIN encryption */
+    public static final int USAGE_PIN = 1;
+    /** MAC on messages to the host */
+    public static final int USAGE_MAC = 2;
+    /** MAC on messages from the host */
+    public static final int USAGE_MAC_RESPONSE = 3;
+    /** Data encryption towards the host */
+    public static final int USAGE_DATA = 4;
+    /** Data encryption from the host */
+    public static final int USAGE_DATA_RESPONSE = 5;
+
+    /** No initial key loaded, or no transaction started yet */
+    public static final int ERR_NOT_LOADED = -3801;
+    /** The transaction counter has run out; a new initial key is needed */
+    public static final int ERR_EXHAUSTED = -3802;
+    /** KSN counter no originator can produce */
+    public static final int ERR_KSN = -3803;
+    public static final int ERR_USAGE = -3804;
+
+    private final int mCounterBits;
+    private final int mMaxOnes;
+    private final int mKsnLength;
+    private final int mKeyLength;
+    private final byte[][] mRegisters;
+    private final byte[] mKsn;
+    private final byte[] mCurrent;
+    private final byte[] mChain;
+    private long mCounter;
+    private boolean mLoaded;
+    private boolean mStarted;
+
+    /**
+     * @param counterBits bits of the transaction counter in the KSN
+     * @param maxOnes     most one bits a used counter may have
+     * @param keyLength   length of the initial and intermediate keys
+     */
+    protected Dukpt(int counterBits, int maxOnes, int ksnLength, int keyLength) {
+        mCounterBits = counterBits;
+        mMaxOnes = maxOnes;
+        mKsnLength = ksnLength;
+        mKeyLength = keyLength;
+        mRegisters = new byte[counterBits][keyLength];
+        mKsn = new byte[ksnLength];
+        mCurrent = new byte[keyLength];
+        mChain = new byte[keyLength];
+    }
+
+    /** Derive the intermediate key for {@code counter} from its parent {@code key} */
+    protected abstract void deriveRegister(byte[] key, byte[] ksn, int ksnOff, long counter, byte[] out);
+
+    /** Derive the working key for {@code usage}; @return its length or {@link #ERR_USAGE} */
+    protected abstract int deriveWorking(byte[] key, byte[] ksn, int ksnOff, long counter, int usage,
+                                         byte[] out, int off);
+
+    protected abstract long counterOf(byte[] ksn, int off);
+
+    protected abstract void putCounter(byte[] ksn, int off, long counter);
+
+    public int getKsnLength() {
+        return mKsnLength;
+    }
+
+    /**
+     * Load an initial key. The counter in the KSN is taken as the last one
+     * used, so a freshly injected key with counter 0 starts at 1.
+     *
+     * @throws IllegalArgumentException for a key or KSN of the wrong length,
+     * or a counter no originator can have used
+     */
+    public void load(byte[] initialKey, byte[] ksn, int ksnOff) {
+        if (initialKey.length != mKeyLength || ksn.length - ksnOff < mKsnLength) {
+            throw new IllegalArgumentException("initial key or KSN length");
+        }
+        long counter = counterOf(ksn, ksnOff);
+        if (Long.bitCount(counter) > mMaxOnes) {
+            throw new IllegalArgumentException("KSN counter " + Long.toHexString(counter));
+        }
+        System.arraycopy(ksn, ksnOff, mKsn, 0, mKsnLength);
+        chain(initialKey, mKsn, 0, counter, mCurrent);
+        for (int b = 0; b < mCounterBits; b++) {
+            long bit = 1L << b;
+            if ((counter & bit) != 0) {
+                continue;
+            }
+            // below the lowest one bit the register is a child of the current
+            // key; above it, a sibling hanging off an ancestor
+            long parent = bit < (counter & -counter) || counter == 0 ? counter : counter & -(bit << 1);
+            if (Long.bitCount(parent) >= mMaxOnes) {
+                continue;
+            }
+            chain(initialKey, mKsn, 0, parent, mChain);
+            deriveRegister(mChain, mKsn, 0, parent | bit, mRegisters[b]);
+        }
+        mCounter = counter;
+        mLoaded = true;
+        mStarted = false;
+    }
+
+    /**
+     * Move to the next transaction.
+     *
+     * @return 0, {@link #ERR_NOT_LOADED} or {@link #ERR_EXHAUSTED}
+     */
+    public int next() {
+        if (!mLoaded) {
+            return ERR_NOT_LOADED;
+        }
+        long n = mCounter;
+        long next = Long.bitCount(n) < mMaxOnes ? n + 1 : n + (n & -n);
+        if (next >= 1L << mCounterBits) {
+            return ERR_EXHAUSTED;
+        }
+        int low = Long.numberOfTrailingZeros(next);
+        System.arraycopy(mRegisters[low], 0, mCurrent, 0, mKeyLength);
+        Arrays.fill(mRegisters[low], (byte) 0);
+        if (Long.bitCount(next) < mMaxOnes) {
+            for (int b = 0; b < low; b++) {
+                deriveRegister(mCurrent, mKsn, 0, next | 1L << b, mRegisters[b]);
+            }
+        }
+        mCounter = next;
+        putCounter(mKsn, 0, next);
+        mStarted = true;
+        return 0;
+    }
+
+    /** Counter of the current transaction */
+    public long getCounter() {
+        return mCounter;
+    }
+
+    /** @return KSN length */
+    public int getKsn(byte[] out, int off) {
+        System.arraycopy(mKsn, 0, out, off, mKsnLength);
+        return mKsnLength;
+    }
+
+    /**
+     * Working key of the current transaction.
+     *
+     * @return key length, {@link #ERR_NOT_LOADED} before {@link #next()} or
+     * {@link #ERR_USAGE}
+     */
+    public int getKey(int usage, byte[] out, int off) {
+        if (!mStarted) {
+            return ERR_NOT_LOADED;
+        }
+        return deriveWorking(mCurrent, mKsn, 0, mCounter, usage, out, off);
+    }
+
+    /**
+     * Host side: derive the working key of any KSN from the initial key,
+     * without touching the originator state.
+     *
+     * @return key length, {@link #ERR_KSN} or {@link #ERR_USAGE}
+     */
+    public int deriveKey(byte[] initialKey, byte[] ksn, int ksnOff, int usage, byte[] out, int off) {
+        if (initialKey.length != mKeyLength) {
+            throw new IllegalArgumentException("initial key length " + initialKey.length);
+        }
+        long counter = counterOf(ksn, ksnOff);
+        if (counter == 0 || Long.bitCount(counter) > mMaxOnes) {
+            return ERR_KSN;
+        }
+        chain(initialKey, ksn, ksnOff, counter, mChain);
+        return deriveWorking(mChain, ksn, ksnOff, counter, usage, out, off);
+    }
+
+    /** Walk from the initial key down the one bits of {@code counter}, high to low */
+    private void chain(byte[] initialKey, byte[] ksn, int ksnOff, long counter, byte[] out) {
+        System.arraycopy(initialKey, 0, out, 0, mKeyLength);
+        long walked = 0;
+        for (long bit = 1L << (mCounterBits - 1); bit != 0; bit >>>= 1) {
+            if ((counter & bit) != 0) {
+                walked |= bit;
+                deriveRegister(out, ksn, ksnOff, walked, out);
+            }
+        }
+    }
+}
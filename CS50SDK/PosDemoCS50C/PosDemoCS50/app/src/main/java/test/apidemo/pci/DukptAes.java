@@ -0,0 +1,137 @@
+package test.apidemo.pci;
+
+/**
+ * AES DUKPT as ANSI X9.24-3:2017 defines it: 12-byte KSN made of the
+ * 8-byte initial key ID and a 32-bit counter, at most sixteen one bits per
+ * counter, and every key derived by AES-ECB of a derivation data block
+ * naming its usage, algorithm and length.
+ *
+ * Intermediate keys have the type of the initial key; working keys have
+ * that type too unless {@link #setWorkingKeyType} picks another.
+ */
+public class DukptAes extends Dukpt {
+
+    public static final int KSN_LENGTH = 12;
+
+    /** Algorithm indicators of the derivation data */
+    public static final int KEY_TDES2 = 0;
+    public static final int KEY_TDES3 = 1;
+    public static final int KEY_AES128 = 2;
+    public static final int KEY_AES192 = 3;
+    public static final int KEY_AES256 = 4;
+
+    private static final int USAGE_KEY_DERIVATION = 0x8000;
+    private static final int USAGE_INITIAL_KEY = 0x8001;
+    private static final int[] KEY_BITS = {128, 192, 128, 192, 256};
+
+    private final BlockCipher mCipher = new BlockCipher();
+    private final byte[] mData = new byte[16];
+    private final byte[] mBlock = new byte[16];
+    private final byte[] mKey = new byte[32];
+    private final int mKeyType;
+    private int mWorkingType;
+
+    /** @param keyType {@link #KEY_AES128}, {@link #KEY_AES192} or {@link #KEY_AES256} */
+    public DukptAes(int keyType) {
+        super(32, 16, KSN_LENGTH, keyLength(keyType));
+        if (keyType < KEY_AES128) {
+            throw new IllegalArgumentException("key type " + keyType);
+        }
+        mKeyType = keyType;
+        mWorkingType = keyType;
+    }
+
+    public void setWorkingKeyType(int type) {
+        keyLength(type);
+        mWorkingType = type;
+    }
+
+    /** Host side: the initial key of a device, from the BDK and its initial key ID */
+    public void deriveInitialKey(byte[] bdk, byte[] ksn, int ksnOff, byte[] out, int off) {
+        header(USAGE_INITIAL_KEY, mKeyType);
+        System.arraycopy(ksn, ksnOff, mData, 8, 8);
+        derive(bdk, mKeyType, out, off);
+    }
+
+    @Override
+    protected void deriveRegister(byte[] key, byte[] ksn, int ksnOff, long counter, byte[] out) {
+        data(USAGE_KEY_DERIVATION, mKeyType, ksn, ksnOff, counter);
+        derive(key, mKeyType, out, 0);
+    }
+
+    @Override
+    protected int deriveWorking(byte[] key, byte[] ksn, int ksnOff, long counter, int usage, byte[] out, int off) {
+        int keyUsage;
+        switch (usage) {
+            case USAGE_PIN:
+                keyUsage = 0x1000;
+                break;
+            case USAGE_MAC:
+                keyUsage = 0x2000;
+                break;
+            case USAGE_MAC_RESPONSE:
+                keyUsage = 0x2001;
+                break;
+            case USAGE_DATA:
+                keyUsage = 0x3000;
+                break;
+            case USAGE_DATA_RESPONSE:
+                keyUsage = 0x3001;
+                break;
+            default:
+                return ERR_USAGE;
+        }
+        data(keyUsage, mWorkingType, ksn, ksnOff, counter);
+        derive(key, mKeyType, out, off);
+        return keyLength(mWorkingType);
+    }
+
+    @Override
+    protected long counterOf(byte[] ksn, int off) {
+        return (ksn[off + 8] & 0xFFL) << 24 | (ksn[off + 9] & 0xFF) << 16 | (ksn[off + 10] & 0xFF) << 8
+                | ksn[off + 11] & 0xFF;
+    }
+
+    @Override
+    protected void putCounter(byte[] ksn, int off, long counter) {
+        for (int i = 0; i < 4; i++) {
+            ksn[off + 8 + i] = (byte) (counter >> (24 - i * 8));
+        }
+    }
+
+    private void header(int usage, int type) {
+        mData[0] = 1;
+        mData[2] = (byte) (usage >> 8);
+        mData[3] = (byte) usage;
+        mData[4] = 0;
+        mData[5] = (byte) type;
+        mData[6] = (byte) (KEY_BITS[type] >> 8);
+        mData[7] = (byte) KEY_BITS[type];
+    }
+
+    /** Derivation data for a transaction key: derivation ID of the KSN and the counter */
+    private void data(int usage, int type, byte[] ksn, int ksnOff, long counter) {
+        header(usage, type);
+        System.arraycopy(ksn, ksnOff + 4, mData, 8, 4);
+        putCounter(mData, 4, counter);
+    }
+
+    /** Encrypt the derivation data once per 16 bytes of the derived key */
+    private void derive(byte[] key, int keyType, byte[] out, int off) {
+        int keyLen = keyLength(keyType);
+        System.arraycopy(key, 0, mKey, 0, keyLen);
+        int len = KEY_BITS[mData[5]] / 8;
+        for (int done = 0, block = 1; done < len; done += 16, block++) {
+            mData[1] = (byte) block;
+            mCipher.aes(true, mKey, 0, keyLen, mData, 0, mBlock, 0);
+            System.arraycopy(mBlock, 0, out, off + done, Math.min(16, len - done));
+        }
+    }
+
+    private static int keyLength(int type) {
+        if (type < KEY_TDES2 || type > KEY_AES256) {
+            throw new IllegalArgumentException("key type " + type);
+        }
+        return KEY_BITS[type] / 8;
+    }
+}
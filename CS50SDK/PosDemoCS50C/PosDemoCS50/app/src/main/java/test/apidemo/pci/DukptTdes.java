@@ -0,0 +1,116 @@
+package test.apidemo.pci;
+
+/**
+ * TDES DUKPT as ANSI X9.24-1:2009 defines it: 10-byte KSN with a 21-bit
+ * counter, double length keys, at most ten one bits per counter.
+ *
+ * Working keys are the transaction key with the PIN, MAC or data variant
+ * applied; data keys are then encrypted under themselves as the 2009
+ * edition requires.
+ */
+public class DukptTdes extends Dukpt {
+
+    public static final int KSN_LENGTH = 10;
+    public static final int KEY_LENGTH = 16;
+
+    private static final byte[] KEY_MASK = {
+            (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, 0, 0, 0, 0,
+            (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, 0, 0, 0, 0,
+    };
+
+    private final BlockCipher mCipher = new BlockCipher();
+    private final byte[] mRegister = new byte[8];
+    private final byte[] mLeft = new byte[8];
+    private final byte[] mRight = new byte[8];
+    private final byte[] mMasked = new byte[KEY_LENGTH];
+
+    public DukptTdes() {
+        super(21, 10, KSN_LENGTH, KEY_LENGTH);
+    }
+
+    /** Host side: the IPEK of a device, from the BDK and its KSN */
+    public void deriveInitialKey(byte[] bdk, byte[] ksn, int ksnOff, byte[] out, int off) {
+        System.arraycopy(ksn, ksnOff, mRegister, 0, 8);
+        mRegister[7] &= (byte) 0xE0;
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            mMasked[i] = (byte) (bdk[i] ^ KEY_MASK[i]);
+        }
+        mCipher.des(true, bdk, 0, KEY_LENGTH, mRegister, 0, out, off);
+        mCipher.des(true, mMasked, 0, KEY_LENGTH, mRegister, 0, out, off + 8);
+    }
+
+    /** The non-reversible key generation process */
+    @Override
+    protected void deriveRegister(byte[] key, byte[] ksn, int ksnOff, long counter, byte[] out) {
+        System.arraycopy(ksn, ksnOff + 2, mRegister, 0, 8);
+        mRegister[5] = (byte) ((mRegister[5] & 0xE0) | (counter >> 16));
+        mRegister[6] = (byte) (counter >> 8);
+        mRegister[7] = (byte) counter;
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            mMasked[i] = (byte) (key[i] ^ KEY_MASK[i]);
+        }
+        halfKey(key, mRight);
+        halfKey(mMasked, mLeft);
+        System.arraycopy(mLeft, 0, out, 0, 8);
+        System.arraycopy(mRight, 0, out, 8, 8);
+    }
+
+    @Override
+    protected int deriveWorking(byte[] key, byte[] ksn, int ksnOff, long counter, int usage, byte[] out, int off) {
+        int variant;
+        switch (usage) {
+            case USAGE_PIN:
+                variant = 7;
+                break;
+            case USAGE_MAC:
+                variant = 6;
+                break;
+            case USAGE_MAC_RESPONSE:
+                variant = 4;
+                break;
+            case USAGE_DATA:
+                variant = 5;
+                break;
+            case USAGE_DATA_RESPONSE:
+                variant = 3;
+                break;
+            default:
+                return ERR_USAGE;
+        }
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            mMasked[i] = key[i];
+        }
+        mMasked[variant] ^= (byte) 0xFF;
+        mMasked[variant + 8] ^= (byte) 0xFF;
+        if (usage == USAGE_DATA || usage == USAGE_DATA_RESPONSE) {
+            mCipher.des(true, mMasked, 0, KEY_LENGTH, mMasked, 0, out, off);
+            mCipher.des(true, mMasked, 0, KEY_LENGTH, mMasked, 8, out, off + 8);
+        } else {
+            System.arraycopy(mMasked, 0, out, off, KEY_LENGTH);
+        }
+        return KEY_LENGTH;
+    }
+
+    @Override
+    protected long counterOf(byte[] ksn, int off) {
+        return (ksn[off + 7] & 0x1F) << 16 | (ksn[off + 8] & 0xFF) << 8 | ksn[off + 9] & 0xFF;
+    }
+
+    @Override
+    protected void putCounter(byte[] ksn, int off, long counter) {
+        ksn[off + 7] = (byte) ((ksn[off + 7] & 0xE0) | (counter >> 16));
+        ksn[off + 8] = (byte) (counter >> 8);
+        ksn[off + 9] = (byte) counter;
+    }
+
+    /** DES of the crypto register under the left half, whitened with the right half */
+    private void halfKey(byte[] key, byte[] out) {
+        for (int i = 0; i < 8; i++) {
+            out[i] = (byte) (mRegister[i] ^ key[8 + i]);
+        }
+        mCipher.des(true, key, 0, 8, out, 0, out, 0);
+        for (int i = 0; i < 8; i++) {
+            out[i] ^= key[8 + i];
+        }
+    }
+}
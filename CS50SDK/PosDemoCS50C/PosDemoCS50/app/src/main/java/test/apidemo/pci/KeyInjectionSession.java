@@ -0,0 +1,288 @@
+package test.apidemo.pci;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the keys of a {@link KeyManifest} to the secure processor and checks
+ * every one of them.
+ *
+ * Keys go in dependency order: master keys, then DUKPT initial keys, then
+ * session keys, each group in manifest order. A session key whose master
+ * key failed in the same session is not written. The check value of every
+ * key is computed in software up front on the executor, so the DES work of
+ * the whole set overlaps the device writes instead of adding to them. Before
+ * a write the manifest's check value, when given, must match the software
+ * one (a typo in key material never reaches the device); after the write the
+ * device's {@code PciReadKCV} must match the expected value.
+ *
+ * The device is only ever called from the thread running {@link #run}.
+ */
+public class KeyInjectionSession {
+
+    /** The master key of a session key failed in this session; not written */
+    public static final int ERR_MASTER = -3831;
+    /** The manifest's check value does not match the key; not written */
+    public static final int ERR_MANIFEST_KCV = -3832;
+    /** The device reports another check value than expected after the write */
+    public static final int ERR_DEVICE_KCV = -3833;
+    /** The software check value could not be computed */
+    public static final int ERR_SOFTWARE = -3834;
+
+    /** Check value bytes compared with the device */
+    public static final int KCV_LENGTH = 3;
+
+    /** Outcome for one key */
+    public static class Result {
+        private final KeyManifest.Entry mEntry;
+        private final int mRet;
+        private final byte[] mExpectedKcv;
+        private final byte[] mDeviceKcv;
+        private final long mMicros;
+
+        Result(KeyManifest.Entry entry, int ret, byte[] expectedKcv, byte[] deviceKcv, long micros) {
+            mEntry = entry;
+            mRet = ret;
+            mExpectedKcv = expectedKcv;
+            mDeviceKcv = deviceKcv;
+            mMicros = micros;
+        }
+
+        public KeyManifest.Entry getEntry() {
+            return mEntry;
+        }
+
+        /** 0, a write or read return code of the device, or one of the ERR_ codes */
+        public int getRet() {
+            return mRet;
+        }
+
+        public boolean isOk() {
+            return mRet == 0;
+        }
+
+        /** Written and confirmed by the device's check value; DUKPT keys are never confirmed */
+        public boolean isVerified() {
+            return mRet == 0 && mDeviceKcv != null;
+        }
+
+        /** Check value the key should have, or null when neither manifest nor software gives one */
+        public byte[] getExpectedKcv() {
+            return mExpectedKcv;
+        }
+
+        /** Check value read back from the device, or null when not read */
+        public byte[] getDeviceKcv() {
+            return mDeviceKcv;
+        }
+
+        /** Time spent on the device for this key */
+        public long getMicros() {
+            return mMicros;
+        }
+
+        @Override
+        public String toString() {
+            String s = mEntry + " ";
+            if (mRet != 0) {
+                s += "FAIL " + mRet;
+            } else {
+                s += mDeviceKcv != null ? "OK" : "OK unverified";
+            }
+            if (mExpectedKcv != null) {
+                s += " kcv " + hex(mExpectedKcv, KCV_LENGTH);
+            }
+            if (mDeviceKcv != null && mRet == ERR_DEVICE_KCV) {
+                s += " device " + hex(mDeviceKcv, KCV_LENGTH);
+            }
+            return s;
+        }
+    }
+
+    private final KeyLoader mLoader;
+    private final ExecutorService mExecutor;
+
+    /** @param executor runs the software check values; not shut down by the session */
+    public KeyInjectionSession(KeyLoader loader, ExecutorService executor) {
+        mLoader = loader;
+        mExecutor = executor;
+    }
+
+    /** @return one result per key, in the order written */
+    public List<Result> run(KeyManifest manifest) {
+        List<KeyManifest.Entry> order = order(manifest);
+        List<Future<byte[]>> kcvs = new ArrayList<Future<byte[]>>(order.size());
+        for (int i = 0; i < order.size(); i++) {
+            kcvs.add(mExecutor.submit(new SoftwareKcv(order.get(i), manifest.masterOf(order.get(i)))));
+        }
+
+        List<Result> results = new ArrayList<Result>(order.size());
+        for (int i = 0; i < order.size(); i++) {
+            KeyManifest.Entry entry = order.get(i);
+            byte[] software;
+            try {
+                software = kcvs.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(kcvs, i);
+                results.add(new Result(entry, ERR_SOFTWARE, null, null, 0));
+                break;
+            } catch (ExecutionException e) {
+                results.add(new Result(entry, ERR_SOFTWARE, entry.getKcv(), null, 0));
+                continue;
+            }
+            results.add(write(entry, software, masterFailed(manifest, entry, results)));
+        }
+        return results;
+    }
+
+    /** @return number of results that are not OK */
+    public static int countFailed(List<Result> results) {
+        int n = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isOk()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** One line per key, for the screen or a provisioning log */
+    public static String report(List<Result> results) {
+        StringBuilder sb = new StringBuilder();
+        long micros = 0;
+        for (int i = 0; i < results.size(); i++) {
+            sb.append(results.get(i)).append('\n');
+            micros += results.get(i).getMicros();
+        }
+        sb.append(results.size() - countFailed(results)).append('/').append(results.size())
+                .append(" keys ok, ").append(micros / 1000).append(" ms on the device");
+        return sb.toString();
+    }
+
+    /**
+     * Check value of a DES or TDES key: the first bytes of a zero block
+     * encrypted under it. All 8 bytes are returned.
+     */
+    public static byte[] kcv(byte[] key) {
+        byte[] out = new byte[8];
+        new BlockCipher().des(true, key, 0, key.length, new byte[8], 0, out, 0);
+        return out;
+    }
+
+    private Result write(KeyManifest.Entry entry, byte[] software, boolean masterFailed) {
+        byte[] expected = entry.getKcv() != null ? entry.getKcv() : software;
+        if (masterFailed) {
+            return new Result(entry, ERR_MASTER, expected, null, 0);
+        }
+        if (entry.getKcv() != null && software != null && !same(entry.getKcv(), software, entry.getKcv().length)) {
+            return new Result(entry, ERR_MANIFEST_KCV, entry.getKcv(), null, 0);
+        }
+
+        long start = System.nanoTime();
+        int ret;
+        if (entry.isMaster()) {
+            ret = mLoader.writeMasterKey(entry.getType(), entry.getIndex(), entry.getKey(), entry.getMode());
+        } else if (entry.isSession()) {
+            ret = mLoader.writeSessionKey(entry.getType(), entry.getIndex(), entry.getKey(), entry.getMode(),
+                    entry.getMasterIndex());
+        } else {
+            ret = mLoader.writeDukptIpek(entry.getIndex(), entry.getKey(), entry.getKsn());
+        }
+        byte[] device = null;
+        if (ret == 0 && entry.getType() != KeyManifest.DUKPT && expected != null) {
+            device = new byte[8];
+            ret = mLoader.readKcv(entry.getType(), entry.getIndex(), device);
+            if (ret == 0 && !same(expected, device, KCV_LENGTH)) {
+                ret = ERR_DEVICE_KCV;
+            }
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+        return new Result(entry, ret, expected, device, micros);
+    }
+
+    private static List<KeyManifest.Entry> order(KeyManifest manifest) {
+        List<KeyManifest.Entry> entries = manifest.getEntries();
+        List<KeyManifest.Entry> order = new ArrayList<KeyManifest.Entry>(entries.size());
+        for (int pass = 0; pass < 3; pass++) {
+            for (int i = 0; i < entries.size(); i++) {
+                KeyManifest.Entry e = entries.get(i);
+                int group = e.isMaster() ? 0 : (e.isSession() ? 2 : 1);
+                if (group == pass) {
+                    order.add(e);
+                }
+            }
+        }
+        return order;
+    }
+
+    private static boolean masterFailed(KeyManifest manifest, KeyManifest.Entry entry, List<Result> results) {
+        KeyManifest.Entry master = manifest.masterOf(entry);
+        if (master == null) {
+            // already in the device from an earlier session
+            return false;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).getEntry() == master) {
+                return !results.get(i).isOk();
+            }
+        }
+        return false;
+    }
+
+    private static void cancel(List<Future<byte[]>> kcvs, int from) {
+        for (int i = from; i < kcvs.size(); i++) {
+            kcvs.get(i).cancel(true);
+        }
+    }
+
+    private static boolean same(byte[] a, byte[] b, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String hex(byte[] b, int len) {
+        StringBuilder sb = new StringBuilder(len * 2);
+        for (int i = 0; i < len && i < b.length; i++) {
+            sb.append(Character.forDigit((b[i] >> 4) & 0xF, 16)).append(Character.forDigit(b[i] & 0xF, 16));
+        }
+        return sb.toString().toUpperCase();
+    }
+
+    /** Clear key of an entry and its check value; null when the clear key is not known */
+    private static final class SoftwareKcv implements Callable<byte[]> {
+        private final KeyManifest.Entry mEntry;
+        private final KeyManifest.Entry mMaster;
+
+        SoftwareKcv(KeyManifest.Entry entry, KeyManifest.Entry master) {
+            mEntry = entry;
+            mMaster = master;
+        }
+
+        @Override
+        public byte[] call() {
+            byte[] key = mEntry.getKey();
+            if (mEntry.isWrapped()) {
+                if (mMaster == null || mMaster.isWrapped()) {
+                    return null;
+                }
+                BlockCipher cipher = new BlockCipher();
+                byte[] master = mMaster.getKey();
+                byte[] clear = new byte[key.length];
+                for (int off = 0; off < key.length; off += 8) {
+                    cipher.des(false, master, 0, master.length, key, off, clear, off);
+                }
+                key = clear;
+            }
+            return kcv(key);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package test.apidemo.pci;
+
+/**
+ * Key loading calls of the secure processor, with key types numbered as in
+ * {@link KeyManifest}.
+ *
+ * Arguments follow the PosApiHelper Pci write calls; return codes keep the
+ * SDK convention (0 success, otherwise fail).
+ */
+public interface KeyLoader {
+
+    /** {@link KeyManifest#PIN_MK}, {@link KeyManifest#MAC_MK} or {@link KeyManifest#DES_MK} */
+    int writeMasterKey(int type, int index, byte[] key, int mode);
+
+    /** Session key {@code index} written under master key {@code masterIndex} of the same kind */
+    int writeSessionKey(int type, int index, byte[] key, int mode, int masterIndex);
+
+    int writeDukptIpek(int keyId, byte[] ipek, byte[] ksn);
+
+    /** Check value of a stored master or session key into {@code kcv} */
+    int readKcv(int type, int index, byte[] kcv);
+}
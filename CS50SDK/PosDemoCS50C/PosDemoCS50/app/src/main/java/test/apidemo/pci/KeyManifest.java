@@ -0,0 +1,265 @@
+package test.apidemo.pci;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A key set to inject into the secure processor, one key per line:
+ *
+ * <pre>
+ * type index key [option ...]
+ * </pre>
+ *
+ * Types are {@code pin-mk}, {@code mac-mk}, {@code des-mk} (master keys),
+ * {@code pin-sk}, {@code mac-sk}, {@code des-sk} (session keys, written under
+ * the master key of the same kind) and {@code dukpt} (an initial key). Keys
+ * are hex, 8, 16 or 24 bytes. Options:
+ *
+ * <pre>
+ * kcv=hex     expected check value, 3 to 8 bytes
+ * mk=n        master key a session key is written under, default 0
+ * mode=n      mode byte handed to the write call as is, default 0
+ * wrapped     the session key is given encrypted under its master key
+ * ksn=hex     initial KSN of a dukpt key, required there
+ * </pre>
+ *
+ * '#' starts a comment. Order does not matter, {@link KeyInjectionSession}
+ * writes master keys first.
+ */
+public class KeyManifest {
+
+    /**
+     * Key types. Master and session key types are numbered like the key
+     * type argument of PciReadKCV: 0 PIN, 1 MAC, 2 DES master key, 3 PIN,
+     * 4 MAC, 5 DES session key.
+     */
+    public static final int PIN_MK = 0;
+    public static final int MAC_MK = 1;
+    public static final int DES_MK = 2;
+    public static final int PIN_SK = 3;
+    public static final int MAC_SK = 4;
+    public static final int DES_SK = 5;
+    public static final int DUKPT = 6;
+
+    private static final String[] NAMES = {"pin-mk", "mac-mk", "des-mk", "pin-sk", "mac-sk", "des-sk", "dukpt"};
+
+    /** One key of the manifest */
+    public static class Entry {
+        private final int mType;
+        private final int mIndex;
+        private final byte[] mKey;
+        private final byte[] mKcv;
+        private final int mMasterIndex;
+        private final int mMode;
+        private final boolean mWrapped;
+        private final byte[] mKsn;
+
+        Entry(int type, int index, byte[] key, byte[] kcv, int masterIndex, int mode, boolean wrapped,
+              byte[] ksn) {
+            mType = type;
+            mIndex = index;
+            mKey = key;
+            mKcv = kcv;
+            mMasterIndex = masterIndex;
+            mMode = mode;
+            mWrapped = wrapped;
+            mKsn = ksn;
+        }
+
+        public int getType() {
+            return mType;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public byte[] getKey() {
+            return mKey;
+        }
+
+        /** Expected check value, or null when the manifest gives none */
+        public byte[] getKcv() {
+            return mKcv;
+        }
+
+        public int getMasterIndex() {
+            return mMasterIndex;
+        }
+
+        public int getMode() {
+            return mMode;
+        }
+
+        public boolean isWrapped() {
+            return mWrapped;
+        }
+
+        /** Initial KSN of a DUKPT key, null for the others */
+        public byte[] getKsn() {
+            return mKsn;
+        }
+
+        public boolean isMaster() {
+            return mType <= DES_MK;
+        }
+
+        public boolean isSession() {
+            return mType >= PIN_SK && mType <= DES_SK;
+        }
+
+        /** Type of the master key a session key is written under */
+        public int getMasterType() {
+            return mType - PIN_SK;
+        }
+
+        @Override
+        public String toString() {
+            return NAMES[mType] + " " + mIndex;
+        }
+    }
+
+    private final List<Entry> mEntries = new ArrayList<Entry>();
+
+    public static KeyManifest parse(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+        KeyManifest manifest = new KeyManifest();
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            int hash = line.indexOf('#');
+            if (hash >= 0) {
+                line = line.substring(0, hash);
+            }
+            line = line.trim();
+            if (line.length() == 0) {
+                continue;
+            }
+            try {
+                manifest.add(line);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("line " + lineNo + ": " + e.getMessage());
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Add one manifest line.
+     *
+     * @throws IllegalArgumentException when the line is malformed or the key is already listed
+     */
+    public void add(String line) {
+        String[] f = line.trim().split("\\s+");
+        if (f.length < 3) {
+            throw new IllegalArgumentException("expected type, index and key");
+        }
+        int type = typeOf(f[0]);
+        if (type < 0) {
+            throw new IllegalArgumentException("unknown key type " + f[0]);
+        }
+        int index = number(f[1]);
+        byte[] key = hex(f[2]);
+        if (type == DUKPT ? key.length != DukptTdes.KEY_LENGTH
+                : key.length != 8 && key.length != 16 && key.length != 24) {
+            throw new IllegalArgumentException("bad key length " + key.length);
+        }
+        byte[] kcv = null;
+        byte[] ksn = null;
+        int master = 0;
+        int mode = 0;
+        boolean wrapped = false;
+        for (int i = 3; i < f.length; i++) {
+            String opt = f[i];
+            if (opt.startsWith("kcv=")) {
+                kcv = hex(opt.substring(4));
+                if (kcv.length < KeyInjectionSession.KCV_LENGTH || kcv.length > 8) {
+                    throw new IllegalArgumentException("bad check value " + opt);
+                }
+            } else if (opt.startsWith("mk=")) {
+                master = number(opt.substring(3));
+            } else if (opt.startsWith("mode=")) {
+                mode = number(opt.substring(5));
+            } else if (opt.equals("wrapped")) {
+                wrapped = true;
+            } else if (opt.startsWith("ksn=")) {
+                ksn = hex(opt.substring(4));
+            } else {
+                throw new IllegalArgumentException("unknown option " + opt);
+            }
+        }
+        if (type == DUKPT && (ksn == null || ksn.length != DukptTdes.KSN_LENGTH)) {
+            throw new IllegalArgumentException("dukpt key needs a " + DukptTdes.KSN_LENGTH + "-byte ksn");
+        }
+        if (find(type, index) != null) {
+            throw new IllegalArgumentException(NAMES[type] + " " + index + " listed twice");
+        }
+        mEntries.add(new Entry(type, index, key, kcv, master, mode, wrapped, ksn));
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(mEntries);
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    /** @return the entry for key {@code index} of {@code type}, or null */
+    public Entry find(int type, int index) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            Entry e = mEntries.get(i);
+            if (e.mType == type && e.mIndex == index) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /** @return the master key entry {@code session} is written under, or null when not in this manifest */
+    public Entry masterOf(Entry session) {
+        return session.isSession() ? find(session.getMasterType(), session.mMasterIndex) : null;
+    }
+
+    private static int typeOf(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int number(String s) {
+        try {
+            int n = Integer.parseInt(s);
+            if (n >= 0 && n <= 255) {
+                return n;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("bad number " + s);
+    }
+
+    private static byte[] hex(String s) {
+        if ((s.length() & 1) != 0 || s.length() == 0) {
+            throw new IllegalArgumentException("bad hex " + s);
+        }
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            int hi = Character.digit(s.charAt(i * 2), 16);
+            int lo = Character.digit(s.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("bad hex " + s);
+            }
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,36 @@
+package test.apidemo.pci;
+
+/**
+ * PCI key operations on one buffer, as the secure processor runs them.
+ *
+ * Method names and arguments follow {@link com.ctk.sdk.PosApiHelper} so the
+ * production adapter is a straight delegation; buffers start at index 0 and
+ * return codes keep the SDK convention (0 success, otherwise fail).
+ */
+public interface PciCrypto {
+
+    int MODE_DECRYPT = 0;
+    int MODE_ENCRYPT = 1;
+
+    /** DUKPT DES chaining: each block on its own, or CBC from {@code iv} */
+    int DES_ECB = 0;
+    int DES_CBC = 1;
+
+    /** MAC modes: plain CBC-MAC, the MAC is the last block (ISO 9797-1 algorithm 1) */
+    int MAC_CBC = 0;
+    /** Single-DES CBC then a triple-DES last block (ANSI X9.19, ISO 9797-1 algorithm 3) */
+    int MAC_X919 = 1;
+
+    /** Master/session DES key {@code keyIndex} over {@code len} bytes, ECB */
+    int getDes(int keyIndex, int len, byte[] in, byte[] out, int mode);
+
+    /** 8-byte MAC of {@code len} bytes under MAC key {@code keyIndex} */
+    int getMac(int keyIndex, int len, byte[] in, byte[] mac, int mode);
+
+    /** DES under the next DUKPT data key; {@code ksn} receives the KSN used */
+    int getDukptDes(int keyId, int mode, int desMode, int len, byte[] in, byte[] iv, byte[] out,
+                    byte[] ksn, byte[] kcv);
+
+    /** MAC under the next DUKPT MAC key; {@code ksn} receives the KSN used */
+    int getDukptMac(int keyId, int mode, int len, byte[] in, byte[] mac, byte[] ksn, byte[] kcv);
+}
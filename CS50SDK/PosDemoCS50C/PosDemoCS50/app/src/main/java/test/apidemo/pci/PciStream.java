@@ -0,0 +1,351 @@
+package test.apidemo.pci;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * MAC and DES over streams of any length through the single-buffer PCI
+ * calls, in fixed-size chunks so memory stays bounded and every call stays
+ * under the secure processor's size limit.
+ *
+ * Chaining is carried from one chunk to the next so the result is the one
+ * a single call over the whole data would give:
+ * <ul>
+ * <li>MAC: the MAC of the chunk so far is XORed into the first block of
+ * the next chunk, which continues the CBC-MAC. This holds for MAC modes
+ * whose output is the last CBC block ({@link PciCrypto#MAC_CBC}); a mode
+ * with a different last step, such as X9.19, cannot be split and is
+ * refused with {@link #ERR_MODE} unless the data fits in one call.</li>
+ * <li>DES: PciGetDes has no IV, so CBC is built on its ECB. Decryption is
+ * still one call per chunk; encryption needs each block's ciphertext
+ * before the next, so it is one call per block.</li>
+ * <li>DUKPT DES: the IV goes in with each call. Every call is a new DUKPT
+ * transaction with its own key, so the KSN of each chunk is handed to a
+ * {@link KsnListener} for the host to decrypt it.</li>
+ * <li>DUKPT MAC: for the same reason chunks cannot be chained, so the data
+ * is hashed with SHA-256 here and the digest is MACed in one call.</li>
+ * </ul>
+ * The last partial block is padded with zeros (ISO 9797-1 method 1).
+ *
+ * Not thread safe.
+ */
+public class PciStream {
+
+    /** Ciphertext that is not a whole number of blocks */
+    public static final int ERR_LENGTH = -3821;
+    /** MAC mode that cannot be chained, over more than one chunk */
+    public static final int ERR_MODE = -3822;
+
+    private static final int BLOCK = 8;
+
+    /** Told which KSN covers each chunk of a DUKPT run */
+    public interface KsnListener {
+        void onChunk(long offset, int len, byte[] ksn);
+    }
+
+    private final PciCrypto mPci;
+    private final int mChunkSize;
+    private final byte[] mIn;
+    private final byte[] mOut;
+    private final ByteBuffer mInBuffer;
+    private final ByteBuffer mOutBuffer;
+    private final ByteBuffer mPeek = ByteBuffer.allocate(1);
+    private final byte[] mIv = new byte[BLOCK];
+    private final byte[] mBlock = new byte[BLOCK];
+    private final byte[] mBlockOut = new byte[BLOCK];
+    private final byte[] mMac = new byte[BLOCK];
+    private final byte[] mKsn = new byte[DukptTdes.KSN_LENGTH];
+    private final byte[] mKcv = new byte[8];
+    private final byte[] mDigest = new byte[32];
+    private final MessageDigest mSha256;
+    private int mCalls;
+
+    /** @param chunkSize bytes per PCI call, a multiple of 8 */
+    public PciStream(PciCrypto pci, int chunkSize) {
+        if (chunkSize <= 0 || chunkSize % BLOCK != 0) {
+            throw new IllegalArgumentException("chunk size " + chunkSize);
+        }
+        mPci = pci;
+        mChunkSize = chunkSize;
+        mIn = new byte[chunkSize];
+        mOut = new byte[chunkSize];
+        mInBuffer = ByteBuffer.wrap(mIn);
+        mOutBuffer = ByteBuffer.wrap(mOut);
+        try {
+            mSha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** PCI calls made by the last operation */
+    public int getCalls() {
+        return mCalls;
+    }
+
+    public long mac(int keyIndex, int mode, InputStream in, byte[] mac, int macOff) throws IOException {
+        return mac(keyIndex, mode, Channels.newChannel(in), mac, macOff);
+    }
+
+    /**
+     * MAC everything {@code in} delivers, e.g. a FileChannel over a
+     * settlement file.
+     *
+     * @return bytes MACed, {@link #ERR_MODE} or the failing call's return
+     * code
+     */
+    public long mac(int keyIndex, int mode, ReadableByteChannel in, byte[] mac, int macOff) throws IOException {
+        mCalls = 0;
+        if (mode != PciCrypto.MAC_CBC) {
+            return macOnce(keyIndex, mode, in, mac, macOff);
+        }
+        long total = 0;
+        int n;
+        do {
+            n = fill(in);
+            if (n == 0 && total > 0) {
+                break;
+            }
+            int len = pad(n);
+            if (total > 0) {
+                xor(mMac, 0, mIn, 0);
+            }
+            int ret = call(mPci.getMac(keyIndex, len, mIn, mMac, mode));
+            if (ret != 0) {
+                return ret;
+            }
+            total += n;
+        } while (n == mChunkSize);
+        System.arraycopy(mMac, 0, mac, macOff, BLOCK);
+        return total;
+    }
+
+    public long encrypt(int keyIndex, byte[] iv, InputStream in, OutputStream out) throws IOException {
+        return encrypt(keyIndex, iv, Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+    /**
+     * Encrypt under a master/session DES key.
+     *
+     * @param iv 8 bytes for CBC, or null for ECB
+     * @return bytes written (the input padded to whole blocks), or the
+     * failing call's return code
+     */
+    public long encrypt(int keyIndex, byte[] iv, ReadableByteChannel in, WritableByteChannel out)
+            throws IOException {
+        mCalls = 0;
+        if (iv != null) {
+            System.arraycopy(iv, 0, mIv, 0, BLOCK);
+        }
+        long total = 0;
+        int n;
+        while ((n = fill(in)) > 0) {
+            int len = pad(n);
+            if (iv == null) {
+                int ret = call(mPci.getDes(keyIndex, len, mIn, mOut, PciCrypto.MODE_ENCRYPT));
+                if (ret != 0) {
+                    return ret;
+                }
+            } else {
+                for (int b = 0; b < len; b += BLOCK) {
+                    System.arraycopy(mIn, b, mBlock, 0, BLOCK);
+                    xor(mIv, 0, mBlock, 0);
+                    int ret = call(mPci.getDes(keyIndex, BLOCK, mBlock, mBlockOut, PciCrypto.MODE_ENCRYPT));
+                    if (ret != 0) {
+                        return ret;
+                    }
+                    System.arraycopy(mBlockOut, 0, mOut, b, BLOCK);
+                    System.arraycopy(mBlockOut, 0, mIv, 0, BLOCK);
+                }
+            }
+            drain(out, len);
+            total += len;
+            if (n < mChunkSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    public long decrypt(int keyIndex, byte[] iv, InputStream in, OutputStream out) throws IOException {
+        return decrypt(keyIndex, iv, Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+    /**
+     * Decrypt under a master/session DES key.
+     *
+     * @param iv 8 bytes for CBC, or null for ECB
+     * @return bytes written, {@link #ERR_LENGTH} or the failing call's
+     * return code
+     */
+    public long decrypt(int keyIndex, byte[] iv, ReadableByteChannel in, WritableByteChannel out)
+            throws IOException {
+        mCalls = 0;
+        if (iv != null) {
+            System.arraycopy(iv, 0, mIv, 0, BLOCK);
+        }
+        long total = 0;
+        int n;
+        while ((n = fill(in)) > 0) {
+            if (n % BLOCK != 0) {
+                return ERR_LENGTH;
+            }
+            int ret = call(mPci.getDes(keyIndex, n, mIn, mOut, PciCrypto.MODE_DECRYPT));
+            if (ret != 0) {
+                return ret;
+            }
+            if (iv != null) {
+                xor(mIv, 0, mOut, 0);
+                for (int b = BLOCK; b < n; b += BLOCK) {
+                    xor(mIn, b - BLOCK, mOut, b);
+                }
+                System.arraycopy(mIn, n - BLOCK, mIv, 0, BLOCK);
+            }
+            drain(out, n);
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Encrypt or decrypt under DUKPT data keys, one key per chunk.
+     *
+     * @param iv 8 bytes for CBC, or null for ECB
+     * @return bytes written, {@link #ERR_LENGTH} or the failing call's
+     * return code
+     */
+    public long dukptDes(int keyId, int mode, byte[] iv, ReadableByteChannel in, WritableByteChannel out,
+                         KsnListener listener) throws IOException {
+        mCalls = 0;
+        int desMode = iv != null ? PciCrypto.DES_CBC : PciCrypto.DES_ECB;
+        if (iv != null) {
+            System.arraycopy(iv, 0, mIv, 0, BLOCK);
+        } else {
+            fillZero(mIv);
+        }
+        boolean encrypt = mode == PciCrypto.MODE_ENCRYPT;
+        long total = 0;
+        int n;
+        while ((n = fill(in)) > 0) {
+            if (!encrypt && n % BLOCK != 0) {
+                return ERR_LENGTH;
+            }
+            int len = pad(n);
+            int ret = call(mPci.getDukptDes(keyId, mode, desMode, len, mIn, mIv, mOut, mKsn, mKcv));
+            if (ret != 0) {
+                return ret;
+            }
+            if (iv != null) {
+                System.arraycopy(encrypt ? mOut : mIn, len - BLOCK, mIv, 0, BLOCK);
+            }
+            if (listener != null) {
+                listener.onChunk(total, len, mKsn);
+            }
+            drain(out, len);
+            total += len;
+            if (n < mChunkSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * MAC under a DUKPT MAC key: SHA-256 of the stream, MACed in one call.
+     *
+     * @param ksn receives the KSN of that call
+     * @return bytes hashed, or the call's return code
+     */
+    public long dukptMac(int keyId, int mode, ReadableByteChannel in, byte[] mac, int macOff, byte[] ksn)
+            throws IOException {
+        mCalls = 0;
+        mSha256.reset();
+        long total = 0;
+        int n;
+        while ((n = fill(in)) > 0) {
+            mSha256.update(mIn, 0, n);
+            total += n;
+        }
+        try {
+            mSha256.digest(mDigest, 0, mDigest.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        int ret = call(mPci.getDukptMac(keyId, mode, mDigest.length, mDigest, mMac, mKsn, mKcv));
+        if (ret != 0) {
+            return ret;
+        }
+        System.arraycopy(mMac, 0, mac, macOff, BLOCK);
+        System.arraycopy(mKsn, 0, ksn, 0, mKsn.length);
+        return total;
+    }
+
+    /** A mode with its own last step: one call, so the data has to fit in one chunk */
+    private long macOnce(int keyIndex, int mode, ReadableByteChannel in, byte[] mac, int macOff)
+            throws IOException {
+        int n = fill(in);
+        if (n == mChunkSize) {
+            mPeek.clear();
+            if (in.read(mPeek) >= 0) {
+                return ERR_MODE;
+            }
+        }
+        int ret = call(mPci.getMac(keyIndex, pad(n), mIn, mMac, mode));
+        if (ret != 0) {
+            return ret;
+        }
+        System.arraycopy(mMac, 0, mac, macOff, BLOCK);
+        return n;
+    }
+
+    private int call(int ret) {
+        mCalls++;
+        return ret;
+    }
+
+    /** Read up to a whole chunk; less only at the end of the stream */
+    private int fill(ReadableByteChannel in) throws IOException {
+        mInBuffer.clear();
+        while (mInBuffer.hasRemaining() && in.read(mInBuffer) >= 0) {
+            // blocking channels return 0 only for an empty buffer
+        }
+        return mInBuffer.position();
+    }
+
+    private void drain(WritableByteChannel out, int len) throws IOException {
+        mOutBuffer.clear();
+        mOutBuffer.limit(len);
+        while (mOutBuffer.hasRemaining()) {
+            out.write(mOutBuffer);
+        }
+    }
+
+    /** Zero-pad {@link #mIn} to whole blocks; an empty input becomes one zero block */
+    private int pad(int n) {
+        int len = n == 0 ? BLOCK : (n + BLOCK - 1) / BLOCK * BLOCK;
+        for (int i = n; i < len; i++) {
+            mIn[i] = 0;
+        }
+        return len;
+    }
+
+    private static void xor(byte[] src, int srcOff, byte[] dst, int dstOff) {
+        for (int i = 0; i < BLOCK; i++) {
+            dst[dstOff + i] ^= src[srcOff + i];
+        }
+    }
+
+    private static void fillZero(byte[] b) {
+        for (int i = 0; i < b.length; i++) {
+            b[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package test.apidemo.pci;
+
+import java.security.SecureRandom;
+
+/**
+ * ISO 9564-1 PIN blocks, formats 0, 1 and 3 under DES/TDES and format 4
+ * under AES, built and taken apart in caller buffers.
+ *
+ * PINs and PANs are ASCII digits, as the SDK's {@code card_no} arguments
+ * take them; {@link #extractPan} gets the PAN straight from the packed
+ * digits of tag 5A or 57. Where PIN digits are handled the code has no
+ * branch and no table index that depends on a digit, and {@link #verify}
+ * compares in constant time, so the host-side checks used against the
+ * simulator do not leak through timing what they check.
+ *
+ * Not thread safe; keep one per thread.
+ */
+public class PinBlock {
+
+    public static final int FORMAT_0 = 0;
+    public static final int FORMAT_1 = 1;
+    public static final int FORMAT_3 = 3;
+    public static final int FORMAT_4 = 4;
+
+    /** PIN shorter than 4 or longer than 12 digits, or not all digits */
+    public static final int ERR_PIN = -3811;
+    /** PAN missing, too long or not all digits */
+    public static final int ERR_PAN = -3812;
+    /** Unknown format, wrong key length for it, or a decrypted block that is not a PIN block */
+    public static final int ERR_FORMAT = -3813;
+    /** PIN block does not hold the expected PIN */
+    public static final int ERR_MISMATCH = -3814;
+
+    private static final int MAX_PAN = 19;
+
+    private final BlockCipher mCipher = new BlockCipher();
+    private final SecureRandom mRandom = new SecureRandom();
+    private final byte[] mPinField = new byte[16];
+    private final byte[] mPanField = new byte[16];
+    private final byte[] mBlock = new byte[16];
+    private final byte[] mRandomBytes = new byte[16];
+    //fill bytes are drawn in bulk: SecureRandom allocates on every call
+    private final byte[] mPool = new byte[1024];
+    private int mPoolUsed = mPool.length;
+    private final byte[] mPin = new byte[12];
+
+    /**
+     * PAN digits from the packed BCD of tag 5A, or of tag 57 where the
+     * field separator D ends it. Trailing F padding is dropped.
+     *
+     * @return number of ASCII digits written, or {@link #ERR_PAN}
+     */
+    public static int extractPan(byte[] src, int off, int len, byte[] out, int outOff) {
+        int n = 0;
+        for (int i = 0; i < len * 2; i++) {
+            int nibble = (src[off + i / 2] >> ((i & 1) == 0 ? 4 : 0)) & 0x0F;
+            if (nibble == 0x0D || nibble == 0x0F) {
+                break;
+            }
+            if (nibble > 9 || n == MAX_PAN) {
+                return ERR_PAN;
+            }
+            out[outOff + n++] = (byte) ('0' + nibble);
+        }
+        return n > 0 ? n : ERR_PAN;
+    }
+
+    /**
+     * The clear PIN block: PIN field XOR PAN field for formats 0 and 3, the
+     * PIN field alone for format 1, and the 16-byte plain text PIN field for
+     * format 4.
+     *
+     * @param pan ASCII PAN digits; not used by format 1
+     * @return block length, {@link #ERR_PIN}, {@link #ERR_PAN} or {@link #ERR_FORMAT}
+     */
+    public int clear(int format, byte[] pin, int pinOff, int pinLen, byte[] pan, int panOff, int panLen,
+                     byte[] out, int off) {
+        int len = pinField(format, pin, pinOff, pinLen);
+        if (len < 0) {
+            return len;
+        }
+        if (format == FORMAT_0 || format == FORMAT_3) {
+            int ret = panField(pan, panOff, panLen);
+            if (ret < 0) {
+                return ret;
+            }
+            for (int i = 0; i < 8; i++) {
+                mPinField[i] ^= mPanField[i];
+            }
+        }
+        System.arraycopy(mPinField, 0, out, off, len);
+        return len;
+    }
+
+    /**
+     * Build and encrypt a PIN block: formats 0, 1 and 3 under a DES or TDES
+     * key (8, 16 or 24 bytes), format 4 under an AES key.
+     *
+     * @return block length (8, or 16 for format 4), or an error as {@link #clear}
+     */
+    public int encrypt(int format, byte[] key, int keyOff, int keyLen, byte[] pin, int pinOff, int pinLen,
+                       byte[] pan, int panOff, int panLen, byte[] out, int off) {
+        if (!keyFits(format, keyLen)) {
+            return ERR_FORMAT;
+        }
+        if (format != FORMAT_4) {
+            int len = clear(format, pin, pinOff, pinLen, pan, panOff, panLen, mBlock, 0);
+            if (len < 0) {
+                return len;
+            }
+            mCipher.des(true, key, keyOff, keyLen, mBlock, 0, out, off);
+            return 8;
+        }
+        int ret = pinField(FORMAT_4, pin, pinOff, pinLen);
+        if (ret < 0) {
+            return ret;
+        }
+        ret = panField4(pan, panOff, panLen);
+        if (ret < 0) {
+            return ret;
+        }
+        mCipher.aes(true, key, keyOff, keyLen, mPinField, 0, mBlock, 0);
+        for (int i = 0; i < 16; i++) {
+            mBlock[i] ^= mPanField[i];
+        }
+        mCipher.aes(true, key, keyOff, keyLen, mBlock, 0, out, off);
+        return 16;
+    }
+
+    /**
+     * Host side: decrypt a PIN block and recover the PIN.
+     *
+     * @param pinOut receives the ASCII PIN digits, up to 12
+     * @return PIN length, {@link #ERR_PAN} or {@link #ERR_FORMAT} when the
+     * block does not decrypt to a well-formed PIN block for this PAN
+     */
+    public int decrypt(int format, byte[] key, int keyOff, int keyLen, byte[] block, int blockOff,
+                       byte[] pan, int panOff, int panLen, byte[] pinOut, int pinOutOff) {
+        if (!keyFits(format, keyLen)) {
+            return ERR_FORMAT;
+        }
+        if (format == FORMAT_4) {
+            int ret = panField4(pan, panOff, panLen);
+            if (ret < 0) {
+                return ret;
+            }
+            mCipher.aes(false, key, keyOff, keyLen, block, blockOff, mBlock, 0);
+            for (int i = 0; i < 16; i++) {
+                mBlock[i] ^= mPanField[i];
+            }
+            mCipher.aes(false, key, keyOff, keyLen, mBlock, 0, mPinField, 0);
+        } else {
+            mCipher.des(false, key, keyOff, keyLen, block, blockOff, mPinField, 0);
+            if (format != FORMAT_1) {
+                int ret = panField(pan, panOff, panLen);
+                if (ret < 0) {
+                    return ret;
+                }
+                for (int i = 0; i < 8; i++) {
+                    mPinField[i] ^= mPanField[i];
+                }
+            }
+        }
+        return parsePinField(format, pinOut, pinOutOff);
+    }
+
+    /**
+     * Host side: check that a PIN block holds {@code pin}. The comparison
+     * takes the same time wherever the PINs differ.
+     *
+     * @return 0, {@link #ERR_MISMATCH}, or an error as {@link #decrypt}
+     */
+    public int verify(int format, byte[] key, int keyOff, int keyLen, byte[] block, int blockOff,
+                      byte[] pan, int panOff, int panLen, byte[] pin, int pinOff, int pinLen) {
+        int len = decrypt(format, key, keyOff, keyLen, block, blockOff, pan, panOff, panLen, mPin, 0);
+        if (len < 0) {
+            return len;
+        }
+        if (pinLen < 4 || pinLen > 12) {
+            return ERR_PIN;
+        }
+        int diff = len ^ pinLen;
+        for (int i = 0; i < 12; i++) {
+            int in = (i - pinLen) >> 31;
+            diff |= (mPin[i] ^ pin[pinOff + (i & in)]) & in;
+        }
+        return diff == 0 ? 0 : ERR_MISMATCH;
+    }
+
+    /** Random bytes for the format 1, 3 and 4 fill */
+    protected void random(byte[] out) {
+        mRandom.nextBytes(out);
+    }
+
+    private static boolean keyFits(int format, int keyLen) {
+        if (format == FORMAT_4) {
+            return keyLen == 16 || keyLen == 24 || keyLen == 32;
+        }
+        return (format == FORMAT_0 || format == FORMAT_1 || format == FORMAT_3)
+                && (keyLen == 8 || keyLen == 16 || keyLen == 24);
+    }
+
+    /**
+     * Control nibble, length, PIN digits and fill in {@link #mPinField}.
+     *
+     * @return field length
+     */
+    private int pinField(int format, byte[] pin, int pinOff, int pinLen) {
+        if (format != FORMAT_0 && format != FORMAT_1 && format != FORMAT_3 && format != FORMAT_4) {
+            return ERR_FORMAT;
+        }
+        if (pinLen < 4 || pinLen > 12) {
+            return ERR_PIN;
+        }
+        if (format != FORMAT_0) {
+            if (mPoolUsed == mPool.length) {
+                random(mPool);
+                mPoolUsed = 0;
+            }
+            System.arraycopy(mPool, mPoolUsed, mRandomBytes, 0, 16);
+            mPoolUsed += 16;
+        }
+        int bad = 0;
+        // nibbles 2 to 15: PIN digits, then fill
+        for (int i = 0; i < 14; i++) {
+            int in = (i - pinLen) >> 31;
+            int c = pin[pinOff + (i & in)];
+            int digit = c - '0';
+            bad |= (digit | (9 - digit)) & in;
+            int r = mRandomBytes[i] & 0xFF;
+            int fill;
+            if (format == FORMAT_0) {
+                fill = 0x0F;
+            } else if (format == FORMAT_1) {
+                fill = r & 0x0F;
+            } else if (format == FORMAT_3) {
+                fill = 0x0A + r % 6;
+            } else {
+                fill = 0x0A;
+            }
+            putNibble(mPinField, i + 2, (digit & in) | (fill & ~in));
+        }
+        if (bad < 0) {
+            return ERR_PIN;
+        }
+        putNibble(mPinField, 0, format);
+        putNibble(mPinField, 1, pinLen);
+        if (format != FORMAT_4) {
+            return 8;
+        }
+        // format 4: bytes 8 to 15 are random
+        System.arraycopy(mRandomBytes, 0, mPinField, 8, 8);
+        return 16;
+    }
+
+    /** Formats 0 and 3: 0000 and the 12 rightmost PAN digits without the check digit */
+    private int panField(byte[] pan, int panOff, int panLen) {
+        if (pan == null || panLen < 1 || panLen > MAX_PAN || !digits(pan, panOff, panLen)) {
+            return ERR_PAN;
+        }
+        for (int i = 0; i < 8; i++) {
+            mPanField[i] = 0;
+        }
+        int last = panLen - 1;
+        for (int i = 0; i < 12 && last - 1 - i >= 0; i++) {
+            putNibble(mPanField, 15 - i, pan[panOff + last - 1 - i] - '0');
+        }
+        return 0;
+    }
+
+    /** Format 4: PAN length minus 12, the PAN left justified (zero padded to 12), zeros */
+    private int panField4(byte[] pan, int panOff, int panLen) {
+        if (pan == null || panLen < 1 || panLen > MAX_PAN || !digits(pan, panOff, panLen)) {
+            return ERR_PAN;
+        }
+        for (int i = 0; i < 16; i++) {
+            mPanField[i] = 0;
+        }
+        int pad = Math.max(0, 12 - panLen);
+        putNibble(mPanField, 0, Math.max(0, panLen - 12));
+        for (int i = 0; i < panLen; i++) {
+            putNibble(mPanField, 1 + pad + i, pan[panOff + i] - '0');
+        }
+        return 0;
+    }
+
+    /** Check the decrypted {@link #mPinField} and copy out its digits */
+    private int parsePinField(int format, byte[] out, int off) {
+        int len = nibble(mPinField, 1);
+        if (nibble(mPinField, 0) != format || len < 4 || len > 12) {
+            return ERR_FORMAT;
+        }
+        int bad = 0;
+        for (int i = 0; i < 14; i++) {
+            int in = (i - len) >> 31;
+            int v = nibble(mPinField, i + 2);
+            // digits must be 0-9; fill must be F (format 0), A-F (3) or A (4)
+            int fillBad;
+            if (format == FORMAT_0) {
+                fillBad = v ^ 0x0F;
+            } else if (format == FORMAT_3) {
+                fillBad = (v - 0x0A) >> 31;
+            } else if (format == FORMAT_4) {
+                fillBad = v ^ 0x0A;
+            } else {
+                fillBad = 0;
+            }
+            bad |= ((9 - v) >> 31 & in) | (fillBad & ~in);
+            if (i < 12) {
+                out[off + i] = (byte) (('0' + v) & in | out[off + i] & ~in);
+            }
+        }
+        return bad != 0 ? ERR_FORMAT : len;
+    }
+
+    private static boolean digits(byte[] b, int off, int len) {
+        int bad = 0;
+        for (int i = 0; i < len; i++) {
+            int d = b[off + i] - '0';
+            bad |= d | (9 - d);
+        }
+        return bad >= 0;
+    }
+
+    private static int nibble(byte[] b, int i) {
+        return (b[i / 2] >> ((i & 1) == 0 ? 4 : 0)) & 0x0F;
+    }
+
+    private static void putNibble(byte[] b, int i, int v) {
+        int shift = (i & 1) == 0 ? 4 : 0;
+        b[i / 2] = (byte) ((b[i / 2] & ~(0x0F << shift)) | (v & 0x0F) << shift);
+    }
+}
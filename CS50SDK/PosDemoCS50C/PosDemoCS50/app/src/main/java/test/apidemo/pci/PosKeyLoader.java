@@ -0,0 +1,64 @@
+package test.apidemo.pci;
+
+import com.ctk.sdk.PosApiHelper;
+
+/**
+ * {@link KeyLoader} backed by the terminal's PosApiHelper.
+ */
+public class PosKeyLoader implements KeyLoader {
+
+    private final PosApiHelper mPosApiHelper;
+
+    public PosKeyLoader() {
+        this(PosApiHelper.getInstance());
+    }
+
+    public PosKeyLoader(PosApiHelper posApiHelper) {
+        mPosApiHelper = posApiHelper;
+    }
+
+    @Override
+    public int writeMasterKey(int type, int index, byte[] key, int mode) {
+        switch (type) {
+            case KeyManifest.PIN_MK:
+                return mPosApiHelper.PciWritePinMKey((byte) index, (byte) key.length, key, (byte) mode);
+            case KeyManifest.MAC_MK:
+                return mPosApiHelper.PciWriteMacMKey((byte) index, (byte) key.length, key, (byte) mode);
+            case KeyManifest.DES_MK:
+                return mPosApiHelper.PciWriteDesMKey((byte) index, (byte) key.length, key, (byte) mode);
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public int writeSessionKey(int type, int index, byte[] key, int mode, int masterIndex) {
+        switch (type) {
+            case KeyManifest.PIN_SK:
+                return mPosApiHelper.PciWritePinKey((byte) index, (byte) key.length, key, (byte) mode,
+                        (byte) masterIndex);
+            case KeyManifest.MAC_SK:
+                return mPosApiHelper.PciWriteMacKey((byte) index, (byte) key.length, key, (byte) mode,
+                        (byte) masterIndex);
+            case KeyManifest.DES_SK:
+                return mPosApiHelper.PciWriteDesKey((byte) index, (byte) key.length, key, (byte) mode,
+                        (byte) masterIndex);
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public int writeDukptIpek(int keyId, byte[] ipek, byte[] ksn) {
+        return mPosApiHelper.PciWriteDukptIpek(keyId, ipek.length, ipek, ksn.length, ksn);
+    }
+
+    /** The {@link KeyManifest} type is the PciReadKCV key type */
+    @Override
+    public int readKcv(int type, int index, byte[] kcv) {
+        if (type < KeyManifest.PIN_MK || type > KeyManifest.DES_SK) {
+            return -1;
+        }
+        return mPosApiHelper.PciReadKCV((byte) type, (byte) index, kcv);
+    }
+}
@@ -0,0 +1,40 @@
+package test.apidemo.pci;
+
+import com.ctk.sdk.PosApiHelper;
+
+/**
+ * {@link PciCrypto} backed by the terminal's PosApiHelper.
+ */
+public class PosPciCrypto implements PciCrypto {
+
+    private final PosApiHelper mPosApiHelper;
+
+    public PosPciCrypto() {
+        this(PosApiHelper.getInstance());
+    }
+
+    public PosPciCrypto(PosApiHelper posApiHelper) {
+        mPosApiHelper = posApiHelper;
+    }
+
+    @Override
+    public int getDes(int keyIndex, int len, byte[] in, byte[] out, int mode) {
+        return mPosApiHelper.PciGetDes((byte) keyIndex, len, in, out, (byte) mode);
+    }
+
+    @Override
+    public int getMac(int keyIndex, int len, byte[] in, byte[] mac, int mode) {
+        return mPosApiHelper.PciGetMac((byte) keyIndex, len, in, mac, (byte) mode);
+    }
+
+    @Override
+    public int getDukptDes(int keyId, int mode, int desMode, int len, byte[] in, byte[] iv, byte[] out,
+                           byte[] ksn, byte[] kcv) {
+        return mPosApiHelper.PciGetDuktDes(keyId, (byte) mode, (byte) desMode, len, in, iv, out, ksn, kcv);
+    }
+
+    @Override
+    public int getDukptMac(int keyId, int mode, int len, byte[] in, byte[] mac, byte[] ksn, byte[] kcv) {
+        return mPosApiHelper.PciGetDukptMac(keyId, (byte) mode, (byte) len, in, mac, ksn, kcv);
+    }
+}
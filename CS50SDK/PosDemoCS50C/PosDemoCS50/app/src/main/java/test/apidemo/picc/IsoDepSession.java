@@ -0,0 +1,366 @@
+package test.apidemo.picc;
+
+/**
+ * ISO-DEP (ISO 14443-4) APDU session on top of {@link PiccTransport#apduCmd}.
+ *
+ * One call here may take several frames on the air: outgoing data longer than
+ * one short APDU is sent with command chaining (CLA b5), 61xx is followed by
+ * GET RESPONSE, 6Cxx re-issues the command with the right Le, and DESFire
+ * 91AF "additional frame" answers are continued with 90 AF. All response
+ * data is reassembled into one buffer that is reused across calls, so a
+ * session allocates nothing once it has grown to the largest file read.
+ * A card that keeps answering 91AF, or sends more than
+ * {@link #setMaxResponse} bytes, ends the command with {@link #ERR_TOO_LONG}.
+ *
+ * Not thread safe; use one session per reader thread.
+ */
+public class IsoDepSession {
+
+    /** Response shorter than SW1 SW2 or longer than the receive buffer */
+    public static final int ERR_RESPONSE = -3001;
+    /** Card answered with a status word other than success */
+    public static final int ERR_STATUS = -3002;
+    /** Bad argument, e.g. offset out of range for READ BINARY */
+    public static final int ERR_PARAM = -3003;
+    /** Card sent more frames or data than one response may take */
+    public static final int ERR_TOO_LONG = -3004;
+
+    public static final int SW_OK = 0x9000;
+    public static final int SW_DESFIRE_OK = 0x9100;
+    public static final int SW_DESFIRE_MORE = 0x91AF;
+    public static final int SW_EOF = 0x6282;
+
+    private static final int CLA_CHAINING = 0x10;
+    private static final int CLA_DESFIRE = 0x90;
+    private static final int INS_GET_RESPONSE = 0xC0;
+    private static final int INS_READ_BINARY = 0xB0;
+    private static final int INS_ADDITIONAL_FRAME = 0xAF;
+    private static final int DESFIRE_READ_DATA = 0xBD;
+
+    /** Short APDU: 4 header + Lc + 255 data + Le */
+    private static final int TX_SIZE = 261;
+    /** Same size as the SDK's own APDU response buffer plus SW1 SW2 */
+    private static final int RX_SIZE = 514;
+    private static final int MAX_GET_RESPONSE = 8;
+    /** 91AF frames followed per command; 32 KiB in 59-byte frames takes about 560 */
+    private static final int MAX_ADDITIONAL_FRAMES = 1024;
+
+    private final PiccTransport mTransport;
+    private final byte[] mTx = new byte[TX_SIZE];
+    private final byte[] mRx = new byte[RX_SIZE];
+    private final byte[] mRxLen = new byte[2];
+    private final byte[] mArgs = new byte[7];
+
+    private byte[] mData;
+    private int mLength;
+    private int mFrameLen;
+    private int mSw;
+    private int mExchanges;
+
+    private int mMaxCommandData = 255;
+    private int mMaxReadChunk = 256;
+    private int mMaxNativeData = 55;
+    private int mMaxResponse = 32 * 1024;
+
+    public IsoDepSession(PiccTransport transport) {
+        this(transport, 1024);
+    }
+
+    public IsoDepSession(PiccTransport transport, int initialCapacity) {
+        mTransport = transport;
+        mData = new byte[Math.max(initialCapacity, 256)];
+    }
+
+    /** Largest data field sent in one frame before command chaining kicks in */
+    public void setMaxCommandData(int max) {
+        mMaxCommandData = Math.max(1, Math.min(max, 255));
+    }
+
+    /** Largest Le requested per READ BINARY; 256 is encoded as Le = 00 */
+    public void setMaxReadChunk(int max) {
+        mMaxReadChunk = Math.max(1, Math.min(max, 256));
+    }
+
+    /** Largest payload per DESFire native frame (depends on the card's FSC) */
+    public void setMaxNativeData(int max) {
+        mMaxNativeData = Math.max(1, Math.min(max, 255));
+    }
+
+    /** Largest response reassembled from several frames, at least one frame */
+    public void setMaxResponse(int max) {
+        mMaxResponse = Math.max(max, RX_SIZE);
+    }
+
+    /**
+     * Send a raw short APDU (cases 1 to 4) and collect the whole answer.
+     *
+     * @return 0 when the exchange completed (check {@link #getSw()}), else the
+     * transport error, {@link #ERR_PARAM} for a malformed APDU or
+     * {@link #ERR_TOO_LONG}
+     */
+    public int transmit(byte[] apdu, int len) {
+        if (len < 4) {
+            return ERR_PARAM;
+        }
+        int cla = apdu[0] & 0xFF, ins = apdu[1] & 0xFF, p1 = apdu[2] & 0xFF, p2 = apdu[3] & 0xFF;
+        if (len == 4) {
+            return transmit(cla, ins, p1, p2, apdu, 0, 0, -1);
+        }
+        if (len == 5) {
+            return transmit(cla, ins, p1, p2, apdu, 0, 0, decodeLe(apdu[4]));
+        }
+        int lc = apdu[4] & 0xFF;
+        if (lc == 0 || len < 5 + lc || len > 6 + lc) {
+            return ERR_PARAM;
+        }
+        int le = len == 6 + lc ? decodeLe(apdu[5 + lc]) : -1;
+        return transmit(cla, ins, p1, p2, apdu, 5, lc, le);
+    }
+
+    /**
+     * Send one command, chaining the data field if needed.
+     *
+     * @param le expected length (1..256), or -1 for none
+     */
+    public int transmit(int cla, int ins, int p1, int p2, byte[] data, int off, int len, int le) {
+        mLength = 0;
+        int ret;
+        int sent = 0;
+        int chunk;
+        do {
+            chunk = Math.min(len - sent, mMaxCommandData);
+            boolean last = sent + chunk >= len;
+            int txLen = header(last ? cla : cla | CLA_CHAINING, ins, p1, p2);
+            if (chunk > 0) {
+                mTx[txLen++] = (byte) chunk;
+                System.arraycopy(data, off + sent, mTx, txLen, chunk);
+                txLen += chunk;
+            }
+            if (last && le >= 0) {
+                mTx[txLen++] = (byte) le;
+            }
+            ret = exchange(txLen);
+            if (ret != 0) {
+                return ret;
+            }
+            sent += chunk;
+            if (!last && mSw != SW_OK) {
+                return 0;
+            }
+        } while (sent < len);
+
+        if ((mSw >> 8) == 0x6C) {
+            // Wrong Le: the last frame is repeated with the length the card asked for
+            int txLen = header(cla, ins, p1, p2);
+            if (chunk > 0) {
+                mTx[txLen++] = (byte) chunk;
+                System.arraycopy(data, off + len - chunk, mTx, txLen, chunk);
+                txLen += chunk;
+            }
+            mTx[txLen++] = (byte) mSw;
+            ret = exchange(txLen);
+            if (ret != 0) {
+                return ret;
+            }
+        }
+        ret = append(mRx, 0, mFrameLen);
+        if (ret != 0) {
+            return ret;
+        }
+
+        int rounds = 0;
+        while ((mSw >> 8) == 0x61 && rounds++ < MAX_GET_RESPONSE) {
+            int txLen = header(cla & ~CLA_CHAINING, INS_GET_RESPONSE, 0, 0);
+            mTx[txLen++] = (byte) mSw;
+            ret = exchange(txLen);
+            if (ret == 0) {
+                ret = append(mRx, 0, mFrameLen);
+            }
+            if (ret != 0) {
+                return ret;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Send a DESFire native command wrapped in ISO 7816-4 (CLA 90) and follow
+     * 91AF until the card is done. Outgoing data longer than one native frame
+     * is continued with AF frames as well.
+     *
+     * @return 0 when the exchange completed (check {@link #getSw()}), the
+     * transport error or {@link #ERR_TOO_LONG}
+     */
+    public int desfire(int cmd, byte[] data, int off, int len) {
+        mLength = 0;
+        int chunk = Math.min(len, mMaxNativeData);
+        int ret = wrapped(cmd, data, off, chunk);
+        int sent = chunk;
+        while (ret == 0 && mSw == SW_DESFIRE_MORE && sent < len) {
+            chunk = Math.min(len - sent, mMaxNativeData);
+            ret = wrapped(INS_ADDITIONAL_FRAME, data, off + sent, chunk);
+            sent += chunk;
+        }
+        int frames = 0;
+        while (ret == 0 && mSw == SW_DESFIRE_MORE) {
+            if (++frames > MAX_ADDITIONAL_FRAMES) {
+                return ERR_TOO_LONG;
+            }
+            ret = wrapped(INS_ADDITIONAL_FRAME, null, 0, 0);
+        }
+        return ret;
+    }
+
+    /**
+     * DESFire ReadData (plain communication) of a whole range in one command;
+     * the card streams the rest in 91AF frames.
+     *
+     * @param length bytes to read, 0 for "up to end of file"
+     */
+    public int readData(int fileNo, int offset, int length) {
+        if (offset < 0 || offset > 0xFFFFFF || length < 0 || length > 0xFFFFFF) {
+            return ERR_PARAM;
+        }
+        mArgs[0] = (byte) fileNo;
+        mArgs[1] = (byte) offset;
+        mArgs[2] = (byte) (offset >> 8);
+        mArgs[3] = (byte) (offset >> 16);
+        mArgs[4] = (byte) length;
+        mArgs[5] = (byte) (length >> 8);
+        mArgs[6] = (byte) (length >> 16);
+        int ret = desfire(DESFIRE_READ_DATA, mArgs, 0, 7);
+        if (ret != 0) {
+            return ret;
+        }
+        return mSw == SW_DESFIRE_OK ? 0 : ERR_STATUS;
+    }
+
+    /**
+     * ISO 7816-4 READ BINARY of {@code length} bytes from the currently
+     * selected EF, using the largest Le the reader allows per command.
+     * Stops early at end of file (6282 or a short answer).
+     */
+    public int readBinary(int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > 0x8000) {
+            return ERR_PARAM;
+        }
+        int total = 0;
+        int ret = 0;
+        mLength = 0;
+        while (total < length) {
+            int want = Math.min(length - total, mMaxReadChunk);
+            int pos = offset + total;
+            int txLen = header(0x00, INS_READ_BINARY, (pos >> 8) & 0x7F, pos & 0xFF);
+            mTx[txLen++] = (byte) want;
+            ret = exchange(txLen);
+            if (ret != 0) {
+                return ret;
+            }
+            if ((mSw >> 8) == 0x6C) {
+                // fewer bytes left than asked for
+                txLen = header(0x00, INS_READ_BINARY, (pos >> 8) & 0x7F, pos & 0xFF);
+                mTx[txLen++] = (byte) mSw;
+                ret = exchange(txLen);
+                if (ret != 0) {
+                    return ret;
+                }
+            }
+            if (mSw != SW_OK && mSw != SW_EOF) {
+                return ERR_STATUS;
+            }
+            ret = append(mRx, 0, mFrameLen);
+            if (ret != 0) {
+                return ret;
+            }
+            total += mFrameLen;
+            if (mSw == SW_EOF || mFrameLen < want || mFrameLen == 0) {
+                break;
+            }
+        }
+        return ret;
+    }
+
+    /** Reassembled response data; valid up to {@link #getLength()} until the next call */
+    public byte[] getData() {
+        return mData;
+    }
+
+    public int getLength() {
+        return mLength;
+    }
+
+    /** Copy the reassembled data into {@code dst}, returns the number of bytes copied */
+    public int copyData(byte[] dst, int off) {
+        int n = Math.min(mLength, dst.length - off);
+        System.arraycopy(mData, 0, dst, off, n);
+        return n;
+    }
+
+    /** SW1 SW2 of the last frame */
+    public int getSw() {
+        return mSw;
+    }
+
+    /** Frames exchanged with the card since the session was created */
+    public int getExchangeCount() {
+        return mExchanges;
+    }
+
+    private int wrapped(int ins, byte[] data, int off, int len) {
+        int txLen = header(CLA_DESFIRE, ins, 0, 0);
+        if (len > 0) {
+            mTx[txLen++] = (byte) len;
+            System.arraycopy(data, off, mTx, txLen, len);
+            txLen += len;
+        }
+        mTx[txLen++] = 0x00;
+        int ret = exchange(txLen);
+        if (ret == 0) {
+            ret = append(mRx, 0, mFrameLen);
+        }
+        return ret;
+    }
+
+    private int header(int cla, int ins, int p1, int p2) {
+        mTx[0] = (byte) cla;
+        mTx[1] = (byte) ins;
+        mTx[2] = (byte) p1;
+        mTx[3] = (byte) p2;
+        return 4;
+    }
+
+    private int exchange(int txLen) {
+        mRxLen[0] = 0;
+        mRxLen[1] = 0;
+        mExchanges++;
+        int ret = mTransport.apduCmd(mTx, txLen, mRx, mRxLen);
+        if (ret != 0) {
+            return ret;
+        }
+        int n = (mRxLen[0] & 0xFF) | ((mRxLen[1] & 0xFF) << 8);
+        if (n < 2 || n > mRx.length) {
+            return ERR_RESPONSE;
+        }
+        mFrameLen = n - 2;
+        mSw = ((mRx[n - 2] & 0xFF) << 8) | (mRx[n - 1] & 0xFF);
+        return 0;
+    }
+
+    private int append(byte[] src, int off, int len) {
+        if (mLength + len > mMaxResponse) {
+            return ERR_TOO_LONG;
+        }
+        if (mLength + len > mData.length) {
+            byte[] grown = new byte[Math.min(Math.max(mData.length * 2, mLength + len), mMaxResponse)];
+            System.arraycopy(mData, 0, grown, 0, mLength);
+            mData = grown;
+        }
+        System.arraycopy(src, off, mData, mLength, len);
+        mLength += len;
+        return 0;
+    }
+
+    private static int decodeLe(byte le) {
+        return le == 0 ? 256 : le & 0xFF;
+    }
+}
@@ -0,0 +1,37 @@
+package test.apidemo.picc;
+
+/**
+ * Contactless reader operations used by the session layer.
+ *
+ * Method names and arguments follow {@link com.ctk.sdk.PosApiHelper} so the
+ * production adapter is a straight delegation; return codes keep the SDK
+ * convention (0 success, !0 fail).
+ */
+public interface PiccTransport {
+
+    int open();
+
+    int close();
+
+    int check(byte mode, byte[] cardType, byte[] serialNo);
+
+    int polling(byte[] cardType, byte[] uid, byte[] uidLen, byte[] ats, byte[] atsLen, byte[] sak);
+
+    /**
+     * Exchange one raw APDU.
+     *
+     * @param apdu   command bytes (CLA INS P1 P2 [Lc data] [Le])
+     * @param len    number of valid bytes in apdu
+     * @param resp   receives response data followed by SW1 SW2
+     * @param respLen receives the response length, low byte first
+     */
+    int apduCmd(byte[] apdu, int len, byte[] resp, byte[] respLen);
+
+    int m1Authority(byte type, byte blkNo, byte[] pwd, byte[] serialNo);
+
+    int m1ReadBlock(byte blkNo, byte[] blkValue);
+
+    int remove();
+
+    int halt();
+}
@@ -0,0 +1,64 @@
+package test.apidemo.picc;
+
+import com.ctk.sdk.PosApiHelper;
+
+/**
+ * {@link PiccTransport} backed by the terminal's PosApiHelper.
+ */
+public class PosPiccTransport implements PiccTransport {
+
+    private final PosApiHelper mPosApiHelper;
+
+    public PosPiccTransport() {
+        this(PosApiHelper.getInstance());
+    }
+
+    public PosPiccTransport(PosApiHelper posApiHelper) {
+        mPosApiHelper = posApiHelper;
+    }
+
+    @Override
+    public int open() {
+        return mPosApiHelper.PiccOpen();
+    }
+
+    @Override
+    public int close() {
+        return mPosApiHelper.PiccClose();
+    }
+
+    @Override
+    public int check(byte mode, byte[] cardType, byte[] serialNo) {
+        return mPosApiHelper.PiccCheck(mode, cardType, serialNo);
+    }
+
+    @Override
+    public int polling(byte[] cardType, byte[] uid, byte[] uidLen, byte[] ats, byte[] atsLen, byte[] sak) {
+        return mPosApiHelper.PiccPolling(cardType, uid, uidLen, ats, atsLen, sak);
+    }
+
+    @Override
+    public int apduCmd(byte[] apdu, int len, byte[] resp, byte[] respLen) {
+        return mPosApiHelper.PiccApduCmd(apdu, len, resp, respLen);
+    }
+
+    @Override
+    public int m1Authority(byte type, byte blkNo, byte[] pwd, byte[] serialNo) {
+        return mPosApiHelper.PiccM1Authority(type, blkNo, pwd, serialNo);
+    }
+
+    @Override
+    public int m1ReadBlock(byte blkNo, byte[] blkValue) {
+        return mPosApiHelper.PiccM1ReadBlock(blkNo, blkValue);
+    }
+
+    @Override
+    public int remove() {
+        return mPosApiHelper.PiccRemove();
+    }
+
+    @Override
+    public int halt() {
+        return mPosApiHelper.PiccHalt();
+    }
+}
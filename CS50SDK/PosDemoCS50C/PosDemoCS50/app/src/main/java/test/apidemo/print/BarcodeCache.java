@@ -0,0 +1,138 @@
+package test.apidemo.print;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Print-ready barcodes encoded with zxing on the terminal, kept by content,
+ * format and size so content printed on every receipt (store URL, loyalty
+ * link, terminal ID) is encoded once.
+ *
+ * Least recently used barcodes are dropped once the rasters held exceed
+ * {@code maxBytes}. Encoding runs outside the lock, so a slow QR code does
+ * not hold up hits on other threads; two threads missing on the same key
+ * may both encode it.
+ */
+public class BarcodeCache {
+
+    /** Room for about forty 240-dot QR codes */
+    public static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+    private static BarcodeCache sInstance;
+
+    private final int mMaxBytes;
+    private final LinkedHashMap<String, Raster> mRasters = new LinkedHashMap<String, Raster>(16, 0.75f, true);
+    private final MultiFormatWriter mWriter = new MultiFormatWriter();
+    private int mBytes;
+    private int mHits;
+    private int mMisses;
+
+    public BarcodeCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /** Cache shared by the printers of this process */
+    public static synchronized BarcodeCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new BarcodeCache(DEFAULT_MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * The barcode as dots, encoded on first use.
+     *
+     * @param format zxing format name, as {@link Printer#printBarcode} takes it
+     * @param width  at most {@link Raster#PAPER_WIDTH}, wider is cut to it
+     * @return null when zxing cannot encode {@code content} in {@code format},
+     * or only wider than the paper; the caller then leaves it to the firmware
+     */
+    public Raster get(String content, String format, int width, int height) {
+        width = Math.min(width, Raster.PAPER_WIDTH);
+        String key = format + '\u0000' + width + 'x' + height + '\u0000' + content;
+        synchronized (this) {
+            Raster raster = mRasters.get(key);
+            if (raster != null) {
+                mHits++;
+                return raster;
+            }
+            mMisses++;
+        }
+        Raster raster = encode(content, format, width, height);
+        if (raster == null) {
+            return null;
+        }
+        synchronized (this) {
+            Raster old = mRasters.put(key, raster);
+            mBytes += raster.getData().length - (old == null ? 0 : old.getData().length);
+            Iterator<Map.Entry<String, Raster>> it = mRasters.entrySet().iterator();
+            while (mBytes > mMaxBytes && it.hasNext()) {
+                Raster eldest = it.next().getValue();
+                if (eldest == raster) {
+                    break;
+                }
+                mBytes -= eldest.getData().length;
+                it.remove();
+            }
+        }
+        return raster;
+    }
+
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /** Bytes of the rasters held */
+    public synchronized int getBytes() {
+        return mBytes;
+    }
+
+    public synchronized void clear() {
+        mRasters.clear();
+        mBytes = 0;
+    }
+
+    private Raster encode(String content, String format, int width, int height) {
+        BitMatrix matrix;
+        try {
+            Map<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
+            hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+            matrix = mWriter.encode(content, BarcodeFormat.valueOf(format), width, height, hints);
+        } catch (WriterException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            // unknown format name, or content the format cannot hold
+            return null;
+        }
+        // zxing widens a code that needs more modules than asked for; cutting
+        // it would drop bars and the quiet zone, so it would not scan
+        if (matrix.getWidth() > Raster.PAPER_WIDTH) {
+            return null;
+        }
+        int w = matrix.getWidth();
+        int h = matrix.getHeight();
+        Raster raster = new Raster(w, h);
+        byte[] data = raster.getData();
+        int stride = raster.getStride();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (matrix.get(x, y)) {
+                    data[y * stride + (x >> 3)] |= 0x80 >> (x & 7);
+                }
+            }
+        }
+        return raster;
+    }
+}
@@ -0,0 +1,30 @@
+package test.apidemo.print;
+
+import android.graphics.Bitmap;
+
+/**
+ * {@link PixelSource} over an Android bitmap.
+ */
+public class BitmapPixels implements PixelSource {
+
+    private final Bitmap mBitmap;
+
+    public BitmapPixels(Bitmap bitmap) {
+        mBitmap = bitmap;
+    }
+
+    @Override
+    public int getWidth() {
+        return mBitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mBitmap.getHeight();
+    }
+
+    @Override
+    public void getRow(int y, int[] argb) {
+        mBitmap.getPixels(argb, 0, mBitmap.getWidth(), 0, y, mBitmap.getWidth(), 1);
+    }
+}
@@ -0,0 +1,246 @@
+package test.apidemo.print;
+
+/**
+ * Lays text out in columns of character cells the way the printer's fonts
+ * place it: CJK and other East Asian wide characters take two cells,
+ * combining marks and format characters none, everything else one. Cells
+ * wrap at spaces or between wide characters, mid-word only when a word is
+ * wider than its column, and each column has its own alignment.
+ *
+ * The static helpers measure and pad without allocating. An instance keeps
+ * its builder and wrap positions from row to row and is not thread-safe.
+ */
+public class ColumnLayout {
+
+    /** First and last code point of the East Asian Wide and Fullwidth ranges, sorted */
+    private static final int[] WIDE = {
+            0x1100, 0x115F, 0x231A, 0x231B, 0x2329, 0x232A, 0x23E9, 0x23EC,
+            0x23F0, 0x23F0, 0x23F3, 0x23F3, 0x25FD, 0x25FE, 0x2614, 0x2615,
+            0x2648, 0x2653, 0x267F, 0x267F, 0x2693, 0x2693, 0x26A1, 0x26A1,
+            0x26AA, 0x26AB, 0x26BD, 0x26BE, 0x26C4, 0x26C5, 0x26CE, 0x26CE,
+            0x26D4, 0x26D4, 0x26EA, 0x26EA, 0x26F2, 0x26F3, 0x26F5, 0x26F5,
+            0x26FA, 0x26FA, 0x26FD, 0x26FD, 0x2705, 0x2705, 0x270A, 0x270B,
+            0x2728, 0x2728, 0x274C, 0x274C, 0x274E, 0x274E, 0x2753, 0x2755,
+            0x2757, 0x2757, 0x2795, 0x2797, 0x27B0, 0x27B0, 0x27BF, 0x27BF,
+            0x2B1B, 0x2B1C, 0x2B50, 0x2B50, 0x2B55, 0x2B55, 0x2E80, 0x303E,
+            0x3041, 0x33FF, 0x3400, 0x4DBF, 0x4E00, 0x9FFF, 0xA000, 0xA4CF,
+            0xA960, 0xA97F, 0xAC00, 0xD7A3, 0xF900, 0xFAFF, 0xFE10, 0xFE19,
+            0xFE30, 0xFE6F, 0xFF00, 0xFF60, 0xFFE0, 0xFFE6, 0x16FE0, 0x16FE3,
+            0x17000, 0x18AFF, 0x1B000, 0x1B2FF, 0x1F004, 0x1F004, 0x1F0CF, 0x1F0CF,
+            0x1F18E, 0x1F18E, 0x1F191, 0x1F19A, 0x1F200, 0x1F202, 0x1F210, 0x1F23B,
+            0x1F240, 0x1F248, 0x1F250, 0x1F251, 0x1F260, 0x1F265, 0x1F300, 0x1F320,
+            0x1F32D, 0x1F335, 0x1F337, 0x1F37C, 0x1F37E, 0x1F393, 0x1F3A0, 0x1F3CA,
+            0x1F3CF, 0x1F3D3, 0x1F3E0, 0x1F3F0, 0x1F3F4, 0x1F3F4, 0x1F3F8, 0x1F43E,
+            0x1F440, 0x1F440, 0x1F442, 0x1F4FC, 0x1F4FF, 0x1F53D, 0x1F54B, 0x1F54E,
+            0x1F550, 0x1F567, 0x1F57A, 0x1F57A, 0x1F595, 0x1F596, 0x1F5A4, 0x1F5A4,
+            0x1F5FB, 0x1F64F, 0x1F680, 0x1F6C5, 0x1F6CC, 0x1F6CC, 0x1F6D0, 0x1F6D2,
+            0x1F6EB, 0x1F6EC, 0x1F6F4, 0x1F6F9, 0x1F910, 0x1F93E, 0x1F940, 0x1F970,
+            0x1F973, 0x1F976, 0x1F97A, 0x1F97A, 0x1F97C, 0x1F9A2, 0x1F9B0, 0x1F9B9,
+            0x1F9C0, 0x1F9C2, 0x1F9D0, 0x1F9FF, 0x20000, 0x2FFFD, 0x30000, 0x3FFFD,
+    };
+
+    private static final String SPACES = "                                                                ";
+
+    private final int[] mWidths;
+    private final int[] mAligns;
+    private final int[] mNext;
+    private final StringBuilder mOut = new StringBuilder();
+    private boolean mWrap = true;
+
+    /** One column of {@code width} cells */
+    public ColumnLayout(int width, int align) {
+        this(new int[]{width}, new int[]{align});
+    }
+
+    /**
+     * @param widths column widths in character cells
+     * @param aligns per column {@link Printer#ALIGN_LEFT}, CENTER or RIGHT
+     */
+    public ColumnLayout(int[] widths, int[] aligns) {
+        if (widths.length != aligns.length) {
+            throw new IllegalArgumentException("one width and alignment per column");
+        }
+        mWidths = widths.clone();
+        mAligns = aligns.clone();
+        mNext = new int[widths.length];
+    }
+
+    /** Off: a cell wider than its column is cut, and each row takes one line */
+    public ColumnLayout setWrap(boolean wrap) {
+        mWrap = wrap;
+        return this;
+    }
+
+    /** Total width of a line, in cells */
+    public int getWidth() {
+        int n = 0;
+        for (int w : mWidths) {
+            n += w;
+        }
+        return n;
+    }
+
+    /** {@code cells} laid out in the columns, every line ending with a newline */
+    public String format(CharSequence... cells) {
+        mOut.setLength(0);
+        append(mOut, cells);
+        return mOut.toString();
+    }
+
+    /** Append {@code cells}, one per column, as one line or more when cells wrap */
+    public void append(StringBuilder out, CharSequence... cells) {
+        for (int i = 0; i < mNext.length; i++) {
+            mNext[i] = 0;
+        }
+        boolean more;
+        do {
+            more = false;
+            for (int i = 0; i < mWidths.length; i++) {
+                CharSequence cell = i < cells.length ? cells[i] : null;
+                int len = cell == null ? 0 : cell.length();
+                int from = mNext[i];
+                int end = from < len ? lineEnd(cell, from, len, mWidths[i], mWrap) : from;
+                int next = mWrap && mWidths[i] > 0 ? skipBreak(cell, end, len) : len;
+                mNext[i] = next;
+                more |= next < len;
+
+                int space = mWidths[i] - width(cell, from, end);
+                int before = mAligns[i] == Printer.ALIGN_RIGHT ? space
+                        : mAligns[i] == Printer.ALIGN_CENTER ? space / 2 : 0;
+                pad(out, before);
+                if (end > from) {
+                    out.append(cell, from, end);
+                }
+                pad(out, space - before);
+            }
+            out.append('\n');
+        } while (more);
+    }
+
+    /** Cells {@code cp} takes on paper */
+    public static int width(int cp) {
+        if (cp < 0x300) {
+            return cp >= 0x20 && (cp < 0x7F || cp >= 0xA0) ? 1 : 0;
+        }
+        if (cp >= 0x1160 && cp <= 0x11FF) {
+            // Hangul vowel and final jamo join the syllable before them
+            return 0;
+        }
+        int type = Character.getType(cp);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.FORMAT || type == Character.CONTROL) {
+            return 0;
+        }
+        return isWide(cp) ? 2 : 1;
+    }
+
+    /** Cells {@code s} takes from {@code from} to {@code to} */
+    public static int width(CharSequence s, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; ) {
+            int cp = Character.codePointAt(s, i);
+            i += Character.charCount(cp);
+            n += width(cp);
+        }
+        return n;
+    }
+
+    /**
+     * End of the longest part of {@code s} from {@code from} to {@code to}
+     * that fits in {@code max} cells, stopping at a newline; at least one
+     * character when {@code max} is positive.
+     */
+    public static int fit(CharSequence s, int from, int to, int max) {
+        return lineEnd(s, from, to, max, false);
+    }
+
+    /** Append {@code n} spaces, nothing when {@code n} is not positive */
+    public static void pad(StringBuilder sb, int n) {
+        while (n > 0) {
+            int k = Math.min(n, SPACES.length());
+            sb.append(SPACES, 0, k);
+            n -= k;
+        }
+    }
+
+    /** Insert {@code n} spaces at {@code at} */
+    public static void pad(StringBuilder sb, int at, int n) {
+        while (n > 0) {
+            int k = Math.min(n, SPACES.length());
+            sb.insert(at, SPACES, 0, k);
+            n -= k;
+        }
+    }
+
+    /**
+     * End of the first line of {@code s} from {@code from}: at a newline, at
+     * {@code max} cells, or with {@code words} at the last break before
+     * that. A column too narrow for the first character still takes it.
+     */
+    private static int lineEnd(CharSequence s, int from, int to, int max, boolean words) {
+        int cells = 0;
+        int lastBreak = -1;
+        boolean afterWide = false;
+        int i = from;
+        while (i < to) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                return i;
+            }
+            int cp = Character.codePointAt(s, i);
+            int w = width(cp);
+            // lines break at spaces, and before and after ideographs
+            if (i > from && (c == ' ' || w == 2 || afterWide && w > 0)) {
+                lastBreak = i;
+            }
+            if (cells + w > max) {
+                if (words && lastBreak > from) {
+                    i = lastBreak;
+                    while (i > from && s.charAt(i - 1) == ' ') {
+                        i--;
+                    }
+                    return i;
+                }
+                break;
+            }
+            cells += w;
+            afterWide = w == 2;
+            i += Character.charCount(cp);
+        }
+        if (i == from && i < to && max > 0) {
+            i += Character.charCount(Character.codePointAt(s, i));
+        }
+        return i;
+    }
+
+    /** Start of the next line after a line ending at {@code end}: past the spaces and newline there */
+    private static int skipBreak(CharSequence s, int end, int to) {
+        int i = end;
+        while (i < to && s.charAt(i) == ' ') {
+            i++;
+        }
+        if (i < to && s.charAt(i) == '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWide(int cp) {
+        if (cp < WIDE[0]) {
+            return false;
+        }
+        int lo = 0;
+        int hi = WIDE.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cp < WIDE[2 * mid]) {
+                hi = mid - 1;
+            } else if (cp > WIDE[2 * mid + 1]) {
+                lo = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,223 @@
+package test.apidemo.print;
+
+/**
+ * A {@link ReceiptTemplate} turned into the printer calls it needs: static
+ * text merged into as few PrintStr calls as the style changes allow, style
+ * calls only where the style really changes, fields resolved to slot
+ * numbers. Immutable and shared by every {@link Receipt} made from it.
+ */
+public class CompiledReceipt {
+
+    static final int OP_FONT = 0;
+    static final int OP_BOLD = 1;
+    static final int OP_ALIGN = 2;
+    static final int OP_TEXT = 3;
+    static final int OP_BARCODE = 4;
+    static final int OP_IMAGE = 5;
+    /** Start of a section; {@link Op#mSkipTo} is the op after its end */
+    static final int OP_SECTION = 6;
+
+    /** One printer call, or a section start */
+    static final class Op {
+        final int mCode;
+        /** Font (width, height, zoom packed one byte each), bold, alignment, section or image slot */
+        final int mArg;
+        final Line[] mLines;
+        final Parts mContent;
+        final String mFormat;
+        final int mWidth;
+        final int mHeight;
+        int mSkipTo;
+
+        Op(int code, int arg) {
+            this(code, arg, null, null, null, 0, 0);
+        }
+
+        Op(int code, int arg, Line[] lines, Parts content, String format, int width, int height) {
+            mCode = code;
+            mArg = arg;
+            mLines = lines;
+            mContent = content;
+            mFormat = format;
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+
+    /** Literal text with field slots in between */
+    static final class Parts {
+        /** Literal pieces; a null piece is the field in {@link #mSlots} at the same position */
+        final String[] mText;
+        final int[] mSlots;
+
+        Parts(String[] text, int[] slots) {
+            mText = text;
+            mSlots = slots;
+        }
+
+        boolean isLiteral() {
+            return mText.length == 1 && mText[0] != null;
+        }
+
+        void append(StringBuilder sb, String[] values) {
+            for (int i = 0; i < mText.length; i++) {
+                if (mText[i] != null) {
+                    sb.append(mText[i]);
+                } else if (values[mSlots[i]] != null) {
+                    sb.append(values[mSlots[i]]);
+                }
+            }
+        }
+
+        /** Width once filled, in character cells */
+        int width(String[] values) {
+            int n = 0;
+            for (int i = 0; i < mText.length; i++) {
+                String s = mText[i] != null ? mText[i] : values[mSlots[i]];
+                if (s != null) {
+                    n += ColumnLayout.width(s, 0, s.length());
+                }
+            }
+            return n;
+        }
+    }
+
+    /** One line of a text run, newline included */
+    abstract static class Line {
+        abstract void append(StringBuilder sb, String[] values);
+    }
+
+    static final class LiteralLine extends Line {
+        final String mText;
+
+        LiteralLine(String text) {
+            mText = text;
+        }
+
+        @Override
+        void append(StringBuilder sb, String[] values) {
+            sb.append(mText);
+        }
+    }
+
+    static final class FieldLine extends Line {
+        final Parts mParts;
+
+        FieldLine(Parts parts) {
+            mParts = parts;
+        }
+
+        @Override
+        void append(StringBuilder sb, String[] values) {
+            mParts.append(sb, values);
+            sb.append('\n');
+        }
+    }
+
+    static final class RowLine extends Line {
+        final Parts mLabel;
+        final Parts mValue;
+        final int mCols;
+
+        RowLine(Parts label, Parts value, int cols) {
+            mLabel = label;
+            mValue = value;
+            mCols = cols;
+        }
+
+        @Override
+        void append(StringBuilder sb, String[] values) {
+            int label = mLabel.width(values);
+            int value = mValue.width(values);
+            mLabel.append(sb, values);
+            if (label + value > mCols) {
+                sb.append('\n');
+                label = 0;
+            }
+            ColumnLayout.pad(sb, mCols - label - value);
+            mValue.append(sb, values);
+            sb.append('\n');
+        }
+    }
+
+    static final class ColumnsLine extends Line {
+        final Parts[] mCells;
+        final int[] mWidths;
+        final int[] mAligns;
+
+        ColumnsLine(Parts[] cells, int[] widths, int[] aligns) {
+            mCells = cells;
+            mWidths = widths;
+            mAligns = aligns;
+        }
+
+        @Override
+        void append(StringBuilder sb, String[] values) {
+            for (int i = 0; i < mCells.length; i++) {
+                int start = sb.length();
+                mCells[i].append(sb, values);
+                // cut to the cell, then align in it
+                int end = ColumnLayout.fit(sb, start, sb.length(), mWidths[i]);
+                sb.setLength(end);
+                int space = mWidths[i] - ColumnLayout.width(sb, start, end);
+                if (mAligns[i] == Printer.ALIGN_RIGHT) {
+                    ColumnLayout.pad(sb, start, space);
+                } else if (mAligns[i] == Printer.ALIGN_CENTER) {
+                    ColumnLayout.pad(sb, start, space / 2);
+                    ColumnLayout.pad(sb, space - space / 2);
+                } else {
+                    ColumnLayout.pad(sb, space);
+                }
+            }
+            sb.append('\n');
+        }
+    }
+
+    private final String mName;
+    final Op[] mOps;
+    final String[] mSlots;
+    final String[] mSections;
+    final String[] mImages;
+
+    CompiledReceipt(String name, Op[] ops, String[] slots, String[] sections, String[] images) {
+        mName = name;
+        mOps = ops;
+        mSlots = slots;
+        mSections = sections;
+        mImages = images;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /** A fresh set of values for one sale; keep and {@link Receipt#clear()} it for the next */
+    public Receipt newReceipt() {
+        return new Receipt(this);
+    }
+
+    /** @return slot number of field {@code name}, or -1 when the template has no such field */
+    public int slotOf(String name) {
+        return indexOf(mSlots, name);
+    }
+
+    /** Printer calls the receipt makes at most, without {@link Printer#start()} */
+    public int getCallCount() {
+        int n = 0;
+        for (int i = 0; i < mOps.length; i++) {
+            if (mOps[i].mCode != OP_SECTION) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
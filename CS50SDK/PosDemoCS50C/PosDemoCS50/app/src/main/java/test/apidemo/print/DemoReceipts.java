@@ -0,0 +1,101 @@
+package test.apidemo.print;
+
+/**
+ * The receipts the demo prints, as templates compiled once per process.
+ */
+public final class DemoReceipts {
+
+    /** Bank card sales slip of the print demo, in Chinese and English */
+    public static final ReceiptTemplate SALES_SLIP = new ReceiptTemplate("sales_slip")
+            .font(24, 24, 0x33)
+            .text("打印第：{print_no}次")
+            .text("{copy}")
+            .text("- - - - - - - - - - - - - - - - - - - - - - - -")
+            .font(24, 24, 0x00)
+            .text("商户名称(MERCHANT NAME):")
+            .text("{merchant_name}")
+            .text("商户编号(MERCHANT NO):")
+            .text("    {merchant_no}")
+            .text("终端编号(TERMINAL NO):{terminal_no}")
+            .text("操作员号(OPERATOR NO):{operator_no}")
+            .separator()
+            .text("发卡行(ISSUER):{issuer}")
+            .text("卡号(CARD NO):")
+            .text("    {card_no}")
+            .text("收单行(ACQUIRER):{acquirer}")
+            .text("交易类型(TXN. TYPE):{txn_type}")
+            .text("卡有效期(EXP. DATE):{exp_date}")
+            .separator()
+            .row("批次号(BATCH NO)", ":{batch_no}")
+            .row("凭证号(VOUCHER NO)", ":{voucher_no}")
+            .row("授权号(AUTH NO)", ":{auth_no}")
+            .text("日期/时间(DATE/TIME):")
+            .text("    {date_time}")
+            .text("交易参考号(REF. NO):{ref_no}")
+            .text("金额(AMOUNT):  {amount}")
+            .separator()
+            .text("备注/REFERENCE")
+            .separator()
+            .section("signature")
+            .font(16, 16, 0x00)
+            .text("持卡人签名(CARDHOLDER SIGNATURE)")
+            .feed(1)
+            .separator()
+            .text("  本人确认以上交易，同意将其计入本卡帐户")
+            .text("  I ACKNOWLEDGE SATISFACTORY RECEIPT")
+            .endSection()
+            .feed(10);
+
+    /** Test page printed by {@link test.apidemo.service.MyService} */
+    public static final ReceiptTemplate TEST_PAGE = new ReceiptTemplate("test_page")
+            .font(24, 24, 0x33)
+            .text("Print Tile")
+            .feed(1)
+            .font(16, 16, 0x33)
+            .separator()
+            .text("  Print Str1 ")
+            .text("  Print Str2 ")
+            .barcode("{code}", 360, 120, "CODE_128")
+            .barcode("{code}", 240, 240, "QR_CODE")
+            .text("CODE_128 : {code}")
+            .feed(1)
+            .text("QR_CODE : {code}")
+            .feed(1)
+            .text("asdadasdasdasdasd")
+            .feed(1)
+            .text("1234567890")
+            .feed(4);
+
+    /** Mixed-script sample of the unicode print demo, for {@link RasterPrinter} */
+    public static final ReceiptTemplate UNICODE_SAMPLE = new ReceiptTemplate("unicode_sample")
+            .font(24, 24, 0x00)
+            .text("中文:你好，好久不见。")
+            .text("英语: ￡20.00 ，￡20.00 ，￡20.00 Hello, Long time no see")
+            .text("西班牙语:España, ¡Hola! Cuánto tiempo sin verte!")
+            .text("法语:Bonjour! Ça fait longtemps!")
+            .text("Italian :Ciao, non CI vediamo da Molto Tempo.");
+
+    private DemoReceipts() {
+    }
+
+    /** Fill {@code receipt}, made from {@link #SALES_SLIP}, with the demo sale */
+    public static Receipt demoSale(Receipt receipt, int printNo) {
+        return receipt.set("print_no", String.valueOf(printNo))
+                .set("copy", "商户存根MERCHANT COPY")
+                .set("merchant_name", "中国银联直连测试")
+                .set("merchant_no", "001420183990573")
+                .set("terminal_no", "00026715")
+                .set("operator_no", "12345678")
+                .set("issuer", "01020001 工商银行")
+                .set("card_no", "9558803602109503920")
+                .set("acquirer", "03050011民生银行")
+                .set("txn_type", "消费/SALE")
+                .set("exp_date", "2013/08")
+                .set("batch_no", "000023")
+                .set("voucher_no", "000018")
+                .set("auth_no", "987654")
+                .set("date_time", "2008/01/28 16:46:32")
+                .set("ref_no", "200801280015")
+                .set("amount", "RMB:2.55");
+    }
+}
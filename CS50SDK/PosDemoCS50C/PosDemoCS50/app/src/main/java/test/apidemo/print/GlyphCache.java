@@ -0,0 +1,133 @@
+package test.apidemo.print;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rendered glyphs per font size and weight, so each character of a receipt
+ * is drawn once per process rather than once per print.
+ *
+ * Single BMP characters, nearly all of a receipt, are found through a page
+ * table indexed by the char without allocating; clusters with combining
+ * marks and supplementary characters go through a map keyed by their text.
+ * When more than {@code maxGlyphs} glyphs are held the cache starts over.
+ * Not thread safe.
+ */
+public class GlyphCache {
+
+    public static final int DEFAULT_MAX_GLYPHS = 4096;
+
+    /** Viramas of the Indic scripts: the consonant after one belongs to the same cluster */
+    private static final String VIRAMAS = "\u094D\u09CD\u0A4D\u0ACD\u0B4D\u0BCD\u0C4D\u0CCD\u0D4D";
+
+    private static final class Font {
+        final int mSize;
+        final boolean mBold;
+        final Raster[][] mPages = new Raster[256][];
+        final Map<String, Raster> mClusters = new HashMap<String, Raster>();
+
+        Font(int size, boolean bold) {
+            mSize = size;
+            mBold = bold;
+        }
+    }
+
+    private final GlyphSource mSource;
+    private final int mMaxGlyphs;
+    private final List<Font> mFonts = new ArrayList<Font>();
+    private int mGlyphs;
+    private int mHits;
+    private int mMisses;
+
+    public GlyphCache(GlyphSource source) {
+        this(source, DEFAULT_MAX_GLYPHS);
+    }
+
+    public GlyphCache(GlyphSource source, int maxGlyphs) {
+        mSource = source;
+        mMaxGlyphs = maxGlyphs;
+    }
+
+    /**
+     * Glyph of the cluster {@code text[start, end)}.
+     *
+     * @param end from {@link #clusterEnd}
+     */
+    public Raster get(CharSequence text, int start, int end, int size, boolean bold) {
+        if (mGlyphs >= mMaxGlyphs) {
+            mFonts.clear();
+            mGlyphs = 0;
+        }
+        Font font = font(size, bold);
+        if (end - start == 1) {
+            char c = text.charAt(start);
+            Raster[] page = font.mPages[c >> 8];
+            if (page == null) {
+                page = new Raster[256];
+                font.mPages[c >> 8] = page;
+            }
+            Raster glyph = page[c & 0xFF];
+            if (glyph == null) {
+                glyph = render(String.valueOf(c), font);
+                page[c & 0xFF] = glyph;
+            } else {
+                mHits++;
+            }
+            return glyph;
+        }
+        String cluster = text.subSequence(start, end).toString();
+        Raster glyph = font.mClusters.get(cluster);
+        if (glyph == null) {
+            glyph = render(cluster, font);
+            font.mClusters.put(cluster, glyph);
+        } else {
+            mHits++;
+        }
+        return glyph;
+    }
+
+    /** End of the character cluster starting at {@code start} */
+    public static int clusterEnd(CharSequence text, int start) {
+        int i = start + Character.charCount(Character.codePointAt(text, start));
+        while (i < text.length()) {
+            int cp = Character.codePointAt(text, i);
+            int type = Character.getType(cp);
+            boolean joined = VIRAMAS.indexOf(text.charAt(i - 1)) >= 0 && Character.isLetter(cp);
+            if (!joined && type != Character.NON_SPACING_MARK && type != Character.COMBINING_SPACING_MARK
+                    && type != Character.ENCLOSING_MARK && cp != 0x200D) {
+                break;
+            }
+            i += Character.charCount(cp);
+        }
+        return i;
+    }
+
+    public int getHits() {
+        return mHits;
+    }
+
+    /** Glyphs drawn by the {@link GlyphSource} */
+    public int getMisses() {
+        return mMisses;
+    }
+
+    private Raster render(String cluster, Font font) {
+        mGlyphs++;
+        mMisses++;
+        return mSource.render(cluster, font.mSize, font.mBold);
+    }
+
+    private Font font(int size, boolean bold) {
+        for (int i = 0; i < mFonts.size(); i++) {
+            Font f = mFonts.get(i);
+            if (f.mSize == size && f.mBold == bold) {
+                return f;
+            }
+        }
+        Font f = new Font(size, bold);
+        mFonts.add(f);
+        return f;
+    }
+}
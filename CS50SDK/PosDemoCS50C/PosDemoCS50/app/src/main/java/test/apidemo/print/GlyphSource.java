@@ -0,0 +1,17 @@
+package test.apidemo.print;
+
+/**
+ * Draws the glyphs {@link RasterPrinter} lays out. The production source
+ * draws with a typeface ({@link PaintGlyphSource}); tests use a synthetic one.
+ */
+public interface GlyphSource {
+
+    /**
+     * Draw one character cluster: a character with the combining marks
+     * that follow it, see {@link GlyphCache#clusterEnd}.
+     *
+     * @param size font height in dots
+     * @return a raster {@code size} dots high, as wide as the cluster advances
+     */
+    Raster render(String cluster, int size, boolean bold);
+}
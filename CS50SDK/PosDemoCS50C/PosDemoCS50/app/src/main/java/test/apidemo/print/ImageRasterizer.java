@@ -0,0 +1,229 @@
+package test.apidemo.print;
+
+/**
+ * Colour image to print head dots: scaled to the paper, converted to 1 bpp,
+ * and sent as strips of at most {@link Raster#MAX_PRINT_HEIGHT} rows.
+ *
+ * Scaling averages the source pixels under each dot (box filter), so large
+ * photos shrink without aliasing. All loops are integer only and work a row
+ * at a time on buffers kept between images; only the strip being filled is
+ * held at 1 bpp, so memory does not grow with image height. Error diffusion
+ * carries across strip boundaries, so the strips join without a seam. Not
+ * thread safe; keep one per print thread.
+ */
+public class ImageRasterizer {
+
+    /** Source image with no pixels */
+    public static final int ERR_EMPTY = -3902;
+
+    /** Black below mid grey; for line art and logos already in two colours */
+    public static final int DITHER_NONE = 0;
+    /** 8x8 Bayer matrix; fast, regular pattern, good for flat shades */
+    public static final int DITHER_ORDERED = 1;
+    /** Floyd-Steinberg error diffusion; best for photos */
+    public static final int DITHER_FLOYD_STEINBERG = 2;
+
+    private static final int[] BAYER = {
+            0, 32, 8, 40, 2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44, 4, 36, 14, 46, 6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+            3, 35, 11, 43, 1, 33, 9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47, 7, 39, 13, 45, 5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21,
+    };
+
+    private final int mDither;
+    private int mWidth;
+    private int mStripRows = Raster.MAX_PRINT_HEIGHT;
+
+    /** Source row, and its luminance */
+    private int[] mArgb = new int[0];
+    private int[] mSrcLum = new int[0];
+    private int mSrcRow;
+    /** First source column of each output column, and the end of the last */
+    private int[] mColStart = new int[0];
+    /** Luminance sums of the output row, then the averages */
+    private int[] mLum = new int[0];
+    /** Floyd-Steinberg errors, times 16, for this row and the next, one column of margin each side */
+    private int[] mErr = new int[0];
+    private int[] mErrNext = new int[0];
+
+    /** @param dither {@link #DITHER_NONE}, {@link #DITHER_ORDERED} or {@link #DITHER_FLOYD_STEINBERG} */
+    public ImageRasterizer(int dither) {
+        mDither = dither;
+    }
+
+    /**
+     * Width to print at, at most {@link Raster#PAPER_WIDTH}; 0, the default,
+     * keeps the image width when it fits and shrinks it to the paper when not.
+     */
+    public ImageRasterizer setWidth(int width) {
+        mWidth = Math.min(width, Raster.PAPER_WIDTH);
+        return this;
+    }
+
+    /** Rows per strip, at most {@link Raster#MAX_PRINT_HEIGHT} */
+    public ImageRasterizer setStripRows(int rows) {
+        mStripRows = Math.max(1, Math.min(rows, Raster.MAX_PRINT_HEIGHT));
+        return this;
+    }
+
+    /** Printed width of {@code src} */
+    public int outWidth(PixelSource src) {
+        return mWidth > 0 ? mWidth : Math.min(src.getWidth(), Raster.PAPER_WIDTH);
+    }
+
+    /** Printed height of {@code src}, keeping its aspect ratio */
+    public int outHeight(PixelSource src) {
+        return (int) Math.max(1, ((long) src.getHeight() * outWidth(src) + src.getWidth() / 2) / src.getWidth());
+    }
+
+    /**
+     * Send {@code src} to {@code printer} strip by strip.
+     *
+     * @return 0, {@link #ERR_EMPTY}, or the first non-zero printer return code
+     */
+    public int print(PixelSource src, Printer printer) {
+        if (src.getWidth() <= 0 || src.getHeight() <= 0) {
+            return ERR_EMPTY;
+        }
+        int outW = outWidth(src);
+        int outH = outHeight(src);
+        begin(src, outW);
+        for (int top = 0; top < outH; top += mStripRows) {
+            Raster strip = new Raster(outW, Math.min(mStripRows, outH - top));
+            fill(src, strip, top, outH);
+            int ret = printer.printRaster(strip);
+            if (ret != 0) {
+                return ret;
+            }
+        }
+        return 0;
+    }
+
+    /** The whole image as one raster, e.g. a logo for {@link Receipt#setImage}; null when empty */
+    public Raster toRaster(PixelSource src) {
+        if (src.getWidth() <= 0 || src.getHeight() <= 0) {
+            return null;
+        }
+        int outW = outWidth(src);
+        int outH = outHeight(src);
+        Raster raster = new Raster(outW, outH);
+        begin(src, outW);
+        fill(src, raster, 0, outH);
+        return raster;
+    }
+
+    private void begin(PixelSource src, int outW) {
+        int srcW = src.getWidth();
+        if (mArgb.length < srcW) {
+            mArgb = new int[srcW];
+            mSrcLum = new int[srcW];
+        }
+        if (mLum.length < outW) {
+            mLum = new int[outW];
+            mColStart = new int[outW + 1];
+            mErr = new int[outW + 2];
+            mErrNext = new int[outW + 2];
+        }
+        for (int x = 0; x <= outW; x++) {
+            mColStart[x] = (int) ((long) x * srcW / outW);
+        }
+        for (int i = 0; i < outW + 2; i++) {
+            mErr[i] = 0;
+            mErrNext[i] = 0;
+        }
+        mSrcRow = -1;
+    }
+
+    /** Rows {@code top..} of the output image into {@code dst} */
+    private void fill(PixelSource src, Raster dst, int top, int outH) {
+        int outW = dst.getWidth();
+        int srcW = src.getWidth();
+        int srcH = src.getHeight();
+        byte[] data = dst.getData();
+        int stride = dst.getStride();
+        for (int r = 0; r < dst.getHeight(); r++) {
+            int oy = top + r;
+            int y0 = (int) ((long) oy * srcH / outH);
+            int y1 = Math.max(y0 + 1, (int) ((long) (oy + 1) * srcH / outH));
+            for (int x = 0; x < outW; x++) {
+                mLum[x] = 0;
+            }
+            for (int y = y0; y < y1; y++) {
+                sourceRow(src, y, srcW);
+                for (int x = 0; x < outW; x++) {
+                    int x0 = mColStart[x];
+                    int x1 = Math.max(x0 + 1, mColStart[x + 1]);
+                    int sum = 0;
+                    for (int sx = x0; sx < x1; sx++) {
+                        sum += mSrcLum[sx];
+                    }
+                    mLum[x] += sum;
+                }
+            }
+            for (int x = 0; x < outW; x++) {
+                int x0 = mColStart[x];
+                int area = Math.max(1, mColStart[x + 1] - x0) * (y1 - y0);
+                mLum[x] /= area;
+            }
+            dither(oy, outW, data, r * stride);
+        }
+    }
+
+    /** Luminance of source row {@code y}, transparent pixels as white */
+    private void sourceRow(PixelSource src, int y, int srcW) {
+        if (y == mSrcRow) {
+            return;
+        }
+        src.getRow(y, mArgb);
+        for (int x = 0; x < srcW; x++) {
+            int c = mArgb[x];
+            int a = c >>> 24;
+            int lum = (((c >> 16) & 0xFF) * 77 + ((c >> 8) & 0xFF) * 150 + (c & 0xFF) * 29) >> 8;
+            mSrcLum[x] = 255 - (((255 - lum) * a) / 255);
+        }
+        mSrcRow = y;
+    }
+
+    private void dither(int oy, int outW, byte[] data, int row) {
+        if (mDither == DITHER_FLOYD_STEINBERG) {
+            int[] err = mErr;
+            int[] next = mErrNext;
+            for (int x = 0; x < outW; x++) {
+                int v = mLum[x] + (err[x + 1] >> 4);
+                int e;
+                if (v < 128) {
+                    data[row + (x >> 3)] |= 0x80 >> (x & 7);
+                    e = v;
+                } else {
+                    e = v - 255;
+                }
+                err[x + 2] += e * 7;
+                next[x] += e * 3;
+                next[x + 1] += e * 5;
+                next[x + 2] += e;
+            }
+            for (int i = 0; i < outW + 2; i++) {
+                err[i] = 0;
+            }
+            mErr = next;
+            mErrNext = err;
+        } else if (mDither == DITHER_ORDERED) {
+            int base = (oy & 7) << 3;
+            for (int x = 0; x < outW; x++) {
+                if (mLum[x] < (BAYER[base + (x & 7)] << 2) + 2) {
+                    data[row + (x >> 3)] |= 0x80 >> (x & 7);
+                }
+            }
+        } else {
+            for (int x = 0; x < outW; x++) {
+                if (mLum[x] < 128) {
+                    data[row + (x >> 3)] |= 0x80 >> (x & 7);
+                }
+            }
+        }
+    }
+}
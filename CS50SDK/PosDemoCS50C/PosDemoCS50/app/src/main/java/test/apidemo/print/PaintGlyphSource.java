@@ -0,0 +1,72 @@
+package test.apidemo.print;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+/**
+ * {@link GlyphSource} drawing with an Android typeface, thresholded to 1 bpp.
+ * One scratch bitmap is kept and grown as needed.
+ */
+public class PaintGlyphSource implements GlyphSource {
+
+    /** Green channel below this is a black dot */
+    private static final int THRESHOLD = 0x80;
+
+    private final Paint mPaint = new Paint();
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private int[] mPixels = new int[0];
+
+    public PaintGlyphSource() {
+        this(Typeface.DEFAULT);
+    }
+
+    public PaintGlyphSource(Typeface typeface) {
+        mPaint.setTypeface(typeface);
+        mPaint.setColor(Color.BLACK);
+        mPaint.setAntiAlias(true);
+    }
+
+    /** Source drawing with the TrueType font at {@code path}, e.g. for Devanagari */
+    public static PaintGlyphSource fromFile(String path) {
+        return new PaintGlyphSource(Typeface.createFromFile(path));
+    }
+
+    @Override
+    public synchronized Raster render(String cluster, int size, boolean bold) {
+        mPaint.setTextSize(size);
+        mPaint.setFakeBoldText(bold);
+        int width = Math.max(1, (int) Math.ceil(mPaint.measureText(cluster)));
+        if (mBitmap == null || mBitmap.getWidth() < width || mBitmap.getHeight() < size) {
+            if (mBitmap != null) {
+                mBitmap.recycle();
+            }
+            mBitmap = Bitmap.createBitmap(Math.max(width, size), size, Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mBitmap);
+        }
+        if (mPixels.length < width * size) {
+            mPixels = new int[width * size];
+        }
+        mBitmap.eraseColor(Color.WHITE);
+        Paint.FontMetricsInt fm = mPaint.getFontMetricsInt();
+        int baseline = (size - (fm.descent - fm.ascent)) / 2 - fm.ascent;
+        mCanvas.drawText(cluster, 0, baseline, mPaint);
+        mBitmap.getPixels(mPixels, 0, width, 0, 0, width, size);
+
+        Raster glyph = new Raster(width, size);
+        byte[] data = glyph.getData();
+        int stride = glyph.getStride();
+        for (int y = 0; y < size; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                if (((mPixels[row + x] >> 8) & 0xFF) < THRESHOLD) {
+                    data[y * stride + (x >> 3)] |= 0x80 >> (x & 7);
+                }
+            }
+        }
+        return glyph;
+    }
+}
@@ -0,0 +1,14 @@
+package test.apidemo.print;
+
+/**
+ * Colour image read a row at a time by {@link ImageRasterizer}.
+ */
+public interface PixelSource {
+
+    int getWidth();
+
+    int getHeight();
+
+    /** Copy row {@code y} into {@code argb} as 0xAARRGGBB, {@link #getWidth()} pixels */
+    void getRow(int y, int[] argb);
+}
@@ -0,0 +1,115 @@
+package test.apidemo.print;
+
+import android.graphics.Bitmap;
+
+import com.ctk.sdk.PosApiHelper;
+
+/**
+ * {@link Printer} backed by the terminal's PosApiHelper. Rasters taller than
+ * {@link Raster#MAX_PRINT_HEIGHT} are sent as several PrintBmp calls.
+ * Barcodes are encoded on the terminal through a {@link BarcodeCache} and
+ * sent as bitmaps; content zxing cannot encode, or not within the paper
+ * width, goes to PrintBarcode.
+ */
+public class PosPrinter implements Printer {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private final PosApiHelper mPosApiHelper;
+    private final BarcodeCache mBarcodes;
+    private int[] mRow = new int[Raster.PAPER_WIDTH];
+
+    public PosPrinter() {
+        this(PosApiHelper.getInstance());
+    }
+
+    public PosPrinter(PosApiHelper posApiHelper) {
+        this(posApiHelper, BarcodeCache.getInstance());
+    }
+
+    /** @param barcodes null to leave barcodes to the printer firmware */
+    public PosPrinter(PosApiHelper posApiHelper, BarcodeCache barcodes) {
+        mPosApiHelper = posApiHelper;
+        mBarcodes = barcodes;
+    }
+
+    @Override
+    public int init() {
+        return mPosApiHelper.PrintInit();
+    }
+
+    @Override
+    public int setFont(int width, int height, int zoom) {
+        return mPosApiHelper.PrintSetFont((byte) width, (byte) height, (byte) zoom);
+    }
+
+    @Override
+    public int setBold(int on) {
+        return mPosApiHelper.PrintSetBold(on);
+    }
+
+    @Override
+    public int setAlign(int align) {
+        return mPosApiHelper.PrintSetAlign(align);
+    }
+
+    @Override
+    public int setGray(int level) {
+        return mPosApiHelper.PrintSetGray(level);
+    }
+
+    @Override
+    public int setSpeed(int speed) {
+        return mPosApiHelper.PrintSetSpeed(speed);
+    }
+
+    @Override
+    public int printStr(String text) {
+        return mPosApiHelper.PrintStr(text);
+    }
+
+    @Override
+    public int printBarcode(String content, int width, int height, String format) {
+        Raster raster = mBarcodes == null ? null : mBarcodes.get(content, format, width, height);
+        if (raster != null) {
+            return printRaster(raster);
+        }
+        return mPosApiHelper.PrintBarcode(content, width, height, format);
+    }
+
+    @Override
+    public int printRaster(Raster raster) {
+        int ret = 0;
+        for (int y = 0; y < raster.getHeight() && ret == 0; y += Raster.MAX_PRINT_HEIGHT) {
+            ret = printBmp(raster, y, Math.min(Raster.MAX_PRINT_HEIGHT, raster.getHeight() - y));
+        }
+        return ret;
+    }
+
+    @Override
+    public int start() {
+        return mPosApiHelper.PrintStart();
+    }
+
+    /** PrintBmp of {@code rows} rows of {@code raster} from row {@code top} */
+    private int printBmp(Raster raster, int top, int rows) {
+        int w = raster.getWidth();
+        if (mRow.length < w) {
+            mRow = new int[w];
+        }
+        Bitmap bmp = Bitmap.createBitmap(w, rows, Bitmap.Config.RGB_565);
+        byte[] data = raster.getData();
+        int stride = raster.getStride();
+        for (int y = 0; y < rows; y++) {
+            int row = (top + y) * stride;
+            for (int x = 0; x < w; x++) {
+                mRow[x] = (data[row + (x >> 3)] & (0x80 >> (x & 7))) != 0 ? BLACK : WHITE;
+            }
+            bmp.setPixels(mRow, 0, w, 0, y, w, 1);
+        }
+        int ret = mPosApiHelper.PrintBmp(bmp);
+        bmp.recycle();
+        return ret;
+    }
+}
@@ -0,0 +1,96 @@
+package test.apidemo.print;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One receipt waiting in a {@link PrintSpooler}: the name of a registered
+ * template, the field values and hidden sections, and the spooler's
+ * bookkeeping. Only names and strings are stored, so a job survives a
+ * restart of the process.
+ */
+public class PrintJob {
+
+    /** Customer receipt: printed before anything else waiting */
+    public static final int PRIORITY_RECEIPT = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    /** Settlement and other reports: printed when no receipt waits */
+    public static final int PRIORITY_REPORT = 2;
+
+    public static final int STATE_QUEUED = 0;
+    public static final int STATE_PRINTING = 1;
+    /** Printer out of paper; printed after {@link PrintSpooler#onPaperLoaded()} */
+    public static final int STATE_WAITING_PAPER = 2;
+    public static final int STATE_DONE = 3;
+    /** Gave up after {@link PrintSpooler#setMaxAttempts} failures; kept on disk for review */
+    public static final int STATE_FAILED = 4;
+
+    final String mTemplate;
+    final int mPriority;
+    final List<String> mNames = new ArrayList<String>();
+    final List<String> mValues = new ArrayList<String>();
+    final List<String> mHidden = new ArrayList<String>();
+    long mId;
+    long mCreatedAt;
+    int mState = STATE_QUEUED;
+    int mAttempts;
+    int mLastError;
+    /** Printer calls of the job already on paper, see {@link PrintPacer#resumeAt} */
+    int mResumeAt;
+
+    public PrintJob(String template, int priority) {
+        mTemplate = template;
+        mPriority = priority;
+    }
+
+    /** Value of field {@code name} of the template */
+    public PrintJob set(String name, String value) {
+        mNames.add(name);
+        mValues.add(value);
+        return this;
+    }
+
+    /** Leave section {@code name} of the template out */
+    public PrintJob hide(String section) {
+        mHidden.add(section);
+        return this;
+    }
+
+    /** Set by {@link PrintSpooler#submit}; 0 before */
+    public long getId() {
+        return mId;
+    }
+
+    public String getTemplate() {
+        return mTemplate;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    /** Failed prints so far, paper-outs not counted */
+    public int getAttempts() {
+        return mAttempts;
+    }
+
+    /** Printer return code of the last failed print, 0 when none */
+    public int getLastError() {
+        return mLastError;
+    }
+
+    /** Fill {@code receipt} with this job's values */
+    void fill(Receipt receipt) {
+        receipt.clear();
+        for (int i = 0; i < mNames.size(); i++) {
+            receipt.set(mNames.get(i), mValues.get(i));
+        }
+        for (int i = 0; i < mHidden.size(); i++) {
+            receipt.show(mHidden.get(i), false);
+        }
+    }
+}
@@ -0,0 +1,594 @@
+package test.apidemo.print;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Printer} that keeps the print head below the heat at which
+ * PrintStart fails with -2, so long jobs finish instead of stopping halfway.
+ *
+ * The heat of a page is estimated from the dots it fires and added to a
+ * running estimate for the head, which halves every
+ * {@link #DEFAULT_HALF_LIFE_MS}. While the page fits in the headroom it
+ * prints at full speed. Once the head is hot every start has to wait for the
+ * head to shed what it adds, so the pacer picks the speed with the shortest
+ * print plus wait, from the print time per dot it measured; if the page
+ * still does not fit it prints one step lighter, and only then waits. A low
+ * battery caps speed and darkness, as high current is what makes PrintStart
+ * fail with -3. Pages too hot for one start are sent in several, cut
+ * between calls; when a later one fails the page comes back as
+ * {@link #ERR_PARTIAL}, since the first part is already on paper.
+ * {@link #getPrintedCalls()} then tells how far it got, and
+ * {@link #resumeAt} prints the same page again from there, e.g. once paper
+ * is loaded.
+ *
+ * Calls are held until {@link #start()} so a start that fails with -2 or -3
+ * is sent again after a pause instead of losing the page; style and print
+ * calls return 0 and their errors come back from start.
+ */
+public class PrintPacer implements Printer {
+
+    /** Interrupted while waiting for the head to cool */
+    public static final int ERR_INTERRUPTED = -3921;
+    /**
+     * A page cut into several starts failed after part of it printed;
+     * {@link #getLastError()} has the code of the start that failed
+     */
+    public static final int ERR_PARTIAL = -3922;
+
+    /** Speed levels; the SDK does not document the range of PrintSetSpeed */
+    public static final int DEFAULT_MIN_SPEED = 1;
+    public static final int DEFAULT_MAX_SPEED = 5;
+    /** Heat the head takes before -2, in dots fired at gray 3 and full speed */
+    public static final long DEFAULT_HEAT_LIMIT = 1500000;
+    /** Time for the head to lose half its heat */
+    public static final long DEFAULT_HALF_LIFE_MS = 10000;
+
+    /** Battery percent below which speed and darkness are capped */
+    public static final int LOW_BATTERY = 20;
+    /** Battery percent below which printing is slowest and light */
+    public static final int CRITICAL_BATTERY = 10;
+
+    private static final int GRAY_MIN = 1;
+    private static final int GRAY_MAX = 5;
+    private static final int DEFAULT_GRAY = 3;
+    /** Energy per dot at each gray level, percent of gray 3 */
+    private static final int[] GRAY_ENERGY = {0, 70, 85, 100, 115, 130};
+    private static final int DEFAULT_FONT_HEIGHT = 24;
+    /** Share of a character cell that is black */
+    private static final int TEXT_INK_PERCENT = 20;
+    private static final int BARCODE_INK_PERCENT = 50;
+    /** One start takes at most this share of the heat limit */
+    private static final int SEGMENT_PERCENT = 50;
+    /** Each -2 makes later estimates this much heavier, up to twice the dots */
+    private static final int SCALE_STEP_PERCENT = 10;
+    private static final int MAX_SCALE_PERCENT = 200;
+    private static final int MAX_RETRIES = 3;
+    /** Pause before printing again after -3, for the battery to recover */
+    private static final long LOW_VOLTAGE_PAUSE_MS = 2000;
+
+    private static final int OP_FONT = 0;
+    private static final int OP_BOLD = 1;
+    private static final int OP_ALIGN = 2;
+    private static final int OP_STR = 3;
+    private static final int OP_BARCODE = 4;
+    private static final int OP_RASTER = 5;
+
+    /** Font, bold and align in effect, -1 when not known */
+    private static final int STYLE_FONT_W = 0;
+    private static final int STYLE_FONT_H = 1;
+    private static final int STYLE_ZOOM = 2;
+    private static final int STYLE_BOLD = 3;
+    private static final int STYLE_ALIGN = 4;
+
+    /** One held call; kept and reused across pages */
+    private static final class Op {
+        int mKind;
+        int mA;
+        int mB;
+        int mC;
+        String mText;
+        String mFormat;
+        Raster mRaster;
+        /** Dots this call fires, 0 for style calls */
+        long mDots;
+    }
+
+    private final Printer mTarget;
+    private final int mMinSpeed;
+    private final int mMaxSpeed;
+    private final long mHeatLimit;
+    private final long mHalfLifeMs;
+    private final List<Op> mOps = new ArrayList<Op>();
+    private int mCount;
+    private int mFontHeight = DEFAULT_FONT_HEIGHT;
+    private final int[] mStyle = new int[5];
+    private final int[] mSentStyle = new int[5];
+
+    private int mGray = DEFAULT_GRAY;
+    private int mSpeedCap;
+    private volatile int mBattery = -1;
+    private int mAppliedGray = -1;
+    private int mAppliedSpeed = -1;
+    private boolean mSagged;
+
+    private double mHeat;
+    private long mHeatAt;
+    private double mDuty;
+    /** Measured print time per dot at speed 1, 0 before the first start */
+    private double mMsPerDot;
+    private long mLastEnd = -1;
+    private int mScalePercent = 100;
+
+    private int mStarts;
+    private int mRetries;
+    private long mCoolDownMs;
+    private int mLastError;
+    private int mPrintedCalls;
+    private int mSkip;
+
+    public PrintPacer(Printer target) {
+        this(target, DEFAULT_MIN_SPEED, DEFAULT_MAX_SPEED, DEFAULT_HEAT_LIMIT, DEFAULT_HALF_LIFE_MS);
+    }
+
+    public PrintPacer(Printer target, int minSpeed, int maxSpeed, long heatLimit, long halfLifeMs) {
+        mTarget = target;
+        mMinSpeed = minSpeed;
+        mMaxSpeed = maxSpeed;
+        mSpeedCap = maxSpeed;
+        mHeatLimit = heatLimit;
+        mHalfLifeMs = halfLifeMs;
+        forgetStyle();
+    }
+
+    /** Battery level in percent, from ACTION_BATTERY_CHANGED; -1 when not known */
+    public void setBattery(int percent) {
+        mBattery = percent;
+    }
+
+    @Override
+    public int init() {
+        mCount = 0;
+        mFontHeight = DEFAULT_FONT_HEIGHT;
+        mAppliedGray = -1;
+        mAppliedSpeed = -1;
+        mSkip = 0;
+        forgetStyle();
+        return mTarget.init();
+    }
+
+    @Override
+    public int setFont(int width, int height, int zoom) {
+        mFontHeight = height;
+        add(OP_FONT, width, height, zoom);
+        return 0;
+    }
+
+    @Override
+    public int setBold(int on) {
+        add(OP_BOLD, on, 0, 0);
+        return 0;
+    }
+
+    @Override
+    public int setAlign(int align) {
+        add(OP_ALIGN, align, 0, 0);
+        return 0;
+    }
+
+    /** Darkness asked for; the pacer prints at most one step lighter when hot */
+    @Override
+    public int setGray(int level) {
+        mGray = Math.max(GRAY_MIN, Math.min(GRAY_MAX, level));
+        return 0;
+    }
+
+    /** Fastest speed to use; the pacer slows down from there */
+    @Override
+    public int setSpeed(int speed) {
+        mSpeedCap = Math.max(mMinSpeed, Math.min(mMaxSpeed, speed));
+        return 0;
+    }
+
+    @Override
+    public int printStr(String text) {
+        // lines are held apart so a hot page can be cut between them
+        int from = 0;
+        while (from < text.length()) {
+            int nl = text.indexOf('\n', from);
+            int to = nl < 0 ? text.length() : nl + 1;
+            Op op = add(OP_STR, 0, 0, 0);
+            op.mText = from == 0 && to == text.length() ? text : text.substring(from, to);
+            op.mDots = textDots(text, from, to, mFontHeight);
+            from = to;
+        }
+        return 0;
+    }
+
+    @Override
+    public int printBarcode(String content, int width, int height, String format) {
+        Op op = add(OP_BARCODE, width, height, 0);
+        op.mText = content;
+        op.mFormat = format;
+        op.mDots = (long) width * height * BARCODE_INK_PERCENT / 100;
+        return 0;
+    }
+
+    @Override
+    public int printRaster(Raster raster) {
+        Op op = add(OP_RASTER, 0, 0, 0);
+        op.mRaster = raster;
+        op.mDots = blackDots(raster);
+        return 0;
+    }
+
+    @Override
+    public int start() {
+        mSagged = false;
+        // other code may have set the printer since the last page
+        mAppliedGray = -1;
+        mAppliedSpeed = -1;
+        int ret;
+        int from = Math.min(mSkip, mCount);
+        mSkip = 0;
+        skipStyle(from);
+        mPrintedCalls = from;
+        do {
+            int to = segmentEnd(from);
+            ret = printSegment(from, to);
+            mLastError = ret;
+            if (ret == 0) {
+                mPrintedCalls = to;
+            } else if (from > 0) {
+                ret = ERR_PARTIAL;
+            }
+            from = to;
+        } while (ret == 0 && from < mCount);
+        for (int i = 0; i < mCount; i++) {
+            Op op = mOps.get(i);
+            op.mText = null;
+            op.mFormat = null;
+            op.mRaster = null;
+        }
+        mCount = 0;
+        return ret;
+    }
+
+    /**
+     * Leave out the first {@code calls} held calls at the next start, as
+     * they are on paper already; their style still applies to the rest.
+     * Call after {@link #init()}, with the page built exactly as before.
+     */
+    public void resumeAt(int calls) {
+        mSkip = calls;
+    }
+
+    /**
+     * Held calls of the last page that are on paper: all of them when it
+     * printed, where to {@link #resumeAt} after {@link #ERR_PARTIAL}
+     */
+    public int getPrintedCalls() {
+        return mPrintedCalls;
+    }
+
+    /** Current estimate of the head's heat, in dots at gray 3 and full speed */
+    public long getHeat() {
+        return (long) heatAt(now());
+    }
+
+    /** Share of recent time spent printing, percent */
+    public int getDutyCycle() {
+        return (int) Math.round(mDuty * 100);
+    }
+
+    /** Speed of the last start, -1 before the first */
+    public int getSpeed() {
+        return mAppliedSpeed;
+    }
+
+    /** Gray of the last start, -1 before the first */
+    public int getGray() {
+        return mAppliedGray;
+    }
+
+    /** Starts sent to the printer, more than pages when pages were cut or retried */
+    public int getStarts() {
+        return mStarts;
+    }
+
+    /** Starts sent again after -2 or -3 */
+    public int getRetries() {
+        return mRetries;
+    }
+
+    /** Code of the start that failed the last page, 0 when it printed */
+    public int getLastError() {
+        return mLastError;
+    }
+
+    /** Time spent waiting for the head to cool or the battery to recover */
+    public long getCoolDownMs() {
+        return mCoolDownMs;
+    }
+
+    /** Clock in milliseconds; tests may override */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /** Tests may override to move their clock instead */
+    protected void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    private Op add(int kind, int a, int b, int c) {
+        if (mCount == mOps.size()) {
+            mOps.add(new Op());
+        }
+        Op op = mOps.get(mCount++);
+        op.mKind = kind;
+        op.mA = a;
+        op.mB = b;
+        op.mC = c;
+        op.mDots = 0;
+        return op;
+    }
+
+    /** End of the segment starting at {@code from}: at least one call, then while under budget */
+    private int segmentEnd(int from) {
+        long budget = mHeatLimit * SEGMENT_PERCENT / 100;
+        long dots = 0;
+        int to = from;
+        while (to < mCount) {
+            long next = dots + mOps.get(to).mDots;
+            if (next > budget && dots > 0) {
+                break;
+            }
+            dots = next;
+            to++;
+        }
+        return to;
+    }
+
+    private int printSegment(int from, int to) {
+        long dots = 0;
+        for (int i = from; i < to; i++) {
+            dots += mOps.get(i).mDots;
+        }
+        boolean restyle = from > 0;
+        for (int attempt = 0; ; attempt++) {
+            int ret = pace(dots);
+            if (ret != 0) {
+                return ret;
+            }
+            System.arraycopy(mSentStyle, 0, mStyle, 0, mStyle.length);
+            ret = send(from, to, restyle);
+            if (ret == 0) {
+                long begin = now();
+                ret = mTarget.start();
+                mStarts++;
+                account(begin, now(), ret == 0 ? dots : 0);
+            }
+            if (ret == 0) {
+                System.arraycopy(mStyle, 0, mSentStyle, 0, mStyle.length);
+                return 0;
+            }
+            if (attempt == MAX_RETRIES || ret != -2 && ret != -3) {
+                return ret;
+            }
+            mRetries++;
+            restyle = true;
+            if (ret == -2) {
+                // the head is at its limit whatever was estimated
+                mHeat = Math.max(heatAt(now()), mHeatLimit);
+                mHeatAt = now();
+                mScalePercent = Math.min(MAX_SCALE_PERCENT, mScalePercent + SCALE_STEP_PERCENT);
+            } else {
+                mSagged = true;
+                ret = rest(LOW_VOLTAGE_PAUSE_MS);
+                if (ret != 0) {
+                    return ret;
+                }
+            }
+        }
+    }
+
+    /** Pick speed and gray for {@code dots}, waiting first when the head has no room */
+    private int pace(long dots) {
+        int speedCap = mSpeedCap;
+        int gray = mGray;
+        int battery = mBattery;
+        if (mSagged || battery >= 0 && battery < CRITICAL_BATTERY) {
+            speedCap = mMinSpeed;
+            gray = Math.min(gray, 2);
+        } else if (battery >= 0 && battery < LOW_BATTERY) {
+            speedCap = Math.min(speedCap, (mMinSpeed + mMaxSpeed) / 2);
+            gray = Math.min(gray, 3);
+        }
+
+        double left = heatAt(now());
+        int speed = speedFor(dots, gray, speedCap, left);
+        double added = added(dots, gray, speed);
+        if (left + added > mHeatLimit && gray == mGray && gray > GRAY_MIN) {
+            gray--;
+            added = added(dots, gray, speed);
+        }
+        if (left + added > mHeatLimit) {
+            // cool until the segment fits, or nearly cold when it never will
+            double target = Math.max(mHeatLimit - added, mHeatLimit / 20.0);
+            if (left > target) {
+                long wait = (long) Math.ceil(mHalfLifeMs * Math.log(left / target) / Math.log(2));
+                int ret = rest(wait);
+                if (ret != 0) {
+                    return ret;
+                }
+            }
+        }
+
+        int ret = 0;
+        if (gray != mAppliedGray) {
+            ret = mTarget.setGray(gray);
+            mAppliedGray = gray;
+        }
+        if (ret == 0 && speed != mAppliedSpeed) {
+            ret = mTarget.setSpeed(speed);
+            mAppliedSpeed = speed;
+        }
+        return ret;
+    }
+
+    /** Speed up to {@code cap} that prints {@code dots} soonest on a head holding {@code left} */
+    private int speedFor(long dots, int gray, int cap, double left) {
+        if (left + added(dots, gray, cap) <= mHeatLimit) {
+            return cap;
+        }
+        // heat the head sheds per ms when near its limit
+        double rate = mHeatLimit * Math.log(2) / mHalfLifeMs;
+        int best = mMinSpeed;
+        double bestMs = Double.MAX_VALUE;
+        for (int speed = mMinSpeed; speed <= cap; speed++) {
+            double ms = Math.max(dots * mMsPerDot / speed, added(dots, gray, speed) / rate);
+            if (ms < bestMs) {
+                best = speed;
+                bestMs = ms;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Heat {@code dots} leave in the head; at the slowest speed half of it
+     * is lost while the page prints.
+     */
+    private double added(long dots, int gray, int speed) {
+        double heat = dots * (mScalePercent / 100.0) * (GRAY_ENERGY[gray] / 100.0);
+        if (mMaxSpeed > mMinSpeed) {
+            heat *= 0.5 + 0.5 * (speed - mMinSpeed) / (mMaxSpeed - mMinSpeed);
+        }
+        return heat;
+    }
+
+    private double heatAt(long time) {
+        if (mHeat == 0 || time <= mHeatAt) {
+            return mHeat;
+        }
+        return mHeat * Math.pow(0.5, (time - mHeatAt) / (double) mHalfLifeMs);
+    }
+
+    /** Book a start from {@code begin} to {@code end} that fired {@code dots} */
+    private void account(long begin, long end, long dots) {
+        mHeat = heatAt(begin) + added(dots, mAppliedGray, mAppliedSpeed);
+        mHeatAt = begin;
+        long busy = end - begin;
+        if (dots > 0 && busy > 0) {
+            double msPerDot = busy * (double) mAppliedSpeed / dots;
+            mMsPerDot = mMsPerDot == 0 ? msPerDot : mMsPerDot * 0.7 + msPerDot * 0.3;
+        }
+        // before the first start the head counts as rested for a half-life
+        long idle = mLastEnd < 0 ? mHalfLifeMs : Math.max(0, begin - mLastEnd);
+        double sample = busy + idle == 0 ? 0 : busy / (double) (busy + idle);
+        mDuty = mDuty * 0.7 + sample * 0.3;
+        mLastEnd = end;
+    }
+
+    private int rest(long millis) {
+        try {
+            sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ERR_INTERRUPTED;
+        }
+        mCoolDownMs += millis;
+        return 0;
+    }
+
+    /** Send calls {@code from} to {@code to}, first restating the style when asked */
+    private int send(int from, int to, boolean restyle) {
+        int ret = 0;
+        if (restyle) {
+            if (mStyle[STYLE_FONT_H] >= 0) {
+                ret = mTarget.setFont(mStyle[STYLE_FONT_W], mStyle[STYLE_FONT_H], mStyle[STYLE_ZOOM]);
+            }
+            if (ret == 0 && mStyle[STYLE_BOLD] >= 0) {
+                ret = mTarget.setBold(mStyle[STYLE_BOLD]);
+            }
+            if (ret == 0 && mStyle[STYLE_ALIGN] >= 0) {
+                ret = mTarget.setAlign(mStyle[STYLE_ALIGN]);
+            }
+        }
+        for (int i = from; i < to && ret == 0; i++) {
+            Op op = mOps.get(i);
+            switch (op.mKind) {
+                case OP_FONT:
+                    mStyle[STYLE_FONT_W] = op.mA;
+                    mStyle[STYLE_FONT_H] = op.mB;
+                    mStyle[STYLE_ZOOM] = op.mC;
+                    ret = mTarget.setFont(op.mA, op.mB, op.mC);
+                    break;
+                case OP_BOLD:
+                    mStyle[STYLE_BOLD] = op.mA;
+                    ret = mTarget.setBold(op.mA);
+                    break;
+                case OP_ALIGN:
+                    mStyle[STYLE_ALIGN] = op.mA;
+                    ret = mTarget.setAlign(op.mA);
+                    break;
+                case OP_STR:
+                    ret = mTarget.printStr(op.mText);
+                    break;
+                case OP_BARCODE:
+                    ret = mTarget.printBarcode(op.mText, op.mA, op.mB, op.mFormat);
+                    break;
+                default:
+                    ret = mTarget.printRaster(op.mRaster);
+                    break;
+            }
+        }
+        return ret;
+    }
+
+    /** Take the style of the calls before {@code to} as sent, without sending them */
+    private void skipStyle(int to) {
+        for (int i = 0; i < to; i++) {
+            Op op = mOps.get(i);
+            if (op.mKind == OP_FONT) {
+                mSentStyle[STYLE_FONT_W] = op.mA;
+                mSentStyle[STYLE_FONT_H] = op.mB;
+                mSentStyle[STYLE_ZOOM] = op.mC;
+            } else if (op.mKind == OP_BOLD) {
+                mSentStyle[STYLE_BOLD] = op.mA;
+            } else if (op.mKind == OP_ALIGN) {
+                mSentStyle[STYLE_ALIGN] = op.mA;
+            }
+        }
+    }
+
+    private void forgetStyle() {
+        for (int i = 0; i < mStyle.length; i++) {
+            mStyle[i] = -1;
+            mSentStyle[i] = -1;
+        }
+    }
+
+    /** Dots of {@code text} from {@code from} to {@code to}; wide characters take a square cell */
+    static long textDots(String text, int from, int to, int height) {
+        long cells = 0;
+        for (int i = from; i < to; ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (!Character.isWhitespace(cp)) {
+                cells += cp < 0x1100 ? 1 : 2;
+            }
+        }
+        return cells * height * height / 2 * TEXT_INK_PERCENT / 100;
+    }
+
+    static long blackDots(Raster raster) {
+        byte[] data = raster.getData();
+        long dots = 0;
+        for (int i = 0; i < raster.getStride() * raster.getHeight(); i++) {
+            dots += Integer.bitCount(data[i] & 0xFF);
+        }
+        return dots;
+    }
+}
@@ -0,0 +1,465 @@
+package test.apidemo.print;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent print queue: receipts are stored before they are printed, so
+ * neither a paper-out nor the death of the process loses one.
+ *
+ * Every job is its own small file, written via a temp file and rename like
+ * the {@link test.apidemo.saf.SafQueue} items, holding the template name,
+ * field values, priority and state. {@link #drain()} prints waiting jobs
+ * highest priority first, oldest first within a priority. A paper-out
+ * (PrintStart -1 or -1021) parks the job and stops the queue until
+ * {@link #onPaperLoaded()}; other failures are retried up to
+ * {@link #setMaxAttempts} times before the job is set aside. When a
+ * {@link PrintPacer} runs out of paper after part of a job printed, the job
+ * is parked the same way and goes on from the part that failed; any other
+ * failure after part of it printed ({@link PrintPacer#ERR_PARTIAL}) sets it
+ * aside at once, as printing it again would repeat that part. A job found
+ * printing when the queue is opened was cut short by a restart and is
+ * printed again.
+ *
+ * {@link #submit} and the queries may be called from any thread;
+ * {@link #drain()} from one worker thread only, and it prints without
+ * holding the lock.
+ */
+public class PrintSpooler {
+
+    /** Template not registered, or a field or section it does not have */
+    public static final int ERR_TEMPLATE = -3911;
+    public static final int ERR_FULL = -3912;
+    public static final int ERR_IO = -3913;
+    /** Queue stopped until {@link #onPaperLoaded()} */
+    public static final int ERR_NO_PAPER = -3914;
+
+    /** Paper-out codes of PrintStart */
+    private static final int PAPER_OUT = -1;
+    private static final int PAPER_OUT_BUSY = -1021;
+
+    private static final int MAGIC = 0x50534A32; // "PSJ2"
+    private static final String PREFIX = "job-";
+    private static final String SUFFIX = ".job";
+    private static final String FAILED_SUFFIX = ".failed";
+    private static final String BAD_SUFFIX = ".bad";
+
+    /** Told of every state change of a job, on the thread that made it */
+    public interface Listener {
+        void onJobChanged(PrintJob job);
+    }
+
+    private final File mDir;
+    private final Printer mPrinter;
+    private final int mMaxJobs;
+    private final Map<String, ReceiptTemplate> mTemplates = new HashMap<String, ReceiptTemplate>();
+    /** One receipt per template, reused job after job by the drain thread */
+    private final Map<String, Receipt> mReceipts = new HashMap<String, Receipt>();
+    private final List<PrintJob> mJobs = new ArrayList<PrintJob>();
+    private final List<PrintJob> mFailed = new ArrayList<PrintJob>();
+    private Listener mListener;
+    private int mMaxAttempts = 3;
+    private boolean mPaperOut;
+    private long mLastId;
+    private int mPrinted;
+
+    /** @param maxJobs jobs that may wait at once */
+    public PrintSpooler(File dir, Printer printer, int maxJobs) {
+        mDir = dir;
+        mPrinter = printer;
+        mMaxJobs = maxJobs;
+    }
+
+    /** Make {@code template} printable by name; register before {@link #open()} */
+    public synchronized void register(ReceiptTemplate template) {
+        mTemplates.put(template.getName(), template);
+    }
+
+    public synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /** Failed prints, paper-outs not counted, before a job is set aside */
+    public synchronized void setMaxAttempts(int attempts) {
+        mMaxAttempts = attempts;
+    }
+
+    /**
+     * Load the stored jobs.
+     *
+     * @return number of jobs waiting
+     */
+    public synchronized int open() throws IOException {
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            throw new IOException("cannot create " + mDir);
+        }
+        mJobs.clear();
+        mFailed.clear();
+        mPaperOut = false;
+        File[] files = mDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX);
+            }
+        });
+        if (files == null) {
+            return 0;
+        }
+        for (File f : files) {
+            boolean failed = f.getName().endsWith(FAILED_SUFFIX);
+            if (f.getName().endsWith(".tmp")) {
+                f.delete();
+                continue;
+            }
+            if (!failed && !f.getName().endsWith(SUFFIX)) {
+                continue;
+            }
+            PrintJob job = read(f);
+            if (job == null || !mTemplates.containsKey(job.mTemplate)) {
+                // jobs are only replaced by rename, so this is storage damage or a
+                // template this build no longer has; keep it for review
+                f.renameTo(new File(mDir, f.getName() + BAD_SUFFIX));
+                continue;
+            }
+            mLastId = Math.max(mLastId, job.mId);
+            if (failed) {
+                job.mState = PrintJob.STATE_FAILED;
+                mFailed.add(job);
+            } else {
+                // printing: cut short by the restart; waiting for paper: it may be loaded now
+                job.mState = PrintJob.STATE_QUEUED;
+                mJobs.add(job);
+            }
+        }
+        return mJobs.size();
+    }
+
+    /**
+     * Store a job for printing; its id is set on success.
+     *
+     * @return 0, {@link #ERR_TEMPLATE}, {@link #ERR_FULL} or {@link #ERR_IO}
+     */
+    public synchronized int submit(PrintJob job) {
+        ReceiptTemplate template = mTemplates.get(job.mTemplate);
+        if (template == null) {
+            return ERR_TEMPLATE;
+        }
+        CompiledReceipt compiled = template.compile();
+        for (int i = 0; i < job.mNames.size(); i++) {
+            if (compiled.slotOf(job.mNames.get(i)) < 0) {
+                return ERR_TEMPLATE;
+            }
+        }
+        for (int i = 0; i < job.mHidden.size(); i++) {
+            if (CompiledReceipt.indexOf(compiled.mSections, job.mHidden.get(i)) < 0) {
+                return ERR_TEMPLATE;
+            }
+        }
+        if (mJobs.size() >= mMaxJobs) {
+            return ERR_FULL;
+        }
+        long now = now();
+        // wall-clock ids stay unique across restarts, also once the files are gone
+        job.mId = Math.max(mLastId + 1, now);
+        job.mCreatedAt = now;
+        job.mState = PrintJob.STATE_QUEUED;
+        try {
+            write(job, file(job.mId, SUFFIX));
+        } catch (IOException e) {
+            job.mId = 0;
+            return ERR_IO;
+        }
+        mLastId = job.mId;
+        mJobs.add(job);
+        notifyAll();
+        changed(job);
+        return 0;
+    }
+
+    /**
+     * Print waiting jobs until none is left, the paper runs out or a print
+     * fails.
+     *
+     * @return number of jobs printed, or when none was, {@link #ERR_NO_PAPER}
+     * or the printer return code that stopped the queue
+     */
+    public int drain() {
+        int printed = 0;
+        while (true) {
+            PrintJob job;
+            synchronized (this) {
+                if (mPaperOut) {
+                    return printed > 0 ? printed : ERR_NO_PAPER;
+                }
+                job = next();
+                if (job == null) {
+                    return printed;
+                }
+                setState(job, PrintJob.STATE_PRINTING);
+            }
+            changed(job);
+
+            int ret = print(job);
+            int stop = 0;
+
+            synchronized (this) {
+                if (ret == 0) {
+                    job.mState = PrintJob.STATE_DONE;
+                    mJobs.remove(job);
+                    file(job.mId, SUFFIX).delete();
+                    mPrinted++;
+                    printed++;
+                } else if (ret == PAPER_OUT || ret == PAPER_OUT_BUSY) {
+                    mPaperOut = true;
+                    job.mLastError = ret;
+                    setState(job, PrintJob.STATE_WAITING_PAPER);
+                    stop = ERR_NO_PAPER;
+                } else if (ret == PrintPacer.ERR_PARTIAL) {
+                    // done with an error: the customer has the first part
+                    job.mAttempts++;
+                    job.mLastError = ret;
+                    setAside(job);
+                    stop = ret;
+                } else {
+                    job.mAttempts++;
+                    job.mLastError = ret;
+                    if (job.mAttempts >= mMaxAttempts) {
+                        setAside(job);
+                    } else {
+                        setState(job, PrintJob.STATE_QUEUED);
+                    }
+                    stop = ret;
+                }
+            }
+            changed(job);
+            if (stop != 0) {
+                return printed > 0 ? printed : stop;
+            }
+        }
+    }
+
+    /** Paper is in again: the queue goes on with the job that ran out */
+    public synchronized void onPaperLoaded() {
+        mPaperOut = false;
+        for (int i = 0; i < mJobs.size(); i++) {
+            PrintJob job = mJobs.get(i);
+            if (job.mState == PrintJob.STATE_WAITING_PAPER) {
+                setState(job, PrintJob.STATE_QUEUED);
+            }
+        }
+        notifyAll();
+    }
+
+    public synchronized boolean isWaitingForPaper() {
+        return mPaperOut;
+    }
+
+    /** Wait up to {@code millis} for a job to print; wakes on submit and paper loaded */
+    public synchronized void awaitWork(long millis) throws InterruptedException {
+        if (mPaperOut || mJobs.isEmpty()) {
+            wait(millis);
+        }
+    }
+
+    /**
+     * @return state of job {@code id}, {@link PrintJob#STATE_DONE} for a job
+     * this queue no longer holds, or -1 for an id it never gave out
+     */
+    public synchronized int getState(long id) {
+        for (int i = 0; i < mJobs.size(); i++) {
+            if (mJobs.get(i).mId == id) {
+                return mJobs.get(i).mState;
+            }
+        }
+        for (int i = 0; i < mFailed.size(); i++) {
+            if (mFailed.get(i).mId == id) {
+                return PrintJob.STATE_FAILED;
+            }
+        }
+        return id > 0 && id <= mLastId ? PrintJob.STATE_DONE : -1;
+    }
+
+    /** Jobs waiting, including one being printed */
+    public synchronized int size() {
+        return mJobs.size();
+    }
+
+    /** Jobs set aside after too many failures */
+    public synchronized List<PrintJob> getFailed() {
+        return Collections.unmodifiableList(new ArrayList<PrintJob>(mFailed));
+    }
+
+    /** Jobs printed since this queue was made */
+    public synchronized int getPrinted() {
+        return mPrinted;
+    }
+
+    /** Clock for job ids, in wall-clock milliseconds since they are persisted */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private int print(PrintJob job) {
+        Receipt receipt = mReceipts.get(job.mTemplate);
+        if (receipt == null) {
+            ReceiptTemplate template;
+            synchronized (this) {
+                template = mTemplates.get(job.mTemplate);
+            }
+            receipt = template.compile().newReceipt();
+            mReceipts.put(job.mTemplate, receipt);
+        }
+        job.fill(receipt);
+        int ret = mPrinter.init();
+        if (ret != 0) {
+            return ret;
+        }
+        PrintPacer pacer = mPrinter instanceof PrintPacer ? (PrintPacer) mPrinter : null;
+        if (pacer != null) {
+            pacer.resumeAt(job.mResumeAt);
+        }
+        ret = receipt.print(mPrinter);
+        if (ret == PrintPacer.ERR_PARTIAL && pacer != null
+                && (pacer.getLastError() == PAPER_OUT || pacer.getLastError() == PAPER_OUT_BUSY)) {
+            // the customer has the part before; it goes on from there with paper
+            job.mResumeAt = pacer.getPrintedCalls();
+            return pacer.getLastError();
+        }
+        return ret;
+    }
+
+    /** Highest priority, then oldest, queued job */
+    private PrintJob next() {
+        PrintJob best = null;
+        for (int i = 0; i < mJobs.size(); i++) {
+            PrintJob job = mJobs.get(i);
+            if (job.mState == PrintJob.STATE_QUEUED && (best == null || job.mPriority < best.mPriority
+                    || (job.mPriority == best.mPriority && job.mId < best.mId))) {
+                best = job;
+            }
+        }
+        return best;
+    }
+
+    private void setState(PrintJob job, int state) {
+        job.mState = state;
+        try {
+            write(job, file(job.mId, SUFFIX));
+        } catch (IOException ignored) {
+            // the old file stays; at worst the job is printed again after a restart
+        }
+    }
+
+    private void setAside(PrintJob job) {
+        job.mState = PrintJob.STATE_FAILED;
+        mJobs.remove(job);
+        mFailed.add(job);
+        File f = file(job.mId, SUFFIX);
+        if (!f.renameTo(file(job.mId, FAILED_SUFFIX))) {
+            f.delete();
+        }
+    }
+
+    private void changed(PrintJob job) {
+        Listener listener;
+        synchronized (this) {
+            listener = mListener;
+        }
+        if (listener != null) {
+            listener.onJobChanged(job);
+        }
+    }
+
+    private File file(long id, String suffix) {
+        return new File(mDir, PREFIX + id + suffix);
+    }
+
+    private void write(PrintJob job, File f) throws IOException {
+        File tmp = new File(mDir, PREFIX + job.mId + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+        try {
+            out.writeInt(MAGIC);
+            out.writeLong(job.mId);
+            out.writeLong(job.mCreatedAt);
+            out.writeInt(job.mPriority);
+            out.writeInt(job.mState);
+            out.writeInt(job.mAttempts);
+            out.writeInt(job.mLastError);
+            out.writeInt(job.mResumeAt);
+            out.writeUTF(job.mTemplate);
+            out.writeInt(job.mNames.size());
+            for (int i = 0; i < job.mNames.size(); i++) {
+                out.writeUTF(job.mNames.get(i));
+                String value = job.mValues.get(i);
+                out.writeBoolean(value != null);
+                if (value != null) {
+                    out.writeUTF(value);
+                }
+            }
+            out.writeInt(job.mHidden.size());
+            for (int i = 0; i < job.mHidden.size(); i++) {
+                out.writeUTF(job.mHidden.get(i));
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(f)) {
+            tmp.delete();
+            throw new IOException("cannot store job " + job.mId);
+        }
+    }
+
+    /** @return the job, or null when the file is not a complete job */
+    private static PrintJob read(File f) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(f));
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            long id = in.readLong();
+            long created = in.readLong();
+            int priority = in.readInt();
+            int state = in.readInt();
+            int attempts = in.readInt();
+            int lastError = in.readInt();
+            int resumeAt = in.readInt();
+            PrintJob job = new PrintJob(in.readUTF(), priority);
+            job.mId = id;
+            job.mCreatedAt = created;
+            job.mState = state;
+            job.mAttempts = attempts;
+            job.mLastError = lastError;
+            job.mResumeAt = resumeAt;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String name = in.readUTF();
+                job.set(name, in.readBoolean() ? in.readUTF() : null);
+            }
+            n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                job.hide(in.readUTF());
+            }
+            return in.read() < 0 ? job : null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
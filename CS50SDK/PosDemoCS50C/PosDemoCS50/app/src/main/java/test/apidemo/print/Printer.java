@@ -0,0 +1,42 @@
+package test.apidemo.print;
+
+/**
+ * Thermal printer operations used by the receipt code.
+ *
+ * Method names and arguments follow the Print calls of
+ * {@link com.ctk.sdk.PosApiHelper} so the production adapter is a straight
+ * delegation; return codes keep the SDK convention (0 success, !0 fail).
+ * Content is buffered by the printer until {@link #start()}.
+ */
+public interface Printer {
+
+    int ALIGN_LEFT = 0;
+    int ALIGN_CENTER = 1;
+    int ALIGN_RIGHT = 2;
+
+    /** Drop what is buffered and go back to the default style */
+    int init();
+
+    int setFont(int width, int height, int zoom);
+
+    int setBold(int on);
+
+    int setAlign(int align);
+
+    /** Print density, 1 light to 5 dark; darker heats the head more */
+    int setGray(int level);
+
+    /** Paper feed speed level, higher is faster */
+    int setSpeed(int speed);
+
+    int printStr(String text);
+
+    /** @param format zxing format name, "CODE_128" or "QR_CODE" */
+    int printBarcode(String content, int width, int height, String format);
+
+    /** Print a 1-bpp image, at most {@link Raster#PAPER_WIDTH} wide */
+    int printRaster(Raster raster);
+
+    /** Print what has been buffered */
+    int start();
+}
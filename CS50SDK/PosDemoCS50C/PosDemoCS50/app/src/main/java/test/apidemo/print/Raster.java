@@ -0,0 +1,64 @@
+package test.apidemo.print;
+
+import java.util.Arrays;
+
+/**
+ * A 1-bpp image, rows packed most significant bit first, a set bit is a
+ * black dot. This is the form the print head takes, so rendering code can
+ * work on it directly and only the printer adapter converts.
+ */
+public class Raster {
+
+    /** Dots across the 58 mm print head */
+    public static final int PAPER_WIDTH = 384;
+
+    /** Most rows PrintBmp takes in one call */
+    public static final int MAX_PRINT_HEIGHT = 500;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mStride;
+    private final byte[] mData;
+
+    public Raster(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mStride = (width + 7) >> 3;
+        mData = new byte[mStride * height];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Bytes per row */
+    public int getStride() {
+        return mStride;
+    }
+
+    /** Packed rows, {@link #getStride()} bytes each */
+    public byte[] getData() {
+        return mData;
+    }
+
+    public boolean get(int x, int y) {
+        return (mData[y * mStride + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+
+    public void set(int x, int y, boolean black) {
+        int i = y * mStride + (x >> 3);
+        if (black) {
+            mData[i] |= 0x80 >> (x & 7);
+        } else {
+            mData[i] &= ~(0x80 >> (x & 7));
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(mData, (byte) 0);
+    }
+}
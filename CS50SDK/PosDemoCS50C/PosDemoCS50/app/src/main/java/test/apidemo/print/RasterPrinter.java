@@ -0,0 +1,262 @@
+package test.apidemo.print;
+
+import java.util.Arrays;
+
+/**
+ * {@link Printer} that renders text on the terminal instead of in the
+ * printer firmware: every call draws into one 1-bpp page, and
+ * {@link #start()} sends the page to the target printer as a few
+ * {@link Printer#printRaster} strips before starting it.
+ *
+ * Any script the {@link GlyphSource} can draw prints the same way, without
+ * PrintSetFontTTF or firmware fonts. Glyphs come from a {@link GlyphCache},
+ * so a receipt printed again only copies bits. Font height sets the glyph
+ * size; the zoom byte of {@link #setFont} is not applied. Lines wrap at the
+ * paper width. Barcodes are drawn on the page from a {@link BarcodeCache};
+ * without one, or for content zxing cannot encode within the paper width,
+ * they go to the target printer and end a strip. Not thread safe; keep one per print thread.
+ */
+public class RasterPrinter implements Printer {
+
+    /** {@link #printRaster} of an image wider than the paper */
+    public static final int ERR_TOO_WIDE = -3901;
+
+    /** Rows per strip by default, the most PrintBmp takes */
+    public static final int DEFAULT_STRIP_ROWS = Raster.MAX_PRINT_HEIGHT;
+
+    /** Blank rows between text lines */
+    public static final int LINE_GAP = 4;
+
+    private static final int STRIDE = Raster.PAPER_WIDTH / 8;
+    private static final int DEFAULT_FONT_SIZE = 24;
+
+    private final Printer mTarget;
+    private final GlyphCache mGlyphs;
+    private final BarcodeCache mBarcodes;
+    private final int mStripRows;
+
+    private byte[] mPage = new byte[STRIDE * 1024];
+    private int mRows;
+    private int mSize = DEFAULT_FONT_SIZE;
+    private boolean mBold;
+    private int mAlign = ALIGN_LEFT;
+
+    /** Glyphs of the line being laid out */
+    private Raster[] mLine = new Raster[64];
+    private int mLineGlyphs;
+    private int mLineWidth;
+    private int mLineHeight;
+
+    private int mTransfers;
+
+    public RasterPrinter(Printer target, GlyphCache glyphs) {
+        this(target, glyphs, BarcodeCache.getInstance(), DEFAULT_STRIP_ROWS);
+    }
+
+    /** @param barcodes null to send barcodes to the target printer */
+    public RasterPrinter(Printer target, GlyphCache glyphs, BarcodeCache barcodes, int stripRows) {
+        mTarget = target;
+        mGlyphs = glyphs;
+        mBarcodes = barcodes;
+        mStripRows = stripRows;
+    }
+
+    /** Drop the page and reset the style, then init the target printer */
+    @Override
+    public int init() {
+        for (int i = 0; i < mLineGlyphs; i++) {
+            mLine[i] = null;
+        }
+        mLineGlyphs = 0;
+        mLineWidth = 0;
+        mLineHeight = 0;
+        Arrays.fill(mPage, 0, mRows * STRIDE, (byte) 0);
+        mRows = 0;
+        mSize = DEFAULT_FONT_SIZE;
+        mBold = false;
+        mAlign = ALIGN_LEFT;
+        mTransfers++;
+        return mTarget.init();
+    }
+
+    @Override
+    public int setFont(int width, int height, int zoom) {
+        mSize = height;
+        return 0;
+    }
+
+    @Override
+    public int setBold(int on) {
+        mBold = on != 0;
+        return 0;
+    }
+
+    /** Applies from the line being laid out on */
+    @Override
+    public int setAlign(int align) {
+        mAlign = align;
+        return 0;
+    }
+
+    @Override
+    public int setGray(int level) {
+        return mTarget.setGray(level);
+    }
+
+    @Override
+    public int setSpeed(int speed) {
+        return mTarget.setSpeed(speed);
+    }
+
+    @Override
+    public int printStr(String text) {
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                endLine();
+                i++;
+                continue;
+            }
+            if (c == '\r') {
+                i++;
+                continue;
+            }
+            int end = GlyphCache.clusterEnd(text, i);
+            Raster glyph = mGlyphs.get(text, i, end, mSize, mBold);
+            if (mLineWidth + glyph.getWidth() > Raster.PAPER_WIDTH && mLineGlyphs > 0) {
+                endLine();
+            }
+            if (mLineGlyphs == mLine.length) {
+                mLine = Arrays.copyOf(mLine, mLineGlyphs * 2);
+            }
+            mLine[mLineGlyphs++] = glyph;
+            mLineWidth += glyph.getWidth();
+            mLineHeight = Math.max(mLineHeight, glyph.getHeight());
+            i = end;
+        }
+        return 0;
+    }
+
+    @Override
+    public int printBarcode(String content, int width, int height, String format) {
+        Raster raster = mBarcodes == null ? null : mBarcodes.get(content, format, width, height);
+        if (raster != null) {
+            return printRaster(raster);
+        }
+        int ret = flush();
+        if (ret != 0) {
+            return ret;
+        }
+        mTransfers++;
+        return mTarget.printBarcode(content, width, height, format);
+    }
+
+    /** Draw {@code raster} on the page on a line of its own, aligned as text is */
+    @Override
+    public int printRaster(Raster raster) {
+        if (raster.getWidth() > Raster.PAPER_WIDTH) {
+            return ERR_TOO_WIDE;
+        }
+        if (mLineGlyphs > 0) {
+            endLine();
+        }
+        int y = grow(raster.getHeight());
+        blit(raster, offset(raster.getWidth()), y);
+        return 0;
+    }
+
+    /** Send the page, then start the target printer */
+    @Override
+    public int start() {
+        int ret = flush();
+        if (ret != 0) {
+            return ret;
+        }
+        mTransfers++;
+        return mTarget.start();
+    }
+
+    /** Calls made on the target printer since this printer was made */
+    public int getTransfers() {
+        return mTransfers;
+    }
+
+    /** Send what is on the page in strips of at most the strip height, and start a new page */
+    private int flush() {
+        if (mLineGlyphs > 0) {
+            endLine();
+        }
+        int ret = 0;
+        for (int y = 0; y < mRows && ret == 0; y += mStripRows) {
+            int rows = Math.min(mStripRows, mRows - y);
+            Raster strip = new Raster(Raster.PAPER_WIDTH, rows);
+            System.arraycopy(mPage, y * STRIDE, strip.getData(), 0, rows * STRIDE);
+            mTransfers++;
+            ret = mTarget.printRaster(strip);
+        }
+        Arrays.fill(mPage, 0, mRows * STRIDE, (byte) 0);
+        mRows = 0;
+        return ret;
+    }
+
+    /** Draw the glyphs of the current line, bottom aligned, and move to the next */
+    private void endLine() {
+        int height = mLineGlyphs == 0 ? mSize : mLineHeight;
+        int y = grow(height + LINE_GAP);
+        int x = offset(mLineWidth);
+        for (int i = 0; i < mLineGlyphs; i++) {
+            Raster glyph = mLine[i];
+            blit(glyph, x, y + height - glyph.getHeight());
+            x += glyph.getWidth();
+            mLine[i] = null;
+        }
+        mLineGlyphs = 0;
+        mLineWidth = 0;
+        mLineHeight = 0;
+    }
+
+    private int offset(int width) {
+        if (mAlign == ALIGN_RIGHT) {
+            return Math.max(0, Raster.PAPER_WIDTH - width);
+        } else if (mAlign == ALIGN_CENTER) {
+            return Math.max(0, (Raster.PAPER_WIDTH - width) / 2);
+        }
+        return 0;
+    }
+
+    /** Add {@code rows} blank rows to the page; @return the first of them */
+    private int grow(int rows) {
+        int y = mRows;
+        int need = (mRows + rows) * STRIDE;
+        if (need > mPage.length) {
+            mPage = Arrays.copyOf(mPage, Math.max(need, mPage.length * 2));
+        }
+        mRows += rows;
+        return y;
+    }
+
+    /** OR {@code src} into the page at ({@code x}, {@code y}), clipped at the paper edge */
+    private void blit(Raster src, int x, int y) {
+        byte[] data = src.getData();
+        int stride = src.getStride();
+        int shift = x & 7;
+        int first = x >> 3;
+        int bytes = Math.min(stride, STRIDE - first);
+        for (int r = 0; r < src.getHeight(); r++) {
+            int s = r * stride;
+            int d = (y + r) * STRIDE + first;
+            int rowEnd = (y + r + 1) * STRIDE;
+            for (int b = 0; b < bytes; b++) {
+                int v = data[s + b] & 0xFF;
+                if (v == 0) {
+                    continue;
+                }
+                mPage[d + b] |= (byte) (v >>> shift);
+                if (shift != 0 && d + b + 1 < rowEnd) {
+                    mPage[d + b + 1] |= (byte) (v << (8 - shift));
+                }
+            }
+        }
+    }
+}
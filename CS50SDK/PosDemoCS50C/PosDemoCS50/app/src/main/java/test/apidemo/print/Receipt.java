@@ -0,0 +1,162 @@
+package test.apidemo.print;
+
+import java.util.Arrays;
+
+/**
+ * The values of one sale for a {@link CompiledReceipt}, and the flush that
+ * prints it.
+ *
+ * {@link #print} walks the compiled calls once, fills the text runs into one
+ * reused builder and skips style calls the printer already has. Keep the
+ * receipt and {@link #clear()} it between sales. Not thread safe.
+ */
+public class Receipt {
+
+    private static final int UNKNOWN = -1;
+
+    private final CompiledReceipt mCompiled;
+    private final String[] mValues;
+    private final boolean[] mHidden;
+    private final Raster[] mImages;
+    private final StringBuilder mText = new StringBuilder(1024);
+    private final int[] mStyle = new int[3];
+    private int mCalls;
+
+    Receipt(CompiledReceipt compiled) {
+        mCompiled = compiled;
+        mValues = new String[compiled.mSlots.length];
+        mHidden = new boolean[compiled.mSections.length];
+        mImages = new Raster[compiled.mImages.length];
+    }
+
+    /**
+     * Fill field {@code name}; null prints nothing.
+     *
+     * @throws IllegalArgumentException when the template has no such field
+     */
+    public Receipt set(String name, String value) {
+        return set(slot(mCompiled.mSlots, name), value);
+    }
+
+    /** Fill the field at {@code slot}, from {@link CompiledReceipt#slotOf} */
+    public Receipt set(int slot, String value) {
+        mValues[slot] = value;
+        return this;
+    }
+
+    /** Print or leave out section {@code name}; sections print by default */
+    public Receipt show(String name, boolean shown) {
+        mHidden[slot(mCompiled.mSections, name)] = !shown;
+        return this;
+    }
+
+    public Receipt setImage(String name, Raster image) {
+        mImages[slot(mCompiled.mImages, name)] = image;
+        return this;
+    }
+
+    /** Forget the values of the last sale */
+    public void clear() {
+        Arrays.fill(mValues, null);
+        Arrays.fill(mHidden, false);
+        Arrays.fill(mImages, null);
+    }
+
+    /**
+     * Send the receipt and print it with one {@link Printer#start()}.
+     *
+     * @return 0, or the first non-zero printer return code
+     */
+    public int print(Printer printer) {
+        int ret = send(printer);
+        if (ret != 0) {
+            return ret;
+        }
+        mCalls++;
+        return printer.start();
+    }
+
+    /**
+     * Send the receipt without starting the print, e.g. to put several
+     * receipts in one print.
+     *
+     * @return 0, or the first non-zero printer return code
+     */
+    public int send(Printer printer) {
+        CompiledReceipt.Op[] ops = mCompiled.mOps;
+        Arrays.fill(mStyle, UNKNOWN);
+        mCalls = 0;
+        for (int i = 0; i < ops.length; i++) {
+            CompiledReceipt.Op op = ops[i];
+            int ret = 0;
+            switch (op.mCode) {
+                case CompiledReceipt.OP_FONT:
+                case CompiledReceipt.OP_BOLD:
+                case CompiledReceipt.OP_ALIGN:
+                    if (mStyle[op.mCode] == op.mArg) {
+                        continue;
+                    }
+                    mStyle[op.mCode] = op.mArg;
+                    ret = style(printer, op);
+                    break;
+                case CompiledReceipt.OP_TEXT:
+                    mText.setLength(0);
+                    for (int k = 0; k < op.mLines.length; k++) {
+                        op.mLines[k].append(mText, mValues);
+                    }
+                    ret = printer.printStr(mText.toString());
+                    break;
+                case CompiledReceipt.OP_BARCODE:
+                    mText.setLength(0);
+                    op.mContent.append(mText, mValues);
+                    if (mText.length() == 0) {
+                        continue;
+                    }
+                    ret = printer.printBarcode(mText.toString(), op.mWidth, op.mHeight, op.mFormat);
+                    break;
+                case CompiledReceipt.OP_IMAGE:
+                    if (mImages[op.mArg] == null) {
+                        continue;
+                    }
+                    ret = printer.printRaster(mImages[op.mArg]);
+                    break;
+                case CompiledReceipt.OP_SECTION:
+                    if (mHidden[op.mArg]) {
+                        i = op.mSkipTo - 1;
+                    }
+                    continue;
+                default:
+                    break;
+            }
+            mCalls++;
+            if (ret != 0) {
+                return ret;
+            }
+        }
+        return 0;
+    }
+
+    /** Printer calls made by the last {@link #print} or {@link #send} */
+    public int getCalls() {
+        return mCalls;
+    }
+
+    private static int style(Printer printer, CompiledReceipt.Op op) {
+        switch (op.mCode) {
+            case CompiledReceipt.OP_FONT:
+                return printer.setFont(op.mArg >> 16, (op.mArg >> 8) & 0xFF, op.mArg & 0xFF);
+            case CompiledReceipt.OP_BOLD:
+                return printer.setBold(op.mArg);
+            default:
+                return printer.setAlign(op.mArg);
+        }
+    }
+
+    private static int slot(String[] names, String name) {
+        int i = CompiledReceipt.indexOf(names, name);
+        if (i < 0) {
+            throw new IllegalArgumentException("no " + name + " in the template");
+        }
+        return i;
+    }
+}
@@ -0,0 +1,250 @@
+package test.apidemo.print;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the elements of a {@link ReceiptTemplate} into a {@link CompiledReceipt}.
+ *
+ * Style elements only record the wanted style; the calls that set it are
+ * issued in front of the next content, and only for what differs from the
+ * style the printer is known to have. Text lines between two style changes
+ * form one run (one PrintStr), and runs of literal lines are joined into one
+ * string here. Inside a section the printer's style after the section
+ * depends on whether it printed, so a style the section changed counts as
+ * unknown afterwards.
+ */
+final class ReceiptCompiler {
+
+    /** Style not set by the template: never issued */
+    private static final int UNSET = -1;
+    /** Style of the printer not known: issued before the next content */
+    private static final int UNKNOWN = -2;
+
+    /** Assumed font width for layout before the template sets one */
+    private static final int DEFAULT_FONT_WIDTH = 24;
+
+    private final String mName;
+    private final List<CompiledReceipt.Op> mOps = new ArrayList<CompiledReceipt.Op>();
+    private final List<String> mSlots = new ArrayList<String>();
+    private final List<String> mSections = new ArrayList<String>();
+    private final List<String> mImages = new ArrayList<String>();
+    private final List<CompiledReceipt.Line> mRun = new ArrayList<CompiledReceipt.Line>();
+    private final StringBuilder mLiteral = new StringBuilder();
+
+    private final int[] mWanted = {UNSET, UNSET, UNSET};
+    private final int[] mKnown = {UNKNOWN, UNKNOWN, UNKNOWN};
+    private int[] mSectionStart;
+    private CompiledReceipt.Op mSection;
+
+    ReceiptCompiler(String name) {
+        mName = name;
+    }
+
+    CompiledReceipt compile(List<ReceiptTemplate.Element> elements) {
+        for (int i = 0; i < elements.size(); i++) {
+            ReceiptTemplate.Element e = elements.get(i);
+            switch (e.mKind) {
+                case ReceiptTemplate.FONT:
+                    mWanted[CompiledReceipt.OP_FONT] = (e.mA << 16) | (e.mB << 8) | e.mC;
+                    break;
+                case ReceiptTemplate.BOLD:
+                    mWanted[CompiledReceipt.OP_BOLD] = e.mA;
+                    break;
+                case ReceiptTemplate.ALIGN:
+                    mWanted[CompiledReceipt.OP_ALIGN] = e.mA;
+                    break;
+                case ReceiptTemplate.TEXT:
+                    addLine(parts(e.mText[0]), null);
+                    break;
+                case ReceiptTemplate.ROW:
+                    addRow(parts(e.mText[0]), parts(e.mText[1]));
+                    break;
+                case ReceiptTemplate.COLUMNS:
+                    addColumns(e);
+                    break;
+                case ReceiptTemplate.SEPARATOR:
+                    addLine(null, separator(columns()));
+                    break;
+                case ReceiptTemplate.FEED:
+                    for (int n = 0; n < e.mA; n++) {
+                        addLine(null, "\n");
+                    }
+                    break;
+                case ReceiptTemplate.BARCODE:
+                    applyStyle();
+                    closeRun();
+                    mOps.add(new CompiledReceipt.Op(CompiledReceipt.OP_BARCODE, 0, null, parts(e.mText[0]),
+                            e.mText[1], e.mA, e.mB));
+                    break;
+                case ReceiptTemplate.IMAGE:
+                    applyStyle();
+                    closeRun();
+                    mOps.add(new CompiledReceipt.Op(CompiledReceipt.OP_IMAGE, index(mImages, e.mText[0])));
+                    break;
+                case ReceiptTemplate.SECTION:
+                    closeRun();
+                    mSection = new CompiledReceipt.Op(CompiledReceipt.OP_SECTION, index(mSections, e.mText[0]));
+                    mOps.add(mSection);
+                    mSectionStart = mKnown.clone();
+                    break;
+                case ReceiptTemplate.END_SECTION:
+                    closeRun();
+                    mSection.mSkipTo = mOps.size();
+                    for (int k = 0; k < mKnown.length; k++) {
+                        if (mKnown[k] != mSectionStart[k]) {
+                            mKnown[k] = UNKNOWN;
+                        }
+                    }
+                    mSection = null;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown element " + e.mKind);
+            }
+        }
+        closeRun();
+        return new CompiledReceipt(mName, mOps.toArray(new CompiledReceipt.Op[mOps.size()]),
+                mSlots.toArray(new String[mSlots.size()]), mSections.toArray(new String[mSections.size()]),
+                mImages.toArray(new String[mImages.size()]));
+    }
+
+    /** Add a line of fields, or of literal text when {@code parts} is null */
+    private void addLine(CompiledReceipt.Parts parts, String literal) {
+        applyStyle();
+        if (parts != null && parts.isLiteral()) {
+            literal = parts.mText[0] + "\n";
+            parts = null;
+        }
+        if (literal != null) {
+            mLiteral.append(literal);
+            return;
+        }
+        flushLiteral();
+        mRun.add(new CompiledReceipt.FieldLine(parts));
+    }
+
+    private void addRow(CompiledReceipt.Parts label, CompiledReceipt.Parts value) {
+        applyStyle();
+        int cols = columns();
+        if (label.isLiteral() && value.isLiteral()) {
+            StringBuilder sb = new StringBuilder();
+            new CompiledReceipt.RowLine(label, value, cols).append(sb, null);
+            mLiteral.append(sb);
+            return;
+        }
+        flushLiteral();
+        mRun.add(new CompiledReceipt.RowLine(label, value, cols));
+    }
+
+    private void addColumns(ReceiptTemplate.Element e) {
+        applyStyle();
+        int cols = columns();
+        int[] widths = e.mWidths.clone();
+        int used = 0;
+        for (int i = 0; i < widths.length; i++) {
+            used += widths[i];
+        }
+        for (int i = 0; i < widths.length; i++) {
+            if (widths[i] == 0) {
+                widths[i] = Math.max(0, cols - used);
+                used = cols;
+            }
+        }
+        CompiledReceipt.Parts[] cells = new CompiledReceipt.Parts[e.mText.length];
+        boolean literal = true;
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = parts(e.mText[i]);
+            literal &= cells[i].isLiteral();
+        }
+        CompiledReceipt.ColumnsLine line = new CompiledReceipt.ColumnsLine(cells, widths, e.mAligns);
+        if (literal) {
+            StringBuilder sb = new StringBuilder();
+            line.append(sb, null);
+            mLiteral.append(sb);
+            return;
+        }
+        flushLiteral();
+        mRun.add(line);
+    }
+
+    /** Issue the style calls the next content needs; a change ends the current text run */
+    private void applyStyle() {
+        for (int k = 0; k < mWanted.length; k++) {
+            if (mWanted[k] != UNSET && mWanted[k] != mKnown[k]) {
+                closeRun();
+                mOps.add(new CompiledReceipt.Op(k, mWanted[k]));
+                mKnown[k] = mWanted[k];
+            }
+        }
+    }
+
+    private void flushLiteral() {
+        if (mLiteral.length() > 0) {
+            mRun.add(new CompiledReceipt.LiteralLine(mLiteral.toString()));
+            mLiteral.setLength(0);
+        }
+    }
+
+    private void closeRun() {
+        flushLiteral();
+        if (!mRun.isEmpty()) {
+            mOps.add(new CompiledReceipt.Op(CompiledReceipt.OP_TEXT, 0,
+                    mRun.toArray(new CompiledReceipt.Line[mRun.size()]), null, null, 0, 0));
+            mRun.clear();
+        }
+    }
+
+    /** Character cells across the paper in the wanted font */
+    private int columns() {
+        int font = mWanted[CompiledReceipt.OP_FONT];
+        int width = font == UNSET ? DEFAULT_FONT_WIDTH : font >> 16;
+        return Raster.PAPER_WIDTH / Math.max(1, width / 2);
+    }
+
+    private static String separator(int cols) {
+        StringBuilder sb = new StringBuilder(cols + 1);
+        for (int i = 0; i < cols - 1; i++) {
+            sb.append((i & 1) == 0 ? '-' : ' ');
+        }
+        return sb.append('\n').toString();
+    }
+
+    /** Split {@code text} at its {@code {name}} fields */
+    private CompiledReceipt.Parts parts(String text) {
+        List<String> pieces = new ArrayList<String>();
+        List<Integer> slots = new ArrayList<Integer>();
+        int pos = 0;
+        while (pos < text.length()) {
+            int open = text.indexOf('{', pos);
+            int close = open < 0 ? -1 : text.indexOf('}', open + 1);
+            if (close < 0) {
+                break;
+            }
+            if (open > pos) {
+                pieces.add(text.substring(pos, open));
+                slots.add(-1);
+            }
+            pieces.add(null);
+            slots.add(index(mSlots, text.substring(open + 1, close)));
+            pos = close + 1;
+        }
+        if (pos < text.length() || pieces.isEmpty()) {
+            pieces.add(text.substring(pos));
+            slots.add(-1);
+        }
+        int[] s = new int[slots.size()];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = slots.get(i);
+        }
+        return new CompiledReceipt.Parts(pieces.toArray(new String[pieces.size()]), s);
+    }
+
+    private static int index(List<String> names, String name) {
+        int i = names.indexOf(name);
+        if (i < 0) {
+            names.add(name);
+            i = names.size() - 1;
+        }
+        return i;
+    }
+}
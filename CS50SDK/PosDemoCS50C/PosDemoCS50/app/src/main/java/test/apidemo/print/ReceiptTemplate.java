@@ -0,0 +1,168 @@
+package test.apidemo.print;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Declarative receipt layout: text lines, key/value rows, columns,
+ * separators, barcodes and images, with font, bold and alignment set where
+ * they change.
+ *
+ * Text may contain {@code {name}} fields, filled per sale through a
+ * {@link Receipt}. A template is built once, {@link #compile()}d once into
+ * the printer calls it needs, and the compiled form is kept with the
+ * template until the template is changed again. Widths are counted in
+ * character cells of the current font, half the font width each.
+ *
+ * <pre>
+ * new ReceiptTemplate("sale")
+ *         .font(24, 24, 0).align(Printer.ALIGN_CENTER).text("{merchant}")
+ *         .align(Printer.ALIGN_LEFT).separator()
+ *         .row("AMOUNT:", "{amount}")
+ *         .section("signature").feed(2).text("SIGNATURE").endSection();
+ * </pre>
+ */
+public class ReceiptTemplate {
+
+    static final int FONT = 0;
+    static final int BOLD = 1;
+    static final int ALIGN = 2;
+    static final int TEXT = 3;
+    static final int ROW = 4;
+    static final int COLUMNS = 5;
+    static final int SEPARATOR = 6;
+    static final int FEED = 7;
+    static final int BARCODE = 8;
+    static final int IMAGE = 9;
+    static final int SECTION = 10;
+    static final int END_SECTION = 11;
+
+    /** One template call, kept as given until compiled */
+    static final class Element {
+        final int mKind;
+        final int mA;
+        final int mB;
+        final int mC;
+        final String[] mText;
+        final int[] mWidths;
+        final int[] mAligns;
+
+        Element(int kind, int a, int b, int c, String[] text, int[] widths, int[] aligns) {
+            mKind = kind;
+            mA = a;
+            mB = b;
+            mC = c;
+            mText = text;
+            mWidths = widths;
+            mAligns = aligns;
+        }
+    }
+
+    private final String mName;
+    private final List<Element> mElements = new ArrayList<Element>();
+    private boolean mInSection;
+    private CompiledReceipt mCompiled;
+
+    public ReceiptTemplate(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /** Font for the following content, as PrintSetFont takes it */
+    public ReceiptTemplate font(int width, int height, int zoom) {
+        if (width <= 0 || width > 255 || height <= 0 || height > 255) {
+            throw new IllegalArgumentException("bad font size " + width + "x" + height);
+        }
+        return add(FONT, width, height, zoom & 0xFF, null);
+    }
+
+    public ReceiptTemplate bold(boolean on) {
+        return add(BOLD, on ? 1 : 0, 0, 0, null);
+    }
+
+    /** {@link Printer#ALIGN_LEFT}, {@link Printer#ALIGN_CENTER} or {@link Printer#ALIGN_RIGHT} */
+    public ReceiptTemplate align(int align) {
+        return add(ALIGN, align, 0, 0, null);
+    }
+
+    /** One line of text */
+    public ReceiptTemplate text(String line) {
+        return add(TEXT, 0, 0, 0, new String[]{line});
+    }
+
+    /** Label on the left, value on the right of the same line, or of the next when both do not fit */
+    public ReceiptTemplate row(String label, String value) {
+        return add(ROW, 0, 0, 0, new String[]{label, value});
+    }
+
+    /**
+     * A line of cells.
+     *
+     * @param widths cell widths in character cells, 0 for the rest of the line
+     * @param aligns per cell {@link Printer#ALIGN_LEFT}, CENTER or RIGHT
+     */
+    public synchronized ReceiptTemplate columns(int[] widths, int[] aligns, String... cells) {
+        if (widths.length != cells.length || aligns.length != cells.length) {
+            throw new IllegalArgumentException("one width and alignment per cell");
+        }
+        mCompiled = null;
+        mElements.add(new Element(COLUMNS, 0, 0, 0, cells.clone(), widths.clone(), aligns.clone()));
+        return this;
+    }
+
+    /** Dashed line across the paper */
+    public ReceiptTemplate separator() {
+        return add(SEPARATOR, 0, 0, 0, null);
+    }
+
+    public ReceiptTemplate feed(int lines) {
+        return add(FEED, lines, 0, 0, null);
+    }
+
+    /** @param format "CODE_128" or "QR_CODE"; {@code content} may hold fields */
+    public ReceiptTemplate barcode(String content, int width, int height, String format) {
+        return add(BARCODE, width, height, 0, new String[]{content, format});
+    }
+
+    /** Image given per sale with {@link Receipt#setImage} */
+    public ReceiptTemplate image(String name) {
+        return add(IMAGE, 0, 0, 0, new String[]{name});
+    }
+
+    /** Start content that each sale can leave out with {@link Receipt#show}; sections do not nest */
+    public ReceiptTemplate section(String name) {
+        if (mInSection) {
+            throw new IllegalStateException("section " + name + " inside another section");
+        }
+        mInSection = true;
+        return add(SECTION, 0, 0, 0, new String[]{name});
+    }
+
+    public ReceiptTemplate endSection() {
+        if (!mInSection) {
+            throw new IllegalStateException("no section to end");
+        }
+        mInSection = false;
+        return add(END_SECTION, 0, 0, 0, null);
+    }
+
+    /** @return the compiled form, compiled on first use after a change */
+    public synchronized CompiledReceipt compile() {
+        if (mInSection) {
+            throw new IllegalStateException("section not ended");
+        }
+        if (mCompiled == null) {
+            mCompiled = new ReceiptCompiler(mName).compile(mElements);
+        }
+        return mCompiled;
+    }
+
+    private synchronized ReceiptTemplate add(int kind, int a, int b, int c, String[] text) {
+        mCompiled = null;
+        mElements.add(new Element(kind, a, b, c, text, null, null));
+        return this;
+    }
+}
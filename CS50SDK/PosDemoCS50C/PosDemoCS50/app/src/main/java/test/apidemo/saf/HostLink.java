@@ -0,0 +1,24 @@
+package test.apidemo.saf;
+
+/**
+ * Connection to the acquirer used by {@link SafQueue} to upload stored
+ * transactions.
+ */
+public interface HostLink {
+
+    /** Host took the item (or already had it) */
+    int RESULT_OK = 0;
+    /** Host could not process the item now; it is retried later */
+    int RESULT_RETRY = 1;
+    /** Host refused the item for good; it is set aside, not retried */
+    int RESULT_REJECTED = 2;
+
+    /**
+     * Upload a batch.
+     *
+     * @param results receives one {@code RESULT_*} per item
+     * @return 0 when the batch was exchanged, negative when the link is down
+     * (no item is considered delivered)
+     */
+    int upload(SafItem[] items, int count, int[] results);
+}
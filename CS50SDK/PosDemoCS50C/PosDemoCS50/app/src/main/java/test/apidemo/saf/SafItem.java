@@ -0,0 +1,45 @@
+package test.apidemo.saf;
+
+/**
+ * One stored transaction: its STAN, the TLV data captured from the kernel
+ * and the retry bookkeeping.
+ */
+public class SafItem {
+
+    final int mStan;
+    final long mCreatedAt;
+    final byte[] mData;
+    int mAttempts;
+    long mNextAttemptAt;
+
+    SafItem(int stan, long createdAt, byte[] data, int attempts, long nextAttemptAt) {
+        mStan = stan;
+        mCreatedAt = createdAt;
+        mData = data;
+        mAttempts = attempts;
+        mNextAttemptAt = nextAttemptAt;
+    }
+
+    /** System trace audit number, the de-duplication key */
+    public int getStan() {
+        return mStan;
+    }
+
+    public long getCreatedAt() {
+        return mCreatedAt;
+    }
+
+    /** TLV list as the caller stored it, without clear card data */
+    public byte[] getData() {
+        return mData;
+    }
+
+    /** Failed uploads so far */
+    public int getAttempts() {
+        return mAttempts;
+    }
+
+    public long getNextAttemptAt() {
+        return mNextAttemptAt;
+    }
+}
@@ -0,0 +1,358 @@
+package test.apidemo.saf;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent store-and-forward queue for transactions the host has not
+ * seen yet: offline approvals waiting for clearing and online-required
+ * transactions deferred while the link was down.
+ *
+ * Every item is its own small file, named by STAN and written via a temp
+ * file and rename, so a crash leaves either the old or the new version.
+ * The STAN is the de-duplication key, both here (a second enqueue is
+ * refused) and at the host (an item uploaded again after a crash must be
+ * acknowledged, not booked twice). Disk use is capped, and when full the
+ * queue refuses new items rather than dropping stored ones.
+ *
+ * Items are written as given, so they must not hold cardholder data in
+ * clear: callers store the DE55 data and the message fields, and PAN,
+ * track 2 equivalent data and expiry only encrypted (under a DUKPT data
+ * key, with the KSN the host needs).
+ *
+ * {@link #drain()} uploads due items oldest first in batches. An item the
+ * host asks to retry backs off exponentially on its own. A link failure
+ * backs off the whole queue. Once the link works again, batches follow each
+ * other without delay until nothing is due.
+ */
+public class SafQueue {
+
+    public static final int ERR_DUPLICATE = -3501;
+    public static final int ERR_FULL = -3502;
+    public static final int ERR_IO = -3503;
+    public static final int ERR_NO_LINK = -3504;
+    public static final int ERR_BACKOFF = -3505;
+
+    private static final int MAGIC = 0x53414631; // "SAF1"
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 8 + 4;
+    private static final String PREFIX = "saf-";
+    private static final String SUFFIX = ".item";
+    private static final String REJECTED_SUFFIX = ".rejected";
+    private static final String BAD_SUFFIX = ".bad";
+
+    private final File mDir;
+    private final long mMaxBytes;
+    private final Map<Integer, SafItem> mItems = new HashMap<Integer, SafItem>();
+    private HostLink mLink;
+    private int mBatchSize = 20;
+    private long mBackoffBaseMillis = 5 * 1000;
+    private long mBackoffMaxMillis = 10 * 60 * 1000;
+    private long mBytes;
+    private int mLinkFailures;
+    private long mLinkRetryAt;
+    private int mRejected;
+
+    private SafItem[] mBatch = new SafItem[mBatchSize];
+    private int[] mResults = new int[mBatchSize];
+
+    /** @param maxBytes disk space the stored items may take */
+    public SafQueue(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+    }
+
+    public synchronized void setHostLink(HostLink link) {
+        mLink = link;
+        mLinkFailures = 0;
+        mLinkRetryAt = 0;
+    }
+
+    public synchronized void setBatchSize(int size) {
+        mBatchSize = size;
+        mBatch = new SafItem[size];
+        mResults = new int[size];
+    }
+
+    /** Retry delay after the first failure, doubled per further failure up to {@code maxMillis} */
+    public synchronized void setBackoff(long baseMillis, long maxMillis) {
+        mBackoffBaseMillis = baseMillis;
+        mBackoffMaxMillis = maxMillis;
+    }
+
+    /**
+     * Load the stored items.
+     *
+     * @return number of items waiting
+     */
+    public synchronized int open() throws IOException {
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            throw new IOException("cannot create " + mDir);
+        }
+        mItems.clear();
+        mBytes = 0;
+        File[] files = mDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX);
+            }
+        });
+        if (files == null) {
+            return 0;
+        }
+        for (File f : files) {
+            if (f.getName().endsWith(SUFFIX)) {
+                SafItem item = read(f);
+                if (item != null) {
+                    mItems.put(item.mStan, item);
+                } else {
+                    // items are only replaced by rename, so this is storage damage;
+                    // keep it for review instead of uploading garbage
+                    File bad = new File(mDir, f.getName() + BAD_SUFFIX);
+                    if (f.renameTo(bad)) {
+                        f = bad;
+                    }
+                }
+            } else if (f.getName().endsWith(".tmp")) {
+                f.delete();
+                continue;
+            }
+            mBytes += f.length();
+        }
+        return mItems.size();
+    }
+
+    /**
+     * Store a transaction for upload.
+     *
+     * @return 0, {@link #ERR_DUPLICATE} when the STAN is already queued,
+     * {@link #ERR_FULL} or {@link #ERR_IO}
+     */
+    public synchronized int enqueue(int stan, byte[] data, int off, int len) {
+        if (mItems.containsKey(stan)) {
+            return ERR_DUPLICATE;
+        }
+        if (mBytes + HEADER_SIZE + len > mMaxBytes) {
+            return ERR_FULL;
+        }
+        byte[] copy = new byte[len];
+        System.arraycopy(data, off, copy, 0, len);
+        long now = now();
+        SafItem item = new SafItem(stan, now, copy, 0, now);
+        try {
+            write(item);
+        } catch (IOException e) {
+            return ERR_IO;
+        }
+        mItems.put(stan, item);
+        mBytes += HEADER_SIZE + len;
+        return 0;
+    }
+
+    public synchronized boolean contains(int stan) {
+        return mItems.containsKey(stan);
+    }
+
+    /** The item waiting under {@code stan}, or null */
+    public synchronized SafItem get(int stan) {
+        return mItems.get(stan);
+    }
+
+    /**
+     * Withdraw a waiting item the host must not see, such as a deferred
+     * authorisation of a transaction that never completed.
+     *
+     * @return false when nothing was waiting under {@code stan}
+     */
+    public synchronized boolean cancel(int stan) {
+        SafItem item = mItems.get(stan);
+        if (item == null) {
+            return false;
+        }
+        remove(item);
+        return true;
+    }
+
+    public synchronized int size() {
+        return mItems.size();
+    }
+
+    /** Disk space taken by stored and rejected items */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /** Items refused by the host since {@link #open()}; kept on disk for review */
+    public synchronized int getRejected() {
+        return mRejected;
+    }
+
+    /**
+     * Upload every item that is due, batch after batch.
+     *
+     * @return number of items the host took, or {@link #ERR_NO_LINK},
+     * {@link #ERR_BACKOFF} while the link is backing off, or the link error
+     * when nothing could be delivered
+     */
+    public synchronized int drain() {
+        if (mLink == null) {
+            return ERR_NO_LINK;
+        }
+        long now = now();
+        if (now < mLinkRetryAt) {
+            return ERR_BACKOFF;
+        }
+        List<SafItem> due = new ArrayList<SafItem>();
+        for (SafItem item : mItems.values()) {
+            if (item.mNextAttemptAt <= now) {
+                due.add(item);
+            }
+        }
+        Collections.sort(due, new Comparator<SafItem>() {
+            @Override
+            public int compare(SafItem a, SafItem b) {
+                return a.mCreatedAt != b.mCreatedAt ? (a.mCreatedAt < b.mCreatedAt ? -1 : 1)
+                        : (a.mStan < b.mStan ? -1 : (a.mStan == b.mStan ? 0 : 1));
+            }
+        });
+
+        int delivered = 0;
+        for (int start = 0; start < due.size(); start += mBatchSize) {
+            int count = Math.min(mBatchSize, due.size() - start);
+            for (int i = 0; i < count; i++) {
+                mBatch[i] = due.get(start + i);
+                mResults[i] = HostLink.RESULT_RETRY;
+            }
+            int ret = mLink.upload(mBatch, count, mResults);
+            if (ret < 0) {
+                mLinkFailures++;
+                mLinkRetryAt = now() + backoff(mLinkFailures);
+                return delivered > 0 ? delivered : ret;
+            }
+            mLinkFailures = 0;
+            for (int i = 0; i < count; i++) {
+                SafItem item = mBatch[i];
+                mBatch[i] = null;
+                if (mResults[i] == HostLink.RESULT_OK) {
+                    remove(item);
+                    delivered++;
+                } else if (mResults[i] == HostLink.RESULT_REJECTED) {
+                    setAside(item);
+                } else {
+                    retryLater(item);
+                }
+            }
+        }
+        return delivered;
+    }
+
+    /** Clock for attempt times, in wall-clock milliseconds since they are persisted */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private long backoff(int failures) {
+        long delay = mBackoffBaseMillis;
+        for (int i = 1; i < failures && delay < mBackoffMaxMillis; i++) {
+            delay <<= 1;
+        }
+        return Math.min(delay, mBackoffMaxMillis);
+    }
+
+    private void remove(SafItem item) {
+        mItems.remove(item.mStan);
+        if (file(item.mStan).delete()) {
+            mBytes -= HEADER_SIZE + item.mData.length;
+        }
+    }
+
+    private void setAside(SafItem item) {
+        mItems.remove(item.mStan);
+        File f = file(item.mStan);
+        File rejected = new File(mDir, PREFIX + item.mStan + "-" + item.mCreatedAt + REJECTED_SUFFIX);
+        if (!f.renameTo(rejected)) {
+            f.delete();
+            mBytes -= HEADER_SIZE + item.mData.length;
+        }
+        mRejected++;
+    }
+
+    private void retryLater(SafItem item) {
+        item.mAttempts++;
+        item.mNextAttemptAt = now() + backoff(item.mAttempts);
+        try {
+            write(item);
+        } catch (IOException ignored) {
+            // the old file stays; the item is retried earlier after a restart
+        }
+    }
+
+    private File file(int stan) {
+        return new File(mDir, PREFIX + stan + SUFFIX);
+    }
+
+    private void write(SafItem item) throws IOException {
+        File tmp = new File(mDir, PREFIX + item.mStan + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(item.mStan);
+            out.writeLong(item.mCreatedAt);
+            out.writeInt(item.mAttempts);
+            out.writeLong(item.mNextAttemptAt);
+            out.writeInt(item.mData.length);
+            out.write(item.mData);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file(item.mStan))) {
+            tmp.delete();
+            throw new IOException("cannot store STAN " + item.mStan);
+        }
+    }
+
+    /** @return the item, or null when the file is not a complete item */
+    private static SafItem read(File f) {
+        long size = f.length();
+        if (size < HEADER_SIZE) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(f));
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int stan = in.readInt();
+            long created = in.readLong();
+            int attempts = in.readInt();
+            long next = in.readLong();
+            int len = in.readInt();
+            if (len < 0 || HEADER_SIZE + len != size) {
+                return null;
+            }
+            byte[] data = new byte[len];
+            in.readFully(data);
+            return new SafItem(stan, created, data, attempts, next);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
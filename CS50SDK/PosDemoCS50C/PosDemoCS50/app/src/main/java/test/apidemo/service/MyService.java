@@ -11,6 +11,16 @@ import androidx.annotation.Nullable;
 import com.ctk.sdk.PosApiHelper;
 import com.google.zxing.BarcodeFormat;
 
+import java.io.File;
+import java.io.IOException;
+
+import test.apidemo.print.DemoReceipts;
+import test.apidemo.print.PosPrinter;
+import test.apidemo.print.PrintJob;
+import test.apidemo.print.PrintPacer;
+import test.apidemo.print.PrintSpooler;
+import test.apidemo.print.Printer;
+
 
 /**
  * Created by Administrator on 2018/1/17.
@@ -20,137 +30,182 @@ public class MyService extends Service {
 
     public static final String tag = MyService.class.getSimpleName();
 
+    /** Template to print, one of {@link DemoReceipts}; the test page when absent */
+    public static final String EXTRA_TEMPLATE = "template";
+    /** {@link PrintJob} priority; {@link PrintJob#PRIORITY_NORMAL} when absent */
+    public static final String EXTRA_PRIORITY = "priority";
+    /** Field values of the template as "name=value" strings */
+    public static final String EXTRA_FIELDS = "fields";
+    /** Sent once paper was loaded after a print stopped for lack of it */
+    public static final String ACTION_PAPER_LOADED = "test.apidemo.action.PAPER_LOADED";
+
+    private static final int MAX_JOBS = 200;
+    /** How often the printer is asked for paper while the queue waits */
+    private static final long PAPER_POLL_MS = 2000;
+    /** Pause after a failed print before the job is tried again */
+    private static final long RETRY_DELAY_MS = 3000;
+
     PosApiHelper posApiHelper = PosApiHelper.getInstance();
 
+    //paced so a long queue slows down instead of failing with the head too hot
+    private final Printer mPrinter = new PrintPacer(new PosPrinter(posApiHelper));
+
+    private PrintSpooler mSpooler;
+    private Thread mWorker;
+    //set once the spool is open; no job is taken before
+    private volatile boolean mSpoolOpen;
+
     //服务创建
     @Override
     public void onCreate() {
         super.onCreate();
+        mSpooler = new PrintSpooler(new File(getFilesDir(), "print_spool"), mPrinter, MAX_JOBS);
+        mSpooler.register(DemoReceipts.TEST_PAGE);
+        mSpooler.register(DemoReceipts.SALES_SLIP);
+        mSpooler.setListener(new PrintSpooler.Listener() {
+            @Override
+            public void onJobChanged(PrintJob job) {
+                reportJob(job);
+            }
+        });
+        openSpooler();
     }
 
-    // 服务启动
-    @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
-
-        new Thread(new Runnable() {
+    //jobs left by an earlier process print first; tried again with the next job when it fails
+    private synchronized boolean openSpooler() {
+        if (mSpoolOpen) {
+            return true;
+        }
+        try {
+            mSpooler.open();
+        } catch (IOException e) {
+            Log.e(tag, "print spool unusable", e);
+            reportStatus("Print spool unusable");
+            return false;
+        }
+        mSpoolOpen = true;
+        mWorker = new Thread(new Runnable() {
             @Override
             public void run() {
+                runSpooler();
+            }
+        }, "print-spooler");
+        mWorker.start();
+        return true;
+    }
 
-//                Message msg = Message.obtain();
-//                Message msg1 = Message.obtain();
-//
-//                msg.what = DISABLE_RG;
-//                handler.sendMessage(msg);
-
-                int ret = posApiHelper.PrintInit(2, 24, 24, 0x33);
-                /*
-                *  or
-                *  No parameter defaults Api
-                 */
-
-                /*
-                try {
-                    ret= posApiHelper.PrintInit();
-                } catch (PrintInitException e) {
-                    e.printStackTrace();
-                    int initRet = e.getExceptionCode();
-                    Log.e(TAG,"initRer : "+initRet);
-                }
-                */
-
-                if (ret != 0) {
-                    return;
-                }
-                posApiHelper.PrintStr("Print Tile\n");
-                posApiHelper.PrintStr("\n");
-//                ret = posApiHelper.PrintSetFont((byte)24, (byte)24, (byte)0);
-                ret = posApiHelper.PrintSetFont((byte) 16, (byte) 16, (byte) 0x33);
+    // 服务启动
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_PAPER_LOADED.equals(intent.getAction())) {
+            mSpooler.onPaperLoaded();
+        } else {
+            submit(newJob(intent));
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
 
-                Log.e(tag, "initRer PrintSetFont: " + ret);
+    /**
+     * Queue {@code job}; it is on disk once this returns 0 and prints even
+     * if the process dies first.
+     *
+     * @return 0, or an {@link PrintSpooler} error code;
+     * {@link PrintSpooler#ERR_IO} while the spool cannot be opened
+     */
+    public int submit(PrintJob job) {
+        if (!openSpooler()) {
+            return PrintSpooler.ERR_IO;
+        }
+        int ret = mSpooler.submit(job);
+        if (ret != 0) {
+            Log.e(tag, "submit " + job.getTemplate() + " fail, ret = " + ret);
+        }
+        return ret;
+    }
 
-                if (ret != 0) {
-                    return;
+    private static PrintJob newJob(Intent intent) {
+        if (intent == null || intent.getStringExtra(EXTRA_TEMPLATE) == null) {
+            return new PrintJob(DemoReceipts.TEST_PAGE.getName(), PrintJob.PRIORITY_NORMAL)
+                    .set("code", "123456789");
+        }
+        PrintJob job = new PrintJob(intent.getStringExtra(EXTRA_TEMPLATE),
+                intent.getIntExtra(EXTRA_PRIORITY, PrintJob.PRIORITY_NORMAL));
+        String[] fields = intent.getStringArrayExtra(EXTRA_FIELDS);
+        if (fields != null) {
+            for (String field : fields) {
+                int eq = field.indexOf('=');
+                if (eq > 0) {
+                    job.set(field.substring(0, eq), field.substring(eq + 1));
                 }
-                posApiHelper.PrintStr("- - - - - - - - - - - - - - - - - - - - - - - -\n");
-                //	posApiHelper.PrintStr("\n");
-                posApiHelper.PrintStr("  Print Str1 \n");
-                posApiHelper.PrintStr("  Print Str2 \n");
-               posApiHelper.PrintBarcode("123456789", 360, 120, "CODE_128");
-                posApiHelper.PrintBarcode("123456789", 240, 240, "QR_CODE");
-                posApiHelper.PrintStr("CODE_128 : " + "123456789" + "\n\n");
-                posApiHelper.PrintStr("QR_CODE : " + "123456789" + "\n\n");
-                posApiHelper.PrintStr("asdadasdasdasdasd\n\n");
-                posApiHelper.PrintStr("1234567890\n\n");
-                posApiHelper.PrintStr("                                        \n");
-                posApiHelper.PrintStr("\n");
-                posApiHelper.PrintStr("\n");
-
-
-//                SendMsg("Printing... ");
-//                callBackPrintStatus.printStatusChange("Printing... ");
-
-                Log.e(tag, "Printing... ");
-
-//                ret = posApiHelper.PrintCheckStatus();
-//
-//                Log.e(tag, "PrintCheckStatus 1 ret = " + ret);
-
-                ret = posApiHelper.PrintStart();
-
-//                ret = posApiHelper.PrintCheckStatus();
-//
-//
-//                Log.e(tag, "PrintCheckStatus 2 ret = " + ret);
-
-
-                Log.e(tag, "Lib_PrnStart ret = " + ret);
-
-//                msg1.what = ENABLE_RG;
-//                handler.sendMessage(msg1);
-
-                if (ret != 0) {
-
-//                    RESULT_CODE = -1;
-                    Log.e(tag, "Lib_PrnStart fail, ret = " + ret);
-
-                    if (ret == -1) {
-//                        SendMsg("No Print Paper ");
-                        Log.e(tag, "No Print Paper ");
-//                        callBackPrintStatus.printStatusChange("No Print Paper ");
+            }
+        }
+        return job;
+    }
 
+    //the only thread that prints, so jobs never interleave on the printer
+    private void runSpooler() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                mSpooler.awaitWork(PAPER_POLL_MS);
+                if (mSpooler.isWaitingForPaper()) {
+                    if (posApiHelper.PrintCheckStatus() != -1) {
+                        mSpooler.onPaperLoaded();
                     } else {
-                        Log.e(tag, "Print fail");
-//                        callBackPrintStatus.printStatusChange("Print fail");
-
-//                        SendMsg("Print fail ");
+                        Thread.sleep(PAPER_POLL_MS);
                     }
-//                    if(ret==-2)
-//                    {
-//                        SendMsg("The temperature is too high ");
-//                    }
-//                    if(ret==-3)
-//                    {
-//                        SendMsg("The voltage is too low");
-//                    }
-//
-//                    SendMsg("Print Fail ");
-                } else {
-//                    RESULT_CODE = 0;
-//                    SendMsg("Print Finish ");
-                    Log.e(tag, "Print Finish ");
-//                    callBackPrintStatus.printStatusChange("Print Finish ");
-
-
+                    continue;
+                }
+                if (mSpooler.size() == 0) {
+                    continue;
+                }
+                int ret = mSpooler.drain();
+                if (ret < 0 && ret != PrintSpooler.ERR_NO_PAPER) {
+                    Thread.sleep(RETRY_DELAY_MS);
                 }
             }
-        }).start();
+        } catch (InterruptedException e) {
+            Log.e(tag, "print spooler stopped");
+        }
+    }
 
-        return super.onStartCommand(intent, flags, startId);
+    private void reportJob(PrintJob job) {
+        String status;
+        switch (job.getState()) {
+            case PrintJob.STATE_WAITING_PAPER:
+                status = "No Print Paper ";
+                break;
+            case PrintJob.STATE_FAILED:
+                status = "Print fail";
+                break;
+            case PrintJob.STATE_DONE:
+                status = "Print Finish ";
+                break;
+            case PrintJob.STATE_QUEUED:
+                if (job.getLastError() == 0) {
+                    return;
+                }
+                status = "Print fail, retrying";
+                break;
+            default:
+                return;
+        }
+        Log.e(tag, "job " + job.getId() + ": " + status + " ret = " + job.getLastError());
+        reportStatus(status);
+    }
+
+    private void reportStatus(String status) {
+        CallBackPrintStatus callback = callBackPrintStatus;
+        if (callback != null) {
+            callback.printStatusChange(status);
+        }
     }
 
     //服务销毁
     @Override
-    public void onDestroy() {
+    public synchronized void onDestroy() {
+        if (mWorker != null) {
+            mWorker.interrupt();
+        }
         stopSelf(); //自杀服务
         super.onDestroy();
     }
@@ -181,7 +236,7 @@ public class MyService extends Service {
         }
     }
 
-    CallBackPrintStatus callBackPrintStatus;
+    volatile CallBackPrintStatus callBackPrintStatus;
 
     public interface CallBackPrintStatus {
         void printStatusChange(String strStatus);
@@ -189,6 +244,10 @@ public class MyService extends Service {
 
     public void setCallback(CallBackPrintStatus callback) {
         this.callBackPrintStatus = callback;
+        //the spool may have failed before anyone was listening
+        if (!mSpoolOpen) {
+            openSpooler();
+        }
     }
 
 }
@@ -0,0 +1,89 @@
+package test.apidemo.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size latency sample buffer with percentile reporting.
+ *
+ * Recording never allocates: once the buffer is full the oldest samples are
+ * overwritten, so percentiles describe the most recent {@code capacity}
+ * samples. Sorting only happens when a report is asked for.
+ */
+public class LatencyRecorder {
+
+    private final long[] mSamples;
+    private long[] mSorted;
+    private int mCount;
+    private int mNext;
+    private long mTotal;
+    private long mRecorded;
+    private boolean mDirty;
+
+    public LatencyRecorder(int capacity) {
+        mSamples = new long[capacity];
+    }
+
+    public void record(long nanos) {
+        mSamples[mNext] = nanos;
+        mNext = mNext + 1 == mSamples.length ? 0 : mNext + 1;
+        if (mCount < mSamples.length) {
+            mCount++;
+        }
+        mTotal += nanos;
+        mRecorded++;
+        mDirty = true;
+    }
+
+    /** Number of samples currently held */
+    public int count() {
+        return mCount;
+    }
+
+    public void reset() {
+        mCount = 0;
+        mNext = 0;
+        mTotal = 0;
+        mRecorded = 0;
+        mDirty = true;
+    }
+
+    /**
+     * @param p percentile in [0, 100]
+     * @return sample value in nanoseconds, 0 when empty
+     */
+    public long percentile(double p) {
+        if (mCount == 0) {
+            return 0;
+        }
+        sort();
+        int idx = (int) Math.ceil(p / 100.0 * mCount) - 1;
+        return mSorted[Math.max(0, Math.min(idx, mCount - 1))];
+    }
+
+    public long max() {
+        return percentile(100);
+    }
+
+    /** Mean of every sample recorded since the last reset, in nanoseconds */
+    public double mean() {
+        return mRecorded == 0 ? 0 : (double) mTotal / mRecorded;
+    }
+
+    /** One line summary in milliseconds, e.g. "p50=1.20 p90=1.80 p99=3.10 max=4.00" */
+    public String summary() {
+        return String.format("n=%d p50=%.2f p90=%.2f p99=%.2f max=%.2f ms", mCount,
+                percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6, max() / 1e6);
+    }
+
+    private void sort() {
+        if (!mDirty) {
+            return;
+        }
+        if (mSorted == null || mSorted.length < mSamples.length) {
+            mSorted = new long[mSamples.length];
+        }
+        System.arraycopy(mSamples, 0, mSorted, 0, mCount);
+        Arrays.sort(mSorted, 0, mCount);
+        mDirty = false;
+    }
+}
@@ -0,0 +1,156 @@
+package test.apidemo.emv;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checksum and expiry checks, lookup and diffs of {@link CapkStore}, and
+ * the CAPK calls {@link EmvConfigLoader} makes with it.
+ */
+public class CapkStoreTest {
+
+    /** Mastercard test key 05, checksum valid, expires 2021-12-31 */
+    private static final String MC05 = "9F2201059F0605A000000004DF05083230323131323331DF060101DF070101"
+            + "DF040103DF0314EBFA0D5D06D8CE702DA3EAE890701D45E274C845DF0281B0B8048ABC30C90D976336543E3FD709"
+            + "1C8FE4800DF820ED55E7E94813ED00555B573FECA3D84AF6131A651D66CFF4284FB13B635EDD0EE40176D8BF04B7FD"
+            + "1C7BACF9AC7327DFAA8AA72D10DB3B8E70B2DDD811CB4196525EA386ACC33C0D9D4575916469C4E4F53E8E1C912CC6"
+            + "18CB22DDE7C3568E90022E6BBA770202E4522A2DD623D180E215BD1D1507FE3DC90CA310D27B3EFCCD8F83DE3052CA"
+            + "D1E48938C68D095AAC91B5F37E28BB49EC7ED597";
+
+    private static final int BEFORE_EXPIRY = 20210601;
+    private static final int AFTER_EXPIRY = 20220101;
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    @Test
+    public void verifiesChecksumAndExpiry() {
+        CapkStore store = new CapkStore();
+        assertEquals(0, store.add(EmvConfig.fromHex(MC05), BEFORE_EXPIRY));
+        assertEquals(CapkStore.ERR_EXPIRED, store.add(EmvConfig.fromHex(MC05), AFTER_EXPIRY));
+
+        byte[] tampered = EmvConfig.fromHex(MC05);
+        tampered[tampered.length - 1] ^= 1;
+        assertEquals(CapkStore.ERR_CHECKSUM, store.add(tampered, BEFORE_EXPIRY));
+        assertEquals(CapkStore.ERR_FORMAT, store.add(EmvConfig.fromHex("9F220105"), 0));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void findsByRidAndIndex() {
+        CapkStore store = new CapkStore();
+        for (int index = 40; index > 0; index--) {
+            store.addHeld(String.format("A000000003%02X", index), "h" + index);
+        }
+        store.add(EmvConfig.fromHex(MC05), 0);
+        byte[] rid = {(byte) 0xA0, 0, 0, 0, 3};
+        assertEquals("h17", store.find(rid, 0, 17).getHash());
+        assertNull(store.find(rid, 0, 41));
+        CapkStore.Capk mc = store.find(new byte[]{(byte) 0xA0, 0, 0, 0, 4}, 0, 5);
+        assertNotNull(mc);
+        assertEquals(20211231, mc.getExpiry());
+        assertArrayEquals(new byte[]{(byte) 0xA0, 0, 0, 0, 4, 5}, mc.getRidIndex());
+        for (int i = 1; i < store.size(); i++) {
+            assertTrue(store.get(i - 1).getKey() < store.get(i).getKey());
+        }
+    }
+
+    @Test
+    public void diffClearsGoneAndChangedKeys() {
+        CapkStore wanted = new CapkStore();
+        wanted.add(EmvConfig.fromHex(MC05), 0);
+        CapkStore held = new CapkStore();
+        held.addHeld("A00000000405", "old");
+        held.addHeld("A00000000301", "gone");
+
+        List<CapkStore.Capk> clear = new ArrayList<CapkStore.Capk>();
+        List<CapkStore.Capk> add = new ArrayList<CapkStore.Capk>();
+        assertEquals(3, wanted.diff(held, clear, add));
+        assertEquals(2, clear.size());
+        assertEquals(1, add.size());
+        assertEquals("A00000000405", add.get(0).getKeyHex());
+
+        clear.clear();
+        add.clear();
+        CapkStore same = new CapkStore();
+        same.addHeld("A00000000405", wanted.get(0).getHash());
+        assertEquals(0, wanted.diff(same, clear, add));
+    }
+
+    @Test
+    public void loaderClearsKeyThatExpiredSinceLastRun() throws IOException {
+        EmvConfig config = EmvConfig.parse(new ByteArrayInputStream(
+                ("TERM 9F350122\nCAPK " + MC05 + "\n").getBytes("US-ASCII")));
+        RecordingKernel kernel = new RecordingKernel();
+        File state = new File(mTmp.getRoot(), "emv.state");
+
+        EmvConfigLoader loader = new EmvConfigLoader(kernel, state);
+        loader.setToday(BEFORE_EXPIRY);
+        assertEquals(4, loader.apply(config));
+        assertEquals(1, kernel.added);
+        assertEquals(0, loader.apply(config));
+
+        loader.setToday(AFTER_EXPIRY);
+        assertEquals(1, loader.apply(config));
+        assertEquals(1, loader.getExpiredCapks());
+        assertArrayEquals(new byte[]{(byte) 0xA0, 0, 0, 0, 4, 5}, kernel.lastCleared);
+        assertEquals(0, loader.apply(config));
+    }
+
+    private static class RecordingKernel implements EmvKernel {
+        int added;
+        byte[] lastCleared;
+
+        public int envParaInit() {
+            return 0;
+        }
+
+        public int clearAllAids() {
+            return 0;
+        }
+
+        public int clearOneAid(byte[] aid, int len) {
+            return 0;
+        }
+
+        public int addOneAid(byte[] buf, int len) {
+            return 0;
+        }
+
+        public int clearAllCapks() {
+            return 0;
+        }
+
+        public int clearOneCapk(byte[] key, int len) {
+            lastCleared = new byte[len];
+            System.arraycopy(key, 0, lastCleared, 0, len);
+            return 0;
+        }
+
+        public int addOneCapk(byte[] buf, int len) {
+            added++;
+            return 0;
+        }
+
+        public int saveTermParas(byte[] buf, int len, int flag) {
+            return 0;
+        }
+
+        public int setOnlineResult(byte[] responseCode, byte[] issuerData, int len) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package test.apidemo.emv;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link ClessConfigLoader} against a {@link RecordingClessKernel}: the
+ * shipped configuration pushes exactly what the original activity set, and
+ * later starts push only the kernels whose configuration changed.
+ */
+public class ClessConfigLoaderTest {
+
+    /** Relative to the module, where the unit tests run */
+    private static final String ASSET = "src/main/assets/cless_config.txt";
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private final RecordingClessKernel mKernel = new RecordingClessKernel();
+    private File mState;
+
+    @Before
+    public void setUp() throws IOException {
+        mState = new File(mTmp.getRoot(), "cless_config.state");
+    }
+
+    @Test
+    public void shippedConfigurationMatchesTheBaselineSetup() throws IOException {
+        ClessConfig config = asset();
+        assertTrue(config.getExpress().isEmpty());
+
+        ClessConfigLoader loader = new ClessConfigLoader(mKernel, mState);
+        assertEquals(2, loader.apply(config));
+        assertEquals(baseline(), mKernel.mCalls);
+        assertEquals(8 + 19, loader.getCalls());
+        assertEquals(0, mKernel.mExpressInits);
+    }
+
+    @Test
+    public void onlyChangedKernelsArePushedAgain() throws IOException {
+        assertEquals(2, new ClessConfigLoader(mKernel, mState).apply(asset()));
+
+        // next start, nothing changed
+        mKernel.mCalls.clear();
+        ClessConfigLoader loader = new ClessConfigLoader(mKernel, mState);
+        assertEquals(0, loader.apply(asset()));
+        assertEquals(0, loader.getCalls());
+        assertTrue(mKernel.mCalls.isEmpty());
+
+        // one PayWave line changed: PayWave alone, in full
+        ClessConfig changed = asset();
+        changed.getPayWave().add(PayWaveConfig.CALL_TERM, "9F1A020056");
+        assertEquals(1, loader.apply(changed));
+        assertEquals(1, mKernel.mPaypassInits);
+        assertEquals(2, mKernel.mPayWaveInits);
+        assertEquals(19, loader.getCalls());
+        assertEquals("PayWaveTermSet 9F1A020056", mKernel.mCalls.get(mKernel.mCalls.size() - 1));
+
+        mKernel.mCalls.clear();
+        assertEquals(0, new ClessConfigLoader(mKernel, mState).apply(changed));
+        assertTrue(mKernel.mCalls.isEmpty());
+        // back to the shipped file is a change as well
+        assertEquals(1, new ClessConfigLoader(mKernel, mState).apply(asset()));
+        assertEquals(3, mKernel.mPayWaveInits);
+        assertEquals(1, mKernel.mPaypassInits);
+
+        // an ExpressPay line makes that kernel configured
+        ClessConfig express = asset();
+        express.getExpress().add(ExpressConfig.CALL_AID, "9F0606A00000002501DF010101");
+        assertEquals(1, loader.apply(express));
+        assertEquals(1, mKernel.mExpressInits);
+        assertEquals(1, mKernel.mPaypassInits);
+    }
+
+    @Test
+    public void reinitialisedKernelGetsEverythingAgain() throws IOException {
+        ClessConfigLoader loader = new ClessConfigLoader(mKernel, mState);
+        assertEquals(2, loader.apply(asset()));
+
+        // UninitPaySysKernel / InitPaySysKernel: same asset, empty kernels
+        mKernel.mCalls.clear();
+        loader.invalidate();
+        loader = new ClessConfigLoader(mKernel, mState);
+        assertEquals(2, loader.apply(asset()));
+        assertEquals(baseline(), mKernel.mCalls);
+        assertTrue(mKernel.mCalls.toString().contains("PaypassTransSet"));
+        assertEquals(2, mKernel.mPaypassInits);
+        assertEquals(2, mKernel.mPayWaveInits);
+    }
+
+    @Test
+    public void failedKernelIsRetriedNextStart() throws IOException {
+        mKernel.fail("PayWaveCapkSet");
+        ClessConfigLoader loader = new ClessConfigLoader(mKernel, mState);
+        assertEquals(-1, loader.apply(asset()));
+        assertTrue(mState.exists());
+
+        mKernel.fail(null);
+        assertEquals(1, loader.apply(asset()));
+        assertEquals(1, mKernel.mPaypassInits);
+        assertEquals(2, mKernel.mPayWaveInits);
+        assertEquals(0, loader.apply(asset()));
+    }
+
+    @Test
+    public void lostOrDamagedStatePushesEverything() throws IOException {
+        ClessConfigLoader loader = new ClessConfigLoader(mKernel, mState);
+        assertEquals(2, loader.apply(asset()));
+        loader.invalidate();
+        assertFalse(mState.exists());
+        assertEquals(2, loader.apply(asset()));
+
+        FileOutputStream out = new FileOutputStream(mState);
+        out.write("PAYPASS\n".getBytes());
+        out.close();
+        assertEquals(2, loader.apply(asset()));
+        assertEquals(3, mKernel.mPaypassInits);
+        assertEquals(3, mKernel.mPayWaveInits);
+        assertEquals(0, loader.apply(asset()));
+    }
+
+    @Test
+    public void emptyConfigurationLeavesTheKernelsAlone() throws IOException {
+        ClessConfig config = ClessConfig.parse(new ByteArrayInputStream("# nothing\n".getBytes()));
+        ClessConfigLoader loader = new ClessConfigLoader(mKernel, mState);
+        assertEquals(0, loader.apply(config));
+        assertTrue(mKernel.mCalls.isEmpty());
+        assertFalse(mState.exists());
+    }
+
+    private static ClessConfig asset() throws IOException {
+        InputStream in = new FileInputStream(ASSET);
+        try {
+            return ClessConfig.parse(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** The calls of the original EmvTestActivity, comments left out */
+    private static List<String> baseline() throws IOException {
+        InputStream in = ClessConfigLoaderTest.class.getResourceAsStream("cless_baseline.txt");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+        List<String> calls = new ArrayList<String>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("#")) {
+                    calls.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,220 @@
+package test.apidemo.emv;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The state file and diff of {@link EmvConfigLoader}: a first load sends
+ * everything, an unchanged one nothing, a changed AID only itself, and
+ * changed terminal parameters everything again.
+ */
+public class EmvConfigLoaderTest {
+
+    private static final String TERM = "TERM 9F3501229F3303E0D0C8\n";
+    private static final String VISA = "AID 9F0607A0000000031010DF010101\n";
+    private static final String MASTERCARD = "AID 9F0607A0000000041010DF010101\n";
+    private static final String MASTERCARD_2 = "AID 9F0607A0000000041010DF010100\n";
+    private static final String UNIONPAY = "AID 9F0608A000000333010101DF010101\n";
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private final RecordingKernel mKernel = new RecordingKernel();
+    private File mState;
+
+    @Before
+    public void setUp() {
+        mState = new File(mTmp.getRoot(), "emv_config.state");
+    }
+
+    @Test
+    public void firstLoadSendsEverything() throws IOException {
+        assertEquals(7, loader().apply(config(TERM + VISA + MASTERCARD)));
+        assertEquals("[EnvParaInit, ClearAllCapks, ClearAllAids, "
+                + "AddOneAid A0000000031010, SaveTermParas, "
+                + "AddOneAid A0000000041010, SaveTermParas]", mKernel.mCalls.toString());
+        assertTrue(mState.exists());
+    }
+
+    @Test
+    public void unchangedReloadSendsNothing() throws IOException {
+        loader().apply(config(TERM + VISA + MASTERCARD));
+        mKernel.mCalls.clear();
+
+        // comments and blank lines are no change
+        EmvConfigLoader loader = loader();
+        assertEquals(0, loader.apply(config("# reloaded\n" + TERM + "\n" + VISA + "# mc\n" + MASTERCARD)));
+        assertTrue(mKernel.mCalls.isEmpty());
+        assertEquals(0, loader.apply(config(TERM + VISA + MASTERCARD)));
+        assertTrue(mKernel.mCalls.isEmpty());
+    }
+
+    @Test
+    public void changedAidIsTheOnlyOneSent() throws IOException {
+        loader().apply(config(TERM + VISA + MASTERCARD));
+        mKernel.mCalls.clear();
+
+        assertEquals(3, loader().apply(config(TERM + VISA + MASTERCARD_2)));
+        assertEquals("[ClearOneAid A0000000041010, AddOneAid A0000000041010, SaveTermParas]",
+                mKernel.mCalls.toString());
+
+        // one added and one gone
+        mKernel.mCalls.clear();
+        assertEquals(3, loader().apply(config(TERM + MASTERCARD_2 + UNIONPAY)));
+        assertEquals("[ClearOneAid A0000000031010, AddOneAid A000000333010101, SaveTermParas]",
+                mKernel.mCalls.toString());
+
+        mKernel.mCalls.clear();
+        assertEquals(0, loader().apply(config(TERM + MASTERCARD_2 + UNIONPAY)));
+    }
+
+    @Test
+    public void changedTerminalParametersReloadEverything() throws IOException {
+        loader().apply(config(TERM + VISA + MASTERCARD));
+        mKernel.mCalls.clear();
+
+        // every AID is saved with the terminal parameters, so all go again
+        assertEquals(7, loader().apply(config("TERM 9F3501229F3303E0F8C8\n" + VISA + MASTERCARD)));
+        assertEquals("EnvParaInit", mKernel.mCalls.get(0));
+        assertEquals(2, count("SaveTermParas"));
+    }
+
+    @Test
+    public void failureOrLostStateReloadsEverything() throws IOException {
+        loader().apply(config(TERM + VISA));
+        mKernel.mCalls.clear();
+
+        mKernel.mFailing = "AddOneAid";
+        EmvConfigLoader loader = loader();
+        assertEquals(-1, loader.apply(config(TERM + VISA + MASTERCARD)));
+        assertFalse(mState.exists());
+        mKernel.mFailing = null;
+        mKernel.mCalls.clear();
+        assertEquals(7, loader.apply(config(TERM + VISA + MASTERCARD)));
+        assertEquals("EnvParaInit", mKernel.mCalls.get(0));
+
+        // a state file that does not parse is as good as none
+        FileOutputStream out = new FileOutputStream(mState);
+        out.write("hash 00\nterm\n".getBytes());
+        out.close();
+        mKernel.mCalls.clear();
+        assertEquals(7, loader.apply(config(TERM + VISA + MASTERCARD)));
+        assertEquals("EnvParaInit", mKernel.mCalls.get(0));
+    }
+
+    @Test
+    public void reinitialisedKernelGetsEverythingAgain() throws IOException {
+        EmvConfigLoader loader = loader();
+        loader.apply(config(TERM + VISA + MASTERCARD));
+        mKernel.mCalls.clear();
+
+        // InitPaySysKernel: same file, empty kernel
+        loader.invalidate();
+        assertEquals(7, loader().apply(config(TERM + VISA + MASTERCARD)));
+        assertEquals("EnvParaInit", mKernel.mCalls.get(0));
+        assertEquals(2, count("SaveTermParas"));
+    }
+
+    @Test
+    public void duplicateAidKeepsItsFirstPlaceAndLastData() throws IOException {
+        // the original setup sent Visa, Mastercard and then Visa again; now
+        // the second Visa line replaces the first where it stood
+        EmvConfig config = config(TERM + VISA + MASTERCARD + "AID 9F0607A0000000031010DF010102\n");
+        List<EmvConfig.Entry> aids = new ArrayList<EmvConfig.Entry>(config.getAids());
+        assertEquals(2, aids.size());
+        assertEquals("A0000000031010", aids.get(0).getKey());
+        assertEquals(0x02, aids.get(0).getData()[aids.get(0).getData().length - 1]);
+        assertEquals("A0000000041010", aids.get(1).getKey());
+
+        assertEquals(7, loader().apply(config));
+        assertEquals("[EnvParaInit, ClearAllCapks, ClearAllAids, "
+                + "AddOneAid A0000000031010, SaveTermParas, "
+                + "AddOneAid A0000000041010, SaveTermParas]", mKernel.mCalls.toString());
+        assertEquals("DF010102", mKernel.mFirstAid.substring(mKernel.mFirstAid.length() - 8));
+    }
+
+    private EmvConfigLoader loader() {
+        return new EmvConfigLoader(mKernel, mState);
+    }
+
+    private int count(String call) {
+        int n = 0;
+        for (String c : mKernel.mCalls) {
+            if (c.equals(call)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static EmvConfig config(String text) throws IOException {
+        return EmvConfig.parse(new ByteArrayInputStream(text.getBytes("US-ASCII")));
+    }
+
+    /** Keeps every call, AIDs by their 9F06; one call name can be made to fail */
+    private static class RecordingKernel implements EmvKernel {
+        final List<String> mCalls = new ArrayList<String>();
+        String mFailing;
+        /** Whole TLV list of the first AID added */
+        String mFirstAid;
+
+        private int call(String name) {
+            mCalls.add(name);
+            return name.equals(mFailing) ? -1 : 0;
+        }
+
+        public int envParaInit() {
+            return call("EnvParaInit");
+        }
+
+        public int clearAllAids() {
+            return call("ClearAllAids");
+        }
+
+        public int clearOneAid(byte[] aid, int len) {
+            mCalls.add("ClearOneAid " + EmvConfig.toHex(aid, 0, len));
+            return 0;
+        }
+
+        public int addOneAid(byte[] buf, int len) {
+            if (mFirstAid == null) {
+                mFirstAid = EmvConfig.toHex(buf, 0, len);
+            }
+            mCalls.add("AddOneAid " + EmvConfig.toHex(buf, 3, buf[2]));
+            return "AddOneAid".equals(mFailing) ? -1 : 0;
+        }
+
+        public int clearAllCapks() {
+            return call("ClearAllCapks");
+        }
+
+        public int clearOneCapk(byte[] key, int len) {
+            return call("ClearOneCapk");
+        }
+
+        public int addOneCapk(byte[] buf, int len) {
+            return call("AddOneCapk");
+        }
+
+        public int saveTermParas(byte[] buf, int len, int flag) {
+            return call("SaveTermParas");
+        }
+
+        public int setOnlineResult(byte[] responseCode, byte[] issuerData, int len) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package test.apidemo.emv;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Kernel calls {@link EmvTagSnapshot} makes against a counting
+ * {@link TagSource}, and its index once the buffer has grown.
+ */
+public class EmvTagSnapshotTest {
+
+    @Test
+    public void oneKernelCallPerDistinctTag() {
+        CountingSource source = new CountingSource()
+                .with(0x9F26, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, 0x88)
+                .with(0x95, 0x00, 0x00, 0x00, 0x80, 0x00)
+                .with(0x9F02, 0x00, 0x00, 0x00, 0x00, 0x12, 0x00);
+        EmvTagSnapshot snapshot = new EmvTagSnapshot();
+        snapshot.reset(source);
+
+        assertEquals(2, snapshot.fetch(new int[]{0x9F26, 0x95, 0x9F26}));
+        assertEquals(1, snapshot.fetch(new int[]{0x95, 0x9F02, 0x9F26}));
+        assertEquals(0, snapshot.fetch(new int[]{0x9F02, 0x9F26, 0x95}));
+        assertEquals(0, snapshot.fetch(new int[0]));
+        assertEquals(3, snapshot.getKernelCalls());
+        for (int calls : source.mCalls.values()) {
+            assertEquals(1, calls);
+        }
+        assertEquals("1122334455667788", snapshot.getHex(0x9F26));
+        assertEquals(6, snapshot.length(0x9F02));
+    }
+
+    @Test
+    public void absentTagsAreNotAskedForAgain() {
+        CountingSource source = new CountingSource().with(0x9F36, 0x00, 0x2A);
+        source.mMissing = -1;
+        EmvTagSnapshot snapshot = new EmvTagSnapshot();
+        snapshot.reset(source);
+
+        assertEquals(3, snapshot.fetch(new int[]{0x9F36, 0x9F6E, 0x9F1E}));
+        assertEquals(0, snapshot.fetch(new int[]{0x9F6E, 0x9F1E, 0x9F36}));
+        assertEquals(1, (int) source.mCalls.get(0x9F6E));
+        assertFalse(snapshot.contains(0x9F6E));
+        assertEquals(-1, snapshot.length(0x9F6E));
+        assertEquals(-1, snapshot.copy(0x9F6E, new byte[8], 0));
+        assertNull(snapshot.getHex(0x9F6E));
+
+        // zero length counts as absent too, and so does a value too long to read
+        source.mMissing = 0;
+        source.with(0x9F10, new byte[2000]);
+        assertEquals(2, snapshot.fetch(new int[]{0x5F34, 0x9F10}));
+        assertEquals(0, snapshot.fetch(new int[]{0x5F34, 0x9F10}));
+        assertFalse(snapshot.contains(0x9F10));
+
+        // a new transaction asks again
+        snapshot.reset(source);
+        assertEquals(0, snapshot.getKernelCalls());
+        assertFalse(snapshot.contains(0x9F36));
+        assertEquals(1, snapshot.fetch(new int[]{0x9F6E}));
+        assertEquals(2, (int) source.mCalls.get(0x9F6E));
+    }
+
+    @Test
+    public void seededValuesAreNeverFetched() {
+        CountingSource source = new CountingSource().with(0x9F02, 0x00, 0x00, 0x00, 0x00, 0x99, 0x99);
+        EmvTagSnapshot snapshot = new EmvTagSnapshot();
+        snapshot.reset(source);
+        byte[] amount = {0x00, 0x00, 0x00, 0x00, 0x12, 0x00};
+        snapshot.put(0x9F02, amount, 0, amount.length);
+
+        assertEquals(0, snapshot.fetch(new int[]{0x9F02}));
+        assertFalse(source.mCalls.containsKey(0x9F02));
+        // the first value stays
+        snapshot.put(0x9F02, new byte[]{1}, 0, 1);
+        assertEquals("000000001200", snapshot.getHex(0x9F02));
+    }
+
+    @Test
+    public void refreshReadsOnlyTheGivenTagsAgain() {
+        CountingSource source = new CountingSource()
+                .with(0x9F34, 0x1F, 0x03, 0x02)
+                .with(0x95, 0x00, 0x00, 0x00, 0x00, 0x00)
+                .with(0x9F10, 0x06, 0x01, 0x0A)
+                .with(0x9F02, 0x00, 0x00, 0x00, 0x00, 0x12, 0x00)
+                .with(0x5A, 0x47, 0x61, 0x73, 0x90);
+        EmvTagSnapshot snapshot = new EmvTagSnapshot();
+        snapshot.reset(source);
+        assertEquals(6, snapshot.fetch(new int[]{0x9F34, 0x95, 0x9F10, 0x9F02, 0x5A, 0x9B}));
+
+        // after the PIN: CVM results and TVR change in place, the IAD grows,
+        // TSI appears
+        source.with(0x9F34, 0x01, 0x00, 0x02)
+                .with(0x95, 0x00, 0x00, 0x00, 0x80, 0x00)
+                .with(0x9F10, 0x06, 0x01, 0x0A, 0x03, 0xA0)
+                .with(0x9B, 0xE8, 0x00);
+        assertEquals(4, snapshot.refresh(new int[]{0x9F34, 0x95, 0x9F10, 0x9B}));
+        assertEquals("010002", snapshot.getHex(0x9F34));
+        assertEquals("0000008000", snapshot.getHex(0x95));
+        assertEquals("06010A03A0", snapshot.getHex(0x9F10));
+        assertEquals("E800", snapshot.getHex(0x9B));
+        assertEquals(10, snapshot.getKernelCalls());
+        // the rest was not asked for again and is still there
+        assertEquals(1, (int) source.mCalls.get(0x9F02));
+        assertEquals(1, (int) source.mCalls.get(0x5A));
+        assertEquals("47617390", snapshot.getHex(0x5A));
+        assertEquals(0, snapshot.fetch(new int[]{0x9F34, 0x9B}));
+
+        // one value each, so the buffer reads back the same
+        TlvIndex index = new TlvIndex();
+        assertEquals(6, index.build(snapshot.getBuffer(), 0, snapshot.getLength()));
+        assertEquals(2, index.valueLength(index.find(0x9B)));
+
+        // a value the kernel no longer has is gone
+        source.mValues.remove(0x9F10);
+        assertEquals(1, snapshot.refresh(new int[]{0x9F10}));
+        assertFalse(snapshot.contains(0x9F10));
+        assertEquals(0, snapshot.fetch(new int[]{0x9F10}));
+        assertEquals("0000008000", snapshot.getHex(0x95));
+    }
+
+    @Test
+    public void indexFollowsTheBufferWhenItGrows() {
+        CountingSource source = new CountingSource();
+        int[] tags = new int[12];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = 0xDF8100 + i;
+            byte[] value = new byte[100 + i];
+            Arrays.fill(value, (byte) i);
+            source.with(tags[i], value);
+        }
+        source.with(0x70, 0x5A, 0x02, 0x12, 0x34);
+        EmvTagSnapshot snapshot = new EmvTagSnapshot();
+        snapshot.reset(source);
+
+        byte[] before = snapshot.getBuffer();
+        assertEquals(tags.length, snapshot.fetch(tags));
+        assertTrue(snapshot.getLength() > before.length);
+        assertSame(snapshot.getBuffer(), snapshot.getIndex().buffer());
+        assertEquals(1, snapshot.fetch(new int[]{0x70}));
+        for (int i = 0; i < tags.length; i++) {
+            byte[] out = new byte[100 + i];
+            assertEquals(out.length, snapshot.copy(tags[i], out, 0));
+            byte[] expected = new byte[100 + i];
+            Arrays.fill(expected, (byte) i);
+            assertArrayEquals(expected, out);
+        }
+        assertEquals("5A021234", snapshot.getHex(0x70));
+
+        TlvWriter out = new TlvWriter();
+        assertEquals(2, snapshot.writeTo(out, new int[]{0xDF810B, 0x9F26, 0xDF8100}));
+        TlvReader r = new TlvReader(out.buffer(), 0, out.length());
+        assertEquals(1, r.next());
+        assertEquals(0xDF810B, r.tag());
+        assertEquals(111, r.valueLength());
+        assertEquals(1, r.next());
+        assertEquals(0xDF8100, r.tag());
+        assertEquals(0, r.next());
+
+        // the same arrays serve the next transaction
+        snapshot.reset(source);
+        assertEquals(0, snapshot.getLength());
+        assertFalse(snapshot.contains(tags[0]));
+        assertEquals(1, snapshot.fetch(new int[]{tags[3]}));
+        assertEquals(103, snapshot.length(tags[3]));
+    }
+
+    /** Kernel with a fixed set of tags that counts how often each is asked for */
+    private static class CountingSource implements TagSource {
+        final Map<Integer, Integer> mCalls = new HashMap<Integer, Integer>();
+        final Map<Integer, byte[]> mValues = new HashMap<Integer, byte[]>();
+        /** Returned for tags it does not have */
+        int mMissing;
+
+        CountingSource with(int tag, int... value) {
+            byte[] b = new byte[value.length];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = (byte) value[i];
+            }
+            return with(tag, b);
+        }
+
+        CountingSource with(int tag, byte[] value) {
+            mValues.put(tag, value);
+            return this;
+        }
+
+        @Override
+        public int getTagData(byte[] buf, int max, int tag) {
+            Integer n = mCalls.get(tag);
+            mCalls.put(tag, n == null ? 1 : n + 1);
+            byte[] value = mValues.get(tag);
+            if (value == null) {
+                return mMissing;
+            }
+            // the whole length is reported even when only max bytes fit
+            System.arraycopy(value, 0, buf, 0, Math.min(value.length, max));
+            return value.length;
+        }
+    }
+}
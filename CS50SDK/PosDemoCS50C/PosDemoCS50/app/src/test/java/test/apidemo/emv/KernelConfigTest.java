@@ -0,0 +1,146 @@
+package test.apidemo.emv;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link KernelConfig} makes on every list, how repeated calls are
+ * keyed and replaced, push order, and the hash the loader compares.
+ */
+public class KernelConfigTest {
+
+    private static final String VISA_AID = "9F0607A0000000031010DF010101";
+    private static final String VISA_AID_2 = "9F0607A0000000031010DF010100";
+    private static final String UNIONPAY_AID = "9F0608A000000333010102DF010101";
+
+    @Test
+    public void listsThatDoNotValidateAreRefused() {
+        PayWaveConfig config = new PayWaveConfig();
+        refuse(config, 9, "9C0100", "unknown call 9");
+        refuse(config, PayWaveConfig.CALL_TERM, "9C01", "bad TLV data");
+        refuse(config, PayWaveConfig.CALL_TERM, "", "bad TLV data");
+        refuse(config, PayWaveConfig.CALL_TERM, "9C01009C0101", "tag 9C twice");
+        refuse(config, PayWaveConfig.CALL_TERM, "9F02050000000001", "tag 9F02 length 5");
+        refuse(config, PayWaveConfig.CALL_TERM, "9F1A03000840", "tag 9F1A length 3");
+        refuse(config, PayWaveConfig.CALL_AID, "DF010101", "tag 9F06 missing");
+        refuse(config, PayWaveConfig.CALL_CAPK, "9F0605A000000003DF070101", "tag 9F22 missing");
+        try {
+            config.add(PayWaveConfig.CALL_TERM, "9C0");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("PAYWAVE: bad hex", e.getMessage());
+        }
+        assertTrue(config.isEmpty());
+
+        try {
+            ClessConfig.parse(stream("PAYWAVE TERM 9C0100\n\nPAYWAVE AID DF010101\n"));
+            fail();
+        } catch (IOException e) {
+            assertEquals("line 3: PAYWAVE AID: tag 9F06 missing", e.getMessage());
+        }
+        try {
+            ClessConfig.parse(stream("PAYWAVE DRL 9C0100\n"));
+            fail();
+        } catch (IOException e) {
+            assertEquals("line 1: unknown entry PAYWAVE DRL", e.getMessage());
+        }
+    }
+
+    @Test
+    public void repeatedCallsAreKeyedAndPushedInCallOrder() {
+        PayWaveConfig config = new PayWaveConfig();
+        config.add(PayWaveConfig.CALL_TERM, "9c0100");
+        config.add(PayWaveConfig.CALL_AID, VISA_AID);
+        config.add(PayWaveConfig.CALL_AID, UNIONPAY_AID);
+        config.add(PayWaveConfig.CALL_CAPK, "9F0605A0000000039F220196DF070101");
+        config.add(PayWaveConfig.CALL_CAPK, "9F0605A0000000039F220150DF070101");
+        // same 9F06: replaces the first Visa AID and moves to the end
+        config.add(PayWaveConfig.CALL_AID, VISA_AID_2);
+        // same RID and index: replaces the key
+        config.add(PayWaveConfig.CALL_CAPK, "9F0605A0000000039F220196DF070102");
+        config.add(PayWaveConfig.CALL_TERM, "9C0101");
+
+        List<KernelConfig.Item> items = config.getItems();
+        assertEquals(5, items.size());
+        assertEquals(UNIONPAY_AID, items.get(0).getPayload());
+        assertEquals(VISA_AID_2, items.get(1).getPayload());
+        assertEquals("9F0605A0000000039F220150DF070101", items.get(2).getPayload());
+        assertEquals("9F0605A0000000039F220196DF070102", items.get(3).getPayload());
+        assertEquals("9C0101", items.get(4).getPayload());
+        assertEquals(PayWaveConfig.CALL_TERM, items.get(4).getCall());
+
+        RecordingClessKernel kernel = new RecordingClessKernel();
+        assertEquals(5, config.push(kernel));
+        assertEquals("[PayWaveKernelInit, PayWaveClearAllTerm, PayWaveClearAllCapk, PayWaveClearAllAIDS, "
+                + "PayWaveAidSet " + UNIONPAY_AID + ", PayWaveAidSet " + VISA_AID_2 + ", "
+                + "PayWaveCapkSet 9F0605A0000000039F220150DF070101, "
+                + "PayWaveCapkSet 9F0605A0000000039F220196DF070102, PayWaveTermSet 9C0101]",
+                kernel.mCalls.toString());
+
+        // a failing call stops the push with its code
+        kernel = new RecordingClessKernel();
+        kernel.fail("PayWaveClearAllCapk");
+        assertEquals(-1, config.push(kernel));
+        assertEquals(3, kernel.mCalls.size());
+    }
+
+    @Test
+    public void unkeyedListsMergeOnlyWhenIdentical() {
+        ExpressConfig config = new ExpressConfig();
+        config.add(ExpressConfig.CALL_CAPK, "9F220160DF070101");
+        config.add(ExpressConfig.CALL_CAPK, "9F220161DF070101");
+        config.add(ExpressConfig.CALL_CAPK, "9F220160DF070101");
+        config.add(ExpressConfig.CALL_DRL, "DF810C0102");
+        assertEquals(3, config.getItems().size());
+        assertEquals("9F220161DF070101", config.getItems().get(0).getPayload());
+        assertEquals(ExpressConfig.CALL_DRL, config.getItems().get(2).getCall());
+    }
+
+    @Test
+    public void hashFollowsWhatIsPushed() {
+        PaypassConfig a = paypass("9C0100");
+        PaypassConfig b = paypass("9C0100");
+        assertEquals(a.getHash(), b.getHash());
+        assertFalse(a.getHash().equals(paypass("9C0101").getHash()));
+
+        String before = a.getHash();
+        a.add(PaypassConfig.CALL_TRANS, "9C0101");
+        assertFalse(before.equals(a.getHash()));
+        a.add(PaypassConfig.CALL_TRANS, "9C0100");
+        assertEquals(before, a.getHash());
+
+        // same lists under another kernel are another configuration
+        PayWaveConfig wave = new PayWaveConfig();
+        wave.add(PayWaveConfig.CALL_AID, "9F0607A0000000041010DF810C0102");
+        wave.add(PayWaveConfig.CALL_TERM, "9C0100");
+        assertFalse(before.equals(wave.getHash()));
+    }
+
+    private static PaypassConfig paypass(String trans) {
+        PaypassConfig config = new PaypassConfig();
+        config.add(PaypassConfig.CALL_AID, "9F0607A0000000041010DF810C0102");
+        config.add(PaypassConfig.CALL_TRANS, trans);
+        return config;
+    }
+
+    private static void refuse(KernelConfig config, int call, String hex, String why) {
+        try {
+            config.add(call, hex);
+            fail(hex);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(why));
+        }
+    }
+
+    private static ByteArrayInputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes());
+    }
+}
@@ -0,0 +1,140 @@
+package test.apidemo.emv;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.locks.LockSupport;
+
+import test.apidemo.util.LatencyRecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Card-present-to-decision time with and without pre-warmed kernel sessions.
+ *
+ * The simulated kernel charges one binder round trip per SDK call plus the
+ * time the real calls spend in the kernel, using the same set-up calls as
+ * EmvTestActivity (PIN pad, EmvKernelInit, transaction and card type). The
+ * cold run does all of it after the card is seen; the warm run does it in
+ * idle time through {@link KernelSessionManager} and leaves only
+ * EmvSetTransAmount and EmvProcess.
+ *
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.emv.KernelSessionBenchmark \
+ *     -Dbench=true -Dbench.txns=100 -Dbench.binderUs=800 -Dbench.kernelInitUs=15000
+ * </pre>
+ */
+public class KernelSessionBenchmark {
+
+    private static final int TXNS = Integer.getInteger("bench.txns", 40);
+    private static final int BINDER_US = Integer.getInteger("bench.binderUs", 800);
+    private static final int KEYPAD_INIT_US = Integer.getInteger("bench.keypadInitUs", 8000);
+    private static final int KERNEL_INIT_US = Integer.getInteger("bench.kernelInitUs", 15000);
+    private static final int PROCESS_US = Integer.getInteger("bench.processUs", 40000);
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void cardPresentToDecision() {
+        KernelSessionManager sessions = newSessions();
+        LatencyRecorder cold = new LatencyRecorder(TXNS);
+        LatencyRecorder warm = new LatencyRecorder(TXNS);
+
+        for (int i = 0; i < TXNS; i++) {
+            sessions.invalidate();
+            long t0 = System.nanoTime();
+            transaction(sessions);
+            cold.record(System.nanoTime() - t0);
+
+            // lane idle between customers
+            assertTrue(sessions.warmAll() > 0);
+            t0 = System.nanoTime();
+            transaction(sessions);
+            warm.record(System.nanoTime() - t0);
+        }
+        assertEquals(TXNS, sessions.getHits() / 2);
+        assertEquals(TXNS, sessions.getMisses() / 2);
+
+        long saved = cold.percentile(50) - warm.percentile(50);
+        System.out.printf("card present to decision, %d transactions%n  cold   %s%n  warm   %s%n"
+                        + "  p50 saved %.1f ms (%.0f%%)%n", TXNS, cold.summary(), warm.summary(),
+                saved / 1e6, saved * 100.0 / cold.percentile(50));
+        assertTrue(warm.percentile(50) < cold.percentile(50));
+    }
+
+    @Test
+    public void staleSessionIsWarmedAgain() {
+        final long[] clock = {0};
+        final int[] warmups = {0};
+        KernelSessionManager sessions = new KernelSessionManager() {
+            @Override
+            protected long now() {
+                return clock[0];
+            }
+        };
+        sessions.setMaxIdleMillis(1000);
+        sessions.register(KernelSessionManager.KERNEL_EMV, new KernelSessionManager.Warmup() {
+            @Override
+            public int warm() {
+                warmups[0]++;
+                return 0;
+            }
+        });
+
+        assertEquals(1, sessions.warmAll());
+        clock[0] = 500 * 1000000L;
+        assertEquals(0, sessions.warmAll());
+        clock[0] = 1500 * 1000000L;
+        assertEquals(1, sessions.warmAll());
+        clock[0] = 2600 * 1000000L;
+        assertEquals(0, sessions.acquire(KernelSessionManager.KERNEL_EMV));
+        assertEquals(3, warmups[0]);
+        assertEquals(1, sessions.getMisses());
+    }
+
+    private static KernelSessionManager newSessions() {
+        KernelSessionManager sessions = new KernelSessionManager();
+        sessions.register(KernelSessionManager.KERNEL_PINPAD, new KernelSessionManager.Warmup() {
+            @Override
+            public int warm() {
+                call(KEYPAD_INIT_US); // KeyPadInit
+                call(0);              // SetKeyPadTime
+                call(0);              // SetKeyPadType
+                return 0;
+            }
+        });
+        sessions.register(KernelSessionManager.KERNEL_EMV, new KernelSessionManager.Warmup() {
+            @Override
+            public int warm() {
+                call(KERNEL_INIT_US); // EmvKernelInit
+                call(0);              // EmvSetTransType
+                call(0);              // EmvSetCardType
+                return 0;
+            }
+        });
+        return sessions;
+    }
+
+    private static void transaction(KernelSessionManager sessions) {
+        sessions.acquire(KernelSessionManager.KERNEL_PINPAD);
+        sessions.acquire(KernelSessionManager.KERNEL_EMV);
+        call(0);          // EmvSetTransAmount
+        call(PROCESS_US); // EmvProcess
+    }
+
+    private static void call(int kernelMicros) {
+        long nanos = (BINDER_US + kernelMicros) * 1000L;
+        long end = System.nanoTime() + nanos;
+        if (nanos > 200000) {
+            LockSupport.parkNanos(nanos - 100000);
+        }
+        while (System.nanoTime() < end) {
+            // spin out the remainder; parkNanos alone overshoots
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package test.apidemo.emv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ClessKernel} that keeps every call as a line, named as the
+ * PosApiHelper method it stands for and followed by its string, and counts
+ * the kernel initialisations. One call name can be made to fail.
+ */
+class RecordingClessKernel implements ClessKernel {
+
+    final List<String> mCalls = new ArrayList<String>();
+    int mPaypassInits;
+    int mPayWaveInits;
+    int mExpressInits;
+    private String mFailing;
+
+    /** Make every call named {@code call} return -1 */
+    void fail(String call) {
+        mFailing = call;
+    }
+
+    private int call(String name) {
+        mCalls.add(name);
+        return name.equals(mFailing) ? -1 : 0;
+    }
+
+    private int call(String name, String tlv) {
+        mCalls.add(name + " " + tlv);
+        return name.equals(mFailing) ? -1 : 0;
+    }
+
+    @Override
+    public int paypassKernelInit() {
+        mPaypassInits++;
+        return call("PaypassKernelInit");
+    }
+
+    @Override
+    public int paypassAidSet(String tlv) {
+        return call("PaypassAidSet", tlv);
+    }
+
+    @Override
+    public int paypassCapkSet(String tlv) {
+        return call("PaypassCapkSet", tlv);
+    }
+
+    @Override
+    public int paypassReaderSet(String tlv) {
+        return call("PaypassReaderSet", tlv);
+    }
+
+    @Override
+    public int paypassKernelSet(String tlv) {
+        return call("PaypassKernelSet", tlv);
+    }
+
+    @Override
+    public int paypassTransSet(String tlv) {
+        return call("PaypassTransSet", tlv);
+    }
+
+    @Override
+    public int payWaveKernelInit() {
+        mPayWaveInits++;
+        return call("PayWaveKernelInit");
+    }
+
+    @Override
+    public int payWaveClearAllTerm() {
+        return call("PayWaveClearAllTerm");
+    }
+
+    @Override
+    public int payWaveClearAllCapk() {
+        return call("PayWaveClearAllCapk");
+    }
+
+    @Override
+    public int payWaveClearAllAids() {
+        return call("PayWaveClearAllAIDS");
+    }
+
+    @Override
+    public int payWaveAidSet(String tlv) {
+        return call("PayWaveAidSet", tlv);
+    }
+
+    @Override
+    public int payWaveCapkSet(String tlv) {
+        return call("PayWaveCapkSet", tlv);
+    }
+
+    @Override
+    public int payWaveTermSet(String tlv) {
+        return call("PayWaveTermSet", tlv);
+    }
+
+    @Override
+    public int expressKernelInit() {
+        mExpressInits++;
+        return call("ExpressKernelInit");
+    }
+
+    @Override
+    public int expressAidSet(String tlv) {
+        return call("ExpressAidSet", tlv);
+    }
+
+    @Override
+    public int expressCapkSet(String tlv) {
+        return call("ExpressCapkSet", tlv);
+    }
+
+    @Override
+    public int expressGeneralParamSet(String tlv) {
+        return call("ExpressGeneralParamSet", tlv);
+    }
+
+    @Override
+    public int expressDrlParamSet(String tlv) {
+        return call("ExpressDrlParamSet", tlv);
+    }
+
+    @Override
+    public int expressCrlParamSet(String tlv) {
+        return call("ExpressCrlParamSet", tlv);
+    }
+
+    @Override
+    public int expressExceptionFileParamSet(String tlv) {
+        return call("ExpressExceptionFileParamSet", tlv);
+    }
+
+    @Override
+    public int expressKernelConfigSet(String tlv) {
+        return call("ExpressKernelConfigSet", tlv);
+    }
+}
@@ -0,0 +1,232 @@
+package test.apidemo.emv;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The BER-TLV codec under the EMV config, tag snapshot, DE55 and journal:
+ * tag and length forms, templates, padding, malformed input and the index.
+ */
+public class TlvTest {
+
+    @Test
+    public void multiByteTagsAndLongLengths() {
+        TlvWriter w = new TlvWriter(16);
+        w.putBcd(0x9F02, 1234, 6)
+                .put(0xDF8F01, new byte[0x7F])
+                .put(0x5A, new byte[0x80])
+                .put(0xDF01, new byte[0x100])
+                .put(0x9F10, new byte[0x10000]);
+        byte[] b = w.buffer();
+        assertArrayEquals(new byte[]{(byte) 0x9F, 0x02, 0x06, 0, 0, 0, 0, 0x12, 0x34}, Arrays.copyOf(b, 9));
+        assertEquals(0x7F, b[9 + 3]);
+        int p = 9 + 3 + 1 + 0x7F;
+        assertArrayEquals(new byte[]{0x5A, (byte) 0x81, (byte) 0x80}, Arrays.copyOfRange(b, p, p + 3));
+        p += 3 + 0x80;
+        assertArrayEquals(new byte[]{(byte) 0xDF, 0x01, (byte) 0x82, 0x01, 0x00},
+                Arrays.copyOfRange(b, p, p + 5));
+        p += 5 + 0x100;
+        assertArrayEquals(new byte[]{(byte) 0x9F, 0x10, (byte) 0x83, 0x01, 0x00, 0x00},
+                Arrays.copyOfRange(b, p, p + 6));
+
+        TlvReader r = new TlvReader(b, 0, w.length());
+        int[] tags = {0x9F02, 0xDF8F01, 0x5A, 0xDF01, 0x9F10};
+        int[] lengths = {6, 0x7F, 0x80, 0x100, 0x10000};
+        for (int i = 0; i < tags.length; i++) {
+            assertEquals(1, r.next());
+            assertEquals(tags[i], r.tag());
+            assertEquals(lengths[i], r.valueLength());
+            assertEquals(Tlv.encodedSize(tags[i], lengths[i]), r.encodedLength());
+        }
+        assertEquals(0, r.next());
+        r.reset(b, 0, w.length());
+        r.next();
+        assertEquals(1234, r.valueBcd());
+    }
+
+    @Test
+    public void templatesNestAndLengthsArePatched() {
+        TlvWriter w = new TlvWriter();
+        w.begin(0x70).begin(0xBF0C).put(0x9F4D, new byte[200]).end().putByte(0x9F07, 0x3C).end();
+        byte[] b = w.toByteArray();
+        // 200 bytes inside BF0C moved both template lengths to the 81 form
+        assertArrayEquals(new byte[]{0x70, (byte) 0x81, (byte) 0xD4, (byte) 0xBF, 0x0C, (byte) 0x81, (byte) 0xCC},
+                Arrays.copyOf(b, 7));
+
+        TlvReader r = new TlvReader(b, 0, b.length);
+        assertEquals(1, r.next());
+        assertTrue(r.isConstructed());
+        assertEquals(TlvReader.ERR_STATE, r.exit());
+        assertEquals(0, r.enter());
+        assertEquals(1, r.next());
+        assertEquals(0xBF0C, r.tag());
+        assertEquals(0, r.enter());
+        assertEquals(1, r.next());
+        assertEquals(0x9F4D, r.tag());
+        assertEquals(TlvReader.ERR_STATE, r.enter());
+        assertEquals(0, r.exit());
+        assertEquals(1, r.next());
+        assertEquals(0x9F07, r.tag());
+        assertEquals(0x3C, r.valueInt());
+        assertEquals(0, r.next());
+        assertEquals(1, r.depth());
+
+        r.reset(b, 0, b.length);
+        assertEquals(1, r.seek(0x9F07));
+        assertEquals(1, r.depth());
+        r.reset(b, 0, b.length);
+        assertEquals(0, r.seek(0x5A));
+    }
+
+    @Test
+    public void nestingStopsAtMaxDepth() {
+        TlvWriter w = new TlvWriter();
+        for (int i = 0; i < 8; i++) {
+            w.begin(0xE1);
+        }
+        try {
+            w.begin(0xE1);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        w.putByte(0x9F07, 1);
+        for (int i = 0; i < 8; i++) {
+            w.end();
+        }
+        try {
+            w.end();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        TlvWriter deeper = new TlvWriter().begin(0xE1);
+        deeper.putRaw(w.buffer(), 0, w.length()).end();
+        TlvReader r = new TlvReader(deeper.buffer(), 0, deeper.length());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(1, r.next());
+            assertEquals(0, r.enter());
+        }
+        assertEquals(1, r.next());
+        assertEquals(TlvReader.ERR_STATE, r.enter());
+        // seek does not descend past the limit either
+        r.reset(deeper.buffer(), 0, deeper.length());
+        assertEquals(0, r.seek(0x9F07));
+    }
+
+    @Test
+    public void zeroPaddingIsSkipped() {
+        byte[] b = {0x00, 0x00, 0x5A, 0x02, 0x12, 0x34, 0x00, 0x70, 0x04, 0x00, (byte) 0x9C, 0x01, 0x00, 0x00};
+        TlvReader r = new TlvReader(b, 0, b.length);
+        assertEquals(1, r.next());
+        assertEquals(0x5A, r.tag());
+        assertEquals(1, r.next());
+        assertEquals(0x70, r.tag());
+        r.enter();
+        assertEquals(1, r.next());
+        assertEquals(0x9C, r.tag());
+        assertEquals(0, r.next());
+        r.exit();
+        assertEquals(0, r.next());
+    }
+
+    @Test
+    public void malformedInputIsFormatError() {
+        byte[][] bad = {
+                {(byte) 0x9F},                                  // tag cut short
+                {(byte) 0x9F, (byte) 0x81, (byte) 0x82, (byte) 0x83, 0x04, 0x00}, // tag over 4 bytes
+                {0x5A},                                         // no length
+                {0x5A, 0x05, 0x01, 0x02},                       // value cut short
+                {0x5A, (byte) 0x82, 0x01},                      // length bytes cut short
+                {0x70, (byte) 0x80, 0x5A, 0x00, 0x00, 0x00},    // indefinite length
+                {0x5A, (byte) 0x84, 0x00, 0x00, 0x00, 0x01, 0x00}, // four length bytes
+        };
+        TlvReader r = new TlvReader();
+        for (byte[] b : bad) {
+            assertEquals(TlvReader.ERR_FORMAT, r.reset(b, 0, b.length).next());
+        }
+        // a child running past its template
+        byte[] b = {0x70, 0x03, 0x5A, 0x05, 0x01, 0x02, 0x03, 0x04, 0x05};
+        r.reset(b, 0, b.length);
+        assertEquals(1, r.next());
+        r.enter();
+        assertEquals(TlvReader.ERR_FORMAT, r.next());
+        assertEquals(TlvReader.ERR_FORMAT, new TlvIndex().build(b, 0, b.length));
+    }
+
+    @Test
+    public void writerRefusesLengthsTheReaderCannotRead() {
+        assertEquals(4, Tlv.lengthBytes(Tlv.MAX_LENGTH));
+        try {
+            Tlv.lengthBytes(Tlv.MAX_LENGTH + 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            Tlv.encodedSize(0x5A, -1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void byteBufferIsReadWithoutMovingIt() {
+        byte[] tlv = new TlvWriter().putByte(0x9C, 0x20).putInt(0x9F1A, 0x0156, 2).toByteArray();
+        ByteBuffer heap = ByteBuffer.allocate(tlv.length + 4);
+        heap.position(3);
+        heap.put(tlv);
+        heap.position(3);
+        ByteBuffer slice = heap.slice();
+        ByteBuffer direct = ByteBuffer.allocateDirect(tlv.length + 2);
+        direct.put((byte) 0x00).put((byte) 0x00).put(tlv).position(1);
+
+        TlvReader r = new TlvReader();
+        for (ByteBuffer bb : new ByteBuffer[]{heap, slice, direct}) {
+            int pos = bb.position();
+            r.reset(bb);
+            assertEquals(1, r.seek(0x9F1A));
+            assertEquals(0x0156, r.valueInt());
+            assertEquals(pos, bb.position());
+        }
+        assertTrue(r.buffer() != tlv);
+    }
+
+    @Test
+    public void indexGrowsAndFirstOccurrenceWins() {
+        TlvWriter w = new TlvWriter();
+        w.putByte(0x9C, 0x01);
+        // tags that differ only in high bits share hash neighbourhoods
+        for (int i = 0; i < 40; i++) {
+            w.putInt(0xDF8100 + i, i, 2);
+        }
+        w.begin(0x70).putByte(0x9C, 0x02).putByte(0x5F34, 0x07).end();
+        w.putByte(0x9C, 0x03);
+
+        TlvIndex index = new TlvIndex(1);
+        assertEquals(1 + 40 + 2, index.build(w.buffer(), 0, w.length()));
+        assertEquals(1, index.intValue(0x9C, -1));
+        assertEquals(7, index.intValue(0x5F34, -1));
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, index.intValue(0xDF8100 + i, -1));
+        }
+        assertFalse(index.contains(0x5A));
+        assertEquals(-1, index.intValue(0x5A, -1));
+        assertEquals(-1, index.copy(0x5A, new byte[4], 0));
+        byte[] out = new byte[2];
+        assertEquals(2, index.copy(0xDF8127, out, 0));
+        assertArrayEquals(new byte[]{0x00, 0x27}, out);
+
+        // reused for a smaller buffer, nothing of the old one left
+        byte[] small = {0x5A, 0x01, 0x09};
+        assertEquals(1, index.build(small, 0, small.length));
+        assertFalse(index.contains(0x9C));
+        assertEquals(9, index.intValue(0x5A, -1));
+    }
+}
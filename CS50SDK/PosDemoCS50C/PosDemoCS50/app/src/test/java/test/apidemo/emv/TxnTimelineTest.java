@@ -0,0 +1,171 @@
+package test.apidemo.emv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Phase accounting of {@link TxnTimeline} on a test clock, and how
+ * {@link TimelineStats} files timelines by brand.
+ */
+public class TxnTimelineTest {
+
+    private final long[] mClock = {1000};
+    private final TxnTimeline mTimeline = new TxnTimeline() {
+        @Override
+        protected long now() {
+            return mClock[0];
+        }
+    };
+
+    @Test
+    public void reenteredPhaseAddsUp() {
+        mTimeline.begin();
+        at(1010);
+        mTimeline.start(TxnTimeline.PHASE_PIN);
+        at(1030);
+        mTimeline.end(TxnTimeline.PHASE_PIN);
+        // PIN retry
+        at(1050);
+        mTimeline.start(TxnTimeline.PHASE_PIN);
+        at(1055);
+        mTimeline.end(TxnTimeline.PHASE_PIN);
+
+        assertTrue(mTimeline.has(TxnTimeline.PHASE_PIN));
+        assertEquals(25, mTimeline.duration(TxnTimeline.PHASE_PIN));
+        assertFalse(mTimeline.has(TxnTimeline.PHASE_KERNEL));
+        assertEquals(-1, mTimeline.duration(TxnTimeline.PHASE_KERNEL));
+    }
+
+    @Test
+    public void endWithoutStartIsIgnored() {
+        mTimeline.begin();
+        at(1100);
+        mTimeline.end(TxnTimeline.PHASE_FINAL);
+        assertFalse(mTimeline.has(TxnTimeline.PHASE_FINAL));
+        assertEquals(0, mTimeline.total());
+
+        mTimeline.start(TxnTimeline.PHASE_FINAL);
+        at(1200);
+        mTimeline.end(TxnTimeline.PHASE_FINAL);
+        // a second end has nothing left to close
+        at(1300);
+        mTimeline.end(TxnTimeline.PHASE_FINAL);
+        assertEquals(100, mTimeline.duration(TxnTimeline.PHASE_FINAL));
+        assertEquals(200, mTimeline.total());
+    }
+
+    @Test
+    public void totalRunsToTheLastPhaseEndAndKeepsTheGaps() {
+        mTimeline.begin();
+        mTimeline.start(TxnTimeline.PHASE_DETECT);
+        at(1200);
+        mTimeline.end(TxnTimeline.PHASE_DETECT);
+        // 100 outside every phase
+        at(1300);
+        mTimeline.start(TxnTimeline.PHASE_KERNEL);
+        at(1800);
+        mTimeline.end(TxnTimeline.PHASE_KERNEL);
+        // started but never ended: neither timed nor counted in the total
+        mTimeline.start(TxnTimeline.PHASE_ONLINE);
+        at(5000);
+
+        long phases = 0;
+        for (int p = 0; p < TxnTimeline.PHASES; p++) {
+            if (mTimeline.has(p)) {
+                phases += mTimeline.duration(p);
+            }
+        }
+        assertEquals(700, phases);
+        assertEquals(800, mTimeline.total());
+        assertFalse(mTimeline.has(TxnTimeline.PHASE_ONLINE));
+
+        // the next transaction starts clean
+        mTimeline.begin();
+        assertFalse(mTimeline.has(TxnTimeline.PHASE_KERNEL));
+        assertEquals(0, mTimeline.total());
+        at(5100);
+        mTimeline.end(TxnTimeline.PHASE_ONLINE);
+        assertFalse(mTimeline.has(TxnTimeline.PHASE_ONLINE));
+    }
+
+    @Test
+    public void statsAreKeptPerBrand() {
+        TimelineStats stats = new TimelineStats(16);
+        for (int i = 1; i <= 3; i++) {
+            mTimeline.begin();
+            mTimeline.start(TxnTimeline.PHASE_KERNEL);
+            at(mClock[0] + i * 1000000L);
+            mTimeline.end(TxnTimeline.PHASE_KERNEL);
+            stats.add(CardBrand.VISA, mTimeline);
+        }
+        mTimeline.begin();
+        mTimeline.start(TxnTimeline.PHASE_PIN);
+        at(mClock[0] + 5000000L);
+        mTimeline.end(TxnTimeline.PHASE_PIN);
+        // brands out of range are filed as OTHER
+        stats.add(-1, mTimeline);
+        stats.add(CardBrand.COUNT, mTimeline);
+
+        assertEquals(3, stats.count(CardBrand.VISA));
+        assertEquals(2, stats.count(CardBrand.OTHER));
+        assertEquals(0, stats.count(CardBrand.MASTERCARD));
+        assertEquals(3, stats.get(CardBrand.VISA, TxnTimeline.PHASE_KERNEL).count());
+        assertEquals(0, stats.get(CardBrand.VISA, TxnTimeline.PHASE_PIN).count());
+        assertEquals(3000000L, stats.get(CardBrand.VISA, TxnTimeline.PHASES).max());
+        assertEquals(5000000L, stats.get(CardBrand.OTHER, TxnTimeline.PHASE_PIN).max());
+
+        String report = stats.report();
+        assertTrue(report, report.startsWith("OTHER total n=2 "));
+        assertTrue(report, report.contains("\n  pin      n=2 "));
+        assertTrue(report, report.contains("\nVISA total n=3 "));
+        assertTrue(report, report.contains("\n  kernel   n=3 "));
+        assertFalse(report, report.contains("MASTERCARD"));
+        assertFalse(report, report.contains("detect"));
+
+        stats.reset();
+        assertEquals(0, stats.count(CardBrand.VISA));
+        assertEquals("", stats.report());
+    }
+
+    @Test
+    public void brandFollowsTheRid() {
+        assertEquals(CardBrand.VISA, brand("A0000000031010"));
+        assertEquals(CardBrand.VISA, brand("A000000003"));
+        assertEquals(CardBrand.MASTERCARD, brand("A0000000043060"));
+        assertEquals(CardBrand.UNIONPAY, brand("A000000333010102"));
+        assertEquals(CardBrand.MIR, brand("A0000006581010"));
+        assertEquals(CardBrand.OTHER, brand("A00000002501"));
+        assertEquals(CardBrand.OTHER, brand("A0000000"));
+        // the AID may sit anywhere in a buffer
+        byte[] b = EmvConfig.fromHex("9F0607A0000000041010");
+        assertEquals(CardBrand.MASTERCARD, CardBrand.fromAid(b, 3, 7));
+
+        EmvTagSnapshot snapshot = new EmvTagSnapshot();
+        snapshot.reset(new TagSource() {
+            @Override
+            public int getTagData(byte[] buf, int max, int tag) {
+                return 0;
+            }
+        });
+        assertEquals(CardBrand.OTHER, CardBrand.fromSnapshot(snapshot));
+        byte[] aid = EmvConfig.fromHex("A0000003330101");
+        snapshot.put(0x84, aid, 0, aid.length);
+        assertEquals(CardBrand.UNIONPAY, CardBrand.fromSnapshot(snapshot));
+
+        assertEquals("MIR", CardBrand.name(CardBrand.MIR));
+        assertEquals("OTHER", CardBrand.name(-1));
+        assertEquals("OTHER", CardBrand.name(CardBrand.COUNT));
+    }
+
+    private void at(long time) {
+        mClock[0] = time;
+    }
+
+    private static int brand(String aid) {
+        byte[] b = EmvConfig.fromHex(aid);
+        return CardBrand.fromAid(b, 0, b.length);
+    }
+}
@@ -0,0 +1,150 @@
+package test.apidemo.entry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Arbitration between card interfaces: the first card wins, the losers are
+ * closed, a card no kernel takes stops them all, and a failed interface
+ * does not stop the others.
+ */
+public class CardEntryMuxTest {
+
+    private static final int NONE = CardEntryMux.NO_CARD;
+
+    @Test
+    public void firstCardWinsAndLosersAreCancelled() {
+        FakeDetector icc = new FakeDetector(NONE, NONE, NONE, CardEntryMux.CARD_ICC);
+        FakeDetector picc = new FakeDetector(NONE);
+        FakeDetector mcr = new FakeDetector(NONE, NONE, NONE, NONE, NONE, CardEntryMux.CARD_MCR);
+        CardEntryMux mux = mux(icc, picc, mcr);
+
+        assertEquals(CardEntryMux.CARD_ICC, mux.detect(10000));
+        assertEquals(1, icc.mArms);
+        assertEquals(0, icc.mCancels);
+        assertEquals(1, picc.mCancels);
+        assertEquals(1, mcr.mCancels);
+        // polled in turn, and nobody after the winner in its round
+        assertEquals(4, icc.mPolls);
+        assertEquals(3, picc.mPolls);
+        assertEquals(3, mcr.mPolls);
+    }
+
+    @Test
+    public void earlierInterfaceWinsTheSameRound() {
+        FakeDetector icc = new FakeDetector(NONE, CardEntryMux.CARD_ICC);
+        FakeDetector picc = new FakeDetector(NONE, CardEntryMux.CARD_PAYWAVE);
+        CardEntryMux mux = mux(picc, icc);
+
+        assertEquals(CardEntryMux.CARD_PAYWAVE, mux.detect(10000));
+        assertEquals(0, picc.mCancels);
+        assertEquals(1, icc.mCancels);
+        assertEquals(1, icc.mPolls);
+    }
+
+    @Test
+    public void unsupportedCardStopsEveryInterface() {
+        FakeDetector icc = new FakeDetector(NONE);
+        FakeDetector picc = new FakeDetector(NONE, CardEntryMux.ERR_UNSUPPORTED);
+        FakeDetector mcr = new FakeDetector(NONE);
+        CardEntryMux mux = mux(icc, picc, mcr);
+
+        assertEquals(CardEntryMux.ERR_UNSUPPORTED, mux.detect(10000));
+        assertEquals(1, icc.mCancels);
+        assertEquals(1, picc.mCancels);
+        assertEquals(1, mcr.mCancels);
+        assertEquals(2, icc.mPolls);
+    }
+
+    @Test
+    public void failedInterfaceIsDroppedAndTheOthersGoOn() {
+        FakeDetector icc = new FakeDetector(NONE, NONE, NONE, CardEntryMux.CARD_ICC);
+        FakeDetector picc = new FakeDetector(NONE, -7);
+        // arming failed: never polled, never cancelled
+        FakeDetector mcr = new FakeDetector(CardEntryMux.CARD_MCR);
+        mcr.mArmResult = -1;
+        CardEntryMux mux = mux(icc, picc, mcr);
+
+        assertEquals(CardEntryMux.CARD_ICC, mux.detect(10000));
+        assertEquals(2, picc.mPolls);
+        assertEquals(1, picc.mCancels);
+        assertEquals(0, icc.mCancels);
+        assertEquals(0, mcr.mPolls);
+        assertEquals(0, mcr.mCancels);
+    }
+
+    @Test
+    public void timeoutCancelAndNoInterface() {
+        FakeDetector icc = new FakeDetector(NONE);
+        FakeDetector picc = new FakeDetector(NONE);
+        CardEntryMux mux = mux(icc, picc);
+        assertEquals(CardEntryMux.ERR_TIMEOUT, mux.detect(20));
+        assertTrue(icc.mPolls > 0);
+        assertEquals(1, icc.mCancels);
+        assertEquals(1, picc.mCancels);
+
+        // cancelled from within a poll, as another thread would
+        final CardEntryMux cancelled = new CardEntryMux();
+        FakeDetector slot = new FakeDetector(NONE) {
+            @Override
+            public int poll() {
+                if (mPolls == 3) {
+                    cancelled.cancel();
+                }
+                return super.poll();
+            }
+        };
+        cancelled.addDetector(slot);
+        assertEquals(CardEntryMux.ERR_CANCELLED, cancelled.detect(10000));
+        assertEquals(1, slot.mCancels);
+        // a new detect starts over
+        slot.mScript = new int[]{CardEntryMux.CARD_ICC};
+        slot.mPolls = 0;
+        assertEquals(CardEntryMux.CARD_ICC, cancelled.detect(10000));
+
+        FakeDetector dead = new FakeDetector(NONE);
+        dead.mArmResult = -1;
+        assertEquals(CardEntryMux.ERR_NO_INTERFACE, mux(dead).detect(10000));
+        assertEquals(0, dead.mPolls);
+    }
+
+    private static CardEntryMux mux(CardDetector... detectors) {
+        CardEntryMux mux = new CardEntryMux();
+        for (CardDetector d : detectors) {
+            mux.addDetector(d);
+        }
+        return mux;
+    }
+
+    /** Answers polls from a script, the last answer for ever after */
+    private static class FakeDetector implements CardDetector {
+
+        int[] mScript;
+        int mArmResult;
+        int mArms;
+        int mPolls;
+        int mCancels;
+
+        FakeDetector(int... script) {
+            mScript = script;
+        }
+
+        @Override
+        public int arm() {
+            mArms++;
+            return mArmResult;
+        }
+
+        @Override
+        public int poll() {
+            return mScript[Math.min(mPolls++, mScript.length - 1)];
+        }
+
+        @Override
+        public void cancel() {
+            mCancels++;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package test.apidemo.entry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import test.apidemo.emv.TlvWriter;
+import test.apidemo.picc.PiccTransport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Kernel selection after the PPSE select: Kernel Identifier before RID,
+ * priority between directory entries, and cards no kernel takes.
+ */
+public class PiccDetectorTest {
+
+    private static final byte[] VISA = hex("A0000000031010");
+    private static final byte[] MASTERCARD = hex("A0000000041010");
+    private static final byte[] MAESTRO = hex("A0000000043060");
+    private static final byte[] AMEX = hex("A00000002501");
+    private static final byte[] UNIONPAY = hex("A000000333010101");
+    private static final byte[] JCB = hex("A0000000651010");
+
+    @Test
+    public void pollingSelectsThePpse() {
+        Field field = new Field();
+        PiccDetector detector = new PiccDetector(field);
+        assertEquals(0, detector.arm());
+        assertEquals(1, field.mOpens);
+
+        assertEquals(CardEntryMux.NO_CARD, detector.poll());
+        assertEquals(0, field.mCommands.size());
+
+        field.mCard = true;
+        field.mAnswer = ppse(entry(VISA, -1, -1));
+        assertEquals(CardEntryMux.CARD_PAYWAVE, detector.poll());
+        byte[] select = field.mCommands.get(0);
+        assertEquals("2PAY.SYS.DDF01", new String(select, 5, 14));
+        assertEquals(0xA4, select[1] & 0xFF);
+
+        // card without a PPSE
+        field.mAnswer = null;
+        field.mSw = 0x6A82;
+        assertEquals(CardEntryMux.ERR_UNSUPPORTED, detector.poll());
+
+        // card gone before it answered
+        field.mFail = true;
+        assertEquals(CardEntryMux.NO_CARD, detector.poll());
+
+        detector.cancel();
+        assertEquals(1, field.mCloses);
+    }
+
+    @Test
+    public void kernelFollowsTheRid() {
+        assertEquals(CardEntryMux.CARD_PAYPASS, kernel(ppse(entry(MASTERCARD, -1, -1))));
+        assertEquals(CardEntryMux.CARD_PAYPASS, kernel(ppse(entry(MAESTRO, -1, -1))));
+        assertEquals(CardEntryMux.CARD_PAYWAVE, kernel(ppse(entry(VISA, -1, -1))));
+        assertEquals(CardEntryMux.CARD_PAYWAVE, kernel(ppse(entry(UNIONPAY, -1, -1))));
+        assertEquals(CardEntryMux.CARD_EXPRESS, kernel(ppse(entry(AMEX, -1, -1))));
+        assertEquals(CardEntryMux.ERR_UNSUPPORTED, kernel(ppse(entry(JCB, -1, -1))));
+        assertEquals(CardEntryMux.ERR_UNSUPPORTED, kernel(ppse()));
+        assertEquals(CardEntryMux.ERR_UNSUPPORTED, kernel(new byte[]{0x6F, 0x00}));
+    }
+
+    @Test
+    public void kernelIdentifierGoesBeforeTheRid() {
+        // a Visa AID the card routes to kernel 2
+        assertEquals(CardEntryMux.CARD_PAYPASS, kernel(ppse(entry(VISA, -1, 0x02))));
+        assertEquals(CardEntryMux.CARD_EXPRESS, kernel(ppse(entry(MASTERCARD, -1, 0x04))));
+        // kernel 7 is qUICS, run by the PayWave kernel
+        assertEquals(CardEntryMux.CARD_PAYWAVE, kernel(ppse(entry(UNIONPAY, -1, 0x07))));
+        // only the low six bits are the short kernel id
+        assertEquals(CardEntryMux.CARD_PAYWAVE, kernel(ppse(entry(MASTERCARD, -1, 0xC3))));
+        assertEquals(CardEntryMux.ERR_UNSUPPORTED, kernel(ppse(entry(VISA, -1, 0x05))));
+    }
+
+    @Test
+    public void bestPriorityEntryWins() {
+        assertEquals(CardEntryMux.CARD_PAYPASS,
+                kernel(ppse(entry(VISA, 2, -1), entry(MASTERCARD, 1, -1))));
+        assertEquals(CardEntryMux.CARD_PAYWAVE,
+                kernel(ppse(entry(VISA, 1, -1), entry(MASTERCARD, 2, -1))));
+        // without 87 an entry comes after every one that has it
+        assertEquals(CardEntryMux.CARD_EXPRESS,
+                kernel(ppse(entry(VISA, -1, -1), entry(AMEX, 0x0F, -1))));
+        // an entry no kernel takes is passed over whatever its priority
+        assertEquals(CardEntryMux.CARD_PAYWAVE,
+                kernel(ppse(entry(JCB, 1, -1), entry(VISA, 3, -1))));
+        // on a tie the first entry stays
+        assertEquals(CardEntryMux.CARD_EXPRESS,
+                kernel(ppse(entry(AMEX, 1, -1), entry(VISA, 1, -1))));
+    }
+
+    private static int kernel(byte[] fci) {
+        return new PiccDetector(new Field()).selectKernel(fci, fci.length);
+    }
+
+    /** Directory entry; {@code priority} and {@code kernelId} are left out when negative */
+    private static byte[] entry(byte[] aid, int priority, int kernelId) {
+        TlvWriter w = new TlvWriter().begin(0x61).put(0x4F, aid);
+        if (priority >= 0) {
+            w.putByte(0x87, priority);
+        }
+        if (kernelId >= 0) {
+            w.putByte(0x9F2A, kernelId);
+        }
+        return w.end().toByteArray();
+    }
+
+    private static byte[] ppse(byte[]... entries) {
+        TlvWriter w = new TlvWriter().begin(0x6F).putAscii(0x84, "2PAY.SYS.DDF01").begin(0xA5).begin(0xBF0C);
+        for (byte[] e : entries) {
+            w.putRaw(e, 0, e.length);
+        }
+        return w.end().end().end().toByteArray();
+    }
+
+    private static byte[] hex(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return b;
+    }
+
+    /** Contactless field with at most one card, which answers every APDU the same */
+    private static class Field implements PiccTransport {
+
+        final List<byte[]> mCommands = new ArrayList<byte[]>();
+        boolean mCard;
+        boolean mFail;
+        byte[] mAnswer;
+        int mSw = 0x9000;
+        int mOpens;
+        int mCloses;
+
+        @Override
+        public int open() {
+            mOpens++;
+            return 0;
+        }
+
+        @Override
+        public int close() {
+            mCloses++;
+            return 0;
+        }
+
+        @Override
+        public int check(byte mode, byte[] cardType, byte[] serialNo) {
+            return mCard ? 0 : -1;
+        }
+
+        @Override
+        public int polling(byte[] cardType, byte[] uid, byte[] uidLen, byte[] ats, byte[] atsLen, byte[] sak) {
+            return mCard ? 0 : -1;
+        }
+
+        @Override
+        public int apduCmd(byte[] apdu, int len, byte[] resp, byte[] respLen) {
+            byte[] cmd = new byte[len];
+            System.arraycopy(apdu, 0, cmd, 0, len);
+            mCommands.add(cmd);
+            if (mFail) {
+                return -1;
+            }
+            int n = mAnswer == null ? 0 : mAnswer.length;
+            if (n > 0) {
+                System.arraycopy(mAnswer, 0, resp, 0, n);
+            }
+            resp[n] = (byte) (mSw >> 8);
+            resp[n + 1] = (byte) mSw;
+            respLen[0] = (byte) (n + 2);
+            respLen[1] = (byte) ((n + 2) >> 8);
+            return 0;
+        }
+
+        @Override
+        public int m1Authority(byte type, byte blkNo, byte[] pwd, byte[] serialNo) {
+            return 0;
+        }
+
+        @Override
+        public int m1ReadBlock(byte blkNo, byte[] blkValue) {
+            return 0;
+        }
+
+        @Override
+        public int remove() {
+            return 0;
+        }
+
+        @Override
+        public int halt() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package test.apidemo.iso8583;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import test.apidemo.emv.TlvIndex;
+import test.apidemo.emv.TlvWriter;
+
+/**
+ * In-process acquirer host for tests and load tests. It forges approvals
+ * and ARPCs without an issuer key, so it never ships in the app.
+ *
+ * Parses each authorisation request, echoes the key fields and answers with
+ * the configured response code, an ARPC in tag 91 and optional issuer
+ * scripts (71, 72) in DE55, after a configurable delay. The ARPC is the
+ * ARQC (9F26) XOR the response code, i.e. ARPC method 1 without the issuer
+ * key; a fake kernel can check it the same way. Declines by amount and
+ * occasional slow answers make tail latency measurable.
+ */
+public class AcquirerSimulator implements AcquirerLink {
+
+    private static final int[] ECHO = {2, 3, 4, 11, 12, 13, 22, 23, 24, 25, 37, 41, 42, 49};
+
+    private final Iso8583Packer mPacker;
+    private final Iso8583Message mRequest = new Iso8583Message();
+    private final Iso8583Message mResponse = new Iso8583Message();
+    private final TlvWriter mIcc = new TlvWriter(256);
+    private final TlvIndex mIndex = new TlvIndex(32);
+    private final byte[] mIssuerAuth = new byte[10];
+    private final Random mRandom = new Random(1);
+
+    private String mResponseCode = "00";
+    private long mDeclineAbove = Long.MAX_VALUE;
+    private String mDeclineCode = "51";
+    private byte[] mScript71;
+    private byte[] mScript72;
+    private long mLatencyNanos;
+    private long mJitterNanos;
+    private double mSlowRate;
+    private long mSlowNanos;
+    private boolean mOnline = true;
+    private int mRequests;
+    private int mApproved;
+    private int mAuthCode;
+
+    public AcquirerSimulator(Iso8583Spec spec) {
+        mPacker = new Iso8583Packer(spec);
+    }
+
+    /** Code for every request not declined by amount; "00" by default */
+    public synchronized void setResponseCode(String code) {
+        mResponseCode = code;
+    }
+
+    /** Answer {@code code} when DE4 is above {@code amount} */
+    public synchronized void setDeclineAbove(long amount, String code) {
+        mDeclineAbove = amount;
+        mDeclineCode = code;
+    }
+
+    /**
+     * Issuer scripts sent with every answer, as the value of the 71 (before
+     * second GenAC) and 72 (after) templates; null for none.
+     */
+    public synchronized void setScripts(byte[] script71, byte[] script72) {
+        mScript71 = script71;
+        mScript72 = script72;
+    }
+
+    /** Delay per answer: {@code baseMicros} plus up to {@code jitterMicros} */
+    public synchronized void setLatency(long baseMicros, long jitterMicros) {
+        mLatencyNanos = baseMicros * 1000;
+        mJitterNanos = jitterMicros * 1000;
+    }
+
+    /** Add {@code extraMicros} to a {@code rate} fraction of the answers */
+    public synchronized void setSlowAnswers(double rate, long extraMicros) {
+        mSlowRate = rate;
+        mSlowNanos = extraMicros * 1000;
+    }
+
+    /** While offline every exchange fails with {@link #ERR_LINK_DOWN} */
+    public synchronized void setOnline(boolean online) {
+        mOnline = online;
+    }
+
+    public synchronized int getRequests() {
+        return mRequests;
+    }
+
+    public synchronized int getApproved() {
+        return mApproved;
+    }
+
+    /** Answers are built one at a time; the delays of concurrent callers overlap */
+    @Override
+    public int exchange(byte[] req, int off, int len, byte[] rsp, int rspOff) {
+        long answerAt;
+        int ret;
+        synchronized (this) {
+            if (!mOnline) {
+                return ERR_LINK_DOWN;
+            }
+            long delay = mLatencyNanos;
+            if (mJitterNanos > 0) {
+                delay += (long) (mRandom.nextDouble() * mJitterNanos);
+            }
+            if (mSlowRate > 0 && mRandom.nextDouble() < mSlowRate) {
+                delay += mSlowNanos;
+            }
+            answerAt = System.nanoTime() + delay;
+            ret = answer(req, off, len, rsp, rspOff);
+        }
+        long left;
+        while ((left = answerAt - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+        }
+        return ret;
+    }
+
+    private int answer(byte[] req, int off, int len, byte[] rsp, int rspOff) {
+        int ret = mPacker.unpack(req, off, len, mRequest);
+        if (ret < 0) {
+            return ret;
+        }
+        mRequests++;
+        mResponse.clear().setMti(mRequest.getMti() + 0x10);
+        for (int f : ECHO) {
+            if (mRequest.has(f)) {
+                mResponse.set(f, mRequest.buffer(), mRequest.offset(f), mRequest.length(f));
+            }
+        }
+        String code = mRequest.getNumber(4) > mDeclineAbove ? mDeclineCode : mResponseCode;
+        mResponse.setAscii(39, code);
+        if ("00".equals(code)) {
+            mApproved++;
+            mResponse.setNumber(38, ++mAuthCode % 1000000, 6);
+        }
+
+        mIcc.reset();
+        if (mRequest.has(55) && mIndex.build(mRequest.buffer(), mRequest.offset(55), mRequest.length(55)) >= 0) {
+            int slot = mIndex.find(0x9F26);
+            if (slot >= 0 && mIndex.valueLength(slot) == 8) {
+                System.arraycopy(mIndex.buffer(), mIndex.valueOffset(slot), mIssuerAuth, 0, 8);
+                mIssuerAuth[0] ^= (byte) code.charAt(0);
+                mIssuerAuth[1] ^= (byte) code.charAt(1);
+                mIssuerAuth[8] = (byte) code.charAt(0);
+                mIssuerAuth[9] = (byte) code.charAt(1);
+                mIcc.put(0x91, mIssuerAuth);
+            }
+        }
+        if (mScript71 != null) {
+            mIcc.put(0x71, mScript71);
+        }
+        if (mScript72 != null) {
+            mIcc.put(0x72, mScript72);
+        }
+        if (mIcc.length() > 0) {
+            mResponse.set(55, mIcc.buffer(), 0, mIcc.length());
+        }
+        return mPacker.pack(mResponse, rsp, rspOff);
+    }
+}
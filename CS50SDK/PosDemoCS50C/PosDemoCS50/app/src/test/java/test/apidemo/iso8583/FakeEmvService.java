@@ -0,0 +1,200 @@
+package test.apidemo.iso8583;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import test.apidemo.emv.EmvKernel;
+import test.apidemo.emv.TagSource;
+
+/**
+ * Stand-in for the terminal's contact EMV service, for running the online
+ * flow on a plain JVM.
+ *
+ * {@link #process()} charges the configured kernel time, makes up the card
+ * data and a fresh ARQC, and asks to go online. {@link #setOnlineResult}
+ * checks the ARPC in tag 91 the way {@link AcquirerSimulator} builds it and
+ * counts issuer scripts; {@link #emvFinal()} then approves only when the
+ * host approved and the ARPC was right.
+ */
+class FakeEmvService implements EmvKernel, TagSource {
+
+    static final int GO_ONLINE = 3;
+    static final int FINAL_APPROVED = 0;
+    static final int FINAL_DECLINED = 1;
+    static final int ERR_NO_ONLINE_RESULT = -1;
+
+    private final Map<Integer, byte[]> mTags = new HashMap<Integer, byte[]>();
+    private final byte[] mArqc = new byte[8];
+    private long mProcessNanos;
+    private long mFinalNanos;
+    private long mAmount;
+    private int mAtc;
+    private boolean mHaveResult;
+    private boolean mHostApproved;
+    private boolean mArpcValid;
+    private int mScripts;
+    private int mBadArpcs;
+
+    FakeEmvService() {
+        tag(0x5A, 0x47, 0x61, 0x73, (byte) 0x90, 0x01, 0x01, 0x01, 0x19);
+        tag(0x57, 0x47, 0x61, 0x73, (byte) 0x90, 0x01, 0x01, 0x01, 0x19, (byte) 0xD2, 0x51, 0x22, 0x01,
+                0x17, 0x58, (byte) 0x92, (byte) 0x88, (byte) 0x8F);
+        tag(0x5F24, 0x25, 0x12, 0x31);
+        tag(0x5F34, 0x01);
+        tag(0x5F2A, 0x06, 0x43);
+        tag(0x9F1A, 0x06, 0x43);
+        tag(0x84, (byte) 0xA0, 0, 0, 0, 0x03, 0x10, 0x10);
+        tag(0x82, 0x39, 0x00);
+        tag(0x95, 0, 0, 0, (byte) 0x80, 0);
+        tag(0x9A, 0x26, 0x10, 0x18);
+        tag(0x9C, 0x00);
+        tag(0x9F03, 0, 0, 0, 0, 0, 0);
+        tag(0x9F10, 0x06, 0x01, 0x0A, 0x03, (byte) 0xA0, 0, 0);
+        tag(0x9F27, (byte) 0x80);
+        tag(0x9F33, (byte) 0xE0, (byte) 0xF8, (byte) 0xC8);
+        tag(0x9F34, 0x42, 0x03, 0x00);
+        tag(0x9F35, 0x22);
+    }
+
+    /** Time spent in EmvProcess() and EmvFinal() */
+    void setLatency(long processMicros, long finalMicros) {
+        mProcessNanos = processMicros * 1000;
+        mFinalNanos = finalMicros * 1000;
+    }
+
+    void setTransAmount(long amount) {
+        mAmount = amount;
+    }
+
+    /** EmvProcess(): always asks to go online */
+    int process() {
+        pause(mProcessNanos);
+        mAtc++;
+        mHaveResult = false;
+        for (int i = 0; i < 8; i++) {
+            mArqc[i] = (byte) (mAtc * 31 + i * 7);
+        }
+        mTags.put(0x9F26, mArqc.clone());
+        mTags.put(0x9F36, new byte[]{(byte) (mAtc >> 8), (byte) mAtc});
+        mTags.put(0x9F37, new byte[]{(byte) (mAtc >> 24), (byte) (mAtc >> 16), (byte) (mAtc >> 8), (byte) mAtc});
+        byte[] amount = new byte[6];
+        long a = mAmount;
+        for (int i = 5; i >= 0; i--) {
+            amount[i] = (byte) ((a % 10) | ((a / 10 % 10) << 4));
+            a /= 100;
+        }
+        mTags.put(0x9F02, amount);
+        return GO_ONLINE;
+    }
+
+    /** EmvFinal() */
+    int emvFinal() {
+        pause(mFinalNanos);
+        if (!mHaveResult) {
+            return ERR_NO_ONLINE_RESULT;
+        }
+        return mHostApproved && mArpcValid ? FINAL_APPROVED : FINAL_DECLINED;
+    }
+
+    @Override
+    public int getTagData(byte[] buf, int max, int tag) {
+        byte[] v = mTags.get(tag);
+        if (v == null || v.length > max) {
+            return 0;
+        }
+        System.arraycopy(v, 0, buf, 0, v.length);
+        return v.length;
+    }
+
+    @Override
+    public int setOnlineResult(byte[] responseCode, byte[] issuerData, int len) {
+        mHaveResult = true;
+        mHostApproved = responseCode[0] == '0' && responseCode[1] == '0';
+        mArpcValid = false;
+        int p = 0;
+        while (p + 2 <= len) {
+            int tag = issuerData[p] & 0xFF;
+            int l = issuerData[p + 1] & 0xFF;
+            if (tag == 0x91 && l == 10) {
+                boolean ok = issuerData[p + 10] == responseCode[0] && issuerData[p + 11] == responseCode[1];
+                for (int i = 0; i < 8 && ok; i++) {
+                    int arc = i < 2 ? responseCode[i] : 0;
+                    ok = issuerData[p + 2 + i] == (byte) (mArqc[i] ^ arc);
+                }
+                mArpcValid = ok;
+            } else if (tag == 0x71 || tag == 0x72) {
+                mScripts++;
+            }
+            p += 2 + l;
+        }
+        if (!mArpcValid) {
+            mBadArpcs++;
+        }
+        return 0;
+    }
+
+    int getScripts() {
+        return mScripts;
+    }
+
+    int getBadArpcs() {
+        return mBadArpcs;
+    }
+
+    @Override
+    public int envParaInit() {
+        return 0;
+    }
+
+    @Override
+    public int clearAllAids() {
+        return 0;
+    }
+
+    @Override
+    public int clearOneAid(byte[] aid, int len) {
+        return 0;
+    }
+
+    @Override
+    public int addOneAid(byte[] buf, int len) {
+        return 0;
+    }
+
+    @Override
+    public int clearAllCapks() {
+        return 0;
+    }
+
+    @Override
+    public int clearOneCapk(byte[] key, int len) {
+        return 0;
+    }
+
+    @Override
+    public int addOneCapk(byte[] buf, int len) {
+        return 0;
+    }
+
+    @Override
+    public int saveTermParas(byte[] buf, int len, int flag) {
+        return 0;
+    }
+
+    private void tag(int tag, int... value) {
+        byte[] v = new byte[value.length];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = (byte) value[i];
+        }
+        mTags.put(tag, v);
+    }
+
+    private static void pause(long nanos) {
+        long until = System.nanoTime() + nanos;
+        long left;
+        while ((left = until - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+        }
+    }
+}
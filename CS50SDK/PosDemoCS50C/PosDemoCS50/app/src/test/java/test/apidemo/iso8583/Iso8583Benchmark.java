@@ -0,0 +1,174 @@
+package test.apidemo.iso8583;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.apidemo.emv.EmvTagSnapshot;
+import test.apidemo.util.Allocations;
+import test.apidemo.util.LatencyRecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Pack and unpack throughput for a full EMV authorisation request (with
+ * DE55 built from a tag snapshot) and its response.
+ *
+ * The report gives messages/s, per-message latency percentiles, wire size
+ * and bytes allocated per message on the calling thread; the last one
+ * should be 0 once the buffers have grown.
+ *
+ * Run on any JVM host with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.iso8583.Iso8583Benchmark \
+ *     -Dbench=true -Dbench.messages=200000
+ * </pre>
+ */
+public class Iso8583Benchmark {
+
+    private static final int MESSAGES = Integer.getInteger("bench.messages", 50000);
+    private static final int WARMUP = Integer.getInteger("bench.warmup", 20000);
+
+    private final Iso8583Packer mPacker = new Iso8583Packer(Iso8583Spec.binaryPos());
+    private final Iso8583Message mRequest = new Iso8583Message();
+    private final Iso8583Message mResponse = new Iso8583Message();
+    private final EmvTagSnapshot mSnapshot = newSnapshot();
+    private final byte[] mWire = new byte[1024];
+    private final byte[] mRspWire = new byte[1024];
+    private final OnlineResult mResult = new OnlineResult();
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void packRequest() {
+        run("pack 0200", new Step() {
+            int run(int i) {
+                return buildRequest(i);
+            }
+        });
+    }
+
+    @Test
+    public void unpackRequest() {
+        final int len = buildRequest(1);
+        run("unpack 0200", new Step() {
+            int run(int i) {
+                return mPacker.unpack(mWire, 0, len, mResponse) == len ? len : -1;
+            }
+        });
+    }
+
+    @Test
+    public void hostRoundTrip() {
+        final AcquirerSimulator host = new AcquirerSimulator(mPacker.getSpec());
+        host.setScripts(null, new byte[]{(byte) 0x9F, 0x18, 0x04, 0, 0, 0, 1});
+        run("pack+host+unpack+result", new Step() {
+            int run(int i) {
+                int len = buildRequest(i);
+                int rspLen = host.exchange(mWire, 0, len, mRspWire, 0);
+                if (rspLen < 0 || mPacker.unpack(mRspWire, 0, rspLen, mResponse) != rspLen
+                        || mResult.parse(mResponse) != 0 || !mResult.isApproved()) {
+                    return -1;
+                }
+                return len + rspLen;
+            }
+        });
+    }
+
+    private abstract static class Step {
+        /** @return bytes on the wire, or a negative error */
+        abstract int run(int i);
+    }
+
+    private int buildRequest(int stan) {
+        mRequest.clear().setMti(0x0200)
+                .setAscii(2, "4761739001010119")
+                .setNumber(3, 0, 6)
+                .setNumber(4, 1000 + stan % 5000, 12)
+                .setNumber(11, stan % 1000000, 6)
+                .setNumber(12, 123456, 6)
+                .setNumber(13, 1018, 4)
+                .setNumber(14, 2512, 4)
+                .setNumber(22, 51, 3)
+                .setNumber(23, 1, 3)
+                .setNumber(25, 0, 2)
+                .setAscii(35, "4761739001010119D25122011758928889")
+                .setAscii(41, "TERM0001")
+                .setAscii(42, "MERCHANT0000001")
+                .setNumber(49, 643, 3);
+        mRequest.setIccData(mSnapshot, EmvTagSnapshot.DE55_TAGS);
+        return mPacker.pack(mRequest, mWire, 0);
+    }
+
+    private void run(String name, Step step) {
+        LatencyRecorder latency = new LatencyRecorder(MESSAGES);
+        long bytes = 0;
+        long allocStart = 0;
+        long wallStart = 0;
+        for (int i = 0; i < WARMUP + MESSAGES; i++) {
+            if (i == WARMUP) {
+                allocStart = Allocations.allocatedBytes();
+                wallStart = System.nanoTime();
+            }
+            long t0 = System.nanoTime();
+            int ret = step.run(i + 1);
+            long t1 = System.nanoTime();
+            if (ret <= 0) {
+                fail(name + " message " + i + " returned " + ret);
+            }
+            if (i >= WARMUP) {
+                latency.record(t1 - t0);
+                bytes += ret;
+            }
+        }
+        long wall = System.nanoTime() - wallStart;
+        long alloc = Allocations.allocatedBytes() - allocStart;
+        if (allocStart >= 0) {
+            assertEquals(name + " allocates", 0, alloc / MESSAGES);
+        }
+        // per-message times are far below the millisecond summary() resolution
+        System.out.printf("%s: %d msgs, %.0f msgs/s, %d bytes/msg on the wire, %s bytes/msg allocated%n"
+                        + "  p50=%.2f p90=%.2f p99=%.2f max=%.2f us%n", name, MESSAGES, MESSAGES * 1e9 / wall,
+                bytes / MESSAGES, allocStart < 0 ? "n/a" : String.valueOf(alloc / MESSAGES),
+                latency.percentile(50) / 1e3, latency.percentile(90) / 1e3,
+                latency.percentile(99) / 1e3, latency.max() / 1e3);
+    }
+
+    private static EmvTagSnapshot newSnapshot() {
+        EmvTagSnapshot s = new EmvTagSnapshot();
+        s.reset(null);
+        put(s, 0x9F26, "1A2B3C4D5E6F7081");
+        put(s, 0x9F27, "80");
+        put(s, 0x9F10, "06010A03A00000");
+        put(s, 0x9F37, "12345678");
+        put(s, 0x9F36, "0007");
+        put(s, 0x95, "0000008000");
+        put(s, 0x9A, "261018");
+        put(s, 0x9C, "00");
+        put(s, 0x9F02, "000000001000");
+        put(s, 0x5F2A, "0643");
+        put(s, 0x82, "3900");
+        put(s, 0x9F1A, "0643");
+        put(s, 0x9F03, "000000000000");
+        put(s, 0x9F33, "E0F8C8");
+        put(s, 0x9F34, "420300");
+        put(s, 0x9F35, "22");
+        put(s, 0x9F1E, "3132333435363738");
+        put(s, 0x84, "A0000000031010");
+        put(s, 0x9F09, "008C");
+        put(s, 0x9F41, "00000001");
+        return s;
+    }
+
+    private static void put(EmvTagSnapshot s, int tag, String hex) {
+        byte[] v = new byte[hex.length() / 2];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        s.put(tag, v, 0, v.length);
+    }
+}
@@ -0,0 +1,209 @@
+package test.apidemo.iso8583;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import test.apidemo.emv.EmvTagSnapshot;
+import test.apidemo.emv.TlvWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Wire layout, round trips through {@link AcquirerSimulator} and the error
+ * paths of {@link Iso8583Packer}, plus the {@link OnlineResult} handed to
+ * EmvSetOnlineResult().
+ */
+public class Iso8583Test {
+
+    private final Iso8583Spec mSpec = Iso8583Spec.binaryPos();
+    private final Iso8583Packer mPacker = new Iso8583Packer(mSpec);
+    private final Iso8583Message mMsg = new Iso8583Message();
+    private final byte[] mOut = new byte[1024];
+
+    @Test
+    public void packsKnownLayout() {
+        mMsg.clear().setMti(0x0200)
+                .setNumber(3, 0, 6)
+                .setNumber(4, 1234, 12)
+                .setNumber(11, 42, 6)
+                .setAscii(41, "TERM01");
+        int len = mPacker.pack(mMsg, mOut, 0);
+        assertEquals("0200" + "3020000000800000" + "000000" + "000000001234" + "000042"
+                + "5445524D30312020", hex(mOut, 0, len));
+
+        Iso8583Message back = new Iso8583Message(16);
+        assertEquals(len, mPacker.unpack(mOut, 0, len, back));
+        assertEquals(0x0200, back.getMti());
+        assertEquals(1234, back.getNumber(4));
+        assertTrue(back.valueEquals(41, "TERM01  "));
+        assertFalse(back.has(2));
+    }
+
+    @Test
+    public void variableAndOddLengthFields() {
+        mMsg.clear().setMti(0x0100)
+                .setAscii(2, "4761739001010119")
+                .setAscii(35, "4761739001010119D25122011758928889")
+                .setNumber(22, 51, 3);
+        int len = mPacker.pack(mMsg, mOut, 0);
+        String hex = hex(mOut, 0, len);
+        // LLVAR BCD length, then digits; 34 track 2 digits fill 17 bytes exactly
+        assertTrue(hex.contains("164761739001010119"));
+        assertTrue(hex.contains("344761739001010119D25122011758928889"));
+        assertTrue(hex.contains("0051"));
+
+        mMsg.setAscii(35, "4761739001010119D251220");
+        len = mPacker.pack(mMsg, mOut, 0);
+        assertTrue(hex(mOut, 0, len).contains("234761739001010119D251220F"));
+
+        Iso8583Message back = new Iso8583Message();
+        assertEquals(len, mPacker.unpack(mOut, 0, len, back));
+        assertEquals("4761739001010119", back.getString(2));
+        assertEquals("4761739001010119D251220", back.getString(35));
+        assertEquals(51, back.getNumber(22));
+    }
+
+    @Test
+    public void secondaryBitmapOnlyWhenNeeded() {
+        byte[] mac = {1, 2, 3, 4, 5, 6, 7, 8};
+        mMsg.clear().setMti(0x0200).setNumber(11, 1, 6);
+        int primary = mPacker.pack(mMsg, mOut, 0);
+        assertEquals(0, mOut[2] & 0x80);
+
+        mMsg.set(128, mac, 0, mac.length);
+        int len = mPacker.pack(mMsg, mOut, 0);
+        assertEquals(primary + 8 + 8, len);
+        assertEquals(0x80, mOut[2] & 0x80);
+        assertEquals(0x01, mOut[2 + 15]);
+
+        Iso8583Message back = new Iso8583Message();
+        assertEquals(len, mPacker.unpack(mOut, 0, len, back));
+        assertEquals(8, back.length(128));
+    }
+
+    @Test
+    public void iccDataFromSnapshot() {
+        EmvTagSnapshot snapshot = new EmvTagSnapshot();
+        snapshot.reset(null);
+        byte[] ac = {1, 2, 3, 4, 5, 6, 7, 8};
+        byte[] pan = {0x47, 0x61, 0x73, (byte) 0x90};
+        snapshot.put(0x9F26, ac, 0, ac.length);
+        snapshot.put(0x5A, pan, 0, pan.length);
+        snapshot.put(0x9F36, new byte[]{0, 7}, 0, 2);
+
+        assertEquals(2, mMsg.clear().setIccData(snapshot, EmvTagSnapshot.DE55_TAGS));
+        assertEquals("9F2608" + "0102030405060708" + "9F3602" + "0007",
+                hex(mMsg.buffer(), mMsg.offset(55), mMsg.length(55)));
+    }
+
+    @Test
+    public void approvalRoundTrip() {
+        AcquirerSimulator host = new AcquirerSimulator(mSpec);
+        byte[] script = {(byte) 0x9F, 0x18, 0x04, 0, 0, 0, 1, (byte) 0x86, 0x05, (byte) 0x84, 0x24, 0, 0, 0};
+        host.setScripts(null, script);
+        int len = authRequest(5000);
+        byte[] rsp = new byte[512];
+        int rspLen = host.exchange(mOut, 0, len, rsp, 0);
+        assertTrue(rspLen > 0);
+
+        Iso8583Message response = new Iso8583Message();
+        assertEquals(rspLen, mPacker.unpack(rsp, 0, rspLen, response));
+        assertEquals(0x0210, response.getMti());
+        assertEquals(5000, response.getNumber(4));
+        assertEquals(123456, response.getNumber(11));
+
+        OnlineResult result = new OnlineResult();
+        assertEquals(0, result.parse(response));
+        assertTrue(result.isApproved());
+        assertArrayEquals(new byte[]{'0', '0'}, result.getResponseCode());
+        assertEquals("000001", new String(result.getAuthCode(), 0, result.getAuthCodeLength()));
+        // ARQC 0102030405060708 XOR "00", then the response code
+        byte[] arpc = {0x31, 0x32, 3, 4, 5, 6, 7, 8, '0', '0'};
+        TlvWriter expected = new TlvWriter().put(0x91, arpc).put(0x72, script);
+        assertArrayEquals(expected.toByteArray(),
+                Arrays.copyOf(result.getIssuerData(), result.getIssuerDataLength()));
+    }
+
+    @Test
+    public void declineCarriesArpcOnly() {
+        AcquirerSimulator host = new AcquirerSimulator(mSpec);
+        host.setDeclineAbove(1000, "51");
+        int len = authRequest(5000);
+        byte[] rsp = new byte[512];
+        int rspLen = host.exchange(mOut, 0, len, rsp, 0);
+
+        Iso8583Message response = new Iso8583Message();
+        mPacker.unpack(rsp, 0, rspLen, response);
+        OnlineResult result = new OnlineResult();
+        assertEquals(0, result.parse(response));
+        assertFalse(result.isApproved());
+        assertArrayEquals(new byte[]{'5', '1'}, result.getResponseCode());
+        assertEquals(0, result.getAuthCodeLength());
+        assertEquals(2 + 10, result.getIssuerDataLength());
+        assertEquals((byte) 0x91, result.getIssuerData()[0]);
+    }
+
+    @Test
+    public void asciiProfileRoundTrip() {
+        Iso8583Spec spec = Iso8583Spec.binaryPos().setAsciiMti(true).setAsciiLengths(true);
+        Iso8583Packer packer = new Iso8583Packer(spec);
+        mMsg.clear().setMti(0x0800).setAscii(2, "123456789012345").setAscii(62, "HELLO");
+        int len = packer.pack(mMsg, mOut, 0);
+        assertEquals('0', mOut[0]);
+        assertEquals('8', mOut[1]);
+
+        Iso8583Message back = new Iso8583Message();
+        assertEquals(len, packer.unpack(mOut, 0, len, back));
+        assertEquals(0x0800, back.getMti());
+        assertEquals("123456789012345", back.getString(2));
+        assertEquals("HELLO", back.getString(62));
+    }
+
+    @Test
+    public void errors() {
+        assertEquals(Iso8583Packer.ERR_LENGTH,
+                mPacker.pack(mMsg.clear().setNumber(3, 1, 7), mOut, 0));
+        assertEquals(Iso8583Packer.ERR_FIELD,
+                mPacker.pack(mMsg.clear().setAscii(5, "1"), mOut, 0));
+        assertEquals(Iso8583Packer.ERR_FORMAT,
+                mPacker.pack(mMsg.clear().setAscii(4, "12A"), mOut, 0));
+        assertEquals(Iso8583Packer.ERR_LENGTH,
+                mPacker.pack(mMsg.clear().set(52, mOut, 0, 4), mOut, 0));
+        assertEquals(Iso8583Packer.ERR_SPACE,
+                mPacker.pack(mMsg.clear().setNumber(4, 1, 12), new byte[12], 0));
+
+        int len = mPacker.pack(mMsg.clear().setMti(0x0200).setNumber(4, 1, 12), mOut, 0);
+        Iso8583Message back = new Iso8583Message();
+        assertEquals(Iso8583Packer.ERR_SPACE, mPacker.unpack(mOut, 0, len - 1, back));
+        mOut[len - 1] = 0x1A;
+        assertEquals(Iso8583Packer.ERR_FORMAT, mPacker.unpack(mOut, 0, len, back));
+    }
+
+    /** Pack an authorisation request into {@link #mOut} */
+    private int authRequest(long amount) {
+        byte[] icc = {(byte) 0x9F, 0x26, 0x08, 1, 2, 3, 4, 5, 6, 7, 8, (byte) 0x9F, 0x36, 0x02, 0, 7};
+        mMsg.clear().setMti(0x0200)
+                .setAscii(2, "4761739001010119")
+                .setNumber(3, 0, 6)
+                .setNumber(4, amount, 12)
+                .setNumber(11, 123456, 6)
+                .setNumber(22, 51, 3)
+                .setAscii(41, "TERM0001")
+                .setAscii(42, "MERCHANT0000001")
+                .setNumber(49, 643, 3)
+                .set(55, icc, 0, icc.length);
+        return mPacker.pack(mMsg, mOut, 0);
+    }
+
+    private static String hex(byte[] b, int off, int len) {
+        StringBuilder sb = new StringBuilder(len * 2);
+        for (int i = off; i < off + len; i++) {
+            sb.append(String.format("%02X", b[i] & 0xFF));
+        }
+        return sb.toString();
+    }
+}
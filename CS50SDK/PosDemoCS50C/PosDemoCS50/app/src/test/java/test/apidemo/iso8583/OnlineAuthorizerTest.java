@@ -0,0 +1,83 @@
+package test.apidemo.iso8583;
+
+import org.junit.Test;
+
+import test.apidemo.emv.EmvTagSnapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Online flow from kernel tags to EmvSetOnlineResult() and EmvFinal(),
+ * with {@link FakeEmvService} as the kernel and {@link AcquirerSimulator}
+ * as the host.
+ */
+public class OnlineAuthorizerTest {
+
+    private final Iso8583Spec mSpec = Iso8583Spec.binaryPos();
+    private final FakeEmvService mKernel = new FakeEmvService();
+    private final AcquirerSimulator mHost = new AcquirerSimulator(mSpec);
+    private final OnlineAuthorizer mAuthorizer = new OnlineAuthorizer(mSpec, mHost);
+    private final EmvTagSnapshot mSnapshot = new EmvTagSnapshot();
+
+    @Test
+    public void approvedWithScripts() {
+        mHost.setScripts(new byte[]{(byte) 0x86, 0x04, (byte) 0x84, 0x1E, 0, 0},
+                new byte[]{(byte) 0x86, 0x04, (byte) 0x84, 0x24, 0, 0});
+        assertEquals(0, online(1, 2500));
+        assertTrue(mAuthorizer.getResult().isApproved());
+        assertEquals(0, mAuthorizer.apply(mKernel));
+        assertEquals(FakeEmvService.FINAL_APPROVED, mKernel.emvFinal());
+        assertEquals(2, mKernel.getScripts());
+
+        Iso8583Message rsp = mAuthorizer.getResponse();
+        assertEquals("4761739001010119", rsp.getString(2));
+        assertEquals(2500, rsp.getNumber(4));
+        assertEquals(643, rsp.getNumber(49));
+        assertEquals(6, rsp.length(38));
+    }
+
+    @Test
+    public void declinedByHost() {
+        mHost.setDeclineAbove(1000, "51");
+        assertEquals(0, online(2, 2500));
+        assertFalse(mAuthorizer.getResult().isApproved());
+        mAuthorizer.apply(mKernel);
+        assertEquals(FakeEmvService.FINAL_DECLINED, mKernel.emvFinal());
+        assertEquals(0, mKernel.getBadArpcs());
+    }
+
+    @Test
+    public void linkDownLeavesKernelWithoutResult() {
+        mHost.setOnline(false);
+        assertEquals(AcquirerSimulator.ERR_LINK_DOWN, online(3, 100));
+        assertEquals(FakeEmvService.ERR_NO_ONLINE_RESULT, mKernel.emvFinal());
+    }
+
+    @Test
+    public void arpcForAnotherCardIsCaught() {
+        assertEquals(0, online(4, 100));
+        // a second transaction on the kernel changes the ARQC
+        mKernel.process();
+        mAuthorizer.apply(mKernel);
+        assertEquals(FakeEmvService.FINAL_DECLINED, mKernel.emvFinal());
+        assertEquals(1, mKernel.getBadArpcs());
+    }
+
+    @Test
+    public void requestNeedsCardData() {
+        mSnapshot.reset(mKernel);
+        assertEquals(OnlineAuthorizer.ERR_NO_CARD_DATA,
+                mAuthorizer.authorize(mSnapshot, 5, OnlineAuthorizer.ENTRY_CHIP));
+        assertEquals(0, mHost.getRequests());
+    }
+
+    private int online(int stan, long amount) {
+        mKernel.setTransAmount(amount);
+        assertEquals(FakeEmvService.GO_ONLINE, mKernel.process());
+        mSnapshot.reset(mKernel);
+        mSnapshot.fetch(EmvTagSnapshot.ONLINE_TAGS);
+        return mAuthorizer.authorize(mSnapshot, stan, OnlineAuthorizer.ENTRY_CHIP);
+    }
+}
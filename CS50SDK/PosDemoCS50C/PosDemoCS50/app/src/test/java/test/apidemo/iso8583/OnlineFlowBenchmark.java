@@ -0,0 +1,113 @@
+package test.apidemo.iso8583;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.apidemo.emv.CardBrand;
+import test.apidemo.emv.EmvTagSnapshot;
+import test.apidemo.emv.TimelineStats;
+import test.apidemo.emv.TxnTimeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * End-to-end online chip transactions: {@link FakeEmvService} for the
+ * kernel, {@link AcquirerSimulator} for the host, and the app code in
+ * between (tag snapshot, ISO 8583 request, EmvSetOnlineResult()).
+ *
+ * Reports transactions/s and per-phase percentiles from
+ * {@link TimelineStats}, so the online round trip and its tail can be set
+ * against kernel time. Host latency is base plus jitter, with a fraction of
+ * slow answers.
+ *
+ * Run on any JVM host with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.iso8583.OnlineFlowBenchmark \
+ *     -Dbench=true -Dbench.txns=2000 -Dbench.hostUs=150000 -Dbench.hostJitterUs=50000 -Dbench.slowPermille=20
+ * </pre>
+ */
+public class OnlineFlowBenchmark {
+
+    private static final int TXNS = Integer.getInteger("bench.txns", 300);
+    private static final int WARMUP = Integer.getInteger("bench.warmup", 50);
+    private static final int PROCESS_US = Integer.getInteger("bench.processUs", 3000);
+    private static final int FINAL_US = Integer.getInteger("bench.finalUs", 1000);
+    private static final int HOST_US = Integer.getInteger("bench.hostUs", 2000);
+    private static final int HOST_JITTER_US = Integer.getInteger("bench.hostJitterUs", 1000);
+    private static final int SLOW_PERMILLE = Integer.getInteger("bench.slowPermille", 10);
+    private static final int SLOW_US = Integer.getInteger("bench.slowUs", 20000);
+    private static final int DECLINE_ABOVE = Integer.getInteger("bench.declineAbove", 9000);
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void onlineTransactions() {
+        Iso8583Spec spec = Iso8583Spec.binaryPos();
+        FakeEmvService kernel = new FakeEmvService();
+        kernel.setLatency(PROCESS_US, FINAL_US);
+        AcquirerSimulator host = new AcquirerSimulator(spec);
+        host.setLatency(HOST_US, HOST_JITTER_US);
+        host.setSlowAnswers(SLOW_PERMILLE / 1000.0, SLOW_US);
+        host.setDeclineAbove(DECLINE_ABOVE, "51");
+        host.setScripts(null, new byte[]{(byte) 0x86, 0x04, (byte) 0x84, 0x24, 0, 0});
+        OnlineAuthorizer authorizer = new OnlineAuthorizer(spec, host);
+        EmvTagSnapshot snapshot = new EmvTagSnapshot();
+        TxnTimeline timeline = new TxnTimeline();
+        TimelineStats stats = new TimelineStats(TXNS);
+
+        int approved = 0;
+        long wallStart = 0;
+        for (int i = 0; i < WARMUP + TXNS; i++) {
+            if (i == WARMUP) {
+                wallStart = System.nanoTime();
+                host.setOnline(true);
+            }
+            long amount = 100 + (i * 37) % 10000;
+            timeline.begin();
+            timeline.start(TxnTimeline.PHASE_KERNEL);
+            kernel.setTransAmount(amount);
+            kernel.process();
+            timeline.end(TxnTimeline.PHASE_KERNEL);
+
+            timeline.start(TxnTimeline.PHASE_TAGS);
+            snapshot.reset(kernel);
+            snapshot.fetch(EmvTagSnapshot.ONLINE_TAGS);
+            timeline.end(TxnTimeline.PHASE_TAGS);
+
+            timeline.start(TxnTimeline.PHASE_ONLINE);
+            int ret = authorizer.authorize(snapshot, i % 999999 + 1, OnlineAuthorizer.ENTRY_CHIP);
+            if (ret == 0) {
+                ret = authorizer.apply(kernel);
+            }
+            timeline.end(TxnTimeline.PHASE_ONLINE);
+            if (ret != 0) {
+                fail("transaction " + i + " online ret " + ret);
+            }
+
+            timeline.start(TxnTimeline.PHASE_FINAL);
+            int result = kernel.emvFinal();
+            timeline.end(TxnTimeline.PHASE_FINAL);
+            if (result != (amount > DECLINE_ABOVE ? FakeEmvService.FINAL_DECLINED : FakeEmvService.FINAL_APPROVED)) {
+                fail("transaction " + i + " final " + result);
+            }
+
+            if (i >= WARMUP) {
+                stats.add(CardBrand.fromSnapshot(snapshot), timeline);
+                if (result == FakeEmvService.FINAL_APPROVED) {
+                    approved++;
+                }
+            }
+        }
+        long wall = System.nanoTime() - wallStart;
+        assertEquals(0, kernel.getBadArpcs());
+
+        System.out.printf("online chip transactions: %d, %.1f txns/s, %d approved, host %d+%d us, "
+                        + "%d permille slow by %d us%n%s", TXNS, TXNS * 1e9 / wall, approved,
+                HOST_US, HOST_JITTER_US, SLOW_PERMILLE, SLOW_US, stats.report());
+    }
+}
@@ -0,0 +1,117 @@
+package test.apidemo.iso8583;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import test.apidemo.emv.TlvWriter;
+import test.apidemo.saf.SafQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * {@link SafQueue} draining through {@link SafUploader} to
+ * {@link AcquirerSimulator}: the advice each stored item becomes, and how
+ * host answers and link failures map to the queue's results.
+ */
+public class SafUploaderTest {
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private final Iso8583Spec mSpec = Iso8583Spec.binaryPos();
+    private final AcquirerSimulator mHost = new AcquirerSimulator(mSpec);
+    private final Iso8583Message mLast = new Iso8583Message();
+    private final TlvWriter mTlv = new TlvWriter();
+    private SafQueue mQueue;
+
+    @Before
+    public void setUp() throws IOException {
+        // keeps the last request for the checks
+        AcquirerLink link = new AcquirerLink() {
+            @Override
+            public int exchange(byte[] req, int off, int len, byte[] rsp, int rspOff) {
+                int ret = mHost.exchange(req, off, len, rsp, rspOff);
+                if (ret >= 0) {
+                    new Iso8583Packer(mSpec).unpack(req, off, len, mLast);
+                }
+                return ret;
+            }
+        };
+        mQueue = new SafQueue(mTmp.newFolder("saf"), 64 * 1024);
+        mQueue.open();
+        mQueue.setBackoff(0, 0);
+        mQueue.setHostLink(new SafUploader(mSpec, link));
+    }
+
+    @Test
+    public void deferredAuthorisationGoesAsAdvice() {
+        mTlv.reset().putBcd(SafUploader.TAG_MTI, 200, 2)
+                .put(0x9F26, new byte[]{1, 2, 3, 4, 5, 6, 7, 8})
+                .putBcd(0x9F02, 2500, 6)
+                .put(0x5A, new byte[]{0x47, 0x61})
+                .put(SafUploader.TAG_CARD, new byte[]{(byte) 0xAB, (byte) 0xCD})
+                .put(SafUploader.TAG_KSN, new byte[]{(byte) 0xFF, (byte) 0xFF, 0x01});
+        assertEquals(0, mQueue.enqueue(17, mTlv.buffer(), 0, mTlv.length()));
+
+        assertEquals(1, mQueue.drain());
+        assertEquals(0, mQueue.size());
+        assertEquals(0x0220, mLast.getMti());
+        assertEquals(17, mLast.getNumber(11));
+        assertEquals(2500, mLast.getNumber(4));
+        assertEquals("FFFF01ABCD", mLast.getString(62));
+        // DE55 objects only: no private tags, and no clear card data
+        assertFalse(mLast.has(2));
+        assertEquals(3 + 8 + 3 + 6, mLast.length(55));
+    }
+
+    @Test
+    public void reversalGoesAs0420() {
+        mTlv.reset().putBcd(SafUploader.TAG_MTI, 400, 2).putBcd(0x9F02, 100, 6);
+        mQueue.enqueue(18, mTlv.buffer(), 0, mTlv.length());
+        assertEquals(1, mQueue.drain());
+        assertEquals(0x0420, mLast.getMti());
+        assertFalse(mLast.has(62));
+    }
+
+    @Test
+    public void hostAnswersMapToQueueResults() {
+        mTlv.reset().putBcd(SafUploader.TAG_MTI, 200, 2);
+        mQueue.enqueue(1, mTlv.buffer(), 0, mTlv.length());
+
+        mHost.setResponseCode("96");
+        assertEquals(0, mQueue.drain());
+        assertEquals(1, mQueue.get(1).getAttempts());
+
+        mHost.setResponseCode("05");
+        assertEquals(0, mQueue.drain());
+        assertEquals(0, mQueue.size());
+        assertEquals(1, mQueue.getRejected());
+
+        // booked from an earlier upload
+        mQueue.enqueue(2, mTlv.buffer(), 0, mTlv.length());
+        mHost.setResponseCode("94");
+        assertEquals(1, mQueue.drain());
+    }
+
+    @Test
+    public void linkDownKeepsEverything() {
+        mTlv.reset().putBcd(SafUploader.TAG_MTI, 200, 2);
+        mQueue.enqueue(1, mTlv.buffer(), 0, mTlv.length());
+        mQueue.enqueue(2, mTlv.buffer(), 0, mTlv.length());
+
+        mHost.setOnline(false);
+        assertEquals(AcquirerLink.ERR_LINK_DOWN, mQueue.drain());
+        assertEquals(2, mQueue.size());
+        assertEquals(0, mQueue.get(1).getAttempts());
+
+        mHost.setOnline(true);
+        assertEquals(2, mQueue.drain());
+        assertEquals(0, mQueue.size());
+        assertEquals(2, mHost.getRequests());
+    }
+}
@@ -0,0 +1,200 @@
+package test.apidemo.journal;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import test.apidemo.emv.TlvWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Recovery of the journal after a crash: a torn tail and a damaged record
+ * cut the segment, rotation keeps the segment limit, and a transaction that
+ * never completes moves forward until it is marked reversed.
+ */
+public class TxnJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private final TlvWriter mTlv = new TlvWriter(64);
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = mTmp.newFolder("journal");
+    }
+
+    @Test
+    public void tornTailIsCutOnOpen() throws IOException {
+        TxnJournal journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        assertEquals(0, journal.open());
+        int txn = journal.begin(amount(100));
+        assertEquals(1, txn);
+        assertEquals(0, journal.append(txn, TxnJournal.PHASE_GENAC, amount(100)));
+        journal.close();
+
+        // half a record written when the process died
+        long end = 16 + 2 * (12 + amount(100).length());
+        RandomAccessFile f = new RandomAccessFile(segment(0), "rw");
+        f.seek(end);
+        f.write(new byte[]{0, 20, TxnJournal.PHASE_COMPLETE, 0, 0, 0, 0, 1, (byte) 0x9F, 0x02});
+        f.close();
+
+        journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        assertEquals(2, journal.open());
+        assertArrayEquals(new int[]{1}, journal.getOpenTransactions());
+        // the tail was wiped, so the next record lands where the torn one was
+        assertEquals(0, journal.append(txn, TxnJournal.PHASE_COMPLETE, result(0)));
+        journal.close();
+
+        journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        assertEquals(3, journal.open());
+        assertEquals(0, journal.getOpenTransactions().length);
+        assertEquals(2, journal.begin(amount(200)));
+    }
+
+    @Test
+    public void recordFailingItsCrcEndsTheSegment() throws IOException {
+        TxnJournal journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        journal.open();
+        for (int i = 0; i < 3; i++) {
+            int txn = journal.begin(amount(100 + i));
+            journal.append(txn, TxnJournal.PHASE_COMPLETE, result(0));
+        }
+        journal.close();
+
+        // one bit flipped in the amount of the second transaction
+        long second = 16 + 12 + amount(100).length() + 12 + result(0).length();
+        RandomAccessFile f = new RandomAccessFile(segment(0), "rw");
+        f.seek(second + 8 + 5);
+        int b = f.read();
+        f.seek(second + 8 + 5);
+        f.write(b ^ 0x01);
+        f.close();
+
+        journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        assertEquals(2, journal.open());
+        assertEquals(0, journal.getOpenTransactions().length);
+        assertEquals(2, journal.begin(amount(300)));
+        assertEquals(3, scan(journal).size());
+    }
+
+    @Test
+    public void rotationKeepsTheSegmentLimit() throws IOException {
+        TxnJournal journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        journal.open();
+        for (int i = 0; i < 200; i++) {
+            int txn = journal.begin(amount(i));
+            assertEquals(i + 1, txn);
+            assertEquals(0, journal.append(txn, TxnJournal.PHASE_COMPLETE, result(0)));
+        }
+        assertEquals(2, journal.getSegmentCount());
+        assertEquals(2, mDir.list().length);
+        journal.close();
+
+        journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        assertTrue(journal.open() > 0);
+        assertEquals(201, journal.begin(amount(0)));
+    }
+
+    @Test
+    public void openTransactionMovesForwardUntilReversed() throws IOException {
+        TxnJournal journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        journal.open();
+        assertEquals(1, journal.begin(amount(777)));
+        journal.append(1, TxnJournal.PHASE_GENAC, result(3));
+        journal.close();
+
+        // the crash left transaction 1 open; the lane goes on without it
+        journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        journal.open();
+        for (int i = 0; i < 200; i++) {
+            int txn = journal.begin(amount(i));
+            journal.append(txn, TxnJournal.PHASE_COMPLETE, result(0));
+        }
+        assertEquals(2, mDir.list().length);
+        assertArrayEquals(new int[]{1}, journal.getOpenTransactions());
+        journal.close();
+
+        journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        journal.open();
+        assertArrayEquals(new int[]{1}, journal.getOpenTransactions());
+        List<int[]> first = new ArrayList<int[]>();
+        for (int[] r : scan(journal)) {
+            if (r[0] == 1) {
+                first.add(r);
+            }
+        }
+        assertEquals(2, first.size());
+        assertEquals(TxnJournal.PHASE_START, first.get(0)[1]);
+        assertEquals(TxnJournal.PHASE_GENAC, first.get(1)[1]);
+
+        assertEquals(TxnJournal.ERR_NOT_OPEN, journal.markReversed(2, result(0)));
+        assertEquals(0, journal.markReversed(1, result(0)));
+        assertEquals(0, journal.getOpenTransactions().length);
+        journal.close();
+
+        journal = new TxnJournal(mDir, SEGMENT_SIZE, 2);
+        journal.open();
+        assertEquals(0, journal.getOpenTransactions().length);
+        assertEquals(202, journal.begin(amount(0)));
+    }
+
+    @Test
+    public void openRecordsTooLargeToMoveKeepTheirSegment() throws IOException {
+        TxnJournal journal = new TxnJournal(mDir, SEGMENT_SIZE, 1);
+        journal.open();
+        byte[] big = new byte[2500];
+        int first = journal.begin(big, 0, big.length);
+        // no room for the first next to the second in a fresh segment
+        int second = journal.begin(big, 0, 2000);
+        assertEquals(2, journal.getSegmentCount());
+        assertArrayEquals(new int[]{first, second}, journal.getOpenTransactions());
+
+        journal.append(first, TxnJournal.PHASE_COMPLETE, result(0));
+        journal.append(second, TxnJournal.PHASE_COMPLETE, result(0));
+        for (int i = 0; i < 100; i++) {
+            int txn = journal.begin(amount(i));
+            journal.append(txn, TxnJournal.PHASE_COMPLETE, result(0));
+        }
+        assertEquals(1, journal.getSegmentCount());
+        assertEquals(1, mDir.list().length);
+    }
+
+    private TlvWriter amount(long value) {
+        return mTlv.reset().putBcd(0x9F02, value, 6).putByte(0x9C, 0x00);
+    }
+
+    private TlvWriter result(int ret) {
+        return mTlv.reset().putInt(TxnJournal.TAG_RESULT, ret, 4);
+    }
+
+    private File segment(long seq) {
+        return new File(mDir, String.format("journal-%08d.seg", seq));
+    }
+
+    /** txn and phase of every record, in scan order */
+    private static List<int[]> scan(TxnJournal journal) throws IOException {
+        final List<int[]> records = new ArrayList<int[]>();
+        journal.scan(new TxnJournal.Visitor() {
+            @Override
+            public void record(long segment, int txn, int phase, byte[] buf, int off, int len) {
+                records.add(new int[]{txn, phase});
+            }
+        });
+        return records;
+    }
+}
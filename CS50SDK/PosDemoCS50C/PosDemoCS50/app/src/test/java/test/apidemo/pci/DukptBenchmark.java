@@ -0,0 +1,101 @@
+package test.apidemo.pci;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.apidemo.util.LatencyRecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Keys per second of the software DUKPT engines: the originator stepping
+ * to the next transaction and producing its PIN key, and the host deriving
+ * the PIN key of a KSN from the initial key.
+ *
+ * The originator cost is flat (one register read plus the derivations for
+ * the new key's children, one on average); the host cost grows with the
+ * one bits of the counter, so the host loop uses the originator's KSNs.
+ *
+ * Run on any JVM host with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.pci.DukptBenchmark \
+ *     -Dbench=true -Dbench.keys=200000
+ * </pre>
+ */
+public class DukptBenchmark {
+
+    private static final int KEYS = Integer.getInteger("bench.keys", 20000);
+    private static final int WARMUP = Integer.getInteger("bench.warmup", 5000);
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void tdes() {
+        DukptTdes dukpt = new DukptTdes();
+        byte[] ksn = DukptTest.bytes("FFFF9876543210E00000");
+        byte[] ipek = new byte[DukptTdes.KEY_LENGTH];
+        dukpt.deriveInitialKey(DukptTest.bytes("0123456789ABCDEFFEDCBA9876543210"), ksn, 0, ipek, 0);
+        run("TDES", dukpt, ipek, ksn);
+    }
+
+    @Test
+    public void aes128() {
+        DukptAes dukpt = new DukptAes(DukptAes.KEY_AES128);
+        byte[] ksn = DukptTest.bytes("123456789012345600000000");
+        byte[] ik = new byte[16];
+        dukpt.deriveInitialKey(DukptTest.bytes("FEDCBA9876543210F1F1F1F1F1F1F1F1"), ksn, 0, ik, 0);
+        run("AES-128", dukpt, ik, ksn);
+    }
+
+    private static void run(String name, Dukpt dukpt, byte[] initialKey, byte[] ksn) {
+        byte[] key = new byte[32];
+        byte[] expected = new byte[32];
+        byte[][] ksns = new byte[KEYS][dukpt.getKsnLength()];
+        LatencyRecorder originator = new LatencyRecorder(KEYS);
+        LatencyRecorder host = new LatencyRecorder(KEYS);
+
+        dukpt.load(initialKey, ksn, 0);
+        for (int i = 0; i < WARMUP; i++) {
+            dukpt.next();
+            dukpt.getKey(Dukpt.USAGE_PIN, key, 0);
+        }
+        dukpt.load(initialKey, ksn, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < KEYS; i++) {
+            long t0 = System.nanoTime();
+            if (dukpt.next() != 0) {
+                fail(name + " ran out after " + i + " keys");
+            }
+            dukpt.getKey(Dukpt.USAGE_PIN, key, 0);
+            originator.record(System.nanoTime() - t0);
+            dukpt.getKsn(ksns[i], 0);
+        }
+        long originatorNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < KEYS; i++) {
+            long t0 = System.nanoTime();
+            dukpt.deriveKey(initialKey, ksns[i], 0, Dukpt.USAGE_PIN, expected, 0);
+            host.record(System.nanoTime() - t0);
+        }
+        long hostNanos = System.nanoTime() - start;
+        dukpt.deriveKey(initialKey, ksns[KEYS - 1], 0, Dukpt.USAGE_PIN, expected, 0);
+        assertEquals(DukptTest.hex(expected, 16), DukptTest.hex(key, 16));
+
+        System.out.printf("%s DUKPT, %d keys up to counter %x%n"
+                        + "  originator %.0f keys/s, p50=%.2f p99=%.2f max=%.2f us%n"
+                        + "  host       %.0f keys/s, p50=%.2f p99=%.2f max=%.2f us%n",
+                name, KEYS, dukpt.getCounter(),
+                KEYS * 1e9 / originatorNanos, us(originator, 50), us(originator, 99), us(originator, 100),
+                KEYS * 1e9 / hostNanos, us(host, 50), us(host, 99), us(host, 100));
+    }
+
+    private static double us(LatencyRecorder r, double p) {
+        return r.percentile(p) / 1000.0;
+    }
+}
@@ -0,0 +1,191 @@
+package test.apidemo.pci;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DUKPT against the X9.24 examples, and the originator's key registers
+ * against host-side derivation for every counter it produces.
+ */
+public class DukptTest {
+
+    private static final byte[] TDES_BDK = bytes("0123456789ABCDEFFEDCBA9876543210");
+    private static final byte[] TDES_KSN = bytes("FFFF9876543210E00000");
+    private static final byte[] AES_BDK = bytes("FEDCBA9876543210F1F1F1F1F1F1F1F1");
+    private static final byte[] AES_KSN = bytes("123456789012345600000000");
+
+    @Test
+    public void tdesStandardPinKeys() {
+        DukptTdes dukpt = new DukptTdes();
+        byte[] ipek = new byte[16];
+        dukpt.deriveInitialKey(TDES_BDK, TDES_KSN, 0, ipek, 0);
+        assertEquals("6AC292FAA1315B4D858AB3A3D7D5933A", hex(ipek, 16));
+
+        // transaction keys; the PIN variant flips bytes 7 and 15
+        String[] keys = {
+                "042666B49184CFA368DE9628D0397BC9",
+                "C46551CEF9FD24B0AA9AD834130D3BC7",
+                "0DF3D9422ACA56E547676D07AD6BADFA",
+        };
+        // PIN 1234, PAN 4012345678909, ISO format 0
+        byte[] clear = bytes("041274EDCBA9876F");
+        String[] pinBlocks = {"1B9C1845EB993A7A", "10A01C8D02C69107", "18DC07B94797B466"};
+        byte[] key = new byte[16];
+        byte[] block = new byte[8];
+        BlockCipher cipher = new BlockCipher();
+        dukpt.load(ipek, TDES_KSN, 0);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(0, dukpt.next());
+            assertEquals(16, dukpt.getKey(Dukpt.USAGE_PIN, key, 0));
+            key[7] ^= (byte) 0xFF;
+            key[15] ^= (byte) 0xFF;
+            assertEquals(keys[i], hex(key, 16));
+            key[7] ^= (byte) 0xFF;
+            key[15] ^= (byte) 0xFF;
+            cipher.des(true, key, 0, 16, clear, 0, block, 0);
+            assertEquals(pinBlocks[i], hex(block, 8));
+        }
+        byte[] ksn = new byte[10];
+        dukpt.getKsn(ksn, 0);
+        assertEquals("FFFF9876543210E00003", hex(ksn, 10));
+    }
+
+    @Test
+    public void tdesOriginatorMatchesHost() {
+        DukptTdes dukpt = new DukptTdes();
+        byte[] ipek = new byte[16];
+        dukpt.deriveInitialKey(TDES_BDK, TDES_KSN, 0, ipek, 0);
+        dukpt.load(ipek, TDES_KSN, 0);
+        walk(dukpt, ipek, 3000, 10);
+    }
+
+    @Test
+    public void tdesCounterRunsOutAfterLastKey() {
+        DukptTdes dukpt = new DukptTdes();
+        byte[] ipek = new byte[16];
+        dukpt.deriveInitialKey(TDES_BDK, TDES_KSN, 0, ipek, 0);
+        // nine one bits from the top: 1FF001, 1FF002, 1FF004 ... 1FF800 are left
+        byte[] ksn = TDES_KSN.clone();
+        ksn[7] = (byte) 0xFF;
+        ksn[8] = (byte) 0xF0;
+        dukpt.load(ipek, ksn, 0);
+        assertEquals(12, walk(dukpt, ipek, Integer.MAX_VALUE, 10));
+        assertEquals(0x1FF800, dukpt.getCounter());
+        assertEquals(Dukpt.ERR_EXHAUSTED, dukpt.next());
+        assertEquals(0x1FF800, dukpt.getCounter());
+    }
+
+    @Test
+    public void tdesKsnFromDevice() {
+        // a KSN read back mid-life: the registers are rebuilt for its counter
+        DukptTdes dukpt = new DukptTdes();
+        byte[] ipek = new byte[16];
+        dukpt.deriveInitialKey(TDES_BDK, TDES_KSN, 0, ipek, 0);
+        byte[] ksn = bytes("FFFF9876543210E00336");
+        dukpt.load(ipek, ksn, 0);
+        assertEquals(0x336, dukpt.getCounter());
+        assertEquals(Dukpt.ERR_NOT_LOADED, dukpt.getKey(Dukpt.USAGE_PIN, new byte[16], 0));
+        walk(dukpt, ipek, 2000, 10);
+    }
+
+    @Test
+    public void aesStandardKeys() {
+        DukptAes dukpt = new DukptAes(DukptAes.KEY_AES128);
+        byte[] ik = new byte[16];
+        dukpt.deriveInitialKey(AES_BDK, AES_KSN, 0, ik, 0);
+        assertEquals("1273671EA26AC29AFA4D1084127652A1", hex(ik, 16));
+
+        dukpt.load(ik, AES_KSN, 0);
+        dukpt.next();
+        byte[] key = new byte[16];
+        assertEquals(16, dukpt.getKey(Dukpt.USAGE_PIN, key, 0));
+        assertEquals("AF8CB133A78F8DC2D1359F18527593FB", hex(key, 16));
+    }
+
+    @Test
+    public void aesOriginatorMatchesHost() {
+        DukptAes dukpt = new DukptAes(DukptAes.KEY_AES128);
+        byte[] ik = new byte[16];
+        dukpt.deriveInitialKey(AES_BDK, AES_KSN, 0, ik, 0);
+        dukpt.load(ik, AES_KSN, 0);
+        walk(dukpt, ik, 2000, 16);
+
+        byte[] ksn = AES_KSN.clone();
+        ksn[8] = (byte) 0xFF;
+        ksn[9] = (byte) 0xFE;
+        dukpt.load(ik, ksn, 0);
+        walk(dukpt, ik, 100, 16);
+    }
+
+    @Test
+    public void aesWorkingKeyTypes() {
+        DukptAes dukpt = new DukptAes(DukptAes.KEY_AES128);
+        byte[] ik = new byte[16];
+        dukpt.deriveInitialKey(AES_BDK, AES_KSN, 0, ik, 0);
+        dukpt.load(ik, AES_KSN, 0);
+        dukpt.next();
+        byte[] key = new byte[32];
+        dukpt.setWorkingKeyType(DukptAes.KEY_AES256);
+        assertEquals(32, dukpt.getKey(Dukpt.USAGE_DATA, key, 0));
+        byte[] head = new byte[16];
+        dukpt.setWorkingKeyType(DukptAes.KEY_TDES2);
+        assertEquals(16, dukpt.getKey(Dukpt.USAGE_DATA, head, 0));
+        // the usage block carries the type, so the first 16 bytes differ too
+        assertTrue(!hex(key, 16).equals(hex(head, 16)));
+        assertEquals(Dukpt.ERR_USAGE, dukpt.getKey(99, key, 0));
+    }
+
+    /**
+     * Step the originator and check each KSN and key against the host.
+     *
+     * @return number of transactions stepped
+     */
+    private static int walk(Dukpt dukpt, byte[] initialKey, int steps, int maxOnes) {
+        byte[] ksn = new byte[dukpt.getKsnLength()];
+        byte[] key = new byte[32];
+        byte[] expected = new byte[32];
+        long last = dukpt.getCounter();
+        int n = 0;
+        for (; n < steps && dukpt.next() == 0; n++) {
+            long counter = dukpt.getCounter();
+            assertTrue(counter > last);
+            assertTrue(Long.bitCount(counter) <= maxOnes);
+            for (long c = last + 1; c < counter; c++) {
+                assertTrue("counter " + c + " skipped", Long.bitCount(c) > maxOnes);
+            }
+            last = counter;
+            dukpt.getKsn(ksn, 0);
+            for (int usage = Dukpt.USAGE_PIN; usage <= Dukpt.USAGE_DATA_RESPONSE; usage++) {
+                int len = dukpt.getKey(usage, key, 0);
+                assertEquals(len, dukpt.deriveKey(initialKey, ksn, 0, usage, expected, 0));
+                assertArrayEquals(copy(expected, len), copy(key, len));
+            }
+        }
+        return n;
+    }
+
+    private static byte[] copy(byte[] b, int len) {
+        byte[] c = new byte[len];
+        System.arraycopy(b, 0, c, 0, len);
+        return c;
+    }
+
+    static byte[] bytes(String hex) {
+        byte[] b = new byte[hex.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return b;
+    }
+
+    static String hex(byte[] b, int len) {
+        StringBuilder sb = new StringBuilder(len * 2);
+        for (int i = 0; i < len; i++) {
+            sb.append(String.format("%02X", b[i] & 0xFF));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package test.apidemo.pci;
+
+/**
+ * Software secure processor for the JVM: TDES master/session keys, a
+ * CBC-MAC (ISO 9797-1 algorithm 1), and DUKPT data and MAC keys from
+ * {@link DukptTdes}, with a per-call size limit like the real one.
+ */
+class FakePci implements PciCrypto {
+
+    static final int ERR_TOO_LONG = -1;
+
+    private final byte[][] mKeys = new byte[8][];
+    private final DukptTdes mDukpt = new DukptTdes();
+    private final BlockCipher mCipher = new BlockCipher();
+    private final byte[] mChain = new byte[8];
+    private final byte[] mBlock = new byte[8];
+    private final byte[] mKey = new byte[16];
+    private final int mMaxLength;
+    private int mCalls;
+    private int mLongest;
+
+    FakePci(int maxLength) {
+        mMaxLength = maxLength;
+    }
+
+    void setKey(int index, byte[] key) {
+        mKeys[index] = key;
+    }
+
+    void loadDukpt(byte[] ipek, byte[] ksn) {
+        mDukpt.load(ipek, ksn, 0);
+    }
+
+    int getCalls() {
+        return mCalls;
+    }
+
+    /** Longest buffer handed to one call */
+    int getLongest() {
+        return mLongest;
+    }
+
+    @Override
+    public int getDes(int keyIndex, int len, byte[] in, byte[] out, int mode) {
+        if (!accept(len)) {
+            return ERR_TOO_LONG;
+        }
+        byte[] key = mKeys[keyIndex];
+        for (int i = 0; i < len; i += 8) {
+            mCipher.des(mode == MODE_ENCRYPT, key, 0, key.length, in, i, out, i);
+        }
+        return 0;
+    }
+
+    @Override
+    public int getMac(int keyIndex, int len, byte[] in, byte[] mac, int mode) {
+        if (!accept(len)) {
+            return ERR_TOO_LONG;
+        }
+        byte[] key = mKeys[keyIndex];
+        cbcMac(key, in, len, mac);
+        return 0;
+    }
+
+    @Override
+    public int getDukptDes(int keyId, int mode, int desMode, int len, byte[] in, byte[] iv, byte[] out,
+                           byte[] ksn, byte[] kcv) {
+        if (!accept(len) || mDukpt.next() != 0) {
+            return ERR_TOO_LONG;
+        }
+        mDukpt.getKey(Dukpt.USAGE_DATA, mKey, 0);
+        mDukpt.getKsn(ksn, 0);
+        cbc(mKey, mode == MODE_ENCRYPT, desMode == DES_CBC ? iv : null, in, len, out);
+        return 0;
+    }
+
+    @Override
+    public int getDukptMac(int keyId, int mode, int len, byte[] in, byte[] mac, byte[] ksn, byte[] kcv) {
+        if (!accept(len) || mDukpt.next() != 0) {
+            return ERR_TOO_LONG;
+        }
+        mDukpt.getKey(Dukpt.USAGE_MAC, mKey, 0);
+        mDukpt.getKsn(ksn, 0);
+        cbcMac(mKey, in, len, mac);
+        return 0;
+    }
+
+    private boolean accept(int len) {
+        mCalls++;
+        mLongest = Math.max(mLongest, len);
+        return len <= mMaxLength && len % 8 == 0;
+    }
+
+    void cbcMac(byte[] key, byte[] in, int len, byte[] mac) {
+        for (int i = 0; i < 8; i++) {
+            mChain[i] = 0;
+        }
+        for (int b = 0; b < len; b += 8) {
+            for (int i = 0; i < 8; i++) {
+                mBlock[i] = (byte) (mChain[i] ^ in[b + i]);
+            }
+            // separate in and out: JCE copies an overlapping input
+            mCipher.des(true, key, 0, key.length, mBlock, 0, mChain, 0);
+        }
+        System.arraycopy(mChain, 0, mac, 0, 8);
+    }
+
+    /** CBC when {@code iv} is given, ECB otherwise */
+    void cbc(byte[] key, boolean encrypt, byte[] iv, byte[] in, int len, byte[] out) {
+        if (iv != null) {
+            System.arraycopy(iv, 0, mChain, 0, 8);
+        }
+        for (int b = 0; b < len; b += 8) {
+            if (iv == null) {
+                mCipher.des(encrypt, key, 0, key.length, in, b, out, b);
+            } else if (encrypt) {
+                for (int i = 0; i < 8; i++) {
+                    mBlock[i] = (byte) (mChain[i] ^ in[b + i]);
+                }
+                mCipher.des(true, key, 0, key.length, mBlock, 0, out, b);
+                System.arraycopy(out, b, mChain, 0, 8);
+            } else {
+                System.arraycopy(in, b, mBlock, 0, 8);
+                mCipher.des(false, key, 0, key.length, mBlock, 0, out, b);
+                for (int i = 0; i < 8; i++) {
+                    out[b + i] ^= mChain[i];
+                }
+                System.arraycopy(mBlock, 0, mChain, 0, 8);
+            }
+        }
+    }
+}
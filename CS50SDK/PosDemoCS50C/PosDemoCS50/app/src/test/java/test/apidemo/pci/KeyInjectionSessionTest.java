@@ -0,0 +1,237 @@
+package test.apidemo.pci;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Manifest parsing, write order, and the manifest and device check value
+ * checks of {@link KeyInjectionSession} against a software key store.
+ */
+public class KeyInjectionSessionTest {
+
+    private static final String KEY = "0123456789ABCDEFFEDCBA9876543210";
+    private static final String KEY_KCV = "08D7B4";
+    private static final String MASTER = "11223344556677888877665544332211";
+    private static final String ASSET = "src/main/assets/key_manifest.txt";
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+    private final SoftwareLoader mLoader = new SoftwareLoader();
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void kcvMatchesKnownValue() {
+        assertEquals(KEY_KCV, DukptTest.hex(KeyInjectionSession.kcv(DukptTest.bytes(KEY)), 3));
+    }
+
+    @Test
+    public void writesMastersFirstAndVerifiesEveryKey() throws IOException {
+        byte[] wrapped = wrap(MASTER, KEY);
+        KeyManifest manifest = parse(
+                "# session keys listed first on purpose\n"
+                        + "pin-sk 2 " + DukptTest.hex(wrapped, 16) + " mk=1 mode=1 wrapped kcv=" + KEY_KCV + "\n"
+                        + "mac-sk 0 " + KEY + "\n"
+                        + "pin-mk 1 " + MASTER + "\n"
+                        + "mac-mk 0 " + MASTER + "\n"
+                        + "dukpt 1 6AC292FAA1315B4D858AB3A3D7D5933A ksn=FFFF9876543210E00000\n");
+
+        List<KeyInjectionSession.Result> results = newSession().run(manifest);
+        assertEquals(5, results.size());
+        assertEquals(0, KeyInjectionSession.countFailed(results));
+        assertEquals("[pin-mk 1, mac-mk 0, dukpt 1, pin-sk 2, mac-sk 0]", mLoader.mCalls.toString());
+        for (int i = 0; i < results.size(); i++) {
+            KeyInjectionSession.Result r = results.get(i);
+            assertEquals(r.getEntry().getType() != KeyManifest.DUKPT, r.isVerified());
+        }
+        assertEquals(KEY_KCV, DukptTest.hex(results.get(3).getDeviceKcv(), 3));
+        assertTrue(KeyInjectionSession.report(results).startsWith("pin-mk 1 OK kcv "));
+    }
+
+    @Test
+    public void shippedSessionKeysAreWrappedAndVerify() throws IOException {
+        FileInputStream in = new FileInputStream(ASSET);
+        KeyManifest manifest;
+        try {
+            manifest = KeyManifest.parse(in);
+        } finally {
+            in.close();
+        }
+
+        List<KeyInjectionSession.Result> results = newSession().run(manifest);
+        assertEquals(0, KeyInjectionSession.countFailed(results));
+        int sessionKeys = 0;
+        for (int i = 0; i < results.size(); i++) {
+            KeyInjectionSession.Result r = results.get(i);
+            assertTrue(r.toString(), r.isVerified());
+            if (r.getEntry().isSession()) {
+                assertTrue(r.toString(), r.getEntry().isWrapped());
+                // the device holds the clear key, whose check value the manifest gives
+                assertEquals(DukptTest.hex(r.getEntry().getKcv(), 3), DukptTest.hex(r.getDeviceKcv(), 3));
+                sessionKeys++;
+            }
+        }
+        assertEquals(3, sessionKeys);
+    }
+
+    @Test
+    public void wrongManifestKcvIsNotWritten() throws IOException {
+        KeyManifest manifest = parse("des-mk 0 " + KEY + " kcv=08D7B5\n"
+                + "des-sk 0 " + KEY + " kcv=" + KEY_KCV + "\n");
+
+        List<KeyInjectionSession.Result> results = newSession().run(manifest);
+        assertEquals(KeyInjectionSession.ERR_MANIFEST_KCV, results.get(0).getRet());
+        // its session key depends on it
+        assertEquals(KeyInjectionSession.ERR_MASTER, results.get(1).getRet());
+        assertTrue(mLoader.mCalls.isEmpty());
+    }
+
+    @Test
+    public void failedMasterOnlyStopsItsOwnSessionKeys() throws IOException {
+        mLoader.mFailing.add("pin-mk 0");
+        KeyManifest manifest = parse("pin-mk 0 " + MASTER + "\n"
+                + "mac-mk 0 " + MASTER + "\n"
+                + "pin-sk 0 " + KEY + "\n"
+                + "pin-sk 1 " + KEY + " mk=3\n"
+                + "mac-sk 0 " + KEY + "\n");
+
+        List<KeyInjectionSession.Result> results = newSession().run(manifest);
+        assertEquals(-7, results.get(0).getRet());
+        assertTrue(results.get(1).isOk());
+        assertEquals(KeyInjectionSession.ERR_MASTER, results.get(2).getRet());
+        // master 3 is not in the manifest, so it is taken as already loaded
+        assertTrue(results.get(3).isOk());
+        assertTrue(results.get(4).isOk());
+        assertEquals(2, KeyInjectionSession.countFailed(results));
+    }
+
+    @Test
+    public void deviceKcvMismatchIsReported() throws IOException {
+        mLoader.mCorrupting.add("des-sk 4");
+        KeyManifest manifest = parse("des-sk 4 " + KEY + "\ndes-sk 5 " + KEY + "\n");
+
+        List<KeyInjectionSession.Result> results = newSession().run(manifest);
+        assertEquals(KeyInjectionSession.ERR_DEVICE_KCV, results.get(0).getRet());
+        assertTrue(results.get(0).toString().contains(" device "));
+        assertTrue(results.get(1).isVerified());
+    }
+
+    @Test
+    public void badLinesNameTheLine() {
+        String[] bad = {
+                "pin-mk 0 0123",
+                "pin-mx 0 " + KEY,
+                "pin-mk 256 " + KEY,
+                "pin-mk 0 " + KEY + " kcv=08D7",
+                "pin-mk 0 " + KEY + " colour=red",
+                "dukpt 1 " + KEY,
+                "pin-mk 0 " + KEY + "\npin-mk 0 " + KEY,
+        };
+        for (String text : bad) {
+            try {
+                parse(text);
+                fail(text);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("line "));
+            }
+        }
+    }
+
+    private KeyInjectionSession newSession() {
+        return new KeyInjectionSession(mLoader, mExecutor);
+    }
+
+    private static KeyManifest parse(String text) throws IOException {
+        return KeyManifest.parse(new ByteArrayInputStream(text.getBytes("US-ASCII")));
+    }
+
+    private static byte[] wrap(String master, String key) {
+        BlockCipher cipher = new BlockCipher();
+        byte[] m = DukptTest.bytes(master);
+        byte[] k = DukptTest.bytes(key);
+        byte[] out = new byte[k.length];
+        for (int off = 0; off < k.length; off += 8) {
+            cipher.des(true, m, 0, m.length, k, off, out, off);
+        }
+        return out;
+    }
+
+    /** Key store of a secure processor; mode 1 session keys arrive encrypted under their master */
+    private static class SoftwareLoader implements KeyLoader {
+        private static final String[] NAMES = {"pin-mk", "mac-mk", "des-mk", "pin-sk", "mac-sk", "des-sk"};
+
+        final List<String> mCalls = new ArrayList<String>();
+        final Set<String> mFailing = new HashSet<String>();
+        final Set<String> mCorrupting = new HashSet<String>();
+        private final Map<String, byte[]> mKeys = new HashMap<String, byte[]>();
+        private final BlockCipher mCipher = new BlockCipher();
+
+        @Override
+        public int writeMasterKey(int type, int index, byte[] key, int mode) {
+            return store(NAMES[type] + " " + index, key);
+        }
+
+        @Override
+        public int writeSessionKey(int type, int index, byte[] key, int mode, int masterIndex) {
+            byte[] clear = key;
+            if (mode == 1) {
+                byte[] master = mKeys.get(NAMES[type - KeyManifest.PIN_SK] + " " + masterIndex);
+                if (master == null) {
+                    return -2;
+                }
+                clear = new byte[key.length];
+                for (int off = 0; off < key.length; off += 8) {
+                    mCipher.des(false, master, 0, master.length, key, off, clear, off);
+                }
+            }
+            return store(NAMES[type] + " " + index, clear);
+        }
+
+        @Override
+        public int writeDukptIpek(int keyId, byte[] ipek, byte[] ksn) {
+            return store("dukpt " + keyId, ipek);
+        }
+
+        @Override
+        public int readKcv(int type, int index, byte[] kcv) {
+            byte[] key = mKeys.get(NAMES[type] + " " + index);
+            if (key == null) {
+                return -3;
+            }
+            System.arraycopy(KeyInjectionSession.kcv(key), 0, kcv, 0, 3);
+            return 0;
+        }
+
+        private int store(String name, byte[] key) {
+            if (mFailing.contains(name)) {
+                return -7;
+            }
+            mCalls.add(name);
+            byte[] copy = key.clone();
+            if (mCorrupting.contains(name)) {
+                copy[0] ^= 2;
+            }
+            mKeys.put(name, copy);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package test.apidemo.pci;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import test.apidemo.util.Allocations;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Steady-state throughput of {@link PciStream} over {@link FakePci}: MB/s,
+ * PCI calls and bytes allocated for a payload far larger than the chunk,
+ * which is never held in memory as a whole. The allocation figure is per
+ * run, not per MB, since the chunk buffers are reused.
+ *
+ * Run on any JVM host with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.pci.PciStreamBenchmark \
+ *     -Dbench=true -Dbench.mb=64 -Dbench.chunk=2048
+ * </pre>
+ */
+public class PciStreamBenchmark {
+
+    private static final int MB = Integer.getInteger("bench.mb", 8);
+    private static final int CHUNK = Integer.getInteger("bench.chunk", 1024);
+
+    private interface Run {
+        long run(PciStream stream, ReadableByteChannel in, WritableByteChannel out) throws IOException;
+    }
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void macSettlementFile() throws IOException {
+        final byte[] mac = new byte[8];
+        measure("PciGetMac chained", new Run() {
+            public long run(PciStream stream, ReadableByteChannel in, WritableByteChannel out) throws IOException {
+                return stream.mac(1, PciCrypto.MAC_CBC, in, mac, 0);
+            }
+        });
+    }
+
+    @Test
+    public void encryptEcb() throws IOException {
+        measure("PciGetDes ECB encrypt", new Run() {
+            public long run(PciStream stream, ReadableByteChannel in, WritableByteChannel out) throws IOException {
+                return stream.encrypt(1, null, in, out);
+            }
+        });
+    }
+
+    @Test
+    public void decryptCbc() throws IOException {
+        final byte[] iv = new byte[8];
+        measure("PciGetDes CBC decrypt", new Run() {
+            public long run(PciStream stream, ReadableByteChannel in, WritableByteChannel out) throws IOException {
+                return stream.decrypt(1, iv, in, out);
+            }
+        });
+    }
+
+    private static void measure(String name, Run run) throws IOException {
+        FakePci pci = new FakePci(CHUNK);
+        pci.setKey(1, DukptTest.bytes("0123456789ABCDEFFEDCBA9876543210"));
+        PciStream stream = new PciStream(pci, CHUNK);
+        long size = MB * 1024L * 1024L;
+        Sink sink = new Sink();
+
+        // warm up on a fifth of the payload
+        run.run(stream, new Source(size / 5), sink);
+        long allocStart = Allocations.allocatedBytes();
+        long start = System.nanoTime();
+        long n = run.run(stream, new Source(size), sink);
+        long wall = System.nanoTime() - start;
+        long alloc = Allocations.allocatedBytes() - allocStart;
+        assertEquals(size, n);
+
+        System.out.printf("%s: %d MB in %d-byte chunks, %.1f MB/s, %d PCI calls, %s bytes allocated%n",
+                name, MB, CHUNK, size / 1048576.0 / (wall / 1e9), stream.getCalls(),
+                allocStart < 0 ? "n/a" : String.valueOf(alloc));
+    }
+
+    /** {@code size} bytes of a repeating pattern, generated as read */
+    private static final class Source implements ReadableByteChannel {
+        private long mLeft;
+
+        Source(long size) {
+            mLeft = size;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (mLeft == 0) {
+                return -1;
+            }
+            int n = (int) Math.min(dst.remaining(), mLeft);
+            for (int i = 0; i < n; i++) {
+                dst.put((byte) (mLeft - i));
+            }
+            mLeft -= n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class Sink implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
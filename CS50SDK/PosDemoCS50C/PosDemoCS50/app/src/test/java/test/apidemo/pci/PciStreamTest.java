@@ -0,0 +1,197 @@
+package test.apidemo.pci;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Chunked PCI runs give what one call over the whole data would, with no
+ * call over the device limit: checked against {@link FakePci} doing the
+ * same operation in one pass.
+ */
+public class PciStreamTest {
+
+    private static final int CHUNK = 64;
+    private static final int[] SIZES = {0, 1, 7, 8, 63, 64, 65, 200, 3 * 64 + 5};
+    private static final byte[] KEY = DukptTest.bytes("0123456789ABCDEFFEDCBA9876543210");
+    private static final byte[] IV = DukptTest.bytes("1122334455667788");
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private final FakePci mPci = new FakePci(CHUNK);
+    private final FakePci mReference = new FakePci(Integer.MAX_VALUE);
+    private final PciStream mStream = new PciStream(mPci, CHUNK);
+
+    public PciStreamTest() {
+        mPci.setKey(1, KEY);
+        mReference.setKey(1, KEY);
+    }
+
+    @Test
+    public void macMatchesOneCall() throws IOException {
+        for (int size : SIZES) {
+            byte[] data = data(size);
+            byte[] mac = new byte[8];
+            assertEquals(size, mStream.mac(1, PciCrypto.MAC_CBC, new ByteArrayInputStream(data), mac, 0));
+            assertArrayEquals("size " + size, mac(data), mac);
+        }
+        assertTrue(mPci.getLongest() <= CHUNK);
+    }
+
+    @Test
+    public void unchainableMacOnlyInOneCall() throws IOException {
+        byte[] mac = new byte[8];
+        assertEquals(PciStream.ERR_MODE, mStream.mac(1, PciCrypto.MAC_X919,
+                new ByteArrayInputStream(data(CHUNK + 1)), mac, 0));
+        assertEquals(0, mStream.getCalls());
+        assertArrayEquals(new byte[8], mac);
+
+        // fits: a single call, the device applies the last step
+        assertEquals(CHUNK, mStream.mac(1, PciCrypto.MAC_X919, new ByteArrayInputStream(data(CHUNK)), mac, 0));
+        assertEquals(1, mStream.getCalls());
+        assertEquals(20, mStream.mac(1, PciCrypto.MAC_X919, new ByteArrayInputStream(data(20)), mac, 0));
+        assertEquals(1, mStream.getCalls());
+    }
+
+    @Test
+    public void macFromFileChannel() throws IOException {
+        byte[] data = data(10000);
+        File f = mTmp.newFile("settlement.dat");
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(data);
+        out.close();
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        FileChannel channel = file.getChannel();
+        byte[] mac = new byte[8];
+        try {
+            assertEquals(data.length, mStream.mac(1, PciCrypto.MAC_CBC, channel, mac, 0));
+        } finally {
+            file.close();
+        }
+        assertArrayEquals(mac(data), mac);
+        assertEquals((data.length + CHUNK - 1) / CHUNK, mStream.getCalls());
+    }
+
+    @Test
+    public void desRoundTripsAndMatchesOneCall() throws IOException {
+        byte[][] ivs = {null, IV};
+        for (byte[] iv : ivs) {
+            for (int size : SIZES) {
+                byte[] data = data(size);
+                ByteArrayOutputStream enc = new ByteArrayOutputStream();
+                long n = mStream.encrypt(1, iv, new ByteArrayInputStream(data), enc);
+                assertEquals((size + 7) / 8 * 8, n);
+
+                byte[] padded = new byte[(int) n];
+                System.arraycopy(data, 0, padded, 0, size);
+                byte[] expected = new byte[padded.length];
+                mReference.cbc(KEY, true, iv, padded, padded.length, expected);
+                assertArrayEquals("size " + size, expected, enc.toByteArray());
+
+                ByteArrayOutputStream dec = new ByteArrayOutputStream();
+                assertEquals(n, mStream.decrypt(1, iv, new ByteArrayInputStream(enc.toByteArray()), dec));
+                assertArrayEquals(padded, dec.toByteArray());
+            }
+        }
+        assertEquals(PciStream.ERR_LENGTH, mStream.decrypt(1, null, new ByteArrayInputStream(data(9)),
+                new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void dukptChunksDecryptOnHostByKsn() throws IOException {
+        DukptTdes host = new DukptTdes();
+        byte[] ipek = new byte[16];
+        byte[] ksn0 = DukptTest.bytes("FFFF9876543210E00000");
+        host.deriveInitialKey(KEY, ksn0, 0, ipek, 0);
+        mPci.loadDukpt(ipek, ksn0);
+
+        byte[] data = data(3 * CHUNK + 16);
+        final List<long[]> chunks = new ArrayList<long[]>();
+        final List<byte[]> ksns = new ArrayList<byte[]>();
+        ByteArrayOutputStream enc = new ByteArrayOutputStream();
+        long n = mStream.dukptDes(1, PciCrypto.MODE_ENCRYPT, IV, Channels.newChannel(new ByteArrayInputStream(data)),
+                Channels.newChannel(enc), new PciStream.KsnListener() {
+                    @Override
+                    public void onChunk(long offset, int len, byte[] ksn) {
+                        chunks.add(new long[]{offset, len});
+                        ksns.add(ksn.clone());
+                    }
+                });
+        assertEquals(data.length, n);
+        assertEquals(4, chunks.size());
+
+        // the host: each chunk under the key of its KSN, the IV carried over
+        byte[] cipher = enc.toByteArray();
+        byte[] key = new byte[16];
+        byte[] iv = IV.clone();
+        for (int i = 0; i < chunks.size(); i++) {
+            int off = (int) chunks.get(i)[0];
+            int len = (int) chunks.get(i)[1];
+            assertEquals(16, host.deriveKey(ipek, ksns.get(i), 0, Dukpt.USAGE_DATA, key, 0));
+            byte[] part = new byte[len];
+            System.arraycopy(cipher, off, part, 0, len);
+            byte[] plain = new byte[len];
+            mReference.cbc(key, false, iv, part, len, plain);
+            System.arraycopy(part, len - 8, iv, 0, 8);
+            for (int j = 0; j < len; j++) {
+                assertEquals(data[off + j], plain[j]);
+            }
+        }
+    }
+
+    @Test
+    public void dukptMacCoversDigest() throws Exception {
+        DukptTdes host = new DukptTdes();
+        byte[] ipek = new byte[16];
+        byte[] ksn0 = DukptTest.bytes("FFFF9876543210E00000");
+        host.deriveInitialKey(KEY, ksn0, 0, ipek, 0);
+        mPci.loadDukpt(ipek, ksn0);
+
+        byte[] data = data(5000);
+        byte[] mac = new byte[8];
+        byte[] ksn = new byte[10];
+        assertEquals(data.length, mStream.dukptMac(1, 0, Channels.newChannel(new ByteArrayInputStream(data)),
+                mac, 0, ksn));
+        assertEquals(1, mStream.getCalls());
+
+        byte[] key = new byte[16];
+        host.deriveKey(ipek, ksn, 0, Dukpt.USAGE_MAC, key, 0);
+        byte[] expected = new byte[8];
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+        mReference.cbcMac(key, digest, digest.length, expected);
+        assertArrayEquals(expected, mac);
+    }
+
+    private byte[] mac(byte[] data) {
+        byte[] padded = new byte[data.length == 0 ? 8 : (data.length + 7) / 8 * 8];
+        System.arraycopy(data, 0, padded, 0, data.length);
+        byte[] mac = new byte[8];
+        mReference.cbcMac(KEY, padded, padded.length, mac);
+        return mac;
+    }
+
+    private static byte[] data(int size) {
+        byte[] b = new byte[size];
+        for (int i = 0; i < size; i++) {
+            b[i] = (byte) (i * 31 + 7);
+        }
+        return b;
+    }
+}
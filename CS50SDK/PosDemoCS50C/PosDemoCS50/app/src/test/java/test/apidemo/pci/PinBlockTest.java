@@ -0,0 +1,118 @@
+package test.apidemo.pci;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ISO 9564-1 formats against the X9.24 PIN example, round trips through
+ * the host-side decoder, and the checks that reject a wrong PIN or PAN.
+ */
+public class PinBlockTest {
+
+    private static final byte[] PIN = "1234".getBytes();
+    private static final byte[] PAN = "4012345678909".getBytes();
+    private static final byte[] TDES_KEY = DukptTest.bytes("042666B49184CF5C68DE9628D0397B36");
+    private static final byte[] AES_KEY = DukptTest.bytes("AF8CB133A78F8DC2D1359F18527593FB");
+
+    private final PinBlock mCodec = new PinBlock();
+    private final byte[] mBlock = new byte[16];
+    private final byte[] mPin = new byte[12];
+
+    @Test
+    public void format0MatchesStandardExample() {
+        assertEquals(8, mCodec.clear(PinBlock.FORMAT_0, PIN, 0, 4, PAN, 0, PAN.length, mBlock, 0));
+        assertEquals("041274EDCBA9876F", DukptTest.hex(mBlock, 8));
+        assertEquals(8, encrypt(PinBlock.FORMAT_0, TDES_KEY, "1234"));
+        assertEquals("1B9C1845EB993A7A", DukptTest.hex(mBlock, 8));
+        assertEquals(4, decrypt(PinBlock.FORMAT_0, TDES_KEY));
+        assertEquals("1234", new String(mPin, 0, 4));
+    }
+
+    @Test
+    public void everyFormatRoundTrips() {
+        int[] formats = {PinBlock.FORMAT_0, PinBlock.FORMAT_1, PinBlock.FORMAT_3, PinBlock.FORMAT_4};
+        String[] pins = {"0000", "98765", "123456789012"};
+        for (int format : formats) {
+            byte[] key = format == PinBlock.FORMAT_4 ? AES_KEY : TDES_KEY;
+            for (String pin : pins) {
+                encrypt(format, key, pin);
+                assertEquals(pin.length(), decrypt(format, key));
+                assertEquals(pin, new String(mPin, 0, pin.length()));
+                assertEquals(0, mCodec.verify(format, key, 0, key.length, mBlock, 0, PAN, 0, PAN.length,
+                        pin.getBytes(), 0, pin.length()));
+            }
+        }
+    }
+
+    @Test
+    public void format3FillIsAtoF() {
+        mCodec.clear(PinBlock.FORMAT_3, PIN, 0, 4, PAN, 0, PAN.length, mBlock, 0);
+        String panField = "0000401234567890";
+        for (int i = 6; i < 16; i++) {
+            int fill = Character.digit(DukptTest.hex(mBlock, 8).charAt(i), 16)
+                    ^ Character.digit(panField.charAt(i), 16);
+            assertTrue(fill >= 0x0A);
+        }
+    }
+
+    @Test
+    public void format4ShortAndLongPans() {
+        byte[][] pans = {"12345678".getBytes(), "1234567890123456789".getBytes()};
+        for (byte[] pan : pans) {
+            assertEquals(16, mCodec.encrypt(PinBlock.FORMAT_4, AES_KEY, 0, 16, PIN, 0, 4, pan, 0, pan.length, mBlock, 0));
+            assertEquals(4, mCodec.decrypt(PinBlock.FORMAT_4, AES_KEY, 0, 16, mBlock, 0, pan, 0, pan.length, mPin, 0));
+            // format 4 binds the whole PAN, not just 12 digits of it
+            pan[pan.length - 1] ^= 1;
+            assertEquals(PinBlock.ERR_FORMAT,
+                    mCodec.decrypt(PinBlock.FORMAT_4, AES_KEY, 0, 16, mBlock, 0, pan, 0, pan.length, mPin, 0));
+        }
+    }
+
+    @Test
+    public void wrongPinOrPanIsRejected() {
+        encrypt(PinBlock.FORMAT_0, TDES_KEY, "1234");
+        assertEquals(PinBlock.ERR_MISMATCH, mCodec.verify(PinBlock.FORMAT_0, TDES_KEY, 0, 16, mBlock, 0,
+                PAN, 0, PAN.length, "1235".getBytes(), 0, 4));
+        assertEquals(PinBlock.ERR_MISMATCH, mCodec.verify(PinBlock.FORMAT_0, TDES_KEY, 0, 16, mBlock, 0,
+                PAN, 0, PAN.length, "12345".getBytes(), 0, 5));
+        byte[] other = "4012345678919".getBytes();
+        assertEquals(PinBlock.ERR_FORMAT, mCodec.decrypt(PinBlock.FORMAT_0, TDES_KEY, 0, 16, mBlock, 0,
+                other, 0, other.length, mPin, 0));
+    }
+
+    @Test
+    public void badInputs() {
+        assertEquals(PinBlock.ERR_PIN, encrypt(PinBlock.FORMAT_0, TDES_KEY, "123"));
+        assertEquals(PinBlock.ERR_PIN, encrypt(PinBlock.FORMAT_0, TDES_KEY, "12a4"));
+        assertEquals(PinBlock.ERR_FORMAT, encrypt(PinBlock.FORMAT_4, new byte[8], "1234"));
+        assertEquals(PinBlock.ERR_FORMAT, encrypt(2, TDES_KEY, "1234"));
+        byte[] pan = "40123x5678909".getBytes();
+        assertEquals(PinBlock.ERR_PAN,
+                mCodec.encrypt(PinBlock.FORMAT_0, TDES_KEY, 0, 16, PIN, 0, 4, pan, 0, pan.length, mBlock, 0));
+    }
+
+    @Test
+    public void panFromTrack2AndTag5A() {
+        byte[] pan = new byte[19];
+        byte[] track2 = DukptTest.bytes("4012345678909D25121011234F");
+        assertEquals(13, PinBlock.extractPan(track2, 0, track2.length, pan, 0));
+        assertEquals("4012345678909", new String(pan, 0, 13));
+        byte[] tag5A = DukptTest.bytes("4761739001010119");
+        assertEquals(16, PinBlock.extractPan(tag5A, 0, tag5A.length, pan, 0));
+        assertEquals("4761739001010119", new String(pan, 0, 16));
+        byte[] odd = DukptTest.bytes("401234567890FF");
+        assertEquals(12, PinBlock.extractPan(odd, 0, 7, pan, 0));
+        assertEquals(PinBlock.ERR_PAN, PinBlock.extractPan(DukptTest.bytes("4012A4"), 0, 3, pan, 0));
+    }
+
+    private int encrypt(int format, byte[] key, String pin) {
+        byte[] p = pin.getBytes();
+        return mCodec.encrypt(format, key, 0, key.length, p, 0, p.length, PAN, 0, PAN.length, mBlock, 0);
+    }
+
+    private int decrypt(int format, byte[] key) {
+        return mCodec.decrypt(format, key, 0, key.length, mBlock, 0, PAN, 0, PAN.length, mPin, 0);
+    }
+}
@@ -0,0 +1,203 @@
+package test.apidemo.picc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Frame handling of {@link IsoDepSession}: command chaining, 61xx and 6Cxx,
+ * DESFire 91AF reassembly, and a card that never stops sending frames.
+ */
+public class IsoDepSessionTest {
+
+    @Test
+    public void longCommandIsChained() {
+        ScriptedCard card = new ScriptedCard();
+        card.answer(0x9000).answer(0x9000, 1, 2, 3);
+        IsoDepSession session = new IsoDepSession(card);
+        byte[] data = bytes(300);
+
+        assertEquals(0, session.transmit(0x80, 0xE2, 0x00, 0x00, data, 0, data.length, 256));
+        assertEquals(2, card.mCommands.size());
+        byte[] first = card.mCommands.get(0);
+        assertEquals(5 + 255, first.length);
+        assertEquals(0x90, first[0] & 0xFF);
+        assertEquals(255, first[4] & 0xFF);
+        byte[] last = card.mCommands.get(1);
+        assertEquals(5 + 45 + 1, last.length);
+        assertEquals(0x80, last[0] & 0xFF);
+        assertEquals(45, last[4] & 0xFF);
+        assertEquals(data[255], last[5]);
+        assertEquals(0, last[last.length - 1]);
+        assertData(session, 1, 2, 3);
+    }
+
+    @Test
+    public void getResponseFollows61xx() {
+        ScriptedCard card = new ScriptedCard();
+        card.answer(0x6102, 0x6F, 0x10).answer(0x6101, 0x84, 0x07).answer(0x9000, 0xA0);
+        IsoDepSession session = new IsoDepSession(card);
+        byte[] select = {0x00, (byte) 0xA4, 0x04, 0x00, 0x02, 0x3F, 0x00, 0x00};
+
+        assertEquals(0, session.transmit(select, select.length));
+        assertEquals(IsoDepSession.SW_OK, session.getSw());
+        assertData(session, 0x6F, 0x10, 0x84, 0x07, 0xA0);
+        assertArrayEquals(new byte[]{0x00, (byte) 0xC0, 0x00, 0x00, 0x02}, card.mCommands.get(1));
+        assertArrayEquals(new byte[]{0x00, (byte) 0xC0, 0x00, 0x00, 0x01}, card.mCommands.get(2));
+    }
+
+    @Test
+    public void wrongLeIsRepeatedAndMalformedRefused() {
+        ScriptedCard card = new ScriptedCard();
+        card.answer(0x6C03).answer(0x9000, 9, 8, 7);
+        IsoDepSession session = new IsoDepSession(card);
+        byte[] read = {0x00, (byte) 0xB2, 0x01, 0x0C, 0x00};
+
+        assertEquals(0, session.transmit(read, read.length));
+        assertArrayEquals(new byte[]{0x00, (byte) 0xB2, 0x01, 0x0C, 0x03}, card.mCommands.get(1));
+        assertData(session, 9, 8, 7);
+        // malformed: no header, Lc past the end
+        assertEquals(IsoDepSession.ERR_PARAM, session.transmit(read, 3));
+        assertEquals(IsoDepSession.ERR_PARAM, session.transmit(new byte[]{0x00, (byte) 0xDA, 0, 0, 4, 1}, 6));
+    }
+
+    @Test
+    public void desfireFramesAreReassembled() {
+        SimulatedPiccCard card = new SimulatedPiccCard(500);
+        card.open();
+        IsoDepSession session = new IsoDepSession(card, 64);
+
+        assertEquals(0, session.readData(1, 10, 0));
+        assertEquals(IsoDepSession.SW_DESFIRE_OK, session.getSw());
+        assertEquals(490, session.getLength());
+        for (int i = 0; i < 490; i++) {
+            assertEquals((byte) (10 + i), session.getData()[i]);
+        }
+        // 59 bytes per frame
+        assertEquals(9, session.getExchangeCount());
+    }
+
+    @Test
+    public void endlessAdditionalFramesAreCut() {
+        ScriptedCard card = new ScriptedCard();
+        card.forever(0x91AF, 0);
+        IsoDepSession session = new IsoDepSession(card);
+        assertEquals(IsoDepSession.ERR_TOO_LONG, session.readData(1, 0, 0));
+        assertTrue(card.mCommands.size() < 2000);
+
+        card = new ScriptedCard();
+        card.forever(0x91AF, 59);
+        session = new IsoDepSession(card);
+        session.setMaxResponse(4096);
+        assertEquals(IsoDepSession.ERR_TOO_LONG, session.readData(1, 0, 0));
+        assertTrue(session.getLength() <= 4096);
+        assertTrue(session.getData().length <= 4096);
+    }
+
+    private static void assertData(IsoDepSession session, int... expected) {
+        byte[] data = new byte[session.getLength()];
+        session.copyData(data, 0);
+        assertArrayEquals(bytes(expected), data);
+    }
+
+    private static byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        for (int i = 0; i < n; i++) {
+            b[i] = (byte) i;
+        }
+        return b;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+    /** Answers APDUs from a script and keeps the commands it was sent */
+    private static class ScriptedCard implements PiccTransport {
+
+        final List<byte[]> mCommands = new ArrayList<byte[]>();
+        private final List<byte[]> mAnswers = new ArrayList<byte[]>();
+        private byte[] mForever;
+
+        ScriptedCard answer(int sw, int... data) {
+            byte[] r = new byte[data.length + 2];
+            for (int i = 0; i < data.length; i++) {
+                r[i] = (byte) data[i];
+            }
+            r[data.length] = (byte) (sw >> 8);
+            r[data.length + 1] = (byte) sw;
+            mAnswers.add(r);
+            return this;
+        }
+
+        /** Once the script is used up, answer {@code sw} with {@code n} bytes every time */
+        void forever(int sw, int n) {
+            answer(sw, new int[n]);
+            mForever = mAnswers.remove(mAnswers.size() - 1);
+        }
+
+        @Override
+        public int apduCmd(byte[] apdu, int len, byte[] resp, byte[] respLen) {
+            byte[] cmd = new byte[len];
+            System.arraycopy(apdu, 0, cmd, 0, len);
+            mCommands.add(cmd);
+            byte[] r = mAnswers.isEmpty() ? mForever : mAnswers.remove(0);
+            if (r == null) {
+                return -1;
+            }
+            System.arraycopy(r, 0, resp, 0, r.length);
+            respLen[0] = (byte) r.length;
+            respLen[1] = (byte) (r.length >> 8);
+            return 0;
+        }
+
+        @Override
+        public int open() {
+            return 0;
+        }
+
+        @Override
+        public int close() {
+            return 0;
+        }
+
+        @Override
+        public int check(byte mode, byte[] cardType, byte[] serialNo) {
+            return 0;
+        }
+
+        @Override
+        public int polling(byte[] cardType, byte[] uid, byte[] uidLen, byte[] ats, byte[] atsLen, byte[] sak) {
+            return 0;
+        }
+
+        @Override
+        public int m1Authority(byte type, byte blkNo, byte[] pwd, byte[] serialNo) {
+            return 0;
+        }
+
+        @Override
+        public int m1ReadBlock(byte blkNo, byte[] blkValue) {
+            return 0;
+        }
+
+        @Override
+        public int remove() {
+            return 0;
+        }
+
+        @Override
+        public int halt() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package test.apidemo.picc;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory contactless card behind a {@link PiccTransport}, with a
+ * configurable air-interface cost per frame and per byte.
+ *
+ * It answers SELECT, READ BINARY over one transparent file, DESFire ReadData
+ * with 91AF frames, and Mifare Classic authenticate/read. Nothing here
+ * allocates after construction so allocation figures measured around it
+ * belong to the code under test.
+ */
+public class SimulatedPiccCard implements PiccTransport {
+
+    private static final int DESFIRE_FRAME = 59;
+
+    private final byte[] mFile;
+    private final byte[] mUid = {0x04, 0x11, 0x22, 0x33};
+    private long mFrameNanos;
+    private long mByteNanos;
+    private long mDetectNanos;
+    private int mMissesPerTap;
+    private int mMisses;
+    private int mDesfirePos = -1;
+    private int mDesfireEnd;
+    private boolean mOpen;
+    private boolean mAuthenticated;
+
+    public SimulatedPiccCard(int fileSize) {
+        mFile = new byte[fileSize];
+        for (int i = 0; i < fileSize; i++) {
+            mFile[i] = (byte) i;
+        }
+    }
+
+    /** Cost of one frame round-trip plus the per-byte transfer time */
+    public void setRfLatency(int frameMicros, int byteNanos) {
+        mFrameNanos = frameMicros * 1000L;
+        mByteNanos = byteNanos;
+    }
+
+    /** Cost of one PiccCheck/PiccPolling, and how many polls miss before the card is found */
+    public void setDetect(int micros, int missesPerTap) {
+        mDetectNanos = micros * 1000L;
+        mMissesPerTap = missesPerTap;
+    }
+
+    @Override
+    public int open() {
+        mOpen = true;
+        mMisses = 0;
+        return 0;
+    }
+
+    @Override
+    public int close() {
+        mOpen = false;
+        return 0;
+    }
+
+    @Override
+    public int check(byte mode, byte[] cardType, byte[] serialNo) {
+        if (!detect()) {
+            return -1;
+        }
+        cardType[0] = mode;
+        System.arraycopy(mUid, 0, serialNo, 0, mUid.length);
+        return 0;
+    }
+
+    @Override
+    public int polling(byte[] cardType, byte[] uid, byte[] uidLen, byte[] ats, byte[] atsLen, byte[] sak) {
+        if (!detect()) {
+            return -1;
+        }
+        cardType[0] = 'A';
+        System.arraycopy(mUid, 0, uid, 0, mUid.length);
+        uidLen[0] = (byte) mUid.length;
+        ats[0] = 0x06;
+        ats[1] = 0x75;
+        ats[2] = 0x77;
+        ats[3] = (byte) 0x81;
+        ats[4] = 0x02;
+        ats[5] = (byte) 0x80;
+        atsLen[0] = 6;
+        sak[0] = 0x20;
+        return 0;
+    }
+
+    @Override
+    public int apduCmd(byte[] apdu, int len, byte[] resp, byte[] respLen) {
+        if (!mOpen) {
+            return -2;
+        }
+        int cla = apdu[0] & 0xFF;
+        int ins = apdu[1] & 0xFF;
+        int n;
+        if (cla == 0x90) {
+            n = desfire(ins, apdu, len, resp);
+        } else if (ins == 0xA4) {
+            for (int i = 0; i < 16; i++) {
+                resp[i] = (byte) (0x6F + i);
+            }
+            n = sw(resp, 16, 0x9000);
+        } else if (ins == 0xB0) {
+            int offset = ((apdu[2] & 0x7F) << 8) | (apdu[3] & 0xFF);
+            int le = len > 4 ? apdu[len - 1] & 0xFF : 0;
+            if (le == 0) {
+                le = 256;
+            }
+            if (offset >= mFile.length) {
+                n = sw(resp, 0, 0x6B00);
+            } else {
+                int count = Math.min(le, mFile.length - offset);
+                System.arraycopy(mFile, offset, resp, 0, count);
+                n = sw(resp, count, count < le ? 0x6282 : 0x9000);
+            }
+        } else {
+            n = sw(resp, 0, 0x6D00);
+        }
+        air(len + n);
+        respLen[0] = (byte) n;
+        respLen[1] = (byte) (n >> 8);
+        return 0;
+    }
+
+    @Override
+    public int m1Authority(byte type, byte blkNo, byte[] pwd, byte[] serialNo) {
+        air(12);
+        mAuthenticated = mOpen;
+        return mAuthenticated ? 0 : -1;
+    }
+
+    @Override
+    public int m1ReadBlock(byte blkNo, byte[] blkValue) {
+        if (!mAuthenticated) {
+            return -1;
+        }
+        air(18);
+        int base = ((blkNo & 0xFF) * 16) % Math.max(16, mFile.length - 16);
+        System.arraycopy(mFile, base, blkValue, 0, 16);
+        return 0;
+    }
+
+    @Override
+    public int remove() {
+        air(0);
+        mAuthenticated = false;
+        mMisses = 0;
+        return 0;
+    }
+
+    @Override
+    public int halt() {
+        air(2);
+        mAuthenticated = false;
+        mMisses = 0;
+        return 0;
+    }
+
+    private boolean detect() {
+        pause(mDetectNanos);
+        if (mMisses < mMissesPerTap) {
+            mMisses++;
+            return false;
+        }
+        return mOpen;
+    }
+
+    private int desfire(int ins, byte[] apdu, int len, byte[] resp) {
+        if (ins == 0xBD) {
+            int offset = (apdu[6] & 0xFF) | ((apdu[7] & 0xFF) << 8) | ((apdu[8] & 0xFF) << 16);
+            int length = (apdu[9] & 0xFF) | ((apdu[10] & 0xFF) << 8) | ((apdu[11] & 0xFF) << 16);
+            if (offset > mFile.length) {
+                return sw(resp, 0, 0x91BE);
+            }
+            mDesfirePos = offset;
+            mDesfireEnd = length == 0 ? mFile.length : Math.min(mFile.length, offset + length);
+        } else if (ins != 0xAF || mDesfirePos < 0) {
+            return sw(resp, 0, 0x911C);
+        }
+        int count = Math.min(DESFIRE_FRAME, mDesfireEnd - mDesfirePos);
+        System.arraycopy(mFile, mDesfirePos, resp, 0, count);
+        mDesfirePos += count;
+        if (mDesfirePos >= mDesfireEnd) {
+            mDesfirePos = -1;
+            return sw(resp, count, 0x9100);
+        }
+        return sw(resp, count, 0x91AF);
+    }
+
+    private static int sw(byte[] resp, int off, int sw) {
+        resp[off] = (byte) (sw >> 8);
+        resp[off + 1] = (byte) sw;
+        return off + 2;
+    }
+
+    private void air(int bytes) {
+        pause(mFrameNanos + bytes * mByteNanos);
+    }
+
+    private static void pause(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        long end = System.nanoTime() + nanos;
+        if (nanos > 200000) {
+            LockSupport.parkNanos(nanos - 100000);
+        }
+        while (System.nanoTime() < end) {
+            // spin out the remainder; parkNanos alone overshoots by ~60us on Linux
+        }
+    }
+}
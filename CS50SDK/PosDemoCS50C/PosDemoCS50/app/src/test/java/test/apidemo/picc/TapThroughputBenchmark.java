@@ -0,0 +1,174 @@
+package test.apidemo.picc;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.apidemo.util.Allocations;
+import test.apidemo.util.LatencyRecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tap-cycle throughput against {@link SimulatedPiccCard}.
+ *
+ * Each tap runs PiccOpen, PiccCheck or PiccPolling, the card exchange and
+ * PiccRemove or PiccHalt, and the report gives taps/min, per-phase latency
+ * percentiles and bytes allocated per tap on the calling thread.
+ *
+ * Run on any JVM host with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.picc.TapThroughputBenchmark \
+ *     -Dbench=true -Dbench.taps=1000 -Dbench.rfFrameUs=250 -Dbench.rfByteNs=21000
+ * </pre>
+ */
+public class TapThroughputBenchmark {
+
+    private static final String[] PHASES = {"open", "detect", "exchange", "release"};
+
+    private static final int TAPS = Integer.getInteger("bench.taps", 200);
+    private static final int WARMUP = Integer.getInteger("bench.warmup", 50);
+    private static final int FRAME_US = Integer.getInteger("bench.rfFrameUs", 250);
+    private static final int BYTE_NS = Integer.getInteger("bench.rfByteNs", 21000);
+    private static final int DETECT_US = Integer.getInteger("bench.detectUs", 2000);
+    private static final int MISSES = Integer.getInteger("bench.detectMisses", 1);
+    private static final int FILE_SIZE = Integer.getInteger("bench.fileSize", 512);
+
+    private abstract static class Workload {
+        final boolean polling;
+        final boolean halt;
+        final int expected;
+
+        Workload(boolean polling, boolean halt, int expected) {
+            this.polling = polling;
+            this.halt = halt;
+            this.expected = expected;
+        }
+
+        /** @return bytes read from the card, or a negative error */
+        abstract int tap(PiccTransport card);
+    }
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void isoDepReadBinary() {
+        final byte[] select = {0x00, (byte) 0xA4, 0x04, 0x00, 0x02, 0x3F, 0x00, 0x00};
+        final SimulatedPiccCard card = newCard();
+        final IsoDepSession session = new IsoDepSession(card, FILE_SIZE);
+        run("ISO-DEP READ BINARY", card, new Workload(false, false, FILE_SIZE) {
+            int tap(PiccTransport t) {
+                int ret = session.transmit(select, select.length);
+                if (ret == 0) {
+                    ret = session.readBinary(0, FILE_SIZE);
+                }
+                return ret == 0 ? session.getLength() : ret;
+            }
+        });
+    }
+
+    @Test
+    public void desfireReadData() {
+        final SimulatedPiccCard card = newCard();
+        final IsoDepSession session = new IsoDepSession(card, FILE_SIZE);
+        run("DESFire ReadData", card, new Workload(true, false, FILE_SIZE) {
+            int tap(PiccTransport t) {
+                int ret = session.readData(1, 0, FILE_SIZE);
+                return ret == 0 ? session.getLength() : ret;
+            }
+        });
+    }
+
+    @Test
+    public void mifareClassicRead() {
+        final SimulatedPiccCard card = newCard();
+        final byte[] pwd = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0};
+        final byte[] serialNo = new byte[50];
+        final byte[] block = new byte[16];
+        run("Mifare Classic sector", card, new Workload(false, true, 48) {
+            int tap(PiccTransport t) {
+                int ret = t.m1Authority((byte) 'A', (byte) 4, pwd, serialNo);
+                for (int blk = 4; ret == 0 && blk < 7; blk++) {
+                    ret = t.m1ReadBlock((byte) blk, block);
+                }
+                return ret == 0 ? 48 : ret;
+            }
+        });
+    }
+
+    private static SimulatedPiccCard newCard() {
+        SimulatedPiccCard card = new SimulatedPiccCard(FILE_SIZE);
+        card.setRfLatency(FRAME_US, BYTE_NS);
+        card.setDetect(DETECT_US, MISSES);
+        return card;
+    }
+
+    private void run(String name, SimulatedPiccCard card, Workload workload) {
+        LatencyRecorder[] phases = new LatencyRecorder[PHASES.length];
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyRecorder(TAPS);
+        }
+        LatencyRecorder total = new LatencyRecorder(TAPS);
+        byte[] cardType = new byte[4];
+        byte[] uid = new byte[10];
+        byte[] uidLen = new byte[1];
+        byte[] ats = new byte[40];
+        byte[] atsLen = new byte[1];
+        byte[] sak = new byte[1];
+        byte[] serialNo = new byte[50];
+
+        long allocStart = 0;
+        long wallStart = 0;
+        for (int i = 0; i < WARMUP + TAPS; i++) {
+            if (i == WARMUP) {
+                allocStart = Allocations.allocatedBytes();
+                wallStart = System.nanoTime();
+            }
+            long t0 = System.nanoTime();
+            assertEquals(0, card.open());
+            long t1 = System.nanoTime();
+            int ret;
+            do {
+                ret = workload.polling
+                        ? card.polling(cardType, uid, uidLen, ats, atsLen, sak)
+                        : card.check((byte) 'B', cardType, serialNo);
+            } while (ret != 0);
+            long t2 = System.nanoTime();
+            int read = workload.tap(card);
+            long t3 = System.nanoTime();
+            if (workload.halt) {
+                card.halt();
+            } else {
+                card.remove();
+            }
+            card.close();
+            long t4 = System.nanoTime();
+            if (read != workload.expected) {
+                fail(name + " tap " + i + " returned " + read);
+            }
+
+            if (i >= WARMUP) {
+                phases[0].record(t1 - t0);
+                phases[1].record(t2 - t1);
+                phases[2].record(t3 - t2);
+                phases[3].record(t4 - t3);
+                total.record(t4 - t0);
+            }
+        }
+        long wall = System.nanoTime() - wallStart;
+        long alloc = Allocations.allocatedBytes() - allocStart;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s: %d taps, %.1f taps/min, %s bytes/tap%n", name, TAPS,
+                TAPS * 60e9 / wall, allocStart < 0 ? "n/a" : String.valueOf(alloc / TAPS)));
+        for (int i = 0; i < PHASES.length; i++) {
+            sb.append(String.format("  %-8s %s%n", PHASES[i], phases[i].summary()));
+        }
+        sb.append(String.format("  %-8s %s%n", "tap", total.summary()));
+        System.out.print(sb);
+    }
+}
@@ -0,0 +1,61 @@
+package test.apidemo.print;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Cost of a receipt's barcodes with and without {@link BarcodeCache}: zxing
+ * encoding on every receipt against a lookup of the kept raster.
+ *
+ * Run with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.print.BarcodeCacheBenchmark \
+ *     -Dbench=true -Dbench.receipts=5000
+ * </pre>
+ */
+public class BarcodeCacheBenchmark {
+
+    private static final int RECEIPTS = Integer.getInteger("bench.receipts", 1000);
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void storeQrCode() {
+        measure("QR_CODE 240", "https://shop.example/loyalty?terminal=00026715&store=0042", "QR_CODE", 240, 240);
+    }
+
+    @Test
+    public void terminalIdCode128() {
+        measure("CODE_128 360x120", "00026715-001420183990573", "CODE_128", 360, 120);
+    }
+
+    private static void measure(String name, String content, String format, int width, int height) {
+        BarcodeCache cache = new BarcodeCache(BarcodeCache.DEFAULT_MAX_BYTES);
+        // warm up
+        for (int i = 0; i < RECEIPTS / 5 + 1; i++) {
+            cache.clear();
+            assertNotNull(cache.get(content, format, width, height));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RECEIPTS; i++) {
+            cache.clear();
+            cache.get(content, format, width, height);
+        }
+        double encodeUs = (System.nanoTime() - start) / 1e3 / RECEIPTS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < RECEIPTS; i++) {
+            cache.get(content, format, width, height);
+        }
+        double hitUs = (System.nanoTime() - start) / 1e3 / RECEIPTS;
+
+        System.out.printf("%s: encode %.1f us, cached %.2f us per receipt%n", name, encodeUs, hitUs);
+    }
+}
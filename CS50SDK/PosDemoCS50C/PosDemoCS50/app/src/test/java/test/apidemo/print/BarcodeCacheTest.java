@@ -0,0 +1,94 @@
+package test.apidemo.print;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Barcodes encoded once per content, format and size, dropped least recently
+ * used first, and drawn on the page by {@link RasterPrinter}.
+ */
+public class BarcodeCacheTest {
+
+    private static final String URL = "https://shop.example/loyalty?terminal=00026715";
+
+    @Test
+    public void encodesOncePerKey() {
+        BarcodeCache cache = new BarcodeCache(BarcodeCache.DEFAULT_MAX_BYTES);
+        Raster qr = cache.get(URL, "QR_CODE", 240, 240);
+        assertSame(qr, cache.get(URL, "QR_CODE", 240, 240));
+        assertNotSame(qr, cache.get(URL, "QR_CODE", 200, 200));
+        assertNotSame(qr, cache.get("00026715", "QR_CODE", 240, 240));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+
+        assertEquals(240, qr.getWidth());
+        assertEquals(240, qr.getHeight());
+        assertTrue(ImageRasterizerTest.black(qr) > 0);
+
+        Raster code128 = cache.get("123456789", "CODE_128", 360, 120);
+        assertEquals(360, code128.getWidth());
+        assertEquals(120, code128.getHeight());
+        // a wider request is narrowed to the paper
+        assertEquals(Raster.PAPER_WIDTH, cache.get("123456789", "CODE_128", 500, 80).getWidth());
+    }
+
+    @Test
+    public void codeWiderThanThePaperIsLeftToTheFirmware() {
+        BarcodeCache cache = new BarcodeCache(BarcodeCache.DEFAULT_MAX_BYTES);
+        // 40 characters of CODE_128 need 408 dots at one dot per module
+        String long128 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ-./+";
+        assertNull(cache.get(long128, "CODE_128", Raster.PAPER_WIDTH, 80));
+        assertEquals(0, cache.getBytes());
+
+        RecordingPrinter target = new RecordingPrinter();
+        RasterPrinter printer = new RasterPrinter(target, new GlyphCache(new BoxGlyphSource()),
+                cache, RasterPrinter.DEFAULT_STRIP_ROWS);
+        assertEquals(0, printer.printBarcode(long128, Raster.PAPER_WIDTH, 80, "CODE_128"));
+        assertEquals("CODE_128 " + long128, target.mCalls.get(target.mCalls.size() - 1));
+    }
+
+    @Test
+    public void dropsLeastRecentlyUsed() {
+        int one = new Raster(240, 240).getData().length;
+        BarcodeCache cache = new BarcodeCache(3 * one);
+        cache.get("a", "QR_CODE", 240, 240);
+        cache.get("b", "QR_CODE", 240, 240);
+        cache.get("c", "QR_CODE", 240, 240);
+        cache.get("a", "QR_CODE", 240, 240);
+        cache.get("d", "QR_CODE", 240, 240);
+        assertEquals(3 * one, cache.getBytes());
+
+        int misses = cache.getMisses();
+        cache.get("a", "QR_CODE", 240, 240);
+        assertEquals(misses, cache.getMisses());
+        cache.get("b", "QR_CODE", 240, 240);
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
+    @Test
+    public void unencodableContentIsNull() {
+        BarcodeCache cache = new BarcodeCache(BarcodeCache.DEFAULT_MAX_BYTES);
+        assertNull(cache.get("123", "NO_SUCH_FORMAT", 200, 80));
+        assertNull(cache.get("not digits", "EAN_13", 200, 80));
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void rasterPrinterDrawsBarcodesOnThePage() {
+        RecordingPrinter target = new RecordingPrinter();
+        RasterPrinter printer = new RasterPrinter(target, new GlyphCache(new BoxGlyphSource()),
+                new BarcodeCache(BarcodeCache.DEFAULT_MAX_BYTES), RasterPrinter.DEFAULT_STRIP_ROWS);
+        Receipt page = DemoReceipts.TEST_PAGE.compile().newReceipt().set("code", "123456789");
+
+        assertEquals(0, page.print(printer));
+        assertEquals("start", target.mCalls.get(target.mCalls.size() - 1));
+        for (int i = 0; i < target.mCalls.size() - 1; i++) {
+            assertTrue(target.mCalls.get(i), target.mCalls.get(i).startsWith("raster 384x"));
+        }
+    }
+}
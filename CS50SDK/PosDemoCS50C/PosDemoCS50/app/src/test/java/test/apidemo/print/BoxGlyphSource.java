@@ -0,0 +1,33 @@
+package test.apidemo.print;
+
+/**
+ * {@link GlyphSource} drawing every cluster as the outline of its cell: full
+ * width for CJK and Hangul, half width for the rest. Counts what it draws.
+ */
+class BoxGlyphSource implements GlyphSource {
+
+    int mRendered;
+
+    @Override
+    public Raster render(String cluster, int size, boolean bold) {
+        mRendered++;
+        int width = isWide(cluster.codePointAt(0)) ? size : size / 2;
+        Raster glyph = new Raster(width, size);
+        for (int x = 0; x < width; x++) {
+            glyph.set(x, 0, true);
+            glyph.set(x, size - 1, true);
+        }
+        for (int y = 0; y < size; y++) {
+            glyph.set(0, y, true);
+            glyph.set(width - 1, y, true);
+        }
+        return glyph;
+    }
+
+    static boolean isWide(int cp) {
+        return (cp >= 0x1100 && cp <= 0x115F) || (cp >= 0x2E80 && cp <= 0xA4CF)
+                || (cp >= 0xAC00 && cp <= 0xD7A3) || (cp >= 0xF900 && cp <= 0xFAFF)
+                || (cp >= 0xFE30 && cp <= 0xFE4F) || (cp >= 0xFF00 && cp <= 0xFF60)
+                || (cp >= 0xFFE0 && cp <= 0xFFE6);
+    }
+}
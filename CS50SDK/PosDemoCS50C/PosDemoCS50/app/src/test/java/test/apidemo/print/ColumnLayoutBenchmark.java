@@ -0,0 +1,108 @@
+package test.apidemo.print;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Item lines of a receipt, item left in 24 cells and price right in 8,
+ * through {@link ColumnLayout} against the padding loop and substring
+ * recursion StringAlign.format used before, one formatter per column.
+ *
+ * Run with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.print.ColumnLayoutBenchmark \
+ *     -Dbench=true -Dbench.rows=500000
+ * </pre>
+ */
+public class ColumnLayoutBenchmark {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 100000);
+
+    private static final String[] ITEMS = {
+            "COFFEE LARGE WITH OAT MILK", "咖啡 大杯", "CROISSANT", "矿泉水 550ML", "SANDWICH HAM CHEESE",
+    };
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void itemLines() {
+        ColumnLayout layout = new ColumnLayout(new int[]{24, 8},
+                new int[]{Printer.ALIGN_LEFT, Printer.ALIGN_RIGHT});
+        StringBuilder out = new StringBuilder();
+        long chars = 0;
+        // warm up
+        for (int i = 0; i < ROWS / 5 + 1; i++) {
+            out.setLength(0);
+            layout.append(out, ITEMS[i % ITEMS.length], "12.50");
+            chars += legacyLine(ITEMS[i % ITEMS.length], "12.50").length();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROWS; i++) {
+            out.setLength(0);
+            layout.append(out, ITEMS[i % ITEMS.length], "12.50");
+        }
+        double layoutNs = (System.nanoTime() - start) / (double) ROWS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROWS; i++) {
+            chars += legacyLine(ITEMS[i % ITEMS.length], "12.50").length();
+        }
+        double legacyNs = (System.nanoTime() - start) / (double) ROWS;
+
+        assertEquals('\n', out.charAt(out.length() - 1));
+        System.out.printf("item line: ColumnLayout %.0f ns, StringAlign before %.0f ns (%d chars)%n",
+                layoutNs, legacyNs, chars);
+    }
+
+    /**
+     * The same line from two StringAlign formatters as they were: the item
+     * lines side by side with the price, then blank price cells
+     */
+    private static String legacyLine(String item, String price) {
+        String name = legacy(item, 24, false);
+        String amount = legacy(price, 8, true);
+        StringBuffer line = new StringBuffer();
+        int from = 0;
+        while (true) {
+            int end = name.indexOf('\n', from);
+            line.append(name, from, end < 0 ? name.length() : end);
+            line.append(from == 0 ? amount : legacy("", 8, true));
+            line.append('\n');
+            if (end < 0) {
+                return line.toString();
+            }
+            from = end + 1;
+        }
+    }
+
+    /** StringAlign.format as it was, left or right aligned */
+    private static String legacy(String s, int maxChars, boolean right) {
+        StringBuffer where = new StringBuffer();
+        int wantedLength = Math.min(s.length(), maxChars);
+        String wanted = s.substring(0, wantedLength);
+        if (right) {
+            pad(where, maxChars - wantedLength);
+            where.append(wanted);
+        } else {
+            where.append(wanted);
+            pad(where, maxChars - wantedLength);
+        }
+        if (s.length() > wantedLength) {
+            where.append("\n" + legacy(s.substring(wantedLength), maxChars, right));
+        }
+        return where.toString();
+    }
+
+    private static void pad(StringBuffer to, int howMany) {
+        for (int i = 0; i < howMany; i++) {
+            to.append(" ");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package test.apidemo.print;
+
+import org.junit.Test;
+
+import test.apidemo.StringAlign;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Cell widths of the scripts the printer fonts carry, word wrapping, and
+ * multi-column rows.
+ */
+public class ColumnLayoutTest {
+
+    @Test
+    public void widthsFollowEastAsianWidth() {
+        assertEquals(1, ColumnLayout.width('A'));
+        assertEquals(1, ColumnLayout.width('é'));
+        assertEquals(1, ColumnLayout.width('Ω'));
+        assertEquals(2, ColumnLayout.width('中'));
+        assertEquals(2, ColumnLayout.width('가'));
+        assertEquals(2, ColumnLayout.width('。'));
+        // fullwidth pound and colon of the unicode sample
+        assertEquals(2, ColumnLayout.width('￡'));
+        assertEquals(2, ColumnLayout.width('：'));
+        assertEquals(1, ColumnLayout.width('｡'));
+        assertEquals(0, ColumnLayout.width('\u0301'));
+        assertEquals(0, ColumnLayout.width('\u200D'));
+        assertEquals(0, ColumnLayout.width('\n'));
+        assertEquals(2, ColumnLayout.width(0x20001));
+
+        String s = "批次号(BATCH NO)é\uD840\uDC01";
+        assertEquals(6 + 10 + 1 + 2, ColumnLayout.width(s, 0, s.length()));
+        // the cut never splits a wide character or leaves a mark behind
+        assertEquals(2, ColumnLayout.fit(s, 0, s.length(), 5));
+        assertEquals(14, ColumnLayout.fit(s, 3, s.length(), 12));
+        assertEquals(2, ColumnLayout.fit("e\u0301x", 0, 3, 1));
+    }
+
+    @Test
+    public void wrapsAtWordsAndBetweenIdeographs() {
+        ColumnLayout layout = new ColumnLayout(10, Printer.ALIGN_LEFT);
+        assertEquals("the quick \nbrown fox \njumps     \n", layout.format("the quick brown fox jumps"));
+        assertEquals("abcdefghij\nklm       \n", layout.format("abcdefghijklm"));
+        assertEquals("中文中文中\n文ab      \n", layout.format("中文中文中文ab"));
+        assertEquals("one       \n          \ntwo       \n", layout.format("one\n\ntwo"));
+        assertEquals("          \n", layout.format(""));
+    }
+
+    @Test
+    public void columnsAlignAndWrapTogether() {
+        ColumnLayout layout = new ColumnLayout(new int[]{4, 20, 8},
+                new int[]{Printer.ALIGN_RIGHT, Printer.ALIGN_LEFT, Printer.ALIGN_RIGHT});
+        String rows = layout.format("2", "咖啡 COFFEE LARGE WITH OAT MILK", "9.00");
+        assertEquals("   2咖啡 COFFEE LARGE       9.00\n"
+                + "    WITH OAT MILK               \n", rows);
+
+        layout.setWrap(false);
+        assertEquals("   2咖啡 COFFEE LARGE WI12345678\n",
+                layout.format("2", "咖啡 COFFEE LARGE WITH OAT", "123456789"));
+
+        ColumnLayout center = new ColumnLayout(9, Printer.ALIGN_CENTER);
+        assertEquals("  小计   \n", center.format("小计"));
+    }
+
+    @Test
+    public void stringAlignCountsCells() {
+        StringAlign align = new StringAlign(8, StringAlign.JUST_RIGHT);
+        assertEquals("    合计", align.format("合计"));
+        align.setJust(StringAlign.JUST_CENTER);
+        assertEquals(" - 1 -  ", align.format("- 1 -"));
+        align.setJust(StringAlign.JUST_LEFT);
+        assertEquals("page one\ntwo     ", align.format("page one two"));
+    }
+}
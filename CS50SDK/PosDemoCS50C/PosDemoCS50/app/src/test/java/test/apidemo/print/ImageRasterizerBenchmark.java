@@ -0,0 +1,91 @@
+package test.apidemo.print;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link ImageRasterizer} throughput per dither mode on a coupon-sized photo
+ * shrunk to the paper: source megapixels per second and strips sent.
+ *
+ * Run with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.print.ImageRasterizerBenchmark \
+ *     -Dbench=true -Dbench.width=1200 -Dbench.height=3000
+ * </pre>
+ */
+public class ImageRasterizerBenchmark {
+
+    private static final int WIDTH = Integer.getInteger("bench.width", 1200);
+    private static final int HEIGHT = Integer.getInteger("bench.height", 3000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 10);
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void threshold() {
+        measure("none", ImageRasterizer.DITHER_NONE);
+    }
+
+    @Test
+    public void ordered() {
+        measure("ordered", ImageRasterizer.DITHER_ORDERED);
+    }
+
+    @Test
+    public void floydSteinberg() {
+        measure("Floyd-Steinberg", ImageRasterizer.DITHER_FLOYD_STEINBERG);
+    }
+
+    private static void measure(String name, int dither) {
+        ImageRasterizer images = new ImageRasterizer(dither);
+        Photo photo = new Photo(WIDTH, HEIGHT);
+        RecordingPrinter printer = new RecordingPrinter();
+        images.print(photo, printer);
+        int strips = printer.mRasters.size();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            printer.mRasters.clear();
+            assertEquals(0, images.print(photo, printer));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %dx%d to %dx%d, %.1f source Mpx/s, %.1f ms per image, %d strips%n",
+                name, WIDTH, HEIGHT, images.outWidth(photo), images.outHeight(photo),
+                (double) WIDTH * HEIGHT * ROUNDS / 1e6 / seconds, seconds * 1e3 / ROUNDS, strips);
+    }
+
+    /** Smooth shading with some detail, generated as read */
+    private static final class Photo implements PixelSource {
+        private final int mWidth;
+        private final int mHeight;
+
+        Photo(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return mWidth;
+        }
+
+        @Override
+        public int getHeight() {
+            return mHeight;
+        }
+
+        @Override
+        public void getRow(int y, int[] argb) {
+            for (int x = 0; x < mWidth; x++) {
+                int v = ((x + y) * 255 / (mWidth + mHeight)) ^ ((x * y) & 0x1F);
+                argb[x] = 0xFF000000 | (v << 16) | ((v ^ 0x40) << 8) | (255 - v);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package test.apidemo.print;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Image to dots: scaling to the paper, strips within the PrintBmp limit,
+ * and the three dither modes on flat and graded images.
+ */
+public class ImageRasterizerTest {
+
+    private final RecordingPrinter mPrinter = new RecordingPrinter();
+
+    @Test
+    public void tallImageIsSentInStrips() {
+        ImageRasterizer images = new ImageRasterizer(ImageRasterizer.DITHER_NONE);
+        assertEquals(0, images.print(new Gradient(100, 1300), mPrinter));
+        assertEquals("[raster 100x500, raster 100x500, raster 100x300]", mPrinter.mCalls.toString());
+    }
+
+    @Test
+    public void wideImageShrinksToThePaper() {
+        ImageRasterizer images = new ImageRasterizer(ImageRasterizer.DITHER_ORDERED);
+        assertEquals(0, images.print(new Gradient(1000, 600), mPrinter));
+        assertEquals("[raster 384x230]", mPrinter.mCalls.toString());
+
+        Raster small = images.setWidth(200).toRaster(new Gradient(50, 50));
+        assertEquals(200, small.getWidth());
+        assertEquals(200, small.getHeight());
+    }
+
+    @Test
+    public void flatShadesKeepTheirDensity() {
+        for (int mode = ImageRasterizer.DITHER_NONE; mode <= ImageRasterizer.DITHER_FLOYD_STEINBERG; mode++) {
+            ImageRasterizer images = new ImageRasterizer(mode);
+            assertEquals(0, black(images.toRaster(new Flat(64, 64, 0xFFFFFFFF))));
+            assertEquals(64 * 64, black(images.toRaster(new Flat(64, 64, 0xFF000000))));
+            // transparent reads as paper
+            assertEquals(0, black(images.toRaster(new Flat(64, 64, 0x00000000))));
+        }
+        assertEquals(64 * 64 / 2, black(new ImageRasterizer(ImageRasterizer.DITHER_ORDERED)
+                .toRaster(new Flat(64, 64, 0xFF808080))));
+        int fs = black(new ImageRasterizer(ImageRasterizer.DITHER_FLOYD_STEINBERG)
+                .toRaster(new Flat(64, 64, 0xFF808080)));
+        assertTrue(String.valueOf(fs), Math.abs(fs - 64 * 64 / 2) < 64);
+        assertEquals(0, black(new ImageRasterizer(ImageRasterizer.DITHER_NONE)
+                .toRaster(new Flat(64, 64, 0xFF808080))));
+    }
+
+    @Test
+    public void stripsJoinWithoutASeam() {
+        ImageRasterizer images = new ImageRasterizer(ImageRasterizer.DITHER_FLOYD_STEINBERG).setStripRows(7);
+        Gradient src = new Gradient(120, 40);
+        images.print(src, mPrinter);
+        Raster whole = images.toRaster(src);
+
+        byte[] joined = new byte[whole.getData().length];
+        int at = 0;
+        for (int i = 0; i < mPrinter.mRasters.size(); i++) {
+            byte[] strip = mPrinter.mRasters.get(i).getData();
+            System.arraycopy(strip, 0, joined, at, strip.length);
+            at += strip.length;
+        }
+        assertEquals(6, mPrinter.mRasters.size());
+        assertArrayEquals(whole.getData(), joined);
+        // dark on the left, light on the right
+        assertTrue(whole.get(0, 20));
+        assertFalse(whole.get(119, 20));
+    }
+
+    @Test
+    public void emptyImageIsAnError() {
+        ImageRasterizer images = new ImageRasterizer(ImageRasterizer.DITHER_NONE);
+        assertEquals(ImageRasterizer.ERR_EMPTY, images.print(new Flat(0, 10, 0), mPrinter));
+        assertEquals(null, images.toRaster(new Flat(10, 0, 0)));
+    }
+
+    static int black(Raster raster) {
+        int n = 0;
+        for (int y = 0; y < raster.getHeight(); y++) {
+            for (int x = 0; x < raster.getWidth(); x++) {
+                if (raster.get(x, y)) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /** One colour all over */
+    static final class Flat implements PixelSource {
+        private final int mWidth;
+        private final int mHeight;
+        private final int mArgb;
+
+        Flat(int width, int height, int argb) {
+            mWidth = width;
+            mHeight = height;
+            mArgb = argb;
+        }
+
+        @Override
+        public int getWidth() {
+            return mWidth;
+        }
+
+        @Override
+        public int getHeight() {
+            return mHeight;
+        }
+
+        @Override
+        public void getRow(int y, int[] argb) {
+            for (int x = 0; x < mWidth; x++) {
+                argb[x] = mArgb;
+            }
+        }
+    }
+
+    /** Grey ramp from black on the left to white on the right */
+    static final class Gradient implements PixelSource {
+        private final int mWidth;
+        private final int mHeight;
+
+        Gradient(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return mWidth;
+        }
+
+        @Override
+        public int getHeight() {
+            return mHeight;
+        }
+
+        @Override
+        public void getRow(int y, int[] argb) {
+            for (int x = 0; x < mWidth; x++) {
+                int v = x * 255 / (mWidth - 1);
+                argb[x] = 0xFF000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package test.apidemo.print;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A long report on {@link SimulatedPrinter}'s heating head: paced, against
+ * printing always at the slowest speed, which never overheats. Times are
+ * on the simulated clock, plus the real cost of pacing per page.
+ *
+ * Run with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.print.PrintPacerBenchmark \
+ *     -Dbench=true -Dbench.pages=500
+ * </pre>
+ */
+public class PrintPacerBenchmark {
+
+    private static final int PAGES = Integer.getInteger("bench.pages", 200);
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void longReport() {
+        long[] clock = {0};
+        SimulatedPrinter bare = new SimulatedPrinter();
+        bare.setHead(PrintPacer.DEFAULT_HEAT_LIMIT, PrintPacer.DEFAULT_HALF_LIFE_MS, clock);
+        int failedAt = -1;
+        for (int i = 0; i < PAGES && failedAt < 0; i++) {
+            if (printPage(bare, i) != 0) {
+                failedAt = i;
+            }
+        }
+
+        clock[0] = 0;
+        SimulatedPrinter slow = new SimulatedPrinter();
+        slow.setHead(PrintPacer.DEFAULT_HEAT_LIMIT, PrintPacer.DEFAULT_HALF_LIFE_MS, clock);
+        slow.setSpeed(PrintPacer.DEFAULT_MIN_SPEED);
+        for (int i = 0; i < PAGES; i++) {
+            assertEquals(0, printPage(slow, i));
+        }
+        long slowMs = clock[0];
+
+        final long[] paced = {0};
+        SimulatedPrinter printer = new SimulatedPrinter();
+        printer.setHead(PrintPacer.DEFAULT_HEAT_LIMIT, PrintPacer.DEFAULT_HALF_LIFE_MS, paced);
+        PrintPacer pacer = new PrintPacer(printer) {
+            @Override
+            protected long now() {
+                return paced[0];
+            }
+
+            @Override
+            protected void sleep(long millis) {
+                paced[0] += millis;
+            }
+        };
+        long start = System.nanoTime();
+        for (int i = 0; i < PAGES; i++) {
+            assertEquals(0, printPage(pacer, i));
+        }
+        double pacingUs = (System.nanoTime() - start) / 1e3 / PAGES;
+
+        System.out.printf("%d pages: unpaced -2 at page %d; slowest speed %.1f s; "
+                        + "paced %.1f s, %d starts, %d retries, %.1f s cooling, %.1f us per page%n",
+                PAGES, failedAt, slowMs / 1e3, paced[0] / 1e3, pacer.getStarts(),
+                pacer.getRetries(), pacer.getCoolDownMs() / 1e3, pacingUs);
+    }
+
+    private static int printPage(Printer printer, int page) {
+        printer.setFont(24, 24, 0);
+        printer.printStr("page " + page + "\n");
+        for (int i = 0; i < 40; i++) {
+            printer.printStr("0123456789ABCDEFGHIJKLMNOPQRSTU\n");
+        }
+        return printer.start();
+    }
+}
@@ -0,0 +1,176 @@
+package test.apidemo.print;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pacing against the heating head of {@link SimulatedPrinter}: a report the
+ * bare printer gives up on halfway finishes, cool printers are not slowed,
+ * and -2 and -3 are printed through.
+ */
+public class PrintPacerTest {
+
+    private static final long LIMIT = PrintPacer.DEFAULT_HEAT_LIMIT;
+    private static final long HALF_LIFE = PrintPacer.DEFAULT_HALF_LIFE_MS;
+    private static final int PAGES = 60;
+
+    private final long[] mClock = {1000000};
+    private final SimulatedPrinter mPrinter = new SimulatedPrinter();
+
+    @Test
+    public void longReportFinishesInsteadOfOverheating() {
+        mPrinter.setHead(LIMIT, HALF_LIFE, mClock);
+        int ret = 0;
+        int page = 0;
+        while (ret == 0 && page < PAGES) {
+            ret = printPage(mPrinter, page++);
+        }
+        assertEquals(-2, ret);
+        assertTrue(page < PAGES / 2);
+
+        SimulatedPrinter printer = new SimulatedPrinter();
+        printer.setHead(LIMIT, HALF_LIFE, mClock);
+        PrintPacer pacer = new TestPacer(printer);
+        int slowest = PrintPacer.DEFAULT_MAX_SPEED;
+        for (page = 0; page < PAGES; page++) {
+            assertEquals(0, printPage(pacer, page));
+            slowest = Math.min(slowest, pacer.getSpeed());
+        }
+        assertEquals(PAGES, printer.mPages.size());
+        assertTrue(printer.mPages.get(PAGES - 1).startsWith("page " + (PAGES - 1) + "\n"));
+        assertTrue(slowest < PrintPacer.DEFAULT_MAX_SPEED);
+        assertTrue(pacer.getCoolDownMs() > 0);
+        // the estimate learns from the few -2 it meets
+        assertTrue(printer.getTooHot() <= 3);
+        assertTrue(pacer.getHeat() <= LIMIT);
+    }
+
+    @Test
+    public void coolHeadPrintsAtFullSpeed() {
+        mPrinter.setHead(LIMIT, HALF_LIFE, mClock);
+        PrintPacer pacer = new TestPacer(mPrinter);
+        pacer.setGray(4);
+        for (int i = 0; i < 5; i++) {
+            pacer.setFont(24, 24, 0);
+            pacer.printStr("TOTAL 12.00\n");
+            assertEquals(0, pacer.start());
+            mClock[0] += 30000;
+        }
+        assertEquals(PrintPacer.DEFAULT_MAX_SPEED, pacer.getSpeed());
+        assertEquals(4, pacer.getGray());
+        assertEquals(0, pacer.getCoolDownMs());
+        assertEquals(5, pacer.getStarts());
+    }
+
+    @Test
+    public void hotPageIsCutAndStyleRestated() {
+        RecordingPrinter printer = new RecordingPrinter();
+        PrintPacer pacer = new TestPacer(printer, 4000);
+        pacer.setFont(24, 24, 0);
+        pacer.setAlign(Printer.ALIGN_CENTER);
+        // lines of about 1800 dots against a 2000 dot budget per start
+        pacer.printStr(line('A') + line('B') + line('C'));
+        pacer.printStr(line('D'));
+        assertEquals(0, pacer.start());
+
+        assertEquals(4, pacer.getStarts());
+        assertEquals(line('A') + line('B') + line('C') + line('D'), printer.mText.toString());
+        String calls = printer.mCalls.toString();
+        assertTrue(calls, calls.startsWith("[gray 3, speed 5, font 24x24 0, align 1, str, start, "));
+        assertTrue(calls, calls.endsWith("font 24x24 0, align 1, str, start]"));
+        assertTrue(pacer.getCoolDownMs() > 0);
+    }
+
+    @Test
+    public void failureAfterPartOfThePageIsPartial() {
+        SimulatedPrinter printer = new SimulatedPrinter();
+        printer.failEvery(3, -5);
+        PrintPacer pacer = new TestPacer(printer, 4000);
+        pacer.setFont(24, 24, 0);
+        pacer.printStr(line('A') + line('B') + line('C') + line('D'));
+        assertEquals(PrintPacer.ERR_PARTIAL, pacer.start());
+        assertEquals(-5, pacer.getLastError());
+        assertEquals(2, printer.mPages.size());
+
+        // a failed first start has printed nothing
+        printer.failEvery(1, -5);
+        pacer.printStr(line('E'));
+        assertEquals(-5, pacer.start());
+        assertEquals(-5, pacer.getLastError());
+        printer.failEvery(0, 0);
+        pacer.printStr(line('E'));
+        assertEquals(0, pacer.start());
+        assertEquals(0, pacer.getLastError());
+    }
+
+    @Test
+    public void tooHotIsWaitedOutAndRetried() {
+        mPrinter.setHead(LIMIT, HALF_LIFE, mClock);
+        // heated by someone the pacer does not know about
+        while (printPage(mPrinter, 0) == 0) {
+        }
+        int printed = mPrinter.mPages.size();
+        PrintPacer pacer = new TestPacer(mPrinter);
+        assertEquals(0, printPage(pacer, 1));
+        assertEquals(1, pacer.getRetries());
+        assertEquals(printed + 1, mPrinter.mPages.size());
+        assertTrue(pacer.getCoolDownMs() > 0);
+    }
+
+    @Test
+    public void weakBatteryPrintsSlowAndLight() {
+        mPrinter.setBattery(12);
+        PrintPacer pacer = new TestPacer(mPrinter);
+        pacer.setBattery(12);
+        assertEquals(0, printPage(pacer, 0));
+        // capped to speed 3, gray 3, still too much: once more at the slowest
+        assertEquals(1, pacer.getRetries());
+        assertEquals(1, mPrinter.getSpeed());
+        assertEquals(2, mPrinter.getGray());
+
+        pacer.setBattery(5);
+        assertEquals(0, printPage(pacer, 1));
+        assertEquals(1, pacer.getRetries());
+        assertEquals(2, mPrinter.mPages.size());
+    }
+
+    /** A report page of 40 full lines */
+    private static int printPage(Printer printer, int page) {
+        printer.setFont(24, 24, 0);
+        printer.printStr("page " + page + "\n");
+        for (int i = 0; i < 40; i++) {
+            printer.printStr("0123456789ABCDEFGHIJKLMNOPQRSTU\n");
+        }
+        return printer.start();
+    }
+
+    private static String line(char c) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 32; i++) {
+            sb.append(c);
+        }
+        return sb.append('\n').toString();
+    }
+
+    private class TestPacer extends PrintPacer {
+        TestPacer(Printer target) {
+            this(target, LIMIT);
+        }
+
+        TestPacer(Printer target, long limit) {
+            super(target, PrintPacer.DEFAULT_MIN_SPEED, PrintPacer.DEFAULT_MAX_SPEED, limit, HALF_LIFE);
+        }
+
+        @Override
+        protected long now() {
+            return mClock[0];
+        }
+
+        @Override
+        protected void sleep(long millis) {
+            mClock[0] += millis;
+        }
+    }
+}
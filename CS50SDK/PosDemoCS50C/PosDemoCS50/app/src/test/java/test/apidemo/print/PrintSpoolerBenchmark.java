@@ -0,0 +1,85 @@
+package test.apidemo.print;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Jobs per second through {@link PrintSpooler}, each job written to disk on
+ * submit and deleted once printed, against {@link SimulatedPrinter} with and
+ * without injected failures and paper-outs.
+ *
+ * Run with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.print.PrintSpoolerBenchmark \
+ *     -Dbench=true -Dbench.jobs=5000
+ * </pre>
+ */
+public class PrintSpoolerBenchmark {
+
+    private static final int JOBS = Integer.getInteger("bench.jobs", 1000);
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void cleanPrinter() throws IOException {
+        measure("clean", new SimulatedPrinter());
+    }
+
+    @Test
+    public void faultyPrinter() throws IOException {
+        SimulatedPrinter printer = new SimulatedPrinter();
+        // one in 10 starts fails with the head too hot
+        printer.failEvery(10, -2);
+        measure("faulty", printer);
+    }
+
+    private void measure(String name, SimulatedPrinter printer) throws IOException {
+        File dir = mTmp.newFolder(name);
+        PrintSpooler spooler = new PrintSpooler(dir, printer, JOBS);
+        spooler.register(DemoReceipts.SALES_SLIP);
+        spooler.open();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < JOBS; i++) {
+            PrintJob job = new PrintJob(DemoReceipts.SALES_SLIP.getName(),
+                    i % 4 == 0 ? PrintJob.PRIORITY_REPORT : PrintJob.PRIORITY_RECEIPT);
+            assertEquals(0, spooler.submit(job));
+        }
+        long submitted = System.nanoTime();
+        int printed = 0;
+        int paperOuts = 0;
+        // a roll holds 200 receipts
+        printer.setPaper(200, -1);
+        while (spooler.size() > 0) {
+            int ret = spooler.drain();
+            if (ret > 0) {
+                printed += ret;
+            }
+            if (spooler.isWaitingForPaper()) {
+                paperOuts++;
+                printer.setPaper(200, -1);
+                spooler.onPaperLoaded();
+            }
+        }
+        long end = System.nanoTime();
+        assertEquals(JOBS, printed);
+
+        System.out.printf("%s: submit %.0f jobs/s, print %.0f jobs/s, %d starts, %d paper-outs%n",
+                name, JOBS / ((submitted - start) / 1e9), JOBS / ((end - submitted) / 1e9),
+                printer.getStarts(), paperOuts);
+    }
+}
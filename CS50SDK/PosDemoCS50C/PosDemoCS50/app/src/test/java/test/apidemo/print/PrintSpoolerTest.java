@@ -0,0 +1,236 @@
+package test.apidemo.print;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Spooling against {@link SimulatedPrinter}: priority order, paper-out and
+ * resume, retries, jobs cut short, and recovery of the queue after the
+ * process dies.
+ */
+public class PrintSpoolerTest {
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private final long[] mClock = {1000000};
+    private final SimulatedPrinter mPrinter = new SimulatedPrinter();
+    private final ReceiptTemplate mTemplate = new ReceiptTemplate("slip")
+            .text("#{no} {what}")
+            .section("footer").text("thank you").endSection();
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = mTmp.newFolder("spool");
+    }
+
+    @Test
+    public void receiptsGoBeforeReports() throws IOException {
+        PrintSpooler spooler = newSpooler();
+        submit(spooler, 1, PrintJob.PRIORITY_REPORT);
+        submit(spooler, 2, PrintJob.PRIORITY_NORMAL);
+        submit(spooler, 3, PrintJob.PRIORITY_RECEIPT);
+        submit(spooler, 4, PrintJob.PRIORITY_REPORT);
+        spooler.submit(job(5, PrintJob.PRIORITY_RECEIPT).hide("footer"));
+
+        assertEquals(5, spooler.drain());
+        assertEquals("[#3 job\nthank you\n, #5 job\n, #2 job\nthank you\n, #1 job\nthank you\n, "
+                + "#4 job\nthank you\n]", mPrinter.mPages.toString());
+        assertEquals(0, spooler.size());
+        assertEquals(0, jobFiles());
+    }
+
+    @Test
+    public void paperOutWaitsForPaper() throws IOException {
+        PrintSpooler spooler = newSpooler();
+        final List<String> changes = new ArrayList<String>();
+        spooler.setListener(new PrintSpooler.Listener() {
+            @Override
+            public void onJobChanged(PrintJob job) {
+                changes.add(job.getState() + ":" + job.getLastError());
+            }
+        });
+        mPrinter.setPaper(1, -1021);
+        long first = submit(spooler, 1, PrintJob.PRIORITY_RECEIPT);
+        long second = submit(spooler, 2, PrintJob.PRIORITY_RECEIPT);
+
+        assertEquals(1, spooler.drain());
+        assertTrue(spooler.isWaitingForPaper());
+        assertEquals(PrintJob.STATE_DONE, spooler.getState(first));
+        assertEquals(PrintJob.STATE_WAITING_PAPER, spooler.getState(second));
+        assertEquals(PrintSpooler.ERR_NO_PAPER, spooler.drain());
+
+        mPrinter.setPaper(100, -1);
+        spooler.onPaperLoaded();
+        assertEquals(1, spooler.drain());
+        assertEquals("[#1 job\nthank you\n, #2 job\nthank you\n]", mPrinter.mPages.toString());
+        // paper-outs are not failed attempts
+        assertEquals("[0:0, 0:0, 1:0, 3:0, 1:0, 2:-1021, 1:-1021, 3:-1021]", changes.toString());
+    }
+
+    @Test
+    public void otherFailuresAreRetriedThenSetAside() throws IOException {
+        PrintSpooler spooler = newSpooler();
+        spooler.setMaxAttempts(2);
+        mPrinter.failEvery(1, -2);
+        long id = submit(spooler, 1, PrintJob.PRIORITY_NORMAL);
+
+        assertEquals(-2, spooler.drain());
+        assertEquals(PrintJob.STATE_QUEUED, spooler.getState(id));
+        assertEquals(-2, spooler.drain());
+        assertEquals(PrintJob.STATE_FAILED, spooler.getState(id));
+        assertEquals(0, spooler.drain());
+        assertEquals(1, spooler.getFailed().size());
+
+        // set aside on disk too
+        PrintSpooler again = newSpooler();
+        assertEquals(0, again.size());
+        assertEquals(PrintJob.STATE_FAILED, again.getState(id));
+    }
+
+    @Test
+    public void partlyPrintedJobIsNotPrintedAgain() throws IOException {
+        PrintSpooler spooler = pacedSpooler(linePacer());
+        mPrinter.failEvery(2, -5);
+        long id = submit(spooler, 1, PrintJob.PRIORITY_RECEIPT);
+
+        assertEquals(PrintPacer.ERR_PARTIAL, spooler.drain());
+        assertEquals(PrintJob.STATE_FAILED, spooler.getState(id));
+        assertEquals(PrintPacer.ERR_PARTIAL, spooler.getFailed().get(0).getLastError());
+        assertEquals(0, spooler.drain());
+        assertEquals("[#1 job\n]", mPrinter.mPages.toString());
+    }
+
+    @Test
+    public void paperOutMidJobGoesOnFromThePartThatFailed() throws IOException {
+        PrintPacer pacer = linePacer();
+        PrintSpooler spooler = pacedSpooler(pacer);
+        mPrinter.setPaper(1, -1);
+        long id = submit(spooler, 1, PrintJob.PRIORITY_RECEIPT);
+
+        assertEquals(PrintSpooler.ERR_NO_PAPER, spooler.drain());
+        assertTrue(spooler.isWaitingForPaper());
+        assertEquals(PrintJob.STATE_WAITING_PAPER, spooler.getState(id));
+        assertEquals(0, spooler.getFailed().size());
+
+        // the place to go on from is on disk with the job
+        spooler = pacedSpooler(pacer);
+        assertEquals(1, spooler.size());
+        mPrinter.setPaper(100, -1);
+        spooler.onPaperLoaded();
+        assertEquals(1, spooler.drain());
+        assertEquals(PrintJob.STATE_DONE, spooler.getState(id));
+        assertEquals("[#1 job\n, thank you\n]", mPrinter.mPages.toString());
+        assertEquals(0, jobFiles());
+    }
+
+    @Test
+    public void queueSurvivesDeathWhilePrinting() throws IOException {
+        PrintSpooler spooler = newSpooler();
+        for (int i = 1; i <= 5; i++) {
+            submit(spooler, i, PrintJob.PRIORITY_NORMAL);
+        }
+        mPrinter.dieAtStart(3);
+        try {
+            spooler.drain();
+            fail();
+        } catch (SimulatedPrinter.PowerLoss expected) {
+        }
+        assertEquals(2, mPrinter.mPages.size());
+
+        // restart: the job cut short prints again, then the rest in order
+        mClock[0] += 1000;
+        PrintSpooler again = newSpooler();
+        assertEquals(3, again.size());
+        long next = submit(again, 6, PrintJob.PRIORITY_NORMAL);
+        assertEquals(4, again.drain());
+        assertEquals("#3 job\nthank you\n", mPrinter.mPages.get(2));
+        assertEquals("#6 job\nthank you\n", mPrinter.mPages.get(5));
+        assertEquals(PrintJob.STATE_DONE, again.getState(next));
+    }
+
+    @Test
+    public void badInputAndDamagedFiles() throws IOException {
+        PrintSpooler spooler = newSpooler();
+        assertEquals(PrintSpooler.ERR_TEMPLATE, spooler.submit(new PrintJob("nope", 0)));
+        assertEquals(PrintSpooler.ERR_TEMPLATE, spooler.submit(job(1, 0).set("missing", "x")));
+        assertEquals(PrintSpooler.ERR_TEMPLATE, spooler.submit(job(1, 0).hide("missing")));
+        for (int i = 0; i < 8; i++) {
+            assertEquals(0, spooler.submit(job(i, 0)));
+        }
+        assertEquals(PrintSpooler.ERR_FULL, spooler.submit(job(9, 0)));
+
+        FileOutputStream out = new FileOutputStream(new File(mDir, "job-1.job"));
+        out.write(new byte[]{0x50, 0x53, 0x4A, 0x32, 0});
+        out.close();
+        assertEquals(8, newSpooler().size());
+        assertTrue(new File(mDir, "job-1.job.bad").exists());
+    }
+
+    private PrintJob job(int no, int priority) {
+        return new PrintJob("slip", priority).set("no", String.valueOf(no)).set("what", "job");
+    }
+
+    private long submit(PrintSpooler spooler, int no, int priority) {
+        PrintJob job = job(no, priority);
+        assertEquals(0, spooler.submit(job));
+        return job.getId();
+    }
+
+    private int jobFiles() {
+        return mDir.list().length;
+    }
+
+    private PrintSpooler newSpooler() throws IOException {
+        PrintSpooler spooler = new TestSpooler(mDir, mPrinter, 8);
+        spooler.register(mTemplate);
+        spooler.open();
+        return spooler;
+    }
+
+    /** Pacer with a heat budget so small that every line is a start of its own */
+    private PrintPacer linePacer() {
+        return new PrintPacer(mPrinter, 1, 5, 800, 10000) {
+            @Override
+            protected long now() {
+                return mClock[0];
+            }
+
+            @Override
+            protected void sleep(long millis) {
+                mClock[0] += millis;
+            }
+        };
+    }
+
+    private PrintSpooler pacedSpooler(PrintPacer pacer) throws IOException {
+        PrintSpooler spooler = new TestSpooler(mDir, pacer, 8);
+        spooler.register(mTemplate);
+        spooler.open();
+        return spooler;
+    }
+
+    private class TestSpooler extends PrintSpooler {
+        TestSpooler(File dir, Printer printer, int maxJobs) {
+            super(dir, printer, maxJobs);
+        }
+
+        @Override
+        protected long now() {
+            return mClock[0];
+        }
+    }
+}
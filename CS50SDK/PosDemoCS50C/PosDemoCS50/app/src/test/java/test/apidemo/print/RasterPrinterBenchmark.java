@@ -0,0 +1,182 @@
+package test.apidemo.print;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Per-line printing against {@link RasterPrinter} for CJK, Greek and mixed
+ * script receipts: SDK calls and bytes handed to the SDK per receipt, and
+ * the terminal-side cost of rendering with a warm {@link GlyphCache}. The
+ * per-line figures are given both for one PrintStr per line, as the demo
+ * wrote receipts by hand, and for the merged text runs of a template.
+ *
+ * Per-line text is rendered by the printer firmware, which a JVM cannot
+ * measure, so the total is modelled as render time plus a fixed cost per
+ * SDK call given by {@code bench.callUs}. Run with
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests test.apidemo.print.RasterPrinterBenchmark \
+ *     -Dbench=true -Dbench.receipts=2000 -Dbench.callUs=3000
+ * </pre>
+ */
+public class RasterPrinterBenchmark {
+
+    private static final int RECEIPTS = Integer.getInteger("bench.receipts", 500);
+    private static final int CALL_US = Integer.getInteger("bench.callUs", 2000);
+
+    /** Greek lines of the print test page */
+    private static final ReceiptTemplate GREEK = new ReceiptTemplate("greek")
+            .font(24, 24, 0)
+            .text("ΑΒΓΔΕΖΗΘΙΚΛΜΝΞΟΠΡΣΤΥΦΧΨΩ")
+            .text("αβγδεζηθικλμνξοπρστυφχψως")
+            .text("ΆΈΉΊΎΏάέήίόύώ")
+            .text("ΫΪϋϊ")
+            .text("΅Υ΅Ιΰΐ")
+            .bold(true)
+            .text("ΣΥΝΟΛΟ: {amount}")
+            .bold(false)
+            .text("αβγδεζηθικλμνξοπρστυφχψωςABCDEFGHIJKLMNOPQRSTUVWXYZ")
+            .feed(4);
+
+    @Before
+    public void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void cjkSalesSlip() {
+        Receipt slip = DemoReceipts.demoSale(DemoReceipts.SALES_SLIP.compile().newReceipt(), 1);
+        measure("CJK sales slip", slip);
+    }
+
+    @Test
+    public void greek() {
+        measure("Greek", GREEK.compile().newReceipt().set("amount", "€12,50"));
+    }
+
+    @Test
+    public void mixedScript() {
+        measure("Mixed script", DemoReceipts.UNICODE_SAMPLE.compile().newReceipt());
+    }
+
+    private static void measure(String name, Receipt receipt) {
+        CountingPrinter perLine = new CountingPrinter();
+        assertEquals(0, receipt.print(perLine));
+
+        CountingPrinter target = new CountingPrinter();
+        GlyphCache glyphs = new GlyphCache(new BoxGlyphSource());
+        RasterPrinter raster = new RasterPrinter(target, glyphs);
+        // warm up the JIT and the glyph cache
+        for (int i = 0; i < RECEIPTS / 5 + 1; i++) {
+            receipt.print(raster);
+        }
+        target.reset();
+        long start = System.nanoTime();
+        for (int i = 0; i < RECEIPTS; i++) {
+            assertEquals(0, receipt.print(raster));
+        }
+        double renderUs = (System.nanoTime() - start) / 1e3 / RECEIPTS;
+        double calls = target.mCalls / (double) RECEIPTS;
+        double bytes = target.mBytes / (double) RECEIPTS;
+
+        System.out.printf("%s: per-line %d calls (%d merged), %d bytes, %.1f ms; raster %.0f calls, %.0f bytes, "
+                        + "render %.1f us, %.1f ms (%d glyphs drawn, %d cache hits; %d us per call)%n",
+                name, perLine.mLineCalls, perLine.mCalls, perLine.mBytes, perLine.mLineCalls * CALL_US / 1e3,
+                calls, bytes, renderUs, (renderUs + calls * CALL_US) / 1e3, glyphs.getMisses(), glyphs.getHits(), CALL_US);
+    }
+
+    /** Counts calls and the bytes each would hand to the SDK */
+    private static final class CountingPrinter implements Printer {
+        int mCalls;
+        /** Calls with one PrintStr per text line */
+        int mLineCalls;
+        long mBytes;
+
+        void reset() {
+            mCalls = 0;
+            mLineCalls = 0;
+            mBytes = 0;
+        }
+
+        @Override
+        public int init() {
+            mCalls++;
+            mLineCalls++;
+            return 0;
+        }
+
+        @Override
+        public int setFont(int width, int height, int zoom) {
+            mCalls++;
+            mLineCalls++;
+            return 0;
+        }
+
+        @Override
+        public int setBold(int on) {
+            mCalls++;
+            mLineCalls++;
+            return 0;
+        }
+
+        @Override
+        public int setAlign(int align) {
+            mCalls++;
+            mLineCalls++;
+            return 0;
+        }
+
+        @Override
+        public int setGray(int level) {
+            mCalls++;
+            return 0;
+        }
+
+        @Override
+        public int setSpeed(int speed) {
+            mCalls++;
+            return 0;
+        }
+
+        @Override
+        public int printStr(String text) {
+            mCalls++;
+            for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+                mLineCalls++;
+            }
+            try {
+                mBytes += text.getBytes("UTF-8").length;
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+            return 0;
+        }
+
+        @Override
+        public int printBarcode(String content, int width, int height, String format) {
+            mCalls++;
+            mLineCalls++;
+            mBytes += content.length();
+            return 0;
+        }
+
+        @Override
+        public int printRaster(Raster raster) {
+            mCalls++;
+            mLineCalls++;
+            mBytes += raster.getData().length;
+            return 0;
+        }
+
+        @Override
+        public int start() {
+            mCalls++;
+            mLineCalls++;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package test.apidemo.print;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Client-side rendering: a receipt reaches the printer as page strips, glyphs
+ * are drawn once, clusters stay whole, lines align and wrap.
+ */
+public class RasterPrinterTest {
+
+    private final RecordingPrinter mTarget = new RecordingPrinter();
+    private final BoxGlyphSource mSource = new BoxGlyphSource();
+    private final GlyphCache mGlyphs = new GlyphCache(mSource);
+
+    @Test
+    public void salesSlipIsOnePage() {
+        RasterPrinter printer = new RasterPrinter(mTarget, mGlyphs);
+        Receipt slip = DemoReceipts.demoSale(DemoReceipts.SALES_SLIP.compile().newReceipt(), 1);
+
+        assertEquals(0, slip.print(printer));
+        int rows = 0;
+        for (int i = 0; i < mTarget.mRasters.size(); i++) {
+            Raster strip = mTarget.mRasters.get(i);
+            assertEquals(Raster.PAPER_WIDTH, strip.getWidth());
+            assertTrue(strip.getHeight() <= RasterPrinter.DEFAULT_STRIP_ROWS);
+            rows += strip.getHeight();
+        }
+        assertEquals((rows + RasterPrinter.DEFAULT_STRIP_ROWS - 1) / RasterPrinter.DEFAULT_STRIP_ROWS,
+                mTarget.mRasters.size());
+        assertEquals(mTarget.mRasters.size() + 1, mTarget.mCalls.size());
+        assertEquals("start", mTarget.mCalls.get(mTarget.mCalls.size() - 1));
+        assertEquals(mTarget.mCalls.size(), printer.getTransfers());
+    }
+
+    @Test
+    public void glyphsAreDrawnOnce() {
+        RasterPrinter printer = new RasterPrinter(mTarget, mGlyphs);
+        Receipt slip = DemoReceipts.SALES_SLIP.compile().newReceipt();
+        DemoReceipts.demoSale(slip, 1).print(printer);
+        int drawn = mSource.mRendered;
+        assertEquals(drawn, mGlyphs.getMisses());
+
+        slip.clear();
+        DemoReceipts.demoSale(slip, 2).print(printer);
+        assertEquals(drawn, mSource.mRendered);
+        assertTrue(mGlyphs.getHits() > 0);
+    }
+
+    @Test
+    public void clustersKeepTheirMarks() {
+        assertEquals(1, GlyphCache.clusterEnd("ab", 0));
+        assertEquals(2, GlyphCache.clusterEnd("e\u0301x", 0));
+        // KA + VIRAMA + SSA is one conjunct, the vowel sign joins it
+        assertEquals(4, GlyphCache.clusterEnd("\u0915\u094D\u0937\u093E", 0));
+        assertEquals(2, GlyphCache.clusterEnd("\uD83D\uDE00a", 0));
+    }
+
+    @Test
+    public void linesAlignAndWrap() {
+        RasterPrinter printer = new RasterPrinter(mTarget, mGlyphs);
+        printer.setFont(16, 16, 0);
+        printer.setAlign(Printer.ALIGN_RIGHT);
+        printer.printStr("ab\n");
+        printer.setAlign(Printer.ALIGN_LEFT);
+        StringBuilder wide = new StringBuilder();
+        for (int i = 0; i < 49; i++) {
+            wide.append('x');
+        }
+        printer.printStr(wide.toString());
+        printer.start();
+
+        Raster page = mTarget.mRasters.get(0);
+        int line = 16 + RasterPrinter.LINE_GAP;
+        assertEquals(3 * line, page.getHeight());
+        assertTrue(page.get(Raster.PAPER_WIDTH - 1, 0));
+        assertTrue(page.get(Raster.PAPER_WIDTH - 16, 0));
+        assertFalse(page.get(Raster.PAPER_WIDTH - 17, 0));
+        // 48 half-width glyphs fill the line, the 49th wraps
+        assertTrue(page.get(Raster.PAPER_WIDTH - 1, line));
+        assertTrue(page.get(0, 2 * line));
+        assertFalse(page.get(8, 2 * line));
+    }
+
+    @Test
+    public void barcodeEndsAStrip() {
+        RasterPrinter printer = new RasterPrinter(mTarget, mGlyphs, null, 50);
+        printer.printStr("one\ntwo\n");
+        printer.printBarcode("123", 360, 120, "CODE_128");
+        printer.printStr("three\n");
+        printer.printRaster(new Raster(100, 10));
+        assertEquals(RasterPrinter.ERR_TOO_WIDE, printer.printRaster(new Raster(400, 10)));
+        printer.start();
+
+        assertEquals("[raster 384x50, raster 384x6, CODE_128 123, raster 384x38, start]",
+                mTarget.mCalls.toString());
+    }
+}
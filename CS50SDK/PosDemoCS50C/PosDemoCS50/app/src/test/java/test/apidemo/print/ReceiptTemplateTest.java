@@ -0,0 +1,122 @@
+package test.apidemo.print;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compiled receipts: merged text runs, style calls only on change, fields,
+ * rows and columns, sections, and the per-template cache.
+ */
+public class ReceiptTemplateTest {
+
+    private final RecordingPrinter mPrinter = new RecordingPrinter();
+
+    @Test
+    public void mergesTextAndSkipsRepeatedStyle() {
+        ReceiptTemplate t = new ReceiptTemplate("t")
+                .font(24, 24, 0).text("A")
+                .font(24, 24, 0).text("B {x}")
+                .bold(false).bold(true).bold(false).text("C")
+                .font(16, 16, 0).text("D").separator();
+        Receipt r = t.compile().newReceipt().set("x", "1");
+
+        assertEquals(0, r.print(mPrinter));
+        assertEquals("[font 24x24 0, str, bold 0, str, font 16x16 0, str, start]", mPrinter.mCalls.toString());
+        assertEquals("A\nB 1\nC\nD\n" + dashes(47) + "\n", mPrinter.mText.toString());
+    }
+
+    @Test
+    public void salesSlipIsAFewCalls() {
+        Receipt slip = DemoReceipts.demoSale(DemoReceipts.SALES_SLIP.compile().newReceipt(), 1);
+        assertEquals(0, slip.print(mPrinter));
+        // the hand-written slip makes 37 calls
+        assertEquals(8, slip.getCalls());
+        String text = mPrinter.mText.toString();
+        assertTrue(text.startsWith("打印第：1次\n商户存根MERCHANT COPY\n"));
+        assertTrue(text.contains("\n    9558803602109503920\n"));
+        // the three ideographs take two cells each
+        assertTrue(text.contains("\n凭证号(VOUCHER NO)" + spaces(7) + ":000018\n"));
+    }
+
+    @Test
+    public void hiddenSectionKeepsStyleRight() {
+        ReceiptTemplate t = new ReceiptTemplate("t")
+                .font(24, 24, 0).text("head")
+                .section("small").font(16, 16, 0).text("small").endSection()
+                .font(24, 24, 0).text("tail");
+        Receipt r = t.compile().newReceipt();
+
+        r.print(mPrinter);
+        assertEquals("[font 24x24 0, str, font 16x16 0, str, font 24x24 0, str, start]",
+                mPrinter.mCalls.toString());
+
+        mPrinter.mCalls.clear();
+        r.show("small", false).print(mPrinter);
+        assertEquals("[font 24x24 0, str, str, start]", mPrinter.mCalls.toString());
+    }
+
+    @Test
+    public void rowsAndColumnsFillTheLine() {
+        ReceiptTemplate t = new ReceiptTemplate("t")
+                .font(24, 24, 0)
+                .row("TOTAL", "{amount}")
+                .row("A LONG LABEL FOR A ROW", "{amount}")
+                .columns(new int[]{4, 0, 8}, new int[]{Printer.ALIGN_RIGHT, Printer.ALIGN_CENTER,
+                        Printer.ALIGN_RIGHT}, "{qty}", "ITEM", "{price}");
+        Receipt r = t.compile().newReceipt()
+                .set("amount", "1,234,567.89").set("qty", "12").set("price", "123456789");
+        r.print(mPrinter);
+
+        String[] lines = mPrinter.mText.toString().split("\n");
+        assertEquals("TOTAL" + spaces(15) + "1,234,567.89", lines[0]);
+        assertEquals("A LONG LABEL FOR A ROW", lines[1]);
+        assertEquals(spaces(20) + "1,234,567.89", lines[2]);
+        assertEquals("  12" + spaces(8) + "ITEM" + spaces(8) + "12345678", lines[3]);
+    }
+
+    @Test
+    public void barcodesAndImagesTakeValues() {
+        ReceiptTemplate t = new ReceiptTemplate("t")
+                .text("before").barcode("https://shop/{id}", 240, 240, "QR_CODE")
+                .image("logo").barcode("{missing}", 360, 120, "CODE_128").text("after");
+        Receipt r = t.compile().newReceipt().set("id", "42").setImage("logo", new Raster(16, 2));
+        r.print(mPrinter);
+        assertEquals("[str, QR_CODE https://shop/42, raster 16x2, str, start]", mPrinter.mCalls.toString());
+    }
+
+    @Test
+    public void compiledOnceUntilChanged() {
+        ReceiptTemplate t = new ReceiptTemplate("t").text("{a}");
+        CompiledReceipt first = t.compile();
+        assertSame(first, t.compile());
+        t.text("{b}");
+        assertNotSame(first, t.compile());
+        assertEquals(1, t.compile().slotOf("b"));
+        try {
+            first.newReceipt().set("b", "x");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static String spaces(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static String dashes(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append((i & 1) == 0 ? '-' : ' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package test.apidemo.print;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Printer} that keeps every call as a line of text, and the printed
+ * text as one string.
+ */
+class RecordingPrinter implements Printer {
+
+    final List<String> mCalls = new ArrayList<String>();
+    final StringBuilder mText = new StringBuilder();
+    final List<Raster> mRasters = new ArrayList<Raster>();
+
+    @Override
+    public int init() {
+        mCalls.add("init");
+        return 0;
+    }
+
+    @Override
+    public int setFont(int width, int height, int zoom) {
+        mCalls.add("font " + width + "x" + height + " " + zoom);
+        return 0;
+    }
+
+    @Override
+    public int setBold(int on) {
+        mCalls.add("bold " + on);
+        return 0;
+    }
+
+    @Override
+    public int setAlign(int align) {
+        mCalls.add("align " + align);
+        return 0;
+    }
+
+    @Override
+    public int setGray(int level) {
+        mCalls.add("gray " + level);
+        return 0;
+    }
+
+    @Override
+    public int setSpeed(int speed) {
+        mCalls.add("speed " + speed);
+        return 0;
+    }
+
+    @Override
+    public int printStr(String text) {
+        mCalls.add("str");
+        mText.append(text);
+        return 0;
+    }
+
+    @Override
+    public int printBarcode(String content, int width, int height, String format) {
+        mCalls.add(format + " " + content);
+        return 0;
+    }
+
+    @Override
+    public int printRaster(Raster raster) {
+        mCalls.add("raster " + raster.getWidth() + "x" + raster.getHeight());
+        mRasters.add(raster);
+        return 0;
+    }
+
+    @Override
+    public int start() {
+        mCalls.add("start");
+        return 0;
+    }
+}
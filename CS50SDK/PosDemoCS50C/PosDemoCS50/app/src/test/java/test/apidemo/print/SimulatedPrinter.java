@@ -0,0 +1,201 @@
+package test.apidemo.print;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Printer} with a paper roll and injected faults: it runs out of
+ * paper after a number of pages, fails every n-th start with a given code,
+ * or dies in the middle of a start like a process killed while printing.
+ * With {@link #setHead} it also has a print head that heats with the dots
+ * it fires and fails starts with -2 when too hot, and on a weak battery
+ * fails dark fast starts with -3. Each printed page is kept as the text it
+ * carried.
+ */
+class SimulatedPrinter implements Printer {
+
+    /** Thrown by {@link #start()} to stand for the death of the process */
+    static final class PowerLoss extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PowerLoss() {
+            super("power lost while printing");
+        }
+    }
+
+    final List<String> mPages = new ArrayList<String>();
+    private final StringBuilder mBuffer = new StringBuilder();
+    private int mPaperLeft = Integer.MAX_VALUE;
+    private int mPaperOutCode = -1;
+    private int mFailEvery;
+    private int mFailCode;
+    private int mDieAtStart;
+    private int mStarts;
+
+    private long[] mClock;
+    private long mHeatLimit;
+    private long mHalfLifeMs;
+    private double mHeat;
+    private long mHeatAt;
+    private long mDots;
+    private int mFontHeight = 24;
+    private int mGray = 3;
+    private int mSpeed = 5;
+    private int mBattery = 100;
+    private int mTooHot;
+
+    /** Run out of paper after {@code pages} more pages, then fail starts with {@code code} */
+    void setPaper(int pages, int code) {
+        mPaperLeft = pages;
+        mPaperOutCode = code;
+    }
+
+    /** Fail every {@code n}-th start with {@code code}, e.g. -2 too hot */
+    void failEvery(int n, int code) {
+        mFailEvery = n;
+        mFailCode = code;
+    }
+
+    /** Throw {@link PowerLoss} on start number {@code n}, counted from 1 */
+    void dieAtStart(int n) {
+        mDieAtStart = n;
+    }
+
+    /**
+     * Heat the head with the dots it fires; a start fails with -2 when it
+     * would take the head over {@code limit}. A page takes 1000 / speed ms
+     * on {@code clock}.
+     */
+    void setHead(long limit, long halfLifeMs, long[] clock) {
+        mHeatLimit = limit;
+        mHalfLifeMs = halfLifeMs;
+        mClock = clock;
+    }
+
+    /** Below 15 percent, starts at gray and speed 3 or more fail with -3 */
+    void setBattery(int percent) {
+        mBattery = percent;
+    }
+
+    int getStarts() {
+        return mStarts;
+    }
+
+    int getTooHot() {
+        return mTooHot;
+    }
+
+    int getGray() {
+        return mGray;
+    }
+
+    int getSpeed() {
+        return mSpeed;
+    }
+
+    double heat() {
+        long dt = mClock[0] - mHeatAt;
+        return dt <= 0 ? mHeat : mHeat * Math.pow(0.5, dt / (double) mHalfLifeMs);
+    }
+
+    @Override
+    public int init() {
+        mBuffer.setLength(0);
+        mDots = 0;
+        return 0;
+    }
+
+    @Override
+    public int setFont(int width, int height, int zoom) {
+        mFontHeight = height;
+        return 0;
+    }
+
+    @Override
+    public int setBold(int on) {
+        return 0;
+    }
+
+    @Override
+    public int setAlign(int align) {
+        return 0;
+    }
+
+    @Override
+    public int setGray(int level) {
+        mGray = level;
+        return 0;
+    }
+
+    @Override
+    public int setSpeed(int speed) {
+        mSpeed = speed;
+        return 0;
+    }
+
+    @Override
+    public int printStr(String text) {
+        mBuffer.append(text);
+        // a little more ink than PrintPacer reckons with
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                mDots += mFontHeight * mFontHeight / 2 / 4;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int printBarcode(String content, int width, int height, String format) {
+        mBuffer.append('[').append(content).append(']');
+        mDots += width * height / 2;
+        return 0;
+    }
+
+    @Override
+    public int printRaster(Raster raster) {
+        mBuffer.append("[raster]");
+        mDots += PrintPacer.blackDots(raster);
+        return 0;
+    }
+
+    @Override
+    public int start() {
+        mStarts++;
+        if (mStarts == mDieAtStart) {
+            throw new PowerLoss();
+        }
+        if (mFailEvery > 0 && mStarts % mFailEvery == 0) {
+            return fail(mFailCode);
+        }
+        if (mPaperLeft == 0) {
+            return fail(mPaperOutCode);
+        }
+        if (mBattery < 15 && mGray >= 3 && mSpeed >= 3) {
+            return fail(-3);
+        }
+        if (mClock != null) {
+            double heat = heat() + mDots * (0.4 + 0.2 * mGray) * (0.4 + 0.12 * mSpeed);
+            if (heat > mHeatLimit) {
+                mTooHot++;
+                return fail(-2);
+            }
+            mHeat = heat;
+            mHeatAt = mClock[0];
+            mClock[0] += 1000 / mSpeed;
+        }
+        if (mPaperLeft != Integer.MAX_VALUE) {
+            mPaperLeft--;
+        }
+        mPages.add(mBuffer.toString());
+        mBuffer.setLength(0);
+        mDots = 0;
+        return 0;
+    }
+
+    private int fail(int code) {
+        mBuffer.setLength(0);
+        mDots = 0;
+        return code;
+    }
+}
@@ -0,0 +1,79 @@
+package test.apidemo.saf;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-process stand-in for the acquirer.
+ *
+ * Books every STAN once and acknowledges repeats, as a real host must for
+ * store-and-forward. The link can be taken down, single STANs can be
+ * refused or asked to retry a number of times.
+ */
+public class LocalHost implements HostLink {
+
+    public static final int ERR_LINK_DOWN = -1;
+
+    private final Map<Integer, byte[]> mBooked = new HashMap<Integer, byte[]>();
+    private final Map<Integer, Integer> mRetries = new HashMap<Integer, Integer>();
+    private final Set<Integer> mRefused = new HashSet<Integer>();
+    private boolean mOnline = true;
+    private int mBatches;
+    private int mDuplicates;
+
+    public void setOnline(boolean online) {
+        mOnline = online;
+    }
+
+    /** Answer {@link #RESULT_RETRY} for {@code stan} the next {@code times} uploads */
+    public void retry(int stan, int times) {
+        mRetries.put(stan, times);
+    }
+
+    public void refuse(int stan) {
+        mRefused.add(stan);
+    }
+
+    @Override
+    public int upload(SafItem[] items, int count, int[] results) {
+        if (!mOnline) {
+            return ERR_LINK_DOWN;
+        }
+        mBatches++;
+        for (int i = 0; i < count; i++) {
+            int stan = items[i].getStan();
+            Integer retries = mRetries.get(stan);
+            if (mRefused.contains(stan)) {
+                results[i] = RESULT_REJECTED;
+            } else if (retries != null && retries > 0) {
+                mRetries.put(stan, retries - 1);
+                results[i] = RESULT_RETRY;
+            } else {
+                if (mBooked.put(stan, items[i].getData()) != null) {
+                    mDuplicates++;
+                }
+                results[i] = RESULT_OK;
+            }
+        }
+        return 0;
+    }
+
+    public boolean isBooked(int stan) {
+        return mBooked.containsKey(stan);
+    }
+
+    public int getBooked() {
+        return mBooked.size();
+    }
+
+    /** Uploads of an already booked STAN, acknowledged without booking */
+    public int getDuplicates() {
+        return mDuplicates;
+    }
+
+    public int getBatches() {
+        return mBatches;
+    }
+}
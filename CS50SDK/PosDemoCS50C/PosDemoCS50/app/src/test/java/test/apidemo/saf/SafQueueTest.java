@@ -0,0 +1,173 @@
+package test.apidemo.saf;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Store-and-forward behaviour against {@link LocalHost}: outage and
+ * recovery, per-item backoff, de-duplication by STAN and the disk cap.
+ */
+public class SafQueueTest {
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private final long[] mClock = {1000000};
+    private final LocalHost mHost = new LocalHost();
+    private final byte[] mTlv = {(byte) 0x9F, 0x26, 0x02, 0x12, 0x34, (byte) 0x9F, 0x36, 0x01, 0x07};
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = mTmp.newFolder("saf");
+    }
+
+    @Test
+    public void outageThenFullDrain() throws IOException {
+        SafQueue queue = newQueue();
+        mHost.setOnline(false);
+        for (int stan = 1; stan <= 45; stan++) {
+            assertEquals(0, queue.enqueue(stan, mTlv, 0, mTlv.length));
+        }
+        assertEquals(LocalHost.ERR_LINK_DOWN, queue.drain());
+        assertEquals(SafQueue.ERR_BACKOFF, queue.drain());
+
+        mHost.setOnline(true);
+        mClock[0] += 1000;
+        assertEquals(45, queue.drain());
+        assertEquals(0, queue.size());
+        assertEquals(45, mHost.getBooked());
+        assertEquals(3, mHost.getBatches());
+        assertEquals(0, queue.getBytes());
+    }
+
+    @Test
+    public void itemsSurviveRestart() throws IOException {
+        SafQueue queue = newQueue();
+        queue.enqueue(7, mTlv, 0, mTlv.length);
+        queue.enqueue(8, mTlv, 0, 3);
+        assertEquals(SafQueue.ERR_DUPLICATE, queue.enqueue(7, mTlv, 0, mTlv.length));
+
+        SafQueue again = newQueue();
+        assertEquals(2, again.size());
+        assertTrue(again.contains(7));
+        assertEquals(SafQueue.ERR_DUPLICATE, again.enqueue(8, mTlv, 0, 3));
+        assertEquals(2, again.drain());
+    }
+
+    @Test
+    public void retriedItemBacksOffAlone() throws IOException {
+        SafQueue queue = newQueue();
+        queue.enqueue(1, mTlv, 0, mTlv.length);
+        queue.enqueue(2, mTlv, 0, mTlv.length);
+        mHost.retry(2, 2);
+
+        assertEquals(1, queue.drain());
+        assertFalse(queue.contains(1));
+        // 100 ms after the first failure, 200 ms after the second
+        mClock[0] += 99;
+        assertEquals(0, queue.drain());
+        mClock[0] += 1;
+        assertEquals(0, queue.drain());
+        mClock[0] += 199;
+        assertEquals(0, queue.drain());
+        mClock[0] += 1;
+        assertEquals(1, queue.drain());
+        assertTrue(mHost.isBooked(2));
+    }
+
+    @Test
+    public void reuploadAfterCrashIsNotBookedTwice() throws IOException {
+        SafQueue queue = newQueue();
+        queue.enqueue(5, mTlv, 0, mTlv.length);
+        File item = new File(mDir, "saf-5.item");
+        byte[] saved = read(item);
+
+        assertEquals(1, queue.drain());
+        // crash between the host's answer and the delete
+        write(item, saved);
+        SafQueue again = newQueue();
+        assertEquals(1, again.drain());
+        assertEquals(1, mHost.getBooked());
+        assertEquals(1, mHost.getDuplicates());
+    }
+
+    @Test
+    public void diskCapRefusesNewItems() throws IOException {
+        SafQueue queue = new TestQueue(mDir, 200);
+        queue.open();
+        int stored = 0;
+        while (queue.enqueue(stored + 1, mTlv, 0, mTlv.length) == 0) {
+            stored++;
+        }
+        assertEquals(SafQueue.ERR_FULL, queue.enqueue(1000, mTlv, 0, mTlv.length));
+        assertTrue(queue.getBytes() <= 200);
+        assertEquals(stored, newQueue().size());
+    }
+
+    @Test
+    public void refusedItemIsSetAside() throws IOException {
+        SafQueue queue = newQueue();
+        queue.enqueue(3, mTlv, 0, mTlv.length);
+        mHost.refuse(3);
+        assertEquals(0, queue.drain());
+        assertEquals(0, queue.size());
+        assertEquals(1, queue.getRejected());
+        assertEquals(0, newQueue().size());
+    }
+
+    private SafQueue newQueue() throws IOException {
+        SafQueue queue = new TestQueue(mDir, 64 * 1024);
+        queue.setHostLink(mHost);
+        queue.setBackoff(100, 1000);
+        queue.open();
+        return queue;
+    }
+
+    private class TestQueue extends SafQueue {
+        TestQueue(File dir, long maxBytes) {
+            super(dir, maxBytes);
+        }
+
+        @Override
+        protected long now() {
+            return mClock[0];
+        }
+    }
+
+    private static byte[] read(File f) throws IOException {
+        byte[] b = new byte[(int) f.length()];
+        InputStream in = new FileInputStream(f);
+        try {
+            int n = 0;
+            while (n < b.length) {
+                n += in.read(b, n, b.length - n);
+            }
+        } finally {
+            in.close();
+        }
+        return b;
+    }
+
+    private static void write(File f, byte[] b) throws IOException {
+        OutputStream out = new FileOutputStream(f);
+        try {
+            out.write(b);
+        } finally {
+            out.close();
+        }
+    }
+}
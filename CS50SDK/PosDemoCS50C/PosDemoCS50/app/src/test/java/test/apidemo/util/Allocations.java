@@ -0,0 +1,26 @@
+package test.apidemo.util;
+
+import java.lang.reflect.Method;
+
+/**
+ * Bytes the current thread has allocated, for the JVM benchmarks. Looked
+ * up by reflection since com.sun.management is HotSpot only.
+ */
+public final class Allocations {
+
+    private Allocations() {
+    }
+
+    /** HotSpot per-thread allocation counter, -1 where the JVM does not expose it */
+    public static long allocatedBytes() {
+        try {
+            Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+            Object bean = factory.getMethod("getThreadMXBean").invoke(null);
+            Method m = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) m.invoke(bean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}